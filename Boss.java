@@ -0,0 +1,322 @@
+/**
+ * A boss enemy made of many parts.
+ *
+ * Parts are enemy-sized blocks laid out from a text definition, each with its
+ * own shape type for critical hits and its own health, and each can be shot
+ * off on its own; the boss is beaten when its last part goes. Hits are found
+ * through a bounding hierarchy: the box around every live part, then the box
+ * around the live parts of each row, then the parts' boxes and their
+ * {@link ShapeMask}s, so a shot that misses the boss costs one box test. The boxes are kept relative to the
+ * boss position, so moving the boss never touches them; they are only
+ * refitted when a part is destroyed.
+ */
+public class Boss {
+    public static final int NO_PART = -1;
+    public static final int PART_SIZE = WorldState.SHAPE_SIZE;
+    private static final int PITCH = PART_SIZE + 2;
+    
+    // Layouts by row: C circle, T triangle, B cube, . empty
+    private static final String[][] LAYOUTS = {
+        {".T.T.",
+         "CBBBC",
+         ".TCT."},
+        {"T.C.C.T",
+         "BBTBTBB",
+         ".CBBBC.",
+         "..T.T.."},
+        {"C.TTT.C",
+         "BBBBBBB",
+         "TCTBTCT",
+         "BBBCBBB",
+         ".C.T.C."},
+        {"T.C.B.C.T",
+         "BBBBBBBBB",
+         "CTCTBTCTC",
+         "BBBBBBBBB",
+         "TCBCTCBCT",
+         ".B.T.T.B."}
+    };
+    
+    // Movement: drop in to ENTRY_Y, then sway from side to side
+    private static final int ENTRY_Y = 40;
+    private static final int ENTRY_SPEED = 1;
+    private static final int SWAY_RATE = 40052; // Fixed-point sine steps per tick, about 0.015 radians
+    private static final int SWAY_REACH = 120;
+    
+    public final int id;
+    public final int layout;
+    public int x;
+    public int y;
+    public int originX;
+    public int age;
+    
+    // Parts in row order, with offsets from the boss position
+    public final int partCount;
+    public final int[] partType;
+    public final int[] partX;
+    public final int[] partY;
+    public final int[] partHealth;
+    public final int[] partMaxHealth;
+    private int liveParts;
+    
+    // Bounding hierarchy of the live parts, relative to the boss position. An empty box has left > right.
+    private int left, top, right, bottom;
+    private final int rowCount;
+    private final int[] rowStart;
+    private final int[] rowLeft;
+    private final int[] rowRight;
+    
+    /**
+     * Constructor for a boss. Part ids follow on from the boss id.
+     *
+     * @param id Entity id of the boss, which is also the id of its first part
+     * @param layout The layout, from 0 to layoutCount() - 1
+     * @param x X position of the top left corner
+     * @param y Y position of the top left corner
+     * @param partHealth Health of each part, by shape type
+     */
+    public Boss(int id, int layout, int x, int y, int[] partHealth) {
+        String[] rows = LAYOUTS[layout];
+        int count = 0;
+        for (String row : rows) {
+            for (int c = 0; c < row.length(); c++) {
+                if (row.charAt(c) != '.') {
+                    count++;
+                }
+            }
+        }
+        this.id = id;
+        this.layout = layout;
+        this.x = x;
+        this.y = y;
+        this.originX = x;
+        this.partCount = count;
+        this.partType = new int[count];
+        this.partX = new int[count];
+        this.partY = new int[count];
+        this.partHealth = new int[count];
+        this.partMaxHealth = new int[count];
+        this.rowCount = rows.length;
+        this.rowStart = new int[rowCount + 1];
+        this.rowLeft = new int[rowCount];
+        this.rowRight = new int[rowCount];
+        
+        int i = 0;
+        for (int r = 0; r < rowCount; r++) {
+            rowStart[r] = i;
+            for (int c = 0; c < rows[r].length(); c++) {
+                char part = rows[r].charAt(c);
+                if (part == '.') {
+                    continue;
+                }
+                int type = part == 'T' ? WorldState.SHAPE_TRIANGLE
+                         : part == 'B' ? WorldState.SHAPE_CUBE : WorldState.SHAPE_CIRCLE;
+                partType[i] = type;
+                partX[i] = c * PITCH;
+                partY[i] = r * PITCH;
+                this.partHealth[i] = partHealth[type];
+                partMaxHealth[i] = partHealth[type];
+                i++;
+            }
+        }
+        rowStart[rowCount] = i;
+        liveParts = count;
+        for (int r = 0; r < rowCount; r++) {
+            refitRow(r);
+        }
+        refit();
+    }
+    
+    /**
+     * Get the number of built-in layouts.
+     *
+     * @return The layout count
+     */
+    public static int layoutCount() {
+        return LAYOUTS.length;
+    }
+    
+    /**
+     * Get the width of a layout with all its parts.
+     *
+     * @param layout The layout
+     * @return The width in pixels
+     */
+    public static int layoutWidth(int layout) {
+        int columns = 0;
+        for (String row : LAYOUTS[layout]) {
+            columns = Math.max(columns, row.length());
+        }
+        return columns * PITCH - (PITCH - PART_SIZE);
+    }
+    
+    /**
+     * Get the height of a layout with all its parts.
+     *
+     * @param layout The layout
+     * @return The height in pixels
+     */
+    public static int layoutHeight(int layout) {
+        return LAYOUTS[layout].length * PITCH - (PITCH - PART_SIZE);
+    }
+    
+    /**
+     * Move the boss one tick: drop in from above, then sway around where it came in.
+     *
+     * @param arenaWidth Width of the arena, which the boss stays inside
+     */
+    public void move(int arenaWidth) {
+        age++;
+        if (y < ENTRY_Y) {
+            y = Math.min(ENTRY_Y, y + ENTRY_SPEED);
+            return;
+        }
+        int swayed = originX + Fixed.round(Fixed.sineAt(age * SWAY_RATE) * SWAY_REACH);
+        x = Math.max(-left, Math.min(arenaWidth - right, swayed));
+    }
+    
+    /**
+     * Find the live part under a point.
+     *
+     * @param px X of the point
+     * @param py Y of the point
+     * @return The part index, or NO_PART
+     */
+    public int findPart(int px, int py) {
+        int lx = px - x;
+        int ly = py - y;
+        if (lx < left || lx > right || ly < top || ly > bottom) {
+            return NO_PART;
+        }
+        // Rows are evenly spaced, so only one row's box can hold the point
+        int r = ly / PITCH;
+        if (r >= rowCount || ly - r * PITCH > PART_SIZE || lx < rowLeft[r] || lx > rowRight[r]) {
+            return NO_PART;
+        }
+        int partY = ly - r * PITCH;
+        for (int i = rowStart[r]; i < rowStart[r + 1]; i++) {
+            if (partHealth[i] > 0 && lx >= partX[i] && lx <= partX[i] + PART_SIZE) {
+                // Parts in a row never overlap, so the only box holding the point decides it
+                return ShapeMask.of(partType[i], PART_SIZE).contains(lx - partX[i], partY) ? i : NO_PART;
+            }
+        }
+        return NO_PART;
+    }
+    
+    /**
+     * Find a live part that overlaps a shape, such as the player.
+     *
+     * @param mask The shape's mask
+     * @param shapeX X of the shape
+     * @param shapeY Y of the shape
+     * @return The part index, or NO_PART
+     */
+    public int findPartOverlapping(ShapeMask mask, int shapeX, int shapeY) {
+        int l = shapeX - x;
+        int t = shapeY - y;
+        int rt = l + mask.size;
+        int b = t + mask.size;
+        if (rt <= left || l >= right || b <= top || t >= bottom) {
+            return NO_PART;
+        }
+        for (int r = 0; r < rowCount; r++) {
+            int rowTop = r * PITCH;
+            if (b <= rowTop || t >= rowTop + PART_SIZE || rt <= rowLeft[r] || l >= rowRight[r]) {
+                continue;
+            }
+            for (int i = rowStart[r]; i < rowStart[r + 1]; i++) {
+                if (partHealth[i] > 0 && rt > partX[i] && l < partX[i] + PART_SIZE
+                        && ShapeMask.overlaps(mask, l, t, ShapeMask.of(partType[i], PART_SIZE), partX[i], rowTop)) {
+                    return i;
+                }
+            }
+        }
+        return NO_PART;
+    }
+    
+    /**
+     * Damage a part, refitting the bounds if it is destroyed.
+     *
+     * @param part The part index
+     * @param amount The damage
+     * @return true if this destroyed the part
+     */
+    public boolean damagePart(int part, int amount) {
+        if (partHealth[part] <= 0) {
+            return false;
+        }
+        partHealth[part] -= amount;
+        if (partHealth[part] > 0) {
+            return false;
+        }
+        liveParts--;
+        refitRow(rowOf(part));
+        refit();
+        return true;
+    }
+    
+    /**
+     * Set a part's health, as when restoring a save, and refit the bounds.
+     *
+     * @param part The part index
+     * @param health The health; zero or less for a destroyed part
+     */
+    public void setPartHealth(int part, int health) {
+        if ((partHealth[part] > 0) != (health > 0)) {
+            liveParts += health > 0 ? 1 : -1;
+        }
+        partHealth[part] = health;
+        refitRow(rowOf(part));
+        refit();
+    }
+    
+    private int rowOf(int part) {
+        int r = 0;
+        while (rowStart[r + 1] <= part) {
+            r++;
+        }
+        return r;
+    }
+    
+    /**
+     * Recompute a row's box from its live parts.
+     */
+    private void refitRow(int r) {
+        rowLeft[r] = Integer.MAX_VALUE;
+        rowRight[r] = Integer.MIN_VALUE;
+        for (int i = rowStart[r]; i < rowStart[r + 1]; i++) {
+            if (partHealth[i] > 0) {
+                rowLeft[r] = Math.min(rowLeft[r], partX[i]);
+                rowRight[r] = Math.max(rowRight[r], partX[i] + PART_SIZE);
+            }
+        }
+    }
+    
+    /**
+     * Recompute the whole boss box from the row boxes.
+     */
+    private void refit() {
+        left = Integer.MAX_VALUE;
+        right = Integer.MIN_VALUE;
+        top = Integer.MAX_VALUE;
+        bottom = Integer.MIN_VALUE;
+        for (int r = 0; r < rowCount; r++) {
+            if (rowLeft[r] > rowRight[r]) {
+                continue;
+            }
+            left = Math.min(left, rowLeft[r]);
+            right = Math.max(right, rowRight[r]);
+            top = Math.min(top, r * PITCH);
+            bottom = Math.max(bottom, r * PITCH + PART_SIZE);
+        }
+    }
+    
+    // Getters
+    public boolean isDefeated() {
+        return liveParts == 0;
+    }
+    
+    public int getLiveParts() {
+        return liveParts;
+    }
+}
@@ -0,0 +1,135 @@
+import java.util.Random;
+
+/**
+ * Compares what a projectile check costs against a single enemy and against
+ * bosses of every layout, through the boss bounding hierarchy and through a
+ * flat test of every part, and checks both find the same parts.
+ *
+ * Projectiles are spread over the arena, as in play, or packed inside the
+ * boss box, the worst case for the hierarchy. Each boss is tested whole and
+ * again with a third of its parts shot off.
+ *
+ * Run with: java BossCollisionBenchmark [projectiles]
+ */
+public class BossCollisionBenchmark {
+    private static final int ARENA = 800;
+    private static final int REPEATS = 400;
+    private static final int[] PART_HEALTH = {60, 80, 100};
+    
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 4000;
+        Random random = new Random(42);
+        
+        System.out.println(count + " projectiles per pass, ns per projectile");
+        System.out.printf("%-24s  %16s  %4s  |  %16s  %4s%n", "target", "spread hierarchy", "flat",
+            "packed hierarchy", "flat");
+        int[] px = new int[count];
+        int[] py = new int[count];
+        int[] qx = new int[count];
+        int[] qy = new int[count];
+        for (int i = 0; i < count; i++) {
+            px[i] = random.nextInt(ARENA);
+            py[i] = random.nextInt(ARENA);
+        }
+        
+        // A single enemy box, the cost the bosses are measured against
+        int enemyX = ARENA / 2;
+        int enemyY = 100;
+        int size = WorldState.SHAPE_SIZE;
+        long sink = 0;
+        double[] enemyNanos = new double[2];
+        for (int pass = 0; pass < 3; pass++) {
+            long start = System.nanoTime();
+            for (int r = 0; r < REPEATS; r++) {
+                for (int i = 0; i < count; i++) {
+                    if (px[i] >= enemyX && px[i] <= enemyX + size && py[i] >= enemyY && py[i] <= enemyY + size) {
+                        sink++;
+                    }
+                }
+            }
+            enemyNanos[0] = (double) (System.nanoTime() - start) / REPEATS / count;
+        }
+        System.out.printf("%-24s  %16.2f  %4s  |  %16s  %4s%n", "single enemy", enemyNanos[0], "", "", "");
+        
+        boolean matched = true;
+        for (int layout = 0; layout < Boss.layoutCount(); layout++) {
+            for (int damaged = 0; damaged < 2; damaged++) {
+                Boss boss = new Boss(1, layout, (ARENA - Boss.layoutWidth(layout)) / 2, 100, PART_HEALTH);
+                if (damaged == 1) {
+                    for (int i = 0; i < boss.partCount; i += 3) {
+                        boss.damagePart(i, Integer.MAX_VALUE / 2);
+                    }
+                }
+                for (int i = 0; i < count; i++) {
+                    qx[i] = boss.x + random.nextInt(Boss.layoutWidth(layout));
+                    qy[i] = boss.y + random.nextInt(Boss.layoutHeight(layout));
+                }
+                matched &= agree(boss, px, py) && agree(boss, qx, qy);
+                String label = "boss " + layout + ", " + boss.getLiveParts() + "/" + boss.partCount + " parts";
+                System.out.printf("%-24s  %16.2f  %4.1f  |  %16.2f  %4.1f%n", label,
+                    timeHierarchy(boss, px, py), timeFlat(boss, px, py),
+                    timeHierarchy(boss, qx, qy), timeFlat(boss, qx, qy));
+            }
+        }
+        System.out.println(matched ? "Hierarchy and flat tests found the same parts" : "MISMATCH between tests");
+        if (sink < 0) {
+            System.out.println(sink);
+        }
+    }
+    
+    private static double timeHierarchy(Boss boss, int[] xs, int[] ys) {
+        long sink = 0;
+        long nanos = 0;
+        for (int pass = 0; pass < 3; pass++) {
+            long start = System.nanoTime();
+            for (int r = 0; r < REPEATS; r++) {
+                for (int i = 0; i < xs.length; i++) {
+                    sink += boss.findPart(xs[i], ys[i]);
+                }
+            }
+            nanos = System.nanoTime() - start;
+        }
+        return sink == Long.MIN_VALUE ? 0 : (double) nanos / REPEATS / xs.length;
+    }
+    
+    private static double timeFlat(Boss boss, int[] xs, int[] ys) {
+        long sink = 0;
+        long nanos = 0;
+        for (int pass = 0; pass < 3; pass++) {
+            long start = System.nanoTime();
+            for (int r = 0; r < REPEATS; r++) {
+                for (int i = 0; i < xs.length; i++) {
+                    sink += findPartFlat(boss, xs[i], ys[i]);
+                }
+            }
+            nanos = System.nanoTime() - start;
+        }
+        return sink == Long.MIN_VALUE ? 0 : (double) nanos / REPEATS / xs.length;
+    }
+    
+    /**
+     * Test every live part in turn, with no bounds to skip them.
+     */
+    private static int findPartFlat(Boss boss, int px, int py) {
+        int bx = boss.x;
+        int by = boss.y;
+        for (int i = 0; i < boss.partCount; i++) {
+            int x = bx + boss.partX[i];
+            int y = by + boss.partY[i];
+            if (boss.partHealth[i] > 0 && px >= x && px <= x + Boss.PART_SIZE && py >= y && py <= y + Boss.PART_SIZE
+                    && ShapeMask.of(boss.partType[i], Boss.PART_SIZE).contains(px - x, py - y)) {
+                return i;
+            }
+        }
+        return Boss.NO_PART;
+    }
+    
+    private static boolean agree(Boss boss, int[] xs, int[] ys) {
+        for (int i = 0; i < xs.length; i++) {
+            if (boss.findPart(xs[i], ys[i]) != findPartFlat(boss, xs[i], ys[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,219 @@
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A shot pattern with its direction vectors worked out in advance.
+ *
+ * Patterns are described by one-line definitions such as
+ * "fan count=7 arc=24 speed=20" and turned into offset and velocity tables
+ * once. Firing a volley then just copies those tables into a
+ * {@link ProjectileStore}, so even dense patterns cost no allocation.
+ *
+ * Kinds:
+ * spread - parallel shots side by side (count, spacing, speed)
+ * fan - shots fanned out over an arc (count, arc in degrees, spacing, speed)
+ * burst - a full ring of shots (count, speed)
+ * spiral - a few arms that rotate a little every volley (count, step in degrees, speed)
+ * A negative speed fires downwards, as enemies do.
+ */
+public class BulletPattern {
+    // Built-in patterns: name, kind, then settings
+    private static final String[] DEFINITIONS = {
+        "single  spread count=1 speed=20",
+        "triple  spread count=3 spacing=8 speed=20",
+        "quintet spread count=5 spacing=5 speed=20",
+        "fan     fan count=7 arc=12 spacing=4 speed=20",
+        "wide    fan count=9 arc=40 speed=18",
+        "ring    burst count=16 speed=10",
+        "spiral  spiral count=4 step=15 speed=12",
+        "drop    spread count=1 speed=-6",
+        "claw    fan count=3 arc=50 speed=-5",
+        "halo    burst count=8 speed=4"
+    };
+    
+    // Pattern fired on each level; the last one carries on for higher levels
+    private static final String[] LEVEL_PATTERNS = {"single", "triple", "quintet", "quintet", "fan"};
+    
+    // Pattern fired by each enemy shape, by circle, triangle and cube, once they have their own
+    private static final String[] ENEMY_PATTERNS = {"drop", "claw", "halo"};
+    private static final int ENEMY_PATTERN_LEVEL = 3;
+    
+    private static final Map<String, BulletPattern> PATTERNS = new HashMap<>();
+    static {
+        for (String definition : DEFINITIONS) {
+            String[] parts = definition.trim().split("\\s+", 2);
+            PATTERNS.put(parts[0], parse(parts[0], parts[1]));
+        }
+    }
+    
+    private final String name;
+    private final int shots;
+    private final int rotations;
+    
+    // Per rotation, per shot: horizontal spawn offset and velocity
+    private final int[] offsetX;
+    private final int[] velocityX;
+    private final int[] velocityY;
+    
+    private BulletPattern(String name, int shots, int rotations) {
+        this.name = name;
+        this.shots = shots;
+        this.rotations = rotations;
+        this.offsetX = new int[shots * rotations];
+        this.velocityX = new int[shots * rotations];
+        this.velocityY = new int[shots * rotations];
+    }
+    
+    /**
+     * Build a pattern from a definition.
+     * 
+     * @param name The pattern name
+     * @param definition The kind followed by key=value settings, e.g. "fan count=7 arc=24 speed=20"
+     * @return The pattern
+     * @throws IllegalArgumentException If the definition cannot be understood
+     */
+    public static BulletPattern parse(String name, String definition) {
+        String[] parts = definition.trim().split("\\s+");
+        Map<String, Integer> settings = new HashMap<>();
+        for (int i = 1; i < parts.length; i++) {
+            String[] pair = parts[i].split("=", 2);
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("Bad setting '" + parts[i] + "' in pattern " + name);
+            }
+            settings.put(pair[0], Integer.parseInt(pair[1]));
+        }
+        int count = Math.max(1, settings.getOrDefault("count", 1));
+        int speed = settings.getOrDefault("speed", 20);
+        
+        BulletPattern pattern;
+        switch (parts[0]) {
+            case "spread": {
+                int spacing = settings.getOrDefault("spacing", 8);
+                pattern = new BulletPattern(name, count, 1);
+                for (int i = 0; i < count; i++) {
+                    pattern.offsetX[i] = Math.round((i - (count - 1) / 2.0f) * spacing);
+                    pattern.velocityY[i] = -speed;
+                }
+                break;
+            }
+            case "fan": {
+                double arc = Math.toRadians(settings.getOrDefault("arc", 30));
+                int spacing = settings.getOrDefault("spacing", 0);
+                pattern = new BulletPattern(name, count, 1);
+                for (int i = 0; i < count; i++) {
+                    double angle = count == 1 ? 0 : -arc / 2 + arc * i / (count - 1);
+                    pattern.offsetX[i] = Math.round((i - (count - 1) / 2.0f) * spacing);
+                    pattern.setDirection(i, angle, speed);
+                }
+                break;
+            }
+            case "burst": {
+                pattern = new BulletPattern(name, count, 1);
+                for (int i = 0; i < count; i++) {
+                    pattern.setDirection(i, 2 * Math.PI * i / count, speed);
+                }
+                break;
+            }
+            case "spiral": {
+                int step = Math.max(1, settings.getOrDefault("step", 15));
+                int rotations = 360 / step;
+                pattern = new BulletPattern(name, count, rotations);
+                for (int r = 0; r < rotations; r++) {
+                    for (int i = 0; i < count; i++) {
+                        double angle = Math.toRadians(r * step) + 2 * Math.PI * i / count;
+                        pattern.setDirection(r * count + i, angle, speed);
+                    }
+                }
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown pattern kind '" + parts[0] + "' in pattern " + name);
+        }
+        return pattern;
+    }
+    
+    /**
+     * Set the velocity of one shot from an angle measured clockwise from straight up.
+     */
+    private void setDirection(int slot, double angle, int speed) {
+        velocityX[slot] = (int) Math.round(Math.sin(angle) * speed);
+        velocityY[slot] = (int) -Math.round(Math.cos(angle) * speed);
+    }
+    
+    /**
+     * Look up a built-in pattern.
+     * 
+     * @param name The pattern name
+     * @return The pattern
+     * @throws IllegalArgumentException If there is no such pattern
+     */
+    public static BulletPattern get(String name) {
+        BulletPattern pattern = PATTERNS.get(name);
+        if (pattern == null) {
+            throw new IllegalArgumentException("Unknown bullet pattern " + name);
+        }
+        return pattern;
+    }
+    
+    /**
+     * Get the pattern the player fires on a level.
+     * 
+     * @param levelNumber The level number, starting at 1
+     * @return The pattern
+     */
+    public static BulletPattern forLevel(int levelNumber) {
+        int index = Math.max(0, Math.min(levelNumber, LEVEL_PATTERNS.length) - 1);
+        return get(LEVEL_PATTERNS[index]);
+    }
+    
+    /**
+     * Get the pattern an enemy fires on a level. Every shape drops single shots
+     * at first; from ENEMY_PATTERN_LEVEL each fires its own pattern.
+     * 
+     * @param shapeType The enemy's shape type code
+     * @param levelNumber The level number, starting at 1
+     * @return The pattern
+     */
+    public static BulletPattern forEnemy(int shapeType, int levelNumber) {
+        return get(levelNumber < ENEMY_PATTERN_LEVEL ? ENEMY_PATTERNS[0] : ENEMY_PATTERNS[shapeType]);
+    }
+    
+    /**
+     * Fire one volley into a projectile store.
+     * 
+     * @param store The store to write into
+     * @param x X position the volley is centered on
+     * @param y Y position the volley starts from
+     * @param type Shape type code of the shooter
+     * @param damage Damage of each shot
+     * @param firstId Entity id of the first shot; the rest follow on
+     * @param volley How many volleys came before, used to turn rotating patterns
+     * @return The number of shots fired
+     */
+    public int emit(ProjectileStore store, int x, int y, int type, int damage, int firstId, int volley) {
+        store.ensureCapacity(shots);
+        int base = Math.floorMod(volley, rotations) * shots;
+        int start = store.size;
+        for (int i = 0; i < shots; i++) {
+            int slot = base + i;
+            int row = start + i;
+            store.id[row] = firstId + i;
+            store.type[row] = type;
+            store.x[row] = x + offsetX[slot];
+            store.y[row] = y;
+            store.dx[row] = velocityX[slot];
+            store.dy[row] = velocityY[slot];
+            store.damage[row] = damage;
+        }
+        store.size = start + shots;
+        return shots;
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public int getShots() {
+        return shots;
+    }
+}
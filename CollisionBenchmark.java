@@ -0,0 +1,88 @@
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Times the collision narrowphase sequentially and on the fork-join pool
+ * across projectile counts, checks both give the same hits, and reports
+ * where the parallel path starts to win.
+ *
+ * Run with: java CollisionBenchmark [arenaSize] [threads]
+ */
+public class CollisionBenchmark {
+    private static final int ENEMY_SIZE = WorldState.SHAPE_SIZE;
+    private static final int REPEATS = 200;
+    
+    public static void main(String[] args) {
+        int arenaSize = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int[] projectileCounts = {250, 500, 1000, 2000, 4000, 8000, 16000, 32000, 64000};
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        
+        System.out.println("arena " + arenaSize + "x" + arenaSize + ", " + pool.getParallelism() + " pool threads");
+        System.out.println("projectiles  enemies  sequential us  parallel us  speedup");
+        int crossover = -1;
+        for (int count : projectileCounts) {
+            Random random = new Random(count);
+            ProjectileStore projectiles = new ProjectileStore();
+            for (int i = 0; i < count; i++) {
+                projectiles.add(i, random.nextInt(3), random.nextInt(arenaSize), random.nextInt(arenaSize), 0, -20, 5);
+            }
+            EnemyStore[] groups = new EnemyStore[EnemyBehaviour.COUNT];
+            for (int b = 0; b < groups.length; b++) {
+                groups[b] = new EnemyStore(b);
+            }
+            int enemies = count / 2;
+            for (int i = 0; i < enemies; i++) {
+                int x = Fixed.of(random.nextInt(arenaSize - ENEMY_SIZE));
+                groups[i % groups.length].add(i, i % 3, x, Fixed.of(random.nextInt(arenaSize - ENEMY_SIZE)), Fixed.of(2),
+                                              30, 30, 5, 1, x, 0);
+            }
+            CollisionGrid grid = new CollisionGrid(arenaSize, arenaSize, 64);
+            grid.build(groups, ENEMY_SIZE);
+            
+            HitFinder sequential = new HitFinder(Integer.MAX_VALUE, pool);
+            HitFinder parallel = new HitFinder(0, pool);
+            
+            // Warm up both paths, then make sure they agree
+            for (int i = 0; i < REPEATS; i++) {
+                sequential.findHits(projectiles, groups, grid, ENEMY_SIZE);
+                parallel.findHits(projectiles, groups, grid, ENEMY_SIZE);
+            }
+            int[] expected = Arrays.copyOf(sequential.findHits(projectiles, groups, grid, ENEMY_SIZE), count);
+            int[] actual = Arrays.copyOf(parallel.findHits(projectiles, groups, grid, ENEMY_SIZE), count);
+            if (!Arrays.equals(expected, actual)) {
+                throw new IllegalStateException("Parallel hits differ from sequential hits at " + count);
+            }
+            
+            double sequentialMicros = time(sequential, projectiles, groups, grid);
+            double parallelMicros = time(parallel, projectiles, groups, grid);
+            double speedup = sequentialMicros / parallelMicros;
+            // The crossover is the first count from which parallel keeps winning by a clear margin
+            if (speedup > 1.1) {
+                if (crossover < 0) {
+                    crossover = count;
+                }
+            } else {
+                crossover = -1;
+            }
+            System.out.printf("%11d  %7d  %13.1f  %11.1f  %7.2f%n",
+                count, enemies, sequentialMicros, parallelMicros, speedup);
+        }
+        if (threads < 2) {
+            System.out.println("Only one thread, so both columns ran the sequential path");
+        }
+        pool.shutdown();
+        System.out.println(crossover < 0
+            ? "Parallel never won; keep the threshold above the largest count"
+            : "Parallel wins from about " + crossover + " projectiles (-Dcollision.parallelThreshold=" + crossover + ")");
+    }
+    
+    private static double time(HitFinder finder, ProjectileStore projectiles, EnemyStore[] groups, CollisionGrid grid) {
+        long start = System.nanoTime();
+        for (int i = 0; i < REPEATS; i++) {
+            finder.findHits(projectiles, groups, grid, ENEMY_SIZE);
+        }
+        return (System.nanoTime() - start) / 1000.0 / REPEATS;
+    }
+}
@@ -0,0 +1,155 @@
+/**
+ * Uniform grid broadphase for projectile-enemy collisions.
+ *
+ * Enemies are bucketed into every cell their box touches, so a projectile
+ * only needs to test the enemies in its own cell. Enemies are referred to by
+ * a single int, the group index in the top byte and the row in the rest, and
+ * each cell lists them in ascending order. The first match in a cell is
+ * therefore the same enemy a full scan over all groups would find. A point
+ * inside an enemy's box only hits if it is also inside the enemy's
+ * {@link ShapeMask}, so shots through the corners of a circle or triangle miss.
+ */
+public class CollisionGrid {
+    public static final int NO_HIT = -1;
+    private static final int INDEX_BITS = 24;
+    private static final int INDEX_MASK = (1 << INDEX_BITS) - 1;
+    
+    private final int cellSize;
+    private final int columns;
+    private final int rows;
+    private final int[] cellStart;
+    private final int[] cellFill;
+    private int[] items = new int[1024];
+    
+    /**
+     * Constructor for the collision grid.
+     * 
+     * @param width Width of the arena
+     * @param height Height of the arena
+     * @param cellSize Width and height of one cell
+     */
+    public CollisionGrid(int width, int height, int cellSize) {
+        this.cellSize = cellSize;
+        this.columns = Math.max(1, (width + cellSize - 1) / cellSize);
+        this.rows = Math.max(1, (height + cellSize - 1) / cellSize);
+        this.cellStart = new int[columns * rows + 1];
+        this.cellFill = new int[columns * rows];
+    }
+    
+    /**
+     * Bucket every enemy into the cells its box touches.
+     * 
+     * @param groups The enemy groups, in the order hits should prefer them
+     * @param enemySize Width and height of an enemy
+     */
+    public void build(EnemyStore[] groups, int enemySize) {
+        java.util.Arrays.fill(cellFill, 0);
+        
+        // Count entries per cell, then turn the counts into start offsets
+        int total = 0;
+        for (EnemyStore group : groups) {
+            for (int i = 0; i < group.size; i++) {
+                int x = Fixed.toInt(group.x[i]);
+                int y = Fixed.toInt(group.y[i]);
+                int column0 = column(x);
+                int column1 = column(x + enemySize);
+                int row0 = row(y);
+                int row1 = row(y + enemySize);
+                for (int r = row0; r <= row1; r++) {
+                    for (int c = column0; c <= column1; c++) {
+                        cellFill[r * columns + c]++;
+                    }
+                }
+                total += (row1 - row0 + 1) * (column1 - column0 + 1);
+            }
+        }
+        if (items.length < total) {
+            items = new int[Math.max(total, items.length * 2)];
+        }
+        int offset = 0;
+        for (int cell = 0; cell < cellFill.length; cell++) {
+            cellStart[cell] = offset;
+            offset += cellFill[cell];
+            cellFill[cell] = cellStart[cell];
+        }
+        cellStart[cellFill.length] = offset;
+        
+        // Fill in ascending reference order
+        for (int g = 0; g < groups.length; g++) {
+            EnemyStore group = groups[g];
+            for (int i = 0; i < group.size; i++) {
+                int x = Fixed.toInt(group.x[i]);
+                int y = Fixed.toInt(group.y[i]);
+                int column0 = column(x);
+                int column1 = column(x + enemySize);
+                int row0 = row(y);
+                int row1 = row(y + enemySize);
+                int ref = (g << INDEX_BITS) | i;
+                for (int r = row0; r <= row1; r++) {
+                    for (int c = column0; c <= column1; c++) {
+                        items[cellFill[r * columns + c]++] = ref;
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * Find the first live enemy whose shape contains a point. Safe to call from several
+     * threads at once as long as nothing changes the grid or the enemies.
+     * 
+     * @param groups The enemy groups the grid was built from
+     * @param px X of the point
+     * @param py Y of the point
+     * @param enemySize Width and height of an enemy
+     * @param after Only consider references greater than this; NO_HIT to consider all
+     * @return The enemy reference, or NO_HIT
+     */
+    public int findHit(EnemyStore[] groups, int px, int py, int enemySize, int after) {
+        int cell = row(py) * columns + column(px);
+        for (int k = cellStart[cell], end = cellStart[cell + 1]; k < end; k++) {
+            int ref = items[k];
+            if (ref <= after) {
+                continue;
+            }
+            EnemyStore group = groups[ref >>> INDEX_BITS];
+            int i = ref & INDEX_MASK;
+            int x = Fixed.toInt(group.x[i]);
+            int y = Fixed.toInt(group.y[i]);
+            if (px >= x && px <= x + enemySize && py >= y && py <= y + enemySize && group.health[i] > 0
+                    && ShapeMask.of(group.type[i], enemySize).contains(px - x, py - y)) {
+                return ref;
+            }
+        }
+        return NO_HIT;
+    }
+    
+    /**
+     * Get the group index of an enemy reference.
+     */
+    public static int groupOf(int ref) {
+        return ref >>> INDEX_BITS;
+    }
+    
+    /**
+     * Get the row of an enemy reference within its group.
+     */
+    public static int indexOf(int ref) {
+        return ref & INDEX_MASK;
+    }
+    
+    /**
+     * Get the grid row a y position falls in, clamped to the grid.
+     */
+    public int row(int y) {
+        return Math.max(0, Math.min(rows - 1, y / cellSize));
+    }
+    
+    private int column(int x) {
+        return Math.max(0, Math.min(columns - 1, x / cellSize));
+    }
+    
+    public int getRows() {
+        return rows;
+    }
+}
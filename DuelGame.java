@@ -0,0 +1,281 @@
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.*;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * DuelGame - the two-player duel played over the network with rollback.
+ *
+ * Each player runs their own copy. Local input shows up on the very next
+ * tick; the opponent's input is predicted and corrected by
+ * {@link RollbackSession} when it arrives. Both copies must use the same seed.
+ *
+ * Run one copy per player, for example on one machine:
+ * <pre>
+ *   java -Dduel.player=0 DuelGame
+ *   java -Dduel.player=1 DuelGame
+ * </pre>
+ * Player n listens on port duel.port (7777 + n) and sends to duel.peer
+ * (127.0.0.1, port 7777 + the other player). Add -Dnet.latency, -Dnet.jitter
+ * (milliseconds) and -Dnet.loss (percent) to try a bad connection locally.
+ * Add -Dduel.record=file to save the local input, one byte per tick, for
+ * {@link DuelLoadGenerator} to replay.
+ */
+public class DuelGame extends JPanel implements KeyListener {
+    private final int TICK_MS = 16;
+    private final int ARENA_WIDTH = 500;
+    private final int ARENA_HEIGHT = 600;
+    private final int STATS_INTERVAL_TICKS = 60;
+    
+    // Networking and rollback, owned by the simulation thread
+    private final RollbackSession session;
+    private final DuelLink link;
+    private final ByteBuffer packet = ByteBuffer.allocate(RollbackSession.MAX_PACKET_BYTES);
+    private final SimulationLoop simulationLoop;
+    private int ticksUntilStats = 0;
+    
+    // Handed to the EDT
+    private final TripleBuffer<DuelSimulation> frames;
+    private volatile String netText = "";
+    private volatile boolean waitingForPeer = true;
+    
+    // Keys held down right now, as DuelSimulation input bits
+    private final AtomicInteger heldInput = new AtomicInteger();
+    private OutputStream inputRecording;
+    
+    private final GameUI gameUI = new GameUI();
+    
+    /**
+     * Constructor for the duel game.
+     *
+     * @param player The player number controlled here, 0 or 1
+     * @param localPort The UDP port to listen on
+     * @param peer The other player's address
+     * @param seed The match seed, the same on both sides
+     * @param maxRollback The most ticks a correction may replay
+     * @param latencyMillis Injected outgoing latency
+     * @param jitterMillis Injected outgoing jitter
+     * @param lossPercent Injected outgoing packet loss
+     * @throws IOException If the UDP socket cannot be opened
+     */
+    public DuelGame(int player, int localPort, InetSocketAddress peer, long seed, int maxRollback,
+                    int latencyMillis, int jitterMillis, int lossPercent) throws IOException {
+        DuelSimulation initial = new DuelSimulation(ARENA_WIDTH, ARENA_HEIGHT, seed);
+        session = new RollbackSession(initial, player, maxRollback);
+        frames = new TripleBuffer<>(() -> new DuelSimulation(ARENA_WIDTH, ARENA_HEIGHT, seed));
+        link = new DuelLink(localPort, latencyMillis, jitterMillis, lossPercent, System.nanoTime());
+        link.setRemote(peer);
+        simulationLoop = new SimulationLoop(TICK_MS, this::tick);
+        
+        setFocusable(true);
+        addKeyListener(this);
+        setBackground(GameColors.BACKGROUND);
+    }
+    
+    /**
+     * Start the simulation thread.
+     */
+    public void start() {
+        simulationLoop.start();
+    }
+    
+    /**
+     * Save the local input of every tick from now on. Call before start.
+     *
+     * @param file The file to write, one byte of input bits per tick
+     * @throws IOException If the file cannot be created
+     */
+    public void recordInput(String file) throws IOException {
+        inputRecording = new BufferedOutputStream(Files.newOutputStream(Paths.get(file)));
+    }
+    
+    /**
+     * Stop the simulation thread and close the socket.
+     */
+    public void shutdown() {
+        simulationLoop.stop();
+        try {
+            link.close();
+        } catch (IOException e) {
+            System.err.println("Could not close duel link: " + e.getMessage());
+        }
+        if (inputRecording != null) {
+            try {
+                inputRecording.close();
+            } catch (IOException e) {
+                System.err.println("Could not save input recording: " + e.getMessage());
+            }
+        }
+        System.out.println("Duel finished: " + session.statsText());
+    }
+    
+    /**
+     * Exchange inputs with the peer and simulate one tick. Called on the simulation thread.
+     */
+    private void tick() {
+        try {
+            while (link.receive(packet)) {
+                session.readPacket(packet);
+            }
+            int input = heldInput.get();
+            session.advance(input);
+            recordTick(input);
+            
+            packet.clear();
+            session.writePacket(packet);
+            packet.flip();
+            link.send(packet);
+            link.flush();
+        } catch (IOException e) {
+            System.err.println("Could not reach the other player: " + e.getMessage());
+        }
+        
+        if (--ticksUntilStats <= 0) {
+            ticksUntilStats = STATS_INTERVAL_TICKS;
+            netText = "AHEAD " + session.getFrameAdvantage() + "  ROLLBACKS " + session.getRollbacks()
+                + "  MAX " + session.getMaxReplayed() + "  STALLS " + session.getStalls()
+                + (session.getDesyncs() > 0 ? "  DESYNC" : "");
+        }
+        waitingForPeer = session.getLastRemoteFrame() < 0;
+        
+        frames.back().copyFrom(session.getState());
+        frames.publish();
+        repaint();
+    }
+    
+    /**
+     * Append one tick's input to the recording, if there is one.
+     */
+    private void recordTick(int input) {
+        if (inputRecording == null) {
+            return;
+        }
+        try {
+            inputRecording.write(input);
+        } catch (IOException e) {
+            System.err.println("Could not record input: " + e.getMessage());
+            inputRecording = null;
+        }
+    }
+    
+    @Override
+    protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        DuelSimulation duel = frames.acquire();
+        int width = getWidth();
+        int height = getHeight();
+        
+        gameUI.drawBackground(g, width, height);
+        g.setColor(GameColors.GRID.brighter());
+        g.drawLine(0, duel.height / 2, duel.width, duel.height / 2);
+        
+        if (duel.powerUpActive) {
+            gameUI.drawPowerUp(g, WorldState.POWERUP_HEALTH, duel.powerUpX, duel.getPowerUpY());
+        }
+        for (int i = 0; i < duel.projectiles.size; i++) {
+            gameUI.drawProjectile(g, duel.projectiles.type[i], duel.projectiles.x[i], duel.projectiles.y[i]);
+        }
+        for (int p = 0; p < DuelSimulation.PLAYER_COUNT; p++) {
+            gameUI.drawPlayer(g, duel.shape[p], duel.x[p], duel.y[p]);
+        }
+        
+        // Player 1's bar along the top, player 0's along the bottom
+        gameUI.drawHealthBar(g, Math.max(0, duel.health[1]), DuelSimulation.MAX_HEALTH, 10, 10, 200);
+        gameUI.drawHealthBar(g, Math.max(0, duel.health[0]), DuelSimulation.MAX_HEALTH, 10, height - 25, 200);
+        g.setFont(gameUI.getSmallPixelFont());
+        g.setColor(GameColors.ACCENT_YELLOW);
+        int you = session.getLocalPlayer();
+        g.drawString("YOU", 220, you == 0 ? height - 13 : 22);
+        g.setColor(GameColors.TEXT);
+        g.drawString(netText, 10, height / 2 - 6);
+        
+        if (waitingForPeer || duel.isOver()) {
+            g.setColor(GameColors.OVERLAY);
+            g.fillRect(0, 0, width, height);
+            String message = waitingForPeer ? "WAITING FOR OPPONENT"
+                : duel.winner == DuelSimulation.DRAW ? "DRAW"
+                : duel.winner == you ? "YOU WIN" : "YOU LOSE";
+            g.setFont(gameUI.getPixelFont());
+            g.setColor(duel.isOver() && duel.winner == you ? GameColors.SUCCESS_GREEN : GameColors.TEXT);
+            FontMetrics fm = g.getFontMetrics();
+            g.drawString(message, (width - fm.stringWidth(message)) / 2, height / 2 + 40);
+        }
+    }
+    
+    /**
+     * Map a key to its input bit.
+     *
+     * @param key The key code
+     * @return The DuelSimulation input bit, or 0 for keys the duel does not use
+     */
+    private int inputBit(int key) {
+        switch (key) {
+            case KeyEvent.VK_LEFT: return DuelSimulation.INPUT_LEFT;
+            case KeyEvent.VK_RIGHT: return DuelSimulation.INPUT_RIGHT;
+            case KeyEvent.VK_UP: return DuelSimulation.INPUT_UP;
+            case KeyEvent.VK_DOWN: return DuelSimulation.INPUT_DOWN;
+            case KeyEvent.VK_SPACE: return DuelSimulation.INPUT_FIRE;
+            case KeyEvent.VK_1: return DuelSimulation.INPUT_CIRCLE;
+            case KeyEvent.VK_2: return DuelSimulation.INPUT_TRIANGLE;
+            case KeyEvent.VK_3: return DuelSimulation.INPUT_CUBE;
+            default: return 0;
+        }
+    }
+    
+    @Override
+    public void keyPressed(KeyEvent e) {
+        int bit = inputBit(e.getKeyCode());
+        heldInput.getAndUpdate(held -> held | bit);
+    }
+    
+    @Override
+    public void keyReleased(KeyEvent e) {
+        int bit = inputBit(e.getKeyCode());
+        heldInput.getAndUpdate(held -> held & ~bit);
+    }
+    
+    @Override
+    public void keyTyped(KeyEvent e) {}
+    
+    /**
+     * Main method to start a duel.
+     */
+    public static void main(String[] args) throws IOException {
+        int player = Integer.getInteger("duel.player", 0);
+        int localPort = Integer.getInteger("duel.port", 7777 + player);
+        String peerText = System.getProperty("duel.peer", "127.0.0.1:" + (7777 + 1 - player));
+        int colon = peerText.lastIndexOf(':');
+        InetSocketAddress peer = new InetSocketAddress(peerText.substring(0, colon),
+                                                       Integer.parseInt(peerText.substring(colon + 1)));
+        
+        DuelGame game = new DuelGame(player, localPort, peer, Long.getLong("duel.seed", 1),
+                                     Integer.getInteger("duel.rollback", 8),
+                                     Integer.getInteger("net.latency", 0),
+                                     Integer.getInteger("net.jitter", 0),
+                                     Integer.getInteger("net.loss", 0));
+        String recordFile = System.getProperty("duel.record");
+        if (recordFile != null) {
+            game.recordInput(recordFile);
+        }
+        
+        JFrame frame = new JFrame("Shape Shifter Duel - Player " + (player + 1));
+        frame.add(game);
+        frame.setSize(game.ARENA_WIDTH, game.ARENA_HEIGHT);
+        frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        frame.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                game.shutdown();
+            }
+        });
+        frame.setVisible(true);
+        game.start();
+    }
+}
@@ -0,0 +1,166 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Random;
+
+/**
+ * A non-blocking UDP link to the other duel peer.
+ *
+ * Outgoing packets can be held back by a fixed latency plus random jitter,
+ * and dropped at random, before they reach the socket. That makes it possible
+ * to try rollback against a bad connection with both peers on one machine.
+ * Delayed packets wait in a fixed pool of slots, so sending never allocates;
+ * jitter may reorder them, just as a real network would.
+ */
+public class DuelLink implements Closeable {
+    private static final int DELAY_SLOTS = 128;
+    
+    private final DatagramChannel channel;
+    private SocketAddress remote;
+    
+    // Injected faults
+    private final long latencyNanos;
+    private final long jitterNanos;
+    private final int lossPercent;
+    private final Random faults;
+    
+    // Packets waiting out their delay
+    private final ByteBuffer[] delayed = new ByteBuffer[DELAY_SLOTS];
+    private final long[] dueTimes = new long[DELAY_SLOTS];
+    private final boolean[] waiting = new boolean[DELAY_SLOTS];
+    
+    // Counters
+    private long sent = 0;
+    private long dropped = 0;
+    private long received = 0;
+    
+    /**
+     * Constructor for the duel link.
+     *
+     * @param localPort The UDP port to listen on, or 0 for any free port
+     * @param latencyMillis Delay added to every outgoing packet
+     * @param jitterMillis Largest random delay added on top of the latency
+     * @param lossPercent Chance in percent of dropping an outgoing packet
+     * @param seed Seed for the injected faults, so runs can be repeated
+     * @throws IOException If the socket cannot be opened
+     */
+    public DuelLink(int localPort, int latencyMillis, int jitterMillis, int lossPercent, long seed) throws IOException {
+        this.latencyNanos = latencyMillis * 1_000_000L;
+        this.jitterNanos = jitterMillis * 1_000_000L;
+        this.lossPercent = lossPercent;
+        this.faults = new Random(seed);
+        channel = DatagramChannel.open();
+        channel.bind(new InetSocketAddress(localPort));
+        channel.configureBlocking(false);
+        for (int i = 0; i < DELAY_SLOTS; i++) {
+            delayed[i] = ByteBuffer.allocate(RollbackSession.MAX_PACKET_BYTES);
+        }
+    }
+    
+    /**
+     * Set where packets are sent. Only packets from this address are received.
+     *
+     * @param remote The peer's address
+     */
+    public void setRemote(SocketAddress remote) {
+        this.remote = remote;
+    }
+    
+    /**
+     * Send a packet, or queue it if latency is being injected.
+     *
+     * @param packet The packet, from its position to its limit
+     * @throws IOException If the socket fails
+     */
+    public void send(ByteBuffer packet) throws IOException {
+        if (faults.nextInt(100) < lossPercent) {
+            dropped++;
+            return;
+        }
+        if (latencyNanos == 0 && jitterNanos == 0) {
+            transmit(packet);
+            return;
+        }
+        long due = System.nanoTime() + latencyNanos + (jitterNanos > 0 ? (long) (faults.nextDouble() * jitterNanos) : 0);
+        for (int i = 0; i < DELAY_SLOTS; i++) {
+            if (!waiting[i]) {
+                delayed[i].clear();
+                delayed[i].put(packet).flip();
+                dueTimes[i] = due;
+                waiting[i] = true;
+                return;
+            }
+        }
+        // Every slot is taken; a real network would have dropped it too
+        dropped++;
+    }
+    
+    /**
+     * Send the delayed packets whose time has come. Call once per tick.
+     *
+     * @throws IOException If the socket fails
+     */
+    public void flush() throws IOException {
+        long now = System.nanoTime();
+        for (int i = 0; i < DELAY_SLOTS; i++) {
+            if (waiting[i] && now - dueTimes[i] >= 0) {
+                waiting[i] = false;
+                transmit(delayed[i]);
+            }
+        }
+    }
+    
+    private void transmit(ByteBuffer packet) throws IOException {
+        if (remote != null) {
+            channel.send(packet, remote);
+            sent++;
+        }
+    }
+    
+    /**
+     * Receive the next packet from the peer without waiting.
+     *
+     * @param into The buffer to receive into; it is cleared first and flipped after
+     * @return false if no packet was waiting
+     * @throws IOException If the socket fails
+     */
+    public boolean receive(ByteBuffer into) throws IOException {
+        while (true) {
+            into.clear();
+            SocketAddress from = channel.receive(into);
+            if (from == null) {
+                return false;
+            }
+            if (from.equals(remote)) {
+                into.flip();
+                received++;
+                return true;
+            }
+        }
+    }
+    
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+    
+    // Getters
+    public int getPort() throws IOException {
+        return ((InetSocketAddress) channel.getLocalAddress()).getPort();
+    }
+    
+    public long getSent() {
+        return sent;
+    }
+    
+    public long getDropped() {
+        return dropped;
+    }
+    
+    public long getReceived() {
+        return received;
+    }
+}
@@ -0,0 +1,427 @@
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Loopback load generator for duels played on a {@link DuelServer}.
+ *
+ * Ramps up synthetic clients in steps, doubling the number of matches each
+ * time. Every client logs in, queues, and once matched sends its input at a
+ * fixed rate, either from recorded input files (one byte of DuelSimulation
+ * input bits per tick, as DuelGame writes with -Dduel.record) or from a bot
+ * that wanders, fires and changes shape. Clients are driven by a few
+ * selector threads rather than a thread each, so the generator does not
+ * crowd out the server it is measuring more than it must.
+ *
+ * After each step has run for a while it reports the server's tick pass time
+ * and overruns, the time from sending an input to receiving the snapshot
+ * that acknowledges it, and the heap per session. The ramp stops once more
+ * than 1% of ticks overrun. Server and clients share the JVM, so heap per
+ * session covers both ends of each connection.
+ *
+ * Run with: java DuelLoadGenerator [startMatches] [maxMatches] [stepSeconds] [inputsPerSecond] [inputFile...]
+ * Options: -Dload.tickThreads (server tick threads, one per core by default),
+ * -Dload.clientThreads (client selector threads), -Dload.snapshotTicks
+ * (ticks between snapshots, 3 by default).
+ */
+public class DuelLoadGenerator {
+    private static final int TICK_MS = 16;
+    private static final double MAX_OVERRUN_PERCENT = 1.0;
+    private static final int MATCH_WAIT_SECONDS = 30;
+    private static final int SENT_SLOTS = 256;
+    
+    // Bot movement: still, the four directions and the diagonals
+    private static final int[] DIRECTIONS = {
+        0,
+        DuelSimulation.INPUT_LEFT, DuelSimulation.INPUT_RIGHT, DuelSimulation.INPUT_UP, DuelSimulation.INPUT_DOWN,
+        DuelSimulation.INPUT_LEFT | DuelSimulation.INPUT_UP, DuelSimulation.INPUT_RIGHT | DuelSimulation.INPUT_UP,
+        DuelSimulation.INPUT_LEFT | DuelSimulation.INPUT_DOWN, DuelSimulation.INPUT_RIGHT | DuelSimulation.INPUT_DOWN
+    };
+    private static final int[] SHAPES = {
+        DuelSimulation.INPUT_CIRCLE, DuelSimulation.INPUT_TRIANGLE, DuelSimulation.INPUT_CUBE
+    };
+    
+    private final long inputIntervalNanos;
+    private final int ticksPerInput;
+    private final byte[][] recordings;
+    private final LatencyHistogram inputMicros = new LatencyHistogram();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong droppedInputs = new AtomicLong();
+    private volatile boolean running = true;
+    
+    /**
+     * Constructor for the load generator.
+     *
+     * @param inputsPerSecond Inputs each client sends per second
+     * @param recordings Recorded inputs to replay, or none to use bots
+     */
+    public DuelLoadGenerator(int inputsPerSecond, byte[][] recordings) {
+        this.inputIntervalNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, inputsPerSecond);
+        this.ticksPerInput = (int) Math.max(1, Math.round(1000.0 / TICK_MS / inputsPerSecond));
+        this.recordings = recordings;
+    }
+    
+    /**
+     * One synthetic player.
+     */
+    private class Client {
+        private final SocketChannel channel;
+        private final ByteBuffer in = ByteBuffer.allocate(512);
+        private final ByteBuffer out = ByteBuffer.allocate(512);
+        private final long[] sentAt = new long[SENT_SLOTS];
+        private SelectionKey key;
+        private boolean open = true;
+        private long nextSend;
+        private long sequence;
+        private long lastAck;
+        
+        // Where the inputs come from: a recording and a position in it, or a bot
+        private final byte[] recording;
+        private int position;
+        private final Random random;
+        private int held;
+        private int holdInputs;
+        
+        Client(int id, SocketChannel channel) {
+            this.channel = channel;
+            this.random = new Random(id);
+            this.recording = recordings.length == 0 ? null : recordings[id % recordings.length];
+            this.position = recording == null ? 0 : random.nextInt(recording.length);
+        }
+        
+        /**
+         * Get the next input: the recording's, or the bot's, which holds a direction for
+         * a while, fires about half the time and shifts shape every couple of seconds.
+         */
+        int nextInput() {
+            if (recording != null) {
+                int bits = recording[position] & 0xFF;
+                position = (position + ticksPerInput) % recording.length;
+                return bits;
+            }
+            if (--holdInputs <= 0) {
+                holdInputs = 5 + random.nextInt(20);
+                held = DIRECTIONS[random.nextInt(DIRECTIONS.length)];
+            }
+            int bits = held;
+            if (random.nextBoolean()) {
+                bits |= DuelSimulation.INPUT_FIRE;
+            }
+            if (random.nextInt(60) == 0) {
+                bits |= SHAPES[random.nextInt(SHAPES.length)];
+            }
+            return bits;
+        }
+    }
+    
+    /**
+     * Drives a share of the clients from one thread: reads and writes whatever their
+     * sockets are ready for, and sends each playing client's input when it is due.
+     */
+    private class ClientDriver implements Runnable {
+        private final Selector selector;
+        private final ConcurrentLinkedQueue<Client> added = new ConcurrentLinkedQueue<>();
+        // Playing clients in the order their next input is due; all send at the same rate, so it stays sorted
+        private final ArrayDeque<Client> sendOrder = new ArrayDeque<>();
+        
+        ClientDriver() throws IOException {
+            selector = Selector.open();
+        }
+        
+        /**
+         * Hand a connected client to this driver. Safe to call from any thread.
+         */
+        void add(Client client) {
+            added.add(client);
+            selector.wakeup();
+        }
+        
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    long now = System.nanoTime();
+                    while (!sendOrder.isEmpty() && sendOrder.peekFirst().nextSend <= now) {
+                        Client client = sendOrder.pollFirst();
+                        if (!client.open) {
+                            continue;
+                        }
+                        sendInput(client, now);
+                        client.nextSend += inputIntervalNanos;
+                        sendOrder.addLast(client);
+                    }
+                    long waitNanos = sendOrder.isEmpty() ? TimeUnit.MILLISECONDS.toNanos(10)
+                                                         : sendOrder.peekFirst().nextSend - System.nanoTime();
+                    if (waitNanos >= 1_000_000) {
+                        selector.select(waitNanos / 1_000_000);
+                    } else {
+                        selector.selectNow();
+                    }
+                    
+                    Client client;
+                    while ((client = added.poll()) != null) {
+                        client.channel.configureBlocking(false);
+                        client.key = client.channel.register(selector, SelectionKey.OP_READ, client);
+                        send(client, "LOGIN load");
+                    }
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        client = (Client) key.attachment();
+                        if (key.isValid() && key.isReadable()) {
+                            read(client);
+                        }
+                        if (client.open && key.isValid() && key.isWritable()) {
+                            flush(client);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Client driver failed: " + e.getMessage());
+            }
+        }
+        
+        private void sendInput(Client client, long now) {
+            long sequence = ++client.sequence;
+            client.sentAt[(int) (sequence % SENT_SLOTS)] = now;
+            if (client.out.remaining() < 32) {
+                // The server is not keeping up with this client; skip the input rather than queue it
+                droppedInputs.incrementAndGet();
+                return;
+            }
+            client.out.put((byte) 'I').put((byte) 'N').put((byte) 'P').put((byte) 'U').put((byte) 'T').put((byte) ' ');
+            putNumber(client.out, client.nextInput());
+            client.out.put((byte) ' ');
+            putNumber(client.out, sequence);
+            client.out.put((byte) '\n');
+            flush(client);
+        }
+        
+        private void send(Client client, String line) {
+            for (int i = 0; i < line.length(); i++) {
+                client.out.put((byte) line.charAt(i));
+            }
+            client.out.put((byte) '\n');
+            flush(client);
+        }
+        
+        private void flush(Client client) {
+            try {
+                client.out.flip();
+                client.channel.write(client.out);
+                client.out.compact();
+                client.key.interestOps(client.out.position() > 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE
+                                                                 : SelectionKey.OP_READ);
+            } catch (IOException e) {
+                fail(client);
+            }
+        }
+        
+        private void read(Client client) {
+            try {
+                if (client.channel.read(client.in) < 0) {
+                    fail(client);
+                    return;
+                }
+            } catch (IOException e) {
+                fail(client);
+                return;
+            }
+            ByteBuffer in = client.in;
+            in.flip();
+            int start = in.position();
+            for (int i = start; i < in.limit(); i++) {
+                if (in.get(i) == '\n') {
+                    handleLine(client, in, start, i);
+                    start = i + 1;
+                }
+            }
+            in.position(start);
+            in.compact();
+        }
+        
+        /**
+         * Act on one line from the server, held in the buffer between start and end.
+         */
+        private void handleLine(Client client, ByteBuffer line, int start, int end) {
+            if (startsWith(line, start, end, "STATE ")) {
+                // The last field is the sequence of our latest input the server has applied
+                int digit = end;
+                while (digit > start && line.get(digit - 1) != ' ') {
+                    digit--;
+                }
+                long ack = 0;
+                for (int i = digit; i < end; i++) {
+                    ack = ack * 10 + (line.get(i) - '0');
+                }
+                if (ack > client.lastAck && ack > client.sequence - SENT_SLOTS) {
+                    inputMicros.record((System.nanoTime() - client.sentAt[(int) (ack % SENT_SLOTS)]) / 1000);
+                    client.lastAck = ack;
+                }
+            } else if (startsWith(line, start, end, "WELCOME")) {
+                send(client, "QUEUE");
+            } else if (startsWith(line, start, end, "MATCH")) {
+                client.nextSend = System.nanoTime() + inputIntervalNanos;
+                sendOrder.addLast(client);
+            } else if (startsWith(line, start, end, "OPPONENT_LEFT") || startsWith(line, start, end, "ERROR")) {
+                fail(client);
+            }
+        }
+        
+        private void fail(Client client) {
+            if (!client.open) {
+                return;
+            }
+            client.open = false;
+            failures.incrementAndGet();
+            client.key.cancel();
+            try {
+                client.channel.close();
+            } catch (IOException e) {
+                // Already closed
+            }
+        }
+    }
+    
+    private static boolean startsWith(ByteBuffer buffer, int start, int end, String prefix) {
+        if (end - start < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (buffer.get(start + i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private static void putNumber(ByteBuffer out, long value) {
+        if (value >= 10) {
+            putNumber(out, value / 10);
+        }
+        out.put((byte) ('0' + value % 10));
+    }
+    
+    /**
+     * Ramp the load up step by step and report each step.
+     */
+    private void run(int startMatches, int maxMatches, int stepSeconds, int tickThreads, int clientThreads,
+                     int snapshotTicks) throws Exception {
+        DuelServer server = new DuelServer(tickThreads, snapshotTicks);
+        SessionGateway gateway = new SessionGateway(0, server);
+        server.start();
+        gateway.start();
+        InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), gateway.getPort());
+        
+        ClientDriver[] drivers = new ClientDriver[Math.max(1, clientThreads)];
+        for (int i = 0; i < drivers.length; i++) {
+            drivers[i] = new ClientDriver();
+            Thread thread = new Thread(drivers[i], "load-client-" + (i + 1));
+            thread.setDaemon(true);
+            thread.start();
+        }
+        Runtime runtime = Runtime.getRuntime();
+        long baselineHeap = usedHeapAfterGc(runtime);
+        
+        System.out.println("Duel server with " + tickThreads + " tick threads, " + TICK_MS + " ms ticks, snapshots every "
+            + snapshotTicks + " ticks; " + drivers.length + " client threads sending "
+            + TimeUnit.SECONDS.toNanos(1) / inputIntervalNanos + " inputs/s from "
+            + (recordings.length == 0 ? "bots" : recordings.length + " recordings")
+            + (SessionGateway.usesVirtualThreads() ? "; gateway on virtual threads" : "; gateway on platform threads"));
+        System.out.println("matches  sessions  msgs/s  pass p50 us  pass p99 us  overrun %  late p99 us"
+            + "  input p50 ms  input p99 ms  input max ms  KB/session  failures  dropped");
+        
+        int sessions = 0;
+        int sustained = 0;
+        for (int matches = startMatches; matches <= maxMatches; matches *= 2) {
+            // Open the new clients; the gateway pairs them off in the order they queue
+            try {
+                while (sessions < matches * 2) {
+                    SocketChannel channel = SocketChannel.open(address);
+                    channel.socket().setTcpNoDelay(true);
+                    drivers[sessions % drivers.length].add(new Client(sessions, channel));
+                    sessions++;
+                }
+            } catch (IOException e) {
+                System.out.println("Could not open more than " + sessions + " clients: " + e.getMessage());
+                break;
+            }
+            long waitUntil = System.nanoTime() + TimeUnit.SECONDS.toNanos(MATCH_WAIT_SECONDS);
+            while (server.getLiveMatches() < matches && System.nanoTime() < waitUntil) {
+                Thread.sleep(50);
+            }
+            
+            // Let the step settle for a second, then measure it
+            Thread.sleep(1000);
+            server.resetTimings();
+            inputMicros.reset();
+            long messagesBefore = gateway.getStats().getMessagesIn() + gateway.getStats().getMessagesOut();
+            long failuresBefore = failures.get();
+            Thread.sleep(stepSeconds * 1000L);
+            long messages = gateway.getStats().getMessagesIn() + gateway.getStats().getMessagesOut() - messagesBefore;
+            long ticks = server.getTicks();
+            double overrunPercent = ticks == 0 ? 0 : 100.0 * server.getOverruns() / ticks;
+            long heapPerSession = (usedHeapAfterGc(runtime) - baselineHeap) / sessions / 1024;
+            
+            System.out.printf("%7d  %8d  %6d  %11d  %11d  %9.2f  %11d  %12.1f  %12.1f  %12.1f  %10d  %8d  %7d%n",
+                server.getLiveMatches(), gateway.getStats().getActiveConnections(), messages / stepSeconds,
+                server.getPassMicros().percentile(50), server.getPassMicros().percentile(99), overrunPercent,
+                server.getLateMicros().percentile(99), inputMicros.percentile(50) / 1000.0,
+                inputMicros.percentile(99) / 1000.0, inputMicros.max() / 1000.0, heapPerSession,
+                failures.get() - failuresBefore, server.getDroppedStates());
+            if (overrunPercent > MAX_OVERRUN_PERCENT) {
+                break;
+            }
+            sustained = server.getLiveMatches();
+        }
+        
+        System.out.println(sustained == 0 ? "Tick deadlines slipped at the first step"
+            : "Sustained " + sustained + " matches with at most " + MAX_OVERRUN_PERCENT + "% of ticks overrun");
+        if (droppedInputs.get() > 0) {
+            System.out.println(droppedInputs.get() + " inputs were skipped because the server fell behind reading them");
+        }
+        running = false;
+        gateway.stop();
+        server.stop();
+    }
+    
+    private static long usedHeapAfterGc(Runtime runtime) throws InterruptedException {
+        System.gc();
+        Thread.sleep(100);
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+    
+    public static void main(String[] args) throws Exception {
+        int startMatches = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        int maxMatches = args.length > 1 ? Integer.parseInt(args[1]) : 6400;
+        int stepSeconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        int inputsPerSecond = args.length > 3 ? Integer.parseInt(args[3]) : 30;
+        byte[][] recordings = new byte[Math.max(0, args.length - 4)][];
+        for (int i = 0; i < recordings.length; i++) {
+            recordings[i] = Files.readAllBytes(Paths.get(args[i + 4]));
+            if (recordings[i].length == 0) {
+                System.err.println("Recording " + args[i + 4] + " is empty");
+                System.exit(1);
+            }
+        }
+        int cores = Runtime.getRuntime().availableProcessors();
+        new DuelLoadGenerator(inputsPerSecond, recordings).run(startMatches, maxMatches, stepSeconds,
+            Integer.getInteger("load.tickThreads", cores),
+            Integer.getInteger("load.clientThreads", Math.max(1, cores / 2)),
+            Integer.getInteger("load.snapshotTicks", 3));
+    }
+}
@@ -0,0 +1,187 @@
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Plays scripted duels between two rollback peers over loopback UDP, with
+ * latency, jitter and packet loss injected locally, and checks the result.
+ *
+ * For each network profile both peers play the same number of ticks in real
+ * time; once every input has arrived their final states must match each other
+ * and a straight replay of the same inputs with no network at all. Also
+ * reports what the rollbacks cost and how long a state save and restore take.
+ *
+ * Run with: java DuelRollbackBenchmark [seconds] [maxRollback]
+ */
+public class DuelRollbackBenchmark {
+    private static final int WIDTH = 500;
+    private static final int HEIGHT = 600;
+    private static final int TICK_MS = 16;
+    private static final long SEED = 7;
+    private static final int SEED_MIX = 0x5EED;
+    
+    // latency ms, jitter ms, loss %
+    private static final int[][] PROFILES = {
+        {0, 0, 0},
+        {20, 5, 0},
+        {50, 10, 5},
+        {100, 20, 10},
+        {150, 30, 20}
+    };
+    
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int maxRollback = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int ticks = seconds * 1000 / TICK_MS;
+        
+        measureSaveRestore();
+        
+        long expected = replayOffline(ticks);
+        System.out.println("latency  jitter  loss  rollbacks  avg replay  max replay  rollback p99/max us  stalls  desyncs  result");
+        boolean allMatched = true;
+        for (int[] profile : PROFILES) {
+            allMatched &= play(ticks, maxRollback, profile[0], profile[1], profile[2], expected);
+        }
+        System.out.println(allMatched ? "All peers agreed with the offline replay" : "MISMATCH between peers");
+    }
+    
+    /**
+     * Time copying a mid-match state into a snapshot and back.
+     */
+    private static void measureSaveRestore() {
+        DuelSimulation state = new DuelSimulation(WIDTH, HEIGHT, SEED);
+        DuelSimulation snapshot = new DuelSimulation(WIDTH, HEIGHT, 0);
+        for (int tick = 0; tick < 300; tick++) {
+            state.step(botInput(0, tick), botInput(1, tick));
+        }
+        int rounds = 2_000_000;
+        long start = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            start = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                snapshot.copyFrom(state);
+                state.copyFrom(snapshot);
+            }
+        }
+        long nanos = System.nanoTime() - start;
+        long stepStart = System.nanoTime();
+        for (int i = 0; i < rounds / 10; i++) {
+            snapshot.copyFrom(state);
+            snapshot.step(botInput(0, i), botInput(1, i));
+        }
+        long stepNanos = System.nanoTime() - stepStart;
+        System.out.printf("Save + restore %.0f ns, step %.0f ns with %d shots in play%n",
+            (double) nanos / rounds, (double) stepNanos / (rounds / 10), state.projectiles.size);
+    }
+    
+    /**
+     * Play the scripted inputs straight through, as if both players shared one machine.
+     *
+     * @param ticks The number of ticks
+     * @return The checksum of the final state
+     */
+    private static long replayOffline(int ticks) {
+        DuelSimulation state = new DuelSimulation(WIDTH, HEIGHT, SEED);
+        for (int tick = 0; tick < ticks; tick++) {
+            state.step(botInput(0, tick), botInput(1, tick));
+        }
+        return state.checksum();
+    }
+    
+    private static boolean play(int ticks, int maxRollback, int latency, int jitter, int loss, long expected)
+            throws Exception {
+        DuelSimulation initial = new DuelSimulation(WIDTH, HEIGHT, SEED);
+        RollbackSession[] sessions = new RollbackSession[2];
+        DuelLink[] links = new DuelLink[2];
+        for (int p = 0; p < 2; p++) {
+            sessions[p] = new RollbackSession(initial, p, maxRollback);
+            links[p] = new DuelLink(0, latency, jitter, loss, SEED + p);
+        }
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        links[0].setRemote(new InetSocketAddress(loopback, links[1].getPort()));
+        links[1].setRemote(new InetSocketAddress(loopback, links[0].getPort()));
+        
+        ByteBuffer packet = ByteBuffer.allocate(RollbackSession.MAX_PACKET_BYTES);
+        long tickNanos = TimeUnit.MILLISECONDS.toNanos(TICK_MS);
+        long nextTick = System.nanoTime();
+        long deadline = nextTick + TimeUnit.SECONDS.toNanos(ticks * TICK_MS / 1000 + 30);
+        
+        // Play every tick, then keep exchanging packets until both sides have all the inputs
+        while (!settled(sessions, ticks) && System.nanoTime() < deadline) {
+            for (int p = 0; p < 2; p++) {
+                RollbackSession session = sessions[p];
+                while (links[p].receive(packet)) {
+                    session.readPacket(packet);
+                }
+                if (session.getFrame() < ticks) {
+                    session.advance(botInput(p, session.getFrame()));
+                } else {
+                    session.applyCorrections();
+                }
+                packet.clear();
+                session.writePacket(packet);
+                packet.flip();
+                links[p].send(packet);
+                links[p].flush();
+            }
+            nextTick += tickNanos;
+            long wait = nextTick - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+        }
+        for (int p = 0; p < 2; p++) {
+            sessions[p].applyCorrections();
+            links[p].close();
+        }
+        
+        long checksum0 = sessions[0].getState().checksum();
+        long checksum1 = sessions[1].getState().checksum();
+        boolean matched = checksum0 == checksum1 && checksum0 == expected;
+        long rollbacks = sessions[0].getRollbacks() + sessions[1].getRollbacks();
+        long replayed = sessions[0].getReplayedTicks() + sessions[1].getReplayedTicks();
+        LatencyHistogram micros = sessions[0].getRollbackMicros();
+        long p99 = Math.max(micros.percentile(99), sessions[1].getRollbackMicros().percentile(99));
+        long max = Math.max(micros.max(), sessions[1].getRollbackMicros().max());
+        System.out.printf("%5d ms  %4d ms  %3d%%  %9d  %10.1f  %10d  %12d / %-5d  %6d  %7d  %s%n",
+            latency, jitter, loss, rollbacks, rollbacks == 0 ? 0.0 : (double) replayed / rollbacks,
+            Math.max(sessions[0].getMaxReplayed(), sessions[1].getMaxReplayed()), p99, max,
+            sessions[0].getStalls() + sessions[1].getStalls(),
+            sessions[0].getDesyncs() + sessions[1].getDesyncs(),
+            matched ? "match" : "MISMATCH");
+        return matched;
+    }
+    
+    private static boolean settled(RollbackSession[] sessions, int ticks) {
+        for (RollbackSession session : sessions) {
+            if (session.getFrame() < ticks || session.getLastRemoteFrame() < ticks - 1) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Scripted input: held keys that change every few ticks, with frequent
+     * firing and the odd shape change, so predictions are often wrong.
+     *
+     * @param player The player number
+     * @param tick The tick the input is for
+     * @return The input bits
+     */
+    private static int botInput(int player, int tick) {
+        int segment = tick / (6 + player * 3);
+        int hash = (segment * 0x9E3779B1 + player * 0x85EBCA6B) ^ SEED_MIX;
+        hash ^= hash >>> 15;
+        hash *= 0x2C1B3C6D;
+        hash ^= hash >>> 12;
+        int input = hash & (DuelSimulation.INPUT_LEFT | DuelSimulation.INPUT_RIGHT
+                            | DuelSimulation.INPUT_UP | DuelSimulation.INPUT_DOWN | DuelSimulation.INPUT_FIRE);
+        if ((hash >>> 8 & 7) == 0) {
+            input |= DuelSimulation.INPUT_CIRCLE << (hash >>> 11 & 3) % 3;
+        }
+        return input;
+    }
+}
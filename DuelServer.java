@@ -0,0 +1,366 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs duels on the server for the matches {@link SessionGateway} makes.
+ *
+ * Each match gets its own {@link DuelSimulation}, stepped every tick with the
+ * latest input each player has sent. Matches are dealt out to a few tick
+ * threads, each stepping its share against absolute deadlines the way
+ * {@link SimulationLoop} does, and a pass that ends after the next deadline
+ * counts as an overrun. Every few ticks both players get a snapshot that
+ * echoes the sequence number of their last input applied, so a client can
+ * time an input from sending it to seeing it take effect. Snapshots are
+ * staggered across matches so they do not all go out on the same tick, and a
+ * finished duel starts again with a new seed so the load stays steady.
+ *
+ * Tick threads never write to a socket. Each player has an outbox holding
+ * the one snapshot not yet sent, written out by a sender thread; a snapshot
+ * that is still waiting when the next one is due is replaced by it and
+ * counted as dropped, so a slow client falls behind on its own without
+ * holding up the other matches on its shard.
+ *
+ * In a match, on top of the gateway's commands:
+ * <pre>
+ *   INPUT bits sequence   applied from the next tick on
+ *   &lt;- STATE tick x0 y0 x1 y1 health0 health1 sequence
+ * </pre>
+ *
+ * Run with: java DuelServer [port] [tickThreads]
+ */
+public class DuelServer implements SessionGateway.MatchHandler {
+    private static final int TICK_MS = 16;
+    private static final int ARENA_WIDTH = 500;
+    private static final int ARENA_HEIGHT = 600;
+    private static final int MAX_LAG_TICKS = 5;
+    private static final int INPUT_BITS = 8;
+    
+    private final int snapshotTicks;
+    private final Shard[] shards;
+    private final AtomicInteger nextShard = new AtomicInteger();
+    private final ExecutorService senders = SessionGateway.newSessionExecutor();
+    private volatile boolean running = false;
+    
+    // Counters, shared by every tick thread
+    private final AtomicInteger liveMatches = new AtomicInteger();
+    private final AtomicLong ticks = new AtomicLong();
+    private final AtomicLong overruns = new AtomicLong();
+    private final AtomicLong badInputs = new AtomicLong();
+    private final AtomicLong droppedStates = new AtomicLong();
+    private final LatencyHistogram passMicros = new LatencyHistogram();
+    private final LatencyHistogram lateMicros = new LatencyHistogram();
+    
+    /**
+     * Constructor for the duel server.
+     *
+     * @param tickThreads Threads stepping matches
+     * @param snapshotTicks Ticks between snapshots to each player
+     */
+    public DuelServer(int tickThreads, int snapshotTicks) {
+        this.snapshotTicks = Math.max(1, snapshotTicks);
+        this.shards = new Shard[Math.max(1, tickThreads)];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new Shard();
+        }
+    }
+    
+    /**
+     * Start the tick threads.
+     */
+    public void start() {
+        running = true;
+        for (int i = 0; i < shards.length; i++) {
+            Thread thread = new Thread(shards[i], "duel-tick-" + (i + 1));
+            thread.setDaemon(true);
+            shards[i].thread = thread;
+            thread.start();
+        }
+    }
+    
+    /**
+     * Stop the tick threads after their current pass, and the senders.
+     */
+    public void stop() {
+        running = false;
+        for (Shard shard : shards) {
+            if (shard.thread != null) {
+                LockSupport.unpark(shard.thread);
+            }
+        }
+        senders.shutdownNow();
+    }
+    
+    @Override
+    public void onMatchStarted(SessionGateway.Match match) {
+        DuelMatch duel = new DuelMatch(match);
+        match.setState(duel);
+        liveMatches.incrementAndGet();
+        shards[Math.floorMod(nextShard.getAndIncrement(), shards.length)].added.add(duel);
+    }
+    
+    @Override
+    public void onMessage(SessionGateway.Match match, SessionGateway.Session session, String line) {
+        DuelMatch duel = (DuelMatch) match.getState();
+        int space = line.indexOf(' ', 6);
+        if (!line.startsWith("INPUT ") || space < 0 || duel == null) {
+            badInputs.incrementAndGet();
+            session.send("ERROR BAD INPUT");
+            return;
+        }
+        try {
+            int bits = Integer.parseInt(line, 6, space, 10);
+            long sequence = Long.parseLong(line, space + 1, line.length(), 10);
+            // Input and sequence travel in one word so a tick never sees one without the other
+            duel.inputs.set(session == match.getFirst() ? 0 : 1, sequence << INPUT_BITS | bits & 0xFF);
+        } catch (NumberFormatException e) {
+            badInputs.incrementAndGet();
+            session.send("ERROR BAD INPUT");
+        }
+    }
+    
+    @Override
+    public void onLeave(SessionGateway.Match match, SessionGateway.Session session) {
+        DuelMatch duel = (DuelMatch) match.getState();
+        if (duel != null && !duel.left) {
+            duel.left = true;
+            liveMatches.decrementAndGet();
+        }
+        match.opponentOf(session).send("OPPONENT_LEFT");
+    }
+    
+    /**
+     * Clear the tick timings and counters, as at the start of a measurement.
+     */
+    public void resetTimings() {
+        ticks.set(0);
+        overruns.set(0);
+        droppedStates.set(0);
+        passMicros.reset();
+        lateMicros.reset();
+    }
+    
+    // Getters
+    public int getLiveMatches() {
+        return liveMatches.get();
+    }
+    
+    public long getTicks() {
+        return ticks.get();
+    }
+    
+    public long getOverruns() {
+        return overruns.get();
+    }
+    
+    public long getBadInputs() {
+        return badInputs.get();
+    }
+    
+    /**
+     * Get how many snapshots were replaced by a newer one before they could be sent.
+     *
+     * @return The number of dropped snapshots
+     */
+    public long getDroppedStates() {
+        return droppedStates.get();
+    }
+    
+    /**
+     * Get the time each tick thread spent on one pass over its matches.
+     *
+     * @return The histogram, in microseconds
+     */
+    public LatencyHistogram getPassMicros() {
+        return passMicros;
+    }
+    
+    /**
+     * Get how far past the next deadline overrun passes ended.
+     *
+     * @return The histogram, in microseconds
+     */
+    public LatencyHistogram getLateMicros() {
+        return lateMicros;
+    }
+    
+    @Override
+    public String toString() {
+        return "matches=" + liveMatches.get()
+            + " ticks=" + ticks.get()
+            + " overruns=" + overruns.get()
+            + " dropped=" + droppedStates.get()
+            + " pass " + passMicros.summary("us");
+    }
+    
+    /**
+     * A duel being played, and the latest input from each side.
+     */
+    private class DuelMatch {
+        private final SessionGateway.Match match;
+        private final DuelSimulation duel;
+        private final AtomicLongArray inputs = new AtomicLongArray(DuelSimulation.PLAYER_COUNT);
+        private final Outbox first;
+        private final Outbox second;
+        private long seed;
+        private volatile boolean left;
+        
+        DuelMatch(SessionGateway.Match match) {
+            this.match = match;
+            this.seed = match.getId();
+            this.duel = new DuelSimulation(ARENA_WIDTH, ARENA_HEIGHT, seed);
+            this.first = new Outbox(match.getFirst());
+            this.second = new Outbox(match.getSecond());
+        }
+        
+        /**
+         * Step the duel once and queue the snapshot if one is due. Called on a tick thread.
+         */
+        void step() {
+            long input0 = inputs.get(0);
+            long input1 = inputs.get(1);
+            duel.step((int) input0 & 0xFF, (int) input1 & 0xFF);
+            if (duel.isOver()) {
+                duel.reset(++seed);
+            }
+            if ((duel.tick + match.getId()) % snapshotTicks == 0) {
+                String state = "STATE " + duel.tick + " " + duel.x[0] + " " + duel.y[0] + " " + duel.x[1] + " "
+                    + duel.y[1] + " " + duel.health[0] + " " + duel.health[1] + " ";
+                first.post(state + (input0 >>> INPUT_BITS));
+                second.post(state + (input1 >>> INPUT_BITS));
+            }
+        }
+    }
+    
+    /**
+     * The snapshot waiting to go to one player, and the sender writing it.
+     */
+    private class Outbox implements Runnable {
+        private final SessionGateway.Session session;
+        private final AtomicReference<String> pending = new AtomicReference<>();
+        private final AtomicBoolean sending = new AtomicBoolean();
+        
+        Outbox(SessionGateway.Session session) {
+            this.session = session;
+        }
+        
+        /**
+         * Queue a snapshot, replacing any the sender has not taken yet. Never blocks.
+         *
+         * @param line The snapshot line
+         */
+        void post(String line) {
+            if (pending.getAndSet(line) != null) {
+                droppedStates.incrementAndGet();
+            }
+            if (sending.compareAndSet(false, true)) {
+                try {
+                    senders.execute(this);
+                } catch (RejectedExecutionException e) {
+                    // Stopping
+                    sending.set(false);
+                }
+            }
+        }
+        
+        /**
+         * Send until the outbox is empty. Only one sender runs per outbox, so lines go out in order.
+         */
+        @Override
+        public void run() {
+            while (true) {
+                String line = pending.getAndSet(null);
+                if (line == null) {
+                    sending.set(false);
+                    // A snapshot posted after the check above would otherwise wait for the next one
+                    if (pending.get() == null || !sending.compareAndSet(false, true)) {
+                        return;
+                    }
+                    continue;
+                }
+                session.send(line);
+            }
+        }
+    }
+    
+    /**
+     * The matches one tick thread steps, and its loop.
+     */
+    private class Shard implements Runnable {
+        private final ConcurrentLinkedQueue<DuelMatch> added = new ConcurrentLinkedQueue<>();
+        private final ArrayList<DuelMatch> matches = new ArrayList<>();
+        private Thread thread;
+        
+        @Override
+        public void run() {
+            long tickNanos = TimeUnit.MILLISECONDS.toNanos(TICK_MS);
+            long deadline = System.nanoTime();
+            while (running) {
+                long start = System.nanoTime();
+                DuelMatch duel;
+                while ((duel = added.poll()) != null) {
+                    matches.add(duel);
+                }
+                // Walk backwards since removal swaps in the last match
+                for (int i = matches.size() - 1; i >= 0; i--) {
+                    duel = matches.get(i);
+                    if (duel.left) {
+                        matches.set(i, matches.get(matches.size() - 1));
+                        matches.remove(matches.size() - 1);
+                        continue;
+                    }
+                    try {
+                        duel.step();
+                    } catch (RuntimeException e) {
+                        System.err.println("Duel " + duel.match.getId() + " failed: " + e.getMessage());
+                        duel.left = true;
+                    }
+                }
+                long end = System.nanoTime();
+                passMicros.record((end - start) / 1000);
+                ticks.incrementAndGet();
+                
+                // A pass that ends after the next deadline has made that tick late
+                deadline += tickNanos;
+                if (end > deadline) {
+                    overruns.incrementAndGet();
+                    lateMicros.record((end - deadline) / 1000);
+                    if (end - deadline > MAX_LAG_TICKS * tickNanos) {
+                        deadline = end;
+                    }
+                }
+                long wait = deadline - System.nanoTime();
+                while (wait > 0 && running) {
+                    LockSupport.parkNanos(wait);
+                    wait = deadline - System.nanoTime();
+                }
+            }
+        }
+    }
+    
+    /**
+     * Run a standalone gateway that plays matched pairs against each other on the server.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 7777;
+        int tickThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        DuelServer server = new DuelServer(tickThreads, 3);
+        SessionGateway gateway = new SessionGateway(port, server);
+        server.start();
+        gateway.start();
+        System.out.println("Duel server listening on " + gateway.getPort() + " with " + tickThreads + " tick threads");
+        while (true) {
+            Thread.sleep(10000);
+            System.out.println(server + " | " + gateway.getStats());
+        }
+    }
+}
@@ -0,0 +1,268 @@
+/**
+ * The two-player duel as a deterministic simulation.
+ *
+ * Player 0 holds the bottom half of the arena and shoots up, player 1 holds
+ * the top half and shoots down. A shot whose shape matches the target's
+ * current shape does double damage, and a health power-up appears on the
+ * centre line now and then for whoever reaches it first.
+ *
+ * The whole state is a handful of ints, a projectile store and the random
+ * generator state, so it can be copied into a preallocated snapshot with
+ * {@link #copyFrom(DuelSimulation)} without allocating. A step depends only on
+ * that state and the two inputs - no clocks and no floating point - so two
+ * peers fed the same inputs stay identical, which rollback relies on.
+ */
+public class DuelSimulation {
+    // Input bits; each player's input for a tick fits in one byte
+    public static final int INPUT_LEFT = 1;
+    public static final int INPUT_RIGHT = 2;
+    public static final int INPUT_UP = 4;
+    public static final int INPUT_DOWN = 8;
+    public static final int INPUT_FIRE = 16;
+    public static final int INPUT_CIRCLE = 32;
+    public static final int INPUT_TRIANGLE = 64;
+    public static final int INPUT_CUBE = 128;
+    
+    // Outcome codes
+    public static final int NO_WINNER = -1;
+    public static final int DRAW = 2;
+    
+    public static final int PLAYER_COUNT = 2;
+    public static final int MAX_HEALTH = 100;
+    
+    private static final int PLAYER_SIZE = WorldState.SHAPE_SIZE;
+    private static final int PLAYER_SPEED = 6;
+    private static final int SHOT_SPEED = 10;
+    private static final int SHOT_DAMAGE = 10;
+    private static final int SHOT_COOLDOWN_TICKS = 12;
+    private static final ShapeMask SHOT_MASK = ShapeMask.of(WorldState.SHAPE_CIRCLE, WorldState.PROJECTILE_SIZE);
+    private static final int POWERUP_SIZE = WorldState.POWERUP_SIZE;
+    private static final int POWERUP_INTERVAL_TICKS = 480;
+    private static final int POWERUP_LIFETIME_TICKS = 300;
+    private static final int POWERUP_HEAL = 25;
+    
+    public final int width;
+    public final int height;
+    
+    // Ticks simulated so far
+    public int tick;
+    
+    // Players, indexed by player number
+    public final int[] x = new int[PLAYER_COUNT];
+    public final int[] y = new int[PLAYER_COUNT];
+    public final int[] shape = new int[PLAYER_COUNT];
+    public final int[] health = new int[PLAYER_COUNT];
+    public final int[] cooldown = new int[PLAYER_COUNT];
+    
+    // Shots; the owner is player 0 if the shot moves up, player 1 if it moves down
+    public final ProjectileStore projectiles = new ProjectileStore();
+    public int nextProjectileId;
+    
+    // The power-up on the centre line; the countdown runs to its appearance or its expiry
+    public boolean powerUpActive;
+    public int powerUpX;
+    public int powerUpCountdown;
+    
+    public int winner;
+    
+    private final GameRandom random = new GameRandom(0);
+    
+    /**
+     * Constructor for the duel simulation.
+     *
+     * @param width Arena width
+     * @param height Arena height
+     * @param seed Seed for power-up placement; both peers must use the same one
+     */
+    public DuelSimulation(int width, int height, long seed) {
+        this.width = width;
+        this.height = height;
+        reset(seed);
+    }
+    
+    /**
+     * Put both players back at their start positions with full health.
+     *
+     * @param seed Seed for power-up placement
+     */
+    public void reset(long seed) {
+        tick = 0;
+        for (int p = 0; p < PLAYER_COUNT; p++) {
+            x[p] = (width - PLAYER_SIZE) / 2;
+            shape[p] = WorldState.SHAPE_CIRCLE;
+            health[p] = MAX_HEALTH;
+            cooldown[p] = 0;
+        }
+        y[0] = height - PLAYER_SIZE - 40;
+        y[1] = 40;
+        projectiles.clear();
+        nextProjectileId = 1;
+        powerUpActive = false;
+        powerUpCountdown = POWERUP_INTERVAL_TICKS;
+        winner = NO_WINNER;
+        random.setSeed(seed);
+    }
+    
+    /**
+     * Advance the duel by one tick.
+     *
+     * @param input0 Player 0's input bits
+     * @param input1 Player 1's input bits
+     */
+    public void step(int input0, int input1) {
+        tick++;
+        if (winner != NO_WINNER) {
+            return;
+        }
+        
+        applyInput(0, input0);
+        applyInput(1, input1);
+        projectiles.moveAndCull(width, height);
+        
+        // Shots hit the opposing player only, where the shot's disc meets the player's shape;
+        // walk backwards since removal swaps in the last shot
+        for (int i = projectiles.size - 1; i >= 0; i--) {
+            int target = projectiles.dy[i] < 0 ? 1 : 0;
+            int px = projectiles.x[i];
+            int py = projectiles.y[i];
+            if (!ShapeMask.overlaps(SHOT_MASK, px, py, ShapeMask.of(shape[target], PLAYER_SIZE), x[target], y[target])) {
+                continue;
+            }
+            int damage = projectiles.type[i] == shape[target] ? projectiles.damage[i] * 2 : projectiles.damage[i];
+            health[target] -= damage;
+            projectiles.removeAt(i);
+        }
+        
+        updatePowerUp();
+        
+        if (health[0] <= 0 || health[1] <= 0) {
+            winner = health[0] <= 0 && health[1] <= 0 ? DRAW : health[0] <= 0 ? 1 : 0;
+        }
+    }
+    
+    /**
+     * Apply one player's input: shape change, movement within their half, and firing.
+     *
+     * @param p The player number
+     * @param input The input bits
+     */
+    private void applyInput(int p, int input) {
+        if ((input & INPUT_CIRCLE) != 0) shape[p] = WorldState.SHAPE_CIRCLE;
+        if ((input & INPUT_TRIANGLE) != 0) shape[p] = WorldState.SHAPE_TRIANGLE;
+        if ((input & INPUT_CUBE) != 0) shape[p] = WorldState.SHAPE_CUBE;
+        
+        int dx = ((input & INPUT_RIGHT) != 0 ? PLAYER_SPEED : 0) - ((input & INPUT_LEFT) != 0 ? PLAYER_SPEED : 0);
+        int dy = ((input & INPUT_DOWN) != 0 ? PLAYER_SPEED : 0) - ((input & INPUT_UP) != 0 ? PLAYER_SPEED : 0);
+        int minY = p == 0 ? height / 2 : 0;
+        int maxY = p == 0 ? height - PLAYER_SIZE : height / 2 - PLAYER_SIZE;
+        x[p] = Math.max(0, Math.min(x[p] + dx, width - PLAYER_SIZE));
+        y[p] = Math.max(minY, Math.min(y[p] + dy, maxY));
+        
+        if (cooldown[p] > 0) {
+            cooldown[p]--;
+        } else if ((input & INPUT_FIRE) != 0) {
+            int shotY = p == 0 ? y[p] - WorldState.PROJECTILE_SIZE : y[p] + PLAYER_SIZE;
+            projectiles.add(nextProjectileId++, shape[p], x[p] + PLAYER_SIZE / 2 - 2, shotY,
+                            0, p == 0 ? -SHOT_SPEED : SHOT_SPEED, SHOT_DAMAGE);
+            cooldown[p] = SHOT_COOLDOWN_TICKS;
+        }
+    }
+    
+    /**
+     * Count down to the next power-up, or to the current one expiring, and let
+     * a player who reaches it collect it.
+     */
+    private void updatePowerUp() {
+        if (!powerUpActive) {
+            if (--powerUpCountdown <= 0) {
+                powerUpActive = true;
+                powerUpX = random.nextInt(width - POWERUP_SIZE);
+                powerUpCountdown = POWERUP_LIFETIME_TICKS;
+            }
+            return;
+        }
+        
+        boolean reached0 = touchesPowerUp(0);
+        boolean reached1 = touchesPowerUp(1);
+        if (reached0 || reached1) {
+            // Both on the same tick: a coin toss, drawn from the shared generator
+            int p = reached0 && reached1 ? random.nextInt(PLAYER_COUNT) : reached0 ? 0 : 1;
+            health[p] = Math.min(health[p] + POWERUP_HEAL, MAX_HEALTH);
+            powerUpActive = false;
+            powerUpCountdown = POWERUP_INTERVAL_TICKS;
+        } else if (--powerUpCountdown <= 0) {
+            powerUpActive = false;
+            powerUpCountdown = POWERUP_INTERVAL_TICKS;
+        }
+    }
+    
+    private boolean touchesPowerUp(int p) {
+        int powerUpY = getPowerUpY();
+        return x[p] < powerUpX + POWERUP_SIZE && x[p] + PLAYER_SIZE > powerUpX
+            && y[p] < powerUpY + POWERUP_SIZE && y[p] + PLAYER_SIZE > powerUpY;
+    }
+    
+    /**
+     * Replace this state with a copy of another one of the same arena size.
+     *
+     * @param other The state to copy
+     */
+    public void copyFrom(DuelSimulation other) {
+        tick = other.tick;
+        System.arraycopy(other.x, 0, x, 0, PLAYER_COUNT);
+        System.arraycopy(other.y, 0, y, 0, PLAYER_COUNT);
+        System.arraycopy(other.shape, 0, shape, 0, PLAYER_COUNT);
+        System.arraycopy(other.health, 0, health, 0, PLAYER_COUNT);
+        System.arraycopy(other.cooldown, 0, cooldown, 0, PLAYER_COUNT);
+        projectiles.copyFrom(other.projectiles);
+        nextProjectileId = other.nextProjectileId;
+        powerUpActive = other.powerUpActive;
+        powerUpX = other.powerUpX;
+        powerUpCountdown = other.powerUpCountdown;
+        winner = other.winner;
+        random.setState(other.random.getState());
+    }
+    
+    /**
+     * Hash the whole state, so peers can check they have not drifted apart.
+     *
+     * @return A 64-bit hash of every field
+     */
+    public long checksum() {
+        long hash = StateHash.mix(0, tick);
+        for (int p = 0; p < PLAYER_COUNT; p++) {
+            hash = mix(hash, x[p]);
+            hash = mix(hash, y[p]);
+            hash = mix(hash, shape[p]);
+            hash = mix(hash, health[p]);
+            hash = mix(hash, cooldown[p]);
+        }
+        hash = mix(hash, projectiles.size);
+        for (int i = 0; i < projectiles.size; i++) {
+            hash = mix(hash, projectiles.id[i]);
+            hash = mix(hash, projectiles.type[i]);
+            hash = mix(hash, projectiles.x[i]);
+            hash = mix(hash, projectiles.y[i]);
+            hash = mix(hash, projectiles.dy[i]);
+        }
+        hash = mix(hash, nextProjectileId);
+        hash = mix(hash, powerUpActive ? powerUpX : -1);
+        hash = mix(hash, powerUpCountdown);
+        hash = mix(hash, winner);
+        hash = mix(hash, (int) random.getState());
+        return StateHash.finish(mix(hash, (int) (random.getState() >>> 32)));
+    }
+    
+    private static long mix(long hash, int value) {
+        return StateHash.mix(hash, value);
+    }
+    
+    // Getters
+    public int getPowerUpY() {
+        return height / 2 - POWERUP_SIZE / 2;
+    }
+    
+    public boolean isOver() {
+        return winner != NO_WINNER;
+    }
+}
@@ -0,0 +1,146 @@
+/**
+ * Enemy movement behaviours, each applied to a whole {@link EnemyStore} at once.
+ *
+ * Every kernel is a flat loop over primitive arrays with no calls or
+ * allocation inside, which the JIT can unroll and, for the simpler ones,
+ * vectorize. Sideways motion that depends only on time is computed in closed
+ * form from the tick, so it never drifts. All of it is {@link Fixed} integer
+ * arithmetic, so every machine moves enemies to exactly the same place.
+ */
+public final class EnemyBehaviour {
+    public static final int FALL = 0;
+    public static final int WEAVE = 1;
+    public static final int ZIGZAG = 2;
+    public static final int HOMING = 3;
+    public static final int FORMATION = 4;
+    public static final int COUNT = 5;
+    
+    // Sideways reach of the weaving behaviours, in pixels
+    public static final int WEAVE_AMPLITUDE = 40;
+    public static final int ZIGZAG_AMPLITUDE = 32;
+    
+    private static final int WEAVE_RATE = 2;        // Sine table steps per tick
+    private static final int FORMATION_RATE = 1;
+    private static final int ZIGZAG_PERIOD = 64;     // Ticks per sweep, a power of two
+    private static final int ZIGZAG_SCALE = Fixed.ratio(ZIGZAG_AMPLITUDE, ZIGZAG_PERIOD / 2);
+    private static final int HOMING_TURN = Fixed.ratio(3, 2);   // Pixels per tick toward the target
+    
+    private EnemyBehaviour() {
+    }
+    
+    /**
+     * Move every enemy in a store by one tick.
+     * 
+     * @param store The enemies to move
+     * @param tick The current simulation tick
+     * @param targetX The x position homing enemies steer toward, in pixels
+     */
+    public static void move(EnemyStore store, int tick, int targetX) {
+        switch (store.behaviour) {
+            case WEAVE:
+                weave(store, tick);
+                break;
+            case ZIGZAG:
+                zigzag(store, tick);
+                break;
+            case HOMING:
+                homing(store, Fixed.of(targetX));
+                break;
+            case FORMATION:
+                formation(store, tick);
+                break;
+            default:
+                fall(store);
+        }
+    }
+    
+    /**
+     * Fall straight down.
+     */
+    static void fall(EnemyStore store) {
+        int[] y = store.y;
+        int[] speed = store.speed;
+        for (int i = 0, n = store.size; i < n; i++) {
+            y[i] += speed[i];
+        }
+    }
+    
+    /**
+     * Fall while swaying side to side on a sine wave.
+     */
+    static void weave(EnemyStore store, int tick) {
+        int[] x = store.x;
+        int[] y = store.y;
+        int[] speed = store.speed;
+        int[] originX = store.originX;
+        int[] phase = store.phase;
+        int step = tick * WEAVE_RATE;
+        for (int i = 0, n = store.size; i < n; i++) {
+            y[i] += speed[i];
+            x[i] = originX[i] + WEAVE_AMPLITUDE * Fixed.sine(phase[i] + step);
+        }
+    }
+    
+    /**
+     * Fall while sweeping side to side in straight lines.
+     */
+    static void zigzag(EnemyStore store, int tick) {
+        int[] x = store.x;
+        int[] y = store.y;
+        int[] speed = store.speed;
+        int[] originX = store.originX;
+        int[] phase = store.phase;
+        for (int i = 0, n = store.size; i < n; i++) {
+            // Triangle wave running from -period/2 to period/2
+            int t = (phase[i] + tick) & (2 * ZIGZAG_PERIOD - 1);
+            y[i] += speed[i];
+            x[i] = originX[i] + (Math.abs(t - ZIGZAG_PERIOD) - ZIGZAG_PERIOD / 2) * ZIGZAG_SCALE;
+        }
+    }
+    
+    /**
+     * Fall while steering toward a target at a limited turn rate.
+     */
+    static void homing(EnemyStore store, int targetX) {
+        int[] x = store.x;
+        int[] y = store.y;
+        int[] speed = store.speed;
+        for (int i = 0, n = store.size; i < n; i++) {
+            y[i] += speed[i];
+            x[i] += Math.max(-HOMING_TURN, Math.min(HOMING_TURN, targetX - x[i]));
+        }
+    }
+    
+    /**
+     * Fall in a fixed shape that sways together as one block.
+     */
+    static void formation(EnemyStore store, int tick) {
+        int[] x = store.x;
+        int[] y = store.y;
+        int[] speed = store.speed;
+        int[] originX = store.originX;
+        int sway = WEAVE_AMPLITUDE * Fixed.sine(tick * FORMATION_RATE);
+        for (int i = 0, n = store.size; i < n; i++) {
+            y[i] += speed[i];
+            x[i] = originX[i] + sway;
+        }
+    }
+    
+    /**
+     * Get how far a behaviour can move an enemy sideways from its origin.
+     * 
+     * @param behaviour The behaviour code
+     * @return The reach in pixels, or 0 for behaviours without a fixed origin
+     */
+    public static int sidewaysReach(int behaviour) {
+        switch (behaviour) {
+            case WEAVE:
+            case FORMATION:
+                return WEAVE_AMPLITUDE;
+            case ZIGZAG:
+                return ZIGZAG_AMPLITUDE;
+            default:
+                return 0;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+import java.util.Random;
+
+/**
+ * Checks that enemy fire stays inside the tick budget.
+ *
+ * First times the enemy shot pass on its own, moving and culling the shots
+ * and testing them against the player, across shot counts. Then plays swarm
+ * runs on increasing levels, where enemies fire faster and in denser
+ * patterns, ticking as fast as possible and reporting the whole tick against
+ * the 16 ms budget along with how many enemy shots were in the air.
+ *
+ * Run with: java -Djava.awt.headless=true EnemyFireBenchmark [ticksPerLevel] [enemiesPerSecond]
+ */
+public class EnemyFireBenchmark {
+    private static final int SIZE = 800;
+    private static final int TICK_MS = 16;
+    private static final int REPEATS = 500;
+    private static final int[] LEVELS = {1, 5, 10, 15, 20};
+    
+    public static void main(String[] args) {
+        int ticks = args.length > 0 ? Integer.parseInt(args[0]) : 3000;
+        int enemiesPerSecond = args.length > 1 ? Integer.parseInt(args[1]) : 300;
+        
+        measureShotPass();
+        
+        System.out.println();
+        System.out.println("Swarm runs on " + SIZE + "x" + SIZE + ", " + enemiesPerSecond + " enemies/s, "
+            + enemiesPerSecond * 2 + " player shots/s, " + ticks + " ticks per level");
+        System.out.println("level  peak enemies  peak enemy shots  tick p50 us  tick p99 us  tick max us  over budget");
+        boolean allWithin = true;
+        for (int level : LEVELS) {
+            allWithin &= playLevel(level, ticks, enemiesPerSecond);
+        }
+        System.out.println(allWithin ? "Every level kept p99 inside the " + TICK_MS + " ms tick"
+                                     : "Some levels went over the " + TICK_MS + " ms tick at p99");
+    }
+    
+    /**
+     * Time one tick's worth of enemy shot work: move and cull, then test against the player.
+     */
+    private static void measureShotPass() {
+        System.out.println("enemy shots  move+cull us  player test us  ns per shot");
+        int[] counts = {1000, 4000, 16000, 64000};
+        ProjectileStore template = new ProjectileStore();
+        ProjectileStore shots = new ProjectileStore();
+        ShapeMask playerMask = ShapeMask.of(WorldState.SHAPE_TRIANGLE, WorldState.SHAPE_SIZE);
+        for (int count : counts) {
+            Random random = new Random(count);
+            template.clear();
+            for (int i = 0; i < count; i++) {
+                // Slow, mostly downward shots that stay in the arena for the whole run
+                template.add(i, random.nextInt(3), random.nextInt(SIZE), random.nextInt(SIZE / 2),
+                             random.nextInt(3) - 1, random.nextInt(2), 4);
+            }
+            long moveNanos = 0;
+            long testNanos = 0;
+            for (int pass = 0; pass < 2; pass++) {
+                moveNanos = 0;
+                testNanos = 0;
+                for (int r = 0; r < REPEATS; r++) {
+                    shots.copyFrom(template);
+                    long start = System.nanoTime();
+                    shots.moveAndCull(SIZE, SIZE);
+                    long moved = System.nanoTime();
+                    // The player sits near the bottom, so few shots are inside it
+                    shots.removeInside(playerMask, 385, 700);
+                    testNanos += System.nanoTime() - moved;
+                    moveNanos += moved - start;
+                }
+            }
+            System.out.printf("%11d  %12.1f  %14.1f  %11.2f%n", count, moveNanos / 1000.0 / REPEATS,
+                testNanos / 1000.0 / REPEATS, (double) (moveNanos + testNanos) / REPEATS / count);
+        }
+    }
+    
+    /**
+     * Play a swarm run on one level and report the tick times.
+     *
+     * @return true if the 99th percentile tick fit in the budget
+     */
+    private static boolean playLevel(int level, int ticks, int enemiesPerSecond) {
+        ShapeShifterDuel game = new ShapeShifterDuel(
+            new SwarmConfig(true, enemiesPerSecond, enemiesPerSecond * 2, 5, 3600, SIZE, SIZE, null, level));
+        WorldState state = new WorldState();
+        LatencyHistogram tickMicros = new LatencyHistogram();
+        int peakEnemies = 0;
+        int peakShots = 0;
+        int overBudget = 0;
+        
+        // The first part of the run fills the arena and warms the JIT; only the rest is timed
+        int warmUpTicks = ticks / 3;
+        for (int t = 0; t < ticks; t++) {
+            long start = System.nanoTime();
+            game.tick();
+            long nanos = System.nanoTime() - start;
+            if (t < warmUpTicks) {
+                continue;
+            }
+            tickMicros.record(nanos / 1000);
+            if (nanos > TICK_MS * 1_000_000L) {
+                overBudget++;
+            }
+            if (t % 60 == 0) {
+                game.captureState(state);
+                int shots = 0;
+                for (int i = 0; i < state.projectileCount; i++) {
+                    if ((state.projectileType[i] & WorldState.PROJECTILE_HOSTILE) != 0) {
+                        shots++;
+                    }
+                }
+                peakEnemies = Math.max(peakEnemies, state.enemyCount);
+                peakShots = Math.max(peakShots, shots);
+            }
+        }
+        game.shutdown();
+        
+        long p99 = tickMicros.percentile(99);
+        System.out.printf("%5d  %12d  %16d  %11d  %11d  %11d  %11d%n", level, peakEnemies, peakShots,
+            tickMicros.percentile(50), p99, tickMicros.max(), overBudget);
+        return p99 <= TICK_MS * 1000L;
+    }
+}
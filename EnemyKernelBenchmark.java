@@ -0,0 +1,164 @@
+import java.util.Random;
+
+/**
+ * Compares the batched enemy kernels against moving one enemy object at a
+ * time through a virtual call, which is how enemies used to move. Both sides
+ * do the same fixed-point arithmetic with the same sine table.
+ *
+ * Run with: java EnemyKernelBenchmark [enemies]
+ */
+public class EnemyKernelBenchmark {
+    private static final int TICKS = 2000;
+    private static final int ROUNDS = 5;
+    
+    public static void main(String[] args) {
+        int enemyCount = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        Random random = new Random(7);
+        
+        // Same enemies, split evenly across behaviours, in both layouts
+        EnemyStore[] groups = new EnemyStore[EnemyBehaviour.COUNT];
+        for (int b = 0; b < EnemyBehaviour.COUNT; b++) {
+            groups[b] = new EnemyStore(b);
+        }
+        Mover[] movers = new Mover[enemyCount];
+        for (int i = 0; i < enemyCount; i++) {
+            int behaviour = i % EnemyBehaviour.COUNT;
+            int x = Fixed.of(50 + random.nextInt(400));
+            int phase = random.nextInt(256);
+            groups[behaviour].add(i, i % 3, x, 0, Fixed.of(2), 30, 30, 5, 1, x, phase);
+            movers[i] = newMover(behaviour, x, phase);
+        }
+        // Shuffle the objects as a list of mixed enemies would be
+        for (int i = enemyCount - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            Mover swap = movers[i];
+            movers[i] = movers[j];
+            movers[j] = swap;
+        }
+        
+        System.out.println(enemyCount + " enemies, " + TICKS + " ticks per round");
+        for (int round = 1; round <= ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (int tick = 0; tick < TICKS; tick++) {
+                for (EnemyStore group : groups) {
+                    EnemyBehaviour.move(group, tick, 250);
+                }
+            }
+            long batched = System.nanoTime() - start;
+            
+            start = System.nanoTime();
+            for (int tick = 0; tick < TICKS; tick++) {
+                for (Mover mover : movers) {
+                    mover.move(tick, Fixed.of(250));
+                }
+            }
+            long perObject = System.nanoTime() - start;
+            
+            System.out.printf("round %d  batched %.1f ns/enemy  per-object %.1f ns/enemy%n", round,
+                (double) batched / TICKS / enemyCount, (double) perObject / TICKS / enemyCount);
+        }
+        
+        // Keep the results alive so the loops are not optimized away
+        long checksum = 0;
+        for (EnemyStore group : groups) {
+            checksum += group.x[0] + group.y[0];
+        }
+        for (Mover mover : movers) {
+            checksum += mover.x;
+        }
+        System.out.println("checksum " + checksum);
+    }
+    
+    private static Mover newMover(int behaviour, int x, int phase) {
+        switch (behaviour) {
+            case EnemyBehaviour.WEAVE:
+                return new Weave(x, phase);
+            case EnemyBehaviour.ZIGZAG:
+                return new ZigZag(x, phase);
+            case EnemyBehaviour.HOMING:
+                return new Homing(x);
+            case EnemyBehaviour.FORMATION:
+                return new Formation(x);
+            default:
+                return new Fall(x);
+        }
+    }
+    
+    /**
+     * One enemy moved through a virtual call, the way the old object model did it.
+     */
+    abstract static class Mover {
+        int x, y;
+        final int originX;
+        final int phase;
+        final int speed = Fixed.of(2);
+        
+        Mover(int x, int phase) {
+            this.x = x;
+            this.originX = x;
+            this.phase = phase;
+        }
+        
+        abstract void move(int tick, int targetX);
+    }
+    
+    static class Fall extends Mover {
+        Fall(int x) {
+            super(x, 0);
+        }
+        
+        @Override
+        void move(int tick, int targetX) {
+            y += speed;
+        }
+    }
+    
+    static class Weave extends Mover {
+        Weave(int x, int phase) {
+            super(x, phase);
+        }
+        
+        @Override
+        void move(int tick, int targetX) {
+            y += speed;
+            x = originX + EnemyBehaviour.WEAVE_AMPLITUDE * Fixed.sine(phase + tick * 2);
+        }
+    }
+    
+    static class ZigZag extends Mover {
+        ZigZag(int x, int phase) {
+            super(x, phase);
+        }
+        
+        @Override
+        void move(int tick, int targetX) {
+            int t = (phase + tick) & 127;
+            y += speed;
+            x = originX + (Math.abs(t - 64) - 32) * Fixed.ONE;
+        }
+    }
+    
+    static class Homing extends Mover {
+        Homing(int x) {
+            super(x, 0);
+        }
+        
+        @Override
+        void move(int tick, int targetX) {
+            y += speed;
+            x += Math.max(-Fixed.ONE * 3 / 2, Math.min(Fixed.ONE * 3 / 2, targetX - x));
+        }
+    }
+    
+    static class Formation extends Mover {
+        Formation(int x) {
+            super(x, 0);
+        }
+        
+        @Override
+        void move(int tick, int targetX) {
+            y += speed;
+            x = originX + EnemyBehaviour.WEAVE_AMPLITUDE * Fixed.sine(tick);
+        }
+    }
+}
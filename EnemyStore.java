@@ -0,0 +1,101 @@
+import java.util.Arrays;
+
+/**
+ * Live enemies that share one movement behaviour, stored as parallel arrays.
+ *
+ * Keeping each behaviour in its own store lets {@link EnemyBehaviour} move a
+ * whole group with one tight loop and no per-enemy dispatch. Removal swaps
+ * the last row into the freed slot, so iterate backwards when removing.
+ * Positions and speeds are {@link Fixed} 16.16 values.
+ */
+public class EnemyStore {
+    private static final int INITIAL_CAPACITY = 128;
+    
+    public final int behaviour;
+    public int size;
+    public int[] id = new int[INITIAL_CAPACITY];
+    public int[] type = new int[INITIAL_CAPACITY];
+    public int[] x = new int[INITIAL_CAPACITY];
+    public int[] y = new int[INITIAL_CAPACITY];
+    public int[] speed = new int[INITIAL_CAPACITY];
+    public int[] health = new int[INITIAL_CAPACITY];
+    public int[] maxHealth = new int[INITIAL_CAPACITY];
+    public int[] damage = new int[INITIAL_CAPACITY];
+    public int[] difficulty = new int[INITIAL_CAPACITY];
+    
+    // Behaviour parameters: the x the sideways motion is centered on, and a phase in ticks
+    public int[] originX = new int[INITIAL_CAPACITY];
+    public int[] phase = new int[INITIAL_CAPACITY];
+    
+    /**
+     * Constructor for an enemy store.
+     * 
+     * @param behaviour The behaviour code shared by every enemy in this store
+     */
+    public EnemyStore(int behaviour) {
+        this.behaviour = behaviour;
+    }
+    
+    /**
+     * Append an enemy. Position, speed and origin are in fixed point.
+     *
+     * @return The index the enemy was stored at
+     */
+    public int add(int enemyId, int enemyType, int ex, int ey, int enemySpeed, int enemyHealth,
+                   int enemyMaxHealth, int enemyDamage, int enemyDifficulty, int enemyOriginX, int enemyPhase) {
+        if (size == id.length) {
+            int capacity = size * 2;
+            id = Arrays.copyOf(id, capacity);
+            type = Arrays.copyOf(type, capacity);
+            x = Arrays.copyOf(x, capacity);
+            y = Arrays.copyOf(y, capacity);
+            speed = Arrays.copyOf(speed, capacity);
+            health = Arrays.copyOf(health, capacity);
+            maxHealth = Arrays.copyOf(maxHealth, capacity);
+            damage = Arrays.copyOf(damage, capacity);
+            difficulty = Arrays.copyOf(difficulty, capacity);
+            originX = Arrays.copyOf(originX, capacity);
+            phase = Arrays.copyOf(phase, capacity);
+        }
+        int i = size++;
+        id[i] = enemyId;
+        type[i] = enemyType;
+        x[i] = ex;
+        y[i] = ey;
+        speed[i] = enemySpeed;
+        health[i] = enemyHealth;
+        maxHealth[i] = enemyMaxHealth;
+        damage[i] = enemyDamage;
+        difficulty[i] = enemyDifficulty;
+        originX[i] = enemyOriginX;
+        phase[i] = enemyPhase;
+        return i;
+    }
+    
+    /**
+     * Remove the enemy at an index by moving the last one into its place.
+     *
+     * @param i The index to remove
+     */
+    public void removeAt(int i) {
+        int last = --size;
+        id[i] = id[last];
+        type[i] = type[last];
+        x[i] = x[last];
+        y[i] = y[last];
+        speed[i] = speed[last];
+        health[i] = health[last];
+        maxHealth[i] = maxHealth[last];
+        damage[i] = damage[last];
+        difficulty[i] = difficulty[last];
+        originX[i] = originX[last];
+        phase[i] = phase[last];
+    }
+    
+    /**
+     * Remove all enemies while keeping the allocated arrays.
+     */
+    public void clear() {
+        size = 0;
+    }
+}
@@ -0,0 +1,149 @@
+import java.lang.invoke.VarHandle;
+
+/**
+ * Single-producer, multi-consumer ring buffer of gameplay events.
+ *
+ * The simulation thread publishes into preallocated slots and never waits:
+ * a consumer that falls more than a full ring behind simply loses the oldest
+ * events and sees the loss in its dropped count. Each consumer keeps its own
+ * read position, so a slow consumer never holds up the others. Slots carry
+ * their sequence number, written before and after the data, so a reader can
+ * tell when a slot was overwritten while it was copying it.
+ */
+public class EventBus {
+    private final GameEvent[] slots;
+    private final int mask;
+    private volatile long cursor = -1; // Last published sequence
+    private long next = 0;             // Owned by the producer
+    
+    /**
+     * Constructor for the event bus.
+     * 
+     * @param capacity The number of slots, rounded up to a power of two
+     */
+    public EventBus(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.slots = new GameEvent[size];
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            slots[i] = new GameEvent();
+        }
+    }
+    
+    /**
+     * Publish an event. Only the simulation thread may call this.
+     */
+    public void publish(int type, int tick, int kind, int value, int x, int y, int flags) {
+        long sequence = next++;
+        GameEvent slot = slots[(int) sequence & mask];
+        
+        // Mark the slot as being written before touching its data
+        slot.sequence = -1;
+        VarHandle.storeStoreFence();
+        slot.type = type;
+        slot.tick = tick;
+        slot.kind = kind;
+        slot.value = value;
+        slot.x = x;
+        slot.y = y;
+        slot.flags = flags;
+        slot.sequence = sequence;
+        cursor = sequence;
+    }
+    
+    /**
+     * Publish an event that has no position or flags.
+     */
+    public void publish(int type, int tick, int kind, int value) {
+        publish(type, tick, kind, value, 0, 0, 0);
+    }
+    
+    /**
+     * Start reading events published from now on.
+     * 
+     * @return A subscription for one consumer thread
+     */
+    public Subscription subscribe() {
+        return new Subscription(cursor + 1);
+    }
+    
+    /**
+     * Receives events drained from a subscription.
+     */
+    public interface Handler {
+        void onEvent(GameEvent event);
+    }
+    
+    /**
+     * One consumer's read position. Not thread-safe; use one per consumer thread.
+     */
+    public class Subscription {
+        private final GameEvent scratch = new GameEvent();
+        private long nextRead;
+        private long dropped;
+        
+        private Subscription(long nextRead) {
+            this.nextRead = nextRead;
+        }
+        
+        /**
+         * Copy the next event, if there is one.
+         * 
+         * @param out The event to copy into
+         * @return false if there were no new events
+         */
+        public boolean poll(GameEvent out) {
+            while (true) {
+                long available = cursor;
+                if (nextRead > available) {
+                    return false;
+                }
+                
+                // Skip what the producer has already overwritten
+                long oldest = available - slots.length + 1;
+                if (nextRead < oldest) {
+                    dropped += oldest - nextRead;
+                    nextRead = oldest;
+                }
+                
+                GameEvent slot = slots[(int) nextRead & mask];
+                if (slot.sequence == nextRead) {
+                    out.copyFrom(slot);
+                    VarHandle.loadLoadFence();
+                    if (slot.sequence == nextRead) {
+                        nextRead++;
+                        return true;
+                    }
+                }
+                // Overwritten while we looked; the next pass skips ahead
+                dropped++;
+                nextRead++;
+            }
+        }
+        
+        /**
+         * Hand every pending event to a handler.
+         * 
+         * @param handler The handler to call
+         * @param limit The most events to handle in this call
+         * @return The number of events handled
+         */
+        public int drain(Handler handler, int limit) {
+            int handled = 0;
+            while (handled < limit && poll(scratch)) {
+                handler.onEvent(scratch);
+                handled++;
+            }
+            return handled;
+        }
+        
+        /**
+         * Get the number of events this consumer missed by falling too far behind.
+         * 
+         * @return The dropped event count
+         */
+        public long getDropped() {
+            return dropped;
+        }
+    }
+}
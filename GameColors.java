@@ -9,6 +9,7 @@ public class GameColors {
     public static final Color BACKGROUND = new Color(0x111111);
     public static final Color TEXT = new Color(0xFFFFFF);
     public static final Color ACCENT_YELLOW = new Color(0xFFDC00);
+    public static final Color GRID = new Color(0x222222);
     
     // Additional colors for game objects
     public static final Color PLAYER_CIRCLE = new Color(0x39CCCC);  // Cyan
@@ -18,4 +19,10 @@ public class GameColors {
     public static final Color ENEMY_CIRCLE = new Color(0xFF851B);   // Orange
     public static final Color ENEMY_TRIANGLE = new Color(0xF012BE); // Magenta
     public static final Color ENEMY_CUBE = new Color(0xFF4136);     // Red
+    
+    public static final Color POWERUP_SPEED = new Color(0x7FDBFF);  // Light blue
+    public static final Color POWERUP_SPIRAL = new Color(0x01FF70); // Lime
+    public static final Color POWERUP_REWIND = new Color(0xF0F0F0); // Silver
+    
+    public static final Color OVERLAY = new Color(0, 0, 0, 150);    // Translucent black
 }
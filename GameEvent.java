@@ -0,0 +1,66 @@
+/**
+ * One gameplay event, as stored in an {@link EventBus} slot.
+ *
+ * Slots are preallocated and reused, so events are plain int fields whose
+ * meaning depends on the type:
+ * GAME_START - kind is the starting level, value the starting score (both above the
+ *   defaults when a saved run is resumed)
+ * HIT, KILL - kind is the enemy shape, value the damage or points, flags 1 for a critical
+ * SCORE - value is the new total
+ * POWER_UP - kind is the power-up type
+ * DAMAGE_TAKEN - value is the damage, LIFE_LOST - value is the lives left
+ * LEVEL_UP - value is the new level, GAME_OVER - value is the final score
+ * REWIND - value is the number of ticks undone
+ * BOSS_DEFEATED - kind is the boss layout, value the bonus points
+ * x and y give the position the event happened at, where it has one.
+ */
+public class GameEvent {
+    public static final int GAME_START = 1;
+    public static final int GAME_OVER = 2;
+    public static final int HIT = 3;
+    public static final int KILL = 4;
+    public static final int SCORE = 5;
+    public static final int POWER_UP = 6;
+    public static final int DAMAGE_TAKEN = 7;
+    public static final int LIFE_LOST = 8;
+    public static final int LEVEL_UP = 9;
+    public static final int REWIND = 10;
+    public static final int BOSS_DEFEATED = 11;
+    
+    public static final int FLAG_CRITICAL = 1;
+    
+    // Sequence of the event held in this slot; written last by the publisher
+    volatile long sequence = -1;
+    
+    public int type;
+    public int tick;
+    public int kind;
+    public int value;
+    public int x;
+    public int y;
+    public int flags;
+    
+    /**
+     * Copy the fields of another event.
+     * 
+     * @param other The event to copy
+     */
+    public void copyFrom(GameEvent other) {
+        type = other.type;
+        tick = other.tick;
+        kind = other.kind;
+        value = other.value;
+        x = other.x;
+        y = other.y;
+        flags = other.flags;
+    }
+    
+    /**
+     * Check whether this event was a critical hit or kill.
+     * 
+     * @return true if critical
+     */
+    public boolean isCritical() {
+        return (flags & FLAG_CRITICAL) != 0;
+    }
+}
@@ -0,0 +1,61 @@
+import java.util.Random;
+
+/**
+ * A {@link Random} whose internal state can be read back and restored.
+ *
+ * Uses the same linear congruential generator as {@code java.util.Random},
+ * so seeded sequences match it exactly, but keeps the state in a plain field
+ * so save games can capture it without Java serialization.
+ */
+public class GameRandom extends Random {
+    private static final long MULTIPLIER = 0x5DEECE66DL;
+    private static final long ADDEND = 0xBL;
+    private static final long MASK = (1L << 48) - 1;
+    
+    private long state;
+    
+    /**
+     * Create a generator with a time-based seed.
+     */
+    public GameRandom() {
+        this(System.nanoTime());
+    }
+    
+    /**
+     * Create a generator with the given seed.
+     * 
+     * @param seed The initial seed
+     */
+    public GameRandom(long seed) {
+        super(seed);
+    }
+    
+    @Override
+    public void setSeed(long seed) {
+        state = (seed ^ MULTIPLIER) & MASK;
+    }
+    
+    @Override
+    protected int next(int bits) {
+        state = (state * MULTIPLIER + ADDEND) & MASK;
+        return (int) (state >>> (48 - bits));
+    }
+    
+    /**
+     * Get the raw generator state.
+     * 
+     * @return The current state
+     */
+    public long getState() {
+        return state;
+    }
+    
+    /**
+     * Restore a state previously returned by {@link #getState()}.
+     * 
+     * @param state The state to restore
+     */
+    public void setState(long state) {
+        this.state = state & MASK;
+    }
+}
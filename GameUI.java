@@ -12,6 +12,18 @@ public class GameUI {
     private final int HEALTH_BAR_HEIGHT = 15;
     private final int LEVEL_BAR_HEIGHT = 8;
     
+    // Lightning bolt outline of the speed power-up
+    private static final int[] SPEED_BOLT_X = {7, 3, 7, 3, 12, 8, 12};
+    private static final int[] SPEED_BOLT_Y = {0, 5, 5, 10, 5, 5, 0};
+    
+    // Left-pointing arrowhead of the rewind power-up, drawn twice side by side
+    private static final int[] REWIND_ARROW_X = {0, 7, 7};
+    private static final int[] REWIND_ARROW_Y = {7, 1, 13};
+    
+    // Scratch polygon points, reused by every draw call
+    private final int[] polygonX = new int[7];
+    private final int[] polygonY = new int[7];
+    
     public GameUI() {
         // Try to load a pixel font, fallback to monospaced
         try {
@@ -33,15 +45,28 @@ public class GameUI {
      * @param height The height of the game area
      */
     public void drawBackground(Graphics g, int width, int height) {
+        drawBackground(g, width, height, 0, 0);
+    }
+    
+    /**
+     * Draw the game background seen through a scrolled camera.
+     * 
+     * @param g The graphics context
+     * @param width The width of the game area
+     * @param height The height of the game area
+     * @param cameraX Left edge of the view in arena coordinates
+     * @param cameraY Top edge of the view in arena coordinates
+     */
+    public void drawBackground(Graphics g, int width, int height, int cameraX, int cameraY) {
         g.setColor(GameColors.BACKGROUND);
         g.fillRect(0, 0, width, height);
         
-        // Add grid lines for retro effect
-        g.setColor(new Color(0x222222));
-        for (int i = 0; i < width; i += 20) {
+        // Add grid lines for retro effect, scrolling with the camera
+        g.setColor(GameColors.GRID);
+        for (int i = -Math.floorMod(cameraX, 20); i < width; i += 20) {
             g.drawLine(i, 0, i, height);
         }
-        for (int i = 0; i < height; i += 20) {
+        for (int i = -Math.floorMod(cameraY, 20); i < height; i += 20) {
             g.drawLine(0, i, width, i);
         }
     }
@@ -94,18 +119,18 @@ public class GameUI {
      * Draw the level progress bar.
      * 
      * @param g The graphics context
-     * @param level The current level
+     * @param progress Progress towards the next level, between 0.0 and 1.0
      * @param x X position of the bar
      * @param y Y position of the bar
      * @param width Width of the bar
      */
-    public void drawLevelProgressBar(Graphics g, Level level, int x, int y, int width) {
+    public void drawLevelProgressBar(Graphics g, float progress, int x, int y, int width) {
         // Draw level progress background
         g.setColor(new Color(0x333333));
         g.fillRect(x, y, width, LEVEL_BAR_HEIGHT);
         
         // Calculate progress width
-        int progressWidth = (int)(width * level.getProgressPercentage());
+        int progressWidth = (int)(width * progress);
         
         // Draw progress bar
         g.setColor(GameColors.ACCENT_YELLOW);
@@ -120,12 +145,12 @@ public class GameUI {
      * Draw game stats.
      * 
      * @param g The graphics context
-     * @param level Current level
+     * @param levelNumber Current level number
      * @param score Current score
      * @param lives Remaining lives
      * @param playerShape Current player shape
      */
-    public void drawGameStats(Graphics g, Level level, int score, int lives, String playerShape) {
+    public void drawGameStats(Graphics g, int levelNumber, int score, int lives, String playerShape) {
         g.setColor(GameColors.TEXT);
         g.setFont(pixelFont);
         
@@ -134,7 +159,7 @@ public class GameUI {
         int lineHeight = 22;
         
         // Level indicator
-        g.drawString("LEVEL: " + level.getLevelNumber(), 10, y);
+        g.drawString("LEVEL: " + levelNumber, 10, y);
         y += lineHeight;
         
         // Score
@@ -163,6 +188,250 @@ public class GameUI {
         g.drawString("1-2-3: Change Shape   |   ARROWS: Move   |   SPACE: Fire", 10, y + 15);
     }
     
+    /**
+     * Draw how many rewinds the player has banked.
+     * 
+     * @param g The graphics context
+     * @param charges Rewind charges held
+     * @param x X position
+     * @param y Y position of the text baseline
+     */
+    public void drawRewindCharges(Graphics g, int charges, int x, int y) {
+        g.setFont(smallPixelFont);
+        g.setColor(GameColors.POWERUP_REWIND);
+        g.drawString("REWIND x" + charges + " (R)", x, y);
+    }
+    
+    /**
+     * Draw the performance overlay in the top right corner.
+     * 
+     * @param g The graphics context
+     * @param width Width of the game area
+     * @param fps Frames painted during the last second
+     * @param tickMicros Time spent in the last simulation tick
+     * @param collisionMicros Time spent checking collisions in the last tick
+     * @param paintMicros Time spent painting the last frame
+     * @param enemies Live enemy count
+     * @param projectiles Live projectile count
+     * @param powerUps Live power-up count
+     * @param particles Live particle count
+     */
+    public void drawPerformanceOverlay(Graphics g, int width, int fps, long tickMicros, long collisionMicros,
+                                       long paintMicros, int enemies, int projectiles, int powerUps, int particles) {
+        int boxWidth = 170;
+        int x = width - boxWidth - 10;
+        int y = 10;
+        int lineHeight = 14;
+        
+        // Translucent panel so the numbers stay readable over a crowded field
+        g.setColor(GameColors.OVERLAY);
+        g.fillRect(x, y, boxWidth, lineHeight * 8 + 8);
+        
+        g.setFont(smallPixelFont);
+        g.setColor(fps < 50 ? GameColors.HEALTH_RED : GameColors.SUCCESS_GREEN);
+        y += lineHeight;
+        g.drawString("FPS: " + fps, x + 6, y);
+        
+        g.setColor(GameColors.TEXT);
+        y += lineHeight;
+        g.drawString("TICK: " + tickMicros + " us", x + 6, y);
+        y += lineHeight;
+        g.drawString("COLLIDE: " + collisionMicros + " us", x + 6, y);
+        y += lineHeight;
+        g.drawString("PAINT: " + paintMicros + " us", x + 6, y);
+        y += lineHeight;
+        g.drawString("ENEMIES: " + enemies, x + 6, y);
+        y += lineHeight;
+        g.drawString("SHOTS: " + projectiles, x + 6, y);
+        y += lineHeight;
+        g.drawString("POWER-UPS: " + powerUps, x + 6, y);
+        y += lineHeight;
+        g.drawString("PARTICLES: " + particles, x + 6, y);
+    }
+    
+    /**
+     * Draw input latency under the performance overlay: the median and 99th
+     * percentile time from key press to screen for each kind of input.
+     * 
+     * @param g The graphics context
+     * @param width The width of the drawing area
+     * @param latency The latencies recorded so far
+     */
+    public void drawLatencyOverlay(Graphics g, int width, InputLatency latency) {
+        int boxWidth = 170;
+        int x = width - boxWidth - 10;
+        int lineHeight = 14;
+        int y = 10 + lineHeight * 8 + 12;
+        
+        g.setColor(GameColors.OVERLAY);
+        g.fillRect(x, y, boxWidth, lineHeight * (InputLatency.KINDS + 1) + 8);
+        
+        g.setFont(smallPixelFont);
+        g.setColor(GameColors.TEXT);
+        y += lineHeight;
+        g.drawString("INPUT P50/P99 MS", x + 6, y);
+        for (int kind = 0; kind < InputLatency.KINDS; kind++) {
+            y += lineHeight;
+            g.drawString(String.format("%s: %.1f/%.1f", InputLatency.name(kind).toUpperCase(),
+                latency.percentile(kind, 50) / 1000.0, latency.percentile(kind, 99) / 1000.0), x + 6, y);
+        }
+    }
+    
+    /**
+     * Draw a circle, triangle or cube.
+     * 
+     * @param g The graphics context
+     * @param shapeType The shape type code
+     * @param x X position
+     * @param y Y position
+     * @param size Width and height of the shape
+     * @param color Fill color
+     */
+    public void drawShape(Graphics g, int shapeType, int x, int y, int size, Color color) {
+        g.setColor(color);
+        switch (shapeType) {
+            case WorldState.SHAPE_TRIANGLE:
+                polygonX[0] = x + size/2;
+                polygonX[1] = x;
+                polygonX[2] = x + size;
+                polygonY[0] = y;
+                polygonY[1] = y + size;
+                polygonY[2] = y + size;
+                g.fillPolygon(polygonX, polygonY, 3);
+                break;
+            case WorldState.SHAPE_CUBE:
+                g.fillRect(x, y, size, size);
+                break;
+            default:
+                g.fillOval(x, y, size, size);
+        }
+    }
+    
+    /**
+     * Draw the player.
+     * 
+     * @param g The graphics context
+     * @param shapeType The player's shape type code
+     * @param x X position
+     * @param y Y position
+     */
+    public void drawPlayer(Graphics g, int shapeType, int x, int y) {
+        drawShape(g, shapeType, x, y, WorldState.SHAPE_SIZE, getPlayerColor(shapeType));
+    }
+    
+    /**
+     * Draw an enemy.
+     * 
+     * @param g The graphics context
+     * @param shapeType The enemy's shape type code
+     * @param x X position
+     * @param y Y position
+     */
+    public void drawEnemy(Graphics g, int shapeType, int x, int y) {
+        drawShape(g, shapeType, x, y, WorldState.SHAPE_SIZE, getEnemyColor(shapeType));
+    }
+    
+    /**
+     * Draw a projectile, colored by the shape that fired it. Enemy shots are a
+     * little larger so they stand out from the player's.
+     * 
+     * @param g The graphics context
+     * @param shapeType The shape type code of the shooter, with PROJECTILE_HOSTILE set for enemy shots
+     * @param x X position
+     * @param y Y position
+     */
+    public void drawProjectile(Graphics g, int shapeType, int x, int y) {
+        if ((shapeType & WorldState.PROJECTILE_HOSTILE) != 0) {
+            g.setColor(getEnemyColor(shapeType & ~WorldState.PROJECTILE_HOSTILE));
+            g.fillOval(x - 1, y - 1, WorldState.PROJECTILE_SIZE + 2, WorldState.PROJECTILE_SIZE + 2);
+            return;
+        }
+        g.setColor(getPlayerColor(shapeType));
+        g.fillOval(x, y, WorldState.PROJECTILE_SIZE, WorldState.PROJECTILE_SIZE);
+    }
+    
+    /**
+     * Draw a power-up.
+     * 
+     * @param g The graphics context
+     * @param type The power-up type code
+     * @param x X position
+     * @param y Y position
+     */
+    public void drawPowerUp(Graphics g, int type, int x, int y) {
+        switch (type) {
+            case WorldState.POWERUP_HEALTH:
+                // Health power-up (cross shape)
+                g.setColor(GameColors.SUCCESS_GREEN);
+                g.fillRect(x + 5, y, 5, 15);
+                g.fillRect(x, y + 5, 15, 5);
+                break;
+            case WorldState.POWERUP_SHIELD:
+                // Shield power-up (shield shape)
+                g.setColor(GameColors.ACCENT_YELLOW);
+                g.fillOval(x, y, 15, 15);
+                g.setColor(GameColors.BACKGROUND);
+                g.fillOval(x + 3, y + 3, 9, 9);
+                break;
+            case WorldState.POWERUP_SPEED:
+                // Speed power-up (lightning bolt)
+                g.setColor(GameColors.POWERUP_SPEED);
+                for (int i = 0; i < 7; i++) {
+                    polygonX[i] = x + SPEED_BOLT_X[i];
+                    polygonY[i] = y + SPEED_BOLT_Y[i];
+                }
+                g.fillPolygon(polygonX, polygonY, 7);
+                break;
+            case WorldState.POWERUP_SPIRAL:
+                // Spiral power-up (pinwheel of shots)
+                g.setColor(GameColors.POWERUP_SPIRAL);
+                g.fillOval(x + 5, y + 5, 5, 5);
+                g.fillOval(x + 5, y, 4, 4);
+                g.fillOval(x + 11, y + 5, 4, 4);
+                g.fillOval(x + 6, y + 11, 4, 4);
+                g.fillOval(x, y + 6, 4, 4);
+                break;
+            case WorldState.POWERUP_REWIND:
+                // Rewind power-up (two arrows pointing back)
+                g.setColor(GameColors.POWERUP_REWIND);
+                for (int i = 0; i < 3; i++) {
+                    polygonX[i] = x + REWIND_ARROW_X[i];
+                    polygonY[i] = y + REWIND_ARROW_Y[i];
+                }
+                g.fillPolygon(polygonX, polygonY, 3);
+                for (int i = 0; i < 3; i++) {
+                    polygonX[i] += 7;
+                }
+                g.fillPolygon(polygonX, polygonY, 3);
+                break;
+            default:
+                g.setColor(Color.WHITE);
+                g.fillOval(x, y, 15, 15);
+        }
+    }
+    
+    private static Color getPlayerColor(int shapeType) {
+        switch (shapeType) {
+            case WorldState.SHAPE_TRIANGLE:
+                return GameColors.PLAYER_TRIANGLE;
+            case WorldState.SHAPE_CUBE:
+                return GameColors.PLAYER_CUBE;
+            default:
+                return GameColors.PLAYER_CIRCLE;
+        }
+    }
+    
+    private static Color getEnemyColor(int shapeType) {
+        switch (shapeType) {
+            case WorldState.SHAPE_TRIANGLE:
+                return GameColors.ENEMY_TRIANGLE;
+            case WorldState.SHAPE_CUBE:
+                return GameColors.ENEMY_CUBE;
+            default:
+                return GameColors.ENEMY_CIRCLE;
+        }
+    }
+    
     /**
      * Draw enemy health bar.
      * 
@@ -200,8 +469,9 @@ public class GameUI {
      * @param height The height of the game area
      * @param finalScore The final score
      * @param highestLevel The highest level reached
+     * @param bestScore The player's best recorded score
      */
-    public void drawGameOverScreen(Graphics g, int width, int height, int finalScore, int highestLevel) {
+    public void drawGameOverScreen(Graphics g, int width, int height, int finalScore, int highestLevel, int bestScore) {
         // Semi-transparent overlay
         g.setColor(new Color(0, 0, 0, 200));
         g.fillRect(0, 0, width, height);
@@ -225,12 +495,17 @@ public class GameUI {
         g.drawString(scoreText, (width - fm.stringWidth(scoreText)) / 2, height / 2 + 10);
         g.drawString(levelText, (width - fm.stringWidth(levelText)) / 2, height / 2 + 40);
         
+        // Personal best, highlighted when this game set it
+        String bestText = finalScore >= bestScore && finalScore > 0 ? "NEW BEST SCORE!" : "BEST SCORE: " + bestScore;
+        g.setColor(finalScore >= bestScore && finalScore > 0 ? GameColors.SUCCESS_GREEN : GameColors.TEXT);
+        g.drawString(bestText, (width - fm.stringWidth(bestText)) / 2, height / 2 + 70);
+        
         String restartText = "PRESS ENTER TO RESTART";
         g.setFont(smallPixelFont);
         g.setColor(GameColors.ACCENT_YELLOW);
         g.drawString(restartText, 
                   (width - g.getFontMetrics().stringWidth(restartText)) / 2, 
-                  height / 2 + 80);
+                  height / 2 + 105);
     }
     
     /**
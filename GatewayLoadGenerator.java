@@ -0,0 +1,130 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Loopback load generator for {@link SessionGateway}.
+ *
+ * Opens a number of idle sessions that log in and then stay silent, plus a
+ * number of active sessions that queue for a match and then ping at a fixed
+ * rate, and reports round-trip percentiles together with the gateway counters.
+ *
+ * Run with: java -Xmx256m GatewayLoadGenerator [idle] [active] [seconds] [pingsPerSecond]
+ */
+public class GatewayLoadGenerator {
+    public static void main(String[] args) throws Exception {
+        int idleCount = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int activeCount = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        int pingsPerSecond = args.length > 3 ? Integer.parseInt(args[3]) : 20;
+        
+        SessionGateway gateway = new SessionGateway(0, new SessionGateway.RelayMatchHandler());
+        gateway.start();
+        int port = gateway.getPort();
+        System.out.println("Gateway on port " + port
+            + (SessionGateway.usesVirtualThreads() ? " using virtual threads" : " using platform threads"));
+        
+        // Idle sessions are opened from this thread; they need no client thread once logged in
+        List<Socket> idleSockets = new ArrayList<>(idleCount);
+        long openStart = System.nanoTime();
+        for (int i = 0; i < idleCount; i++) {
+            try {
+                Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+                BufferedReader in = reader(socket);
+                send(socket, "LOGIN idle" + i);
+                in.readLine();
+                idleSockets.add(socket);
+            } catch (IOException e) {
+                System.out.println("Stopped opening idle sessions at " + i + ": " + e.getMessage());
+                break;
+            }
+        }
+        System.out.printf("Opened %d idle sessions in %d ms%n",
+            idleSockets.size(), (System.nanoTime() - openStart) / 1_000_000);
+        
+        LatencyHistogram roundTripMicros = new LatencyHistogram();
+        AtomicLong failures = new AtomicLong();
+        ExecutorService clients = SessionGateway.newSessionExecutor();
+        CountDownLatch done = new CountDownLatch(activeCount);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        long pingInterval = TimeUnit.SECONDS.toNanos(1) / pingsPerSecond;
+        
+        for (int i = 0; i < activeCount; i++) {
+            int clientId = i;
+            clients.execute(() -> {
+                try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+                    // An unpaired client gives up once the run is over
+                    socket.setSoTimeout((seconds + 5) * 1000);
+                    BufferedReader in = reader(socket);
+                    send(socket, "LOGIN active" + clientId);
+                    in.readLine();
+                    send(socket, "QUEUE");
+                    in.readLine();
+                    
+                    long next = System.nanoTime();
+                    while (next < deadline) {
+                        long sent = System.nanoTime();
+                        send(socket, "PING " + sent);
+                        // Skip relayed opponent traffic until our own PONG comes back
+                        String line;
+                        while ((line = in.readLine()) != null && !line.startsWith("PONG")) {
+                            // Opponent chatter
+                        }
+                        if (line == null) {
+                            failures.incrementAndGet();
+                            break;
+                        }
+                        roundTripMicros.record((System.nanoTime() - sent) / 1000);
+                        next += pingInterval;
+                        long sleep = next - System.nanoTime();
+                        if (sleep > 0) {
+                            TimeUnit.NANOSECONDS.sleep(sleep);
+                        }
+                    }
+                    send(socket, "QUIT");
+                } catch (Exception e) {
+                    failures.incrementAndGet();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        
+        Runtime runtime = Runtime.getRuntime();
+        while (!done.await(2, TimeUnit.SECONDS)) {
+            System.gc();
+            long usedMb = (runtime.totalMemory() - runtime.freeMemory()) / (1024 * 1024);
+            System.out.println(gateway.getStats() + " heap=" + usedMb + "MB");
+        }
+        
+        System.out.println("Round trip " + roundTripMicros.summary("us"));
+        System.out.println("Failures " + failures.get());
+        System.out.println("Gateway " + gateway.getStats());
+        
+        for (Socket socket : idleSockets) {
+            socket.close();
+        }
+        clients.shutdownNow();
+        gateway.stop();
+    }
+    
+    private static BufferedReader reader(Socket socket) throws IOException {
+        return new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8), 256);
+    }
+    
+    private static void send(Socket socket, String line) throws IOException {
+        OutputStream out = socket.getOutputStream();
+        out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+}
@@ -0,0 +1,127 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Collision narrowphase: finds the enemy each projectile hits.
+ *
+ * Finding hits only reads the world, so above a threshold the projectiles are
+ * sorted by grid row and split into chunks that each cover a band of the
+ * arena, which are searched in parallel on a fork-join pool. Each projectile's answer goes in its own slot,
+ * and the caller applies them in projectile order, so the result is the same
+ * whichever path ran.
+ */
+public class HitFinder {
+    private static final int MIN_CHUNK = 256;
+    
+    private final int parallelThreshold;
+    private final ForkJoinPool pool;
+    private int[] hits = new int[256];
+    private int[] order = new int[256];
+    private int[] rowStart = new int[2];
+    private int[] rowFill = new int[2];
+    private boolean lastRunParallel;
+    
+    /**
+     * Constructor for the hit finder.
+     * 
+     * @param parallelThreshold Projectile count at which the search goes parallel
+     * @param pool The pool to run parallel searches on
+     */
+    public HitFinder(int parallelThreshold, ForkJoinPool pool) {
+        this.parallelThreshold = parallelThreshold;
+        this.pool = pool;
+    }
+    
+    /**
+     * Find the first live enemy under every projectile.
+     * 
+     * @param projectiles The projectiles to check
+     * @param groups The enemy groups
+     * @param grid A grid built from those groups
+     * @param enemySize Width and height of an enemy
+     * @return An array whose first projectiles.size entries hold an enemy reference or
+     *         CollisionGrid.NO_HIT; reused on the next call
+     */
+    public int[] findHits(ProjectileStore projectiles, EnemyStore[] groups, CollisionGrid grid, int enemySize) {
+        int count = projectiles.size;
+        if (hits.length < count) {
+            hits = new int[Math.max(count, hits.length * 2)];
+            order = new int[hits.length];
+        }
+        
+        lastRunParallel = count >= parallelThreshold && pool.getParallelism() > 1;
+        if (!lastRunParallel) {
+            for (int p = 0; p < count; p++) {
+                hits[p] = grid.findHit(groups, projectiles.x[p], projectiles.y[p], enemySize, CollisionGrid.NO_HIT);
+            }
+            return hits;
+        }
+        
+        // Counting sort the projectiles by grid row so each task works on one area of the arena
+        int rows = grid.getRows();
+        if (rowStart.length < rows + 1) {
+            rowStart = new int[rows + 1];
+            rowFill = new int[rows + 1];
+        }
+        java.util.Arrays.fill(rowStart, 0, rows + 1, 0);
+        for (int p = 0; p < count; p++) {
+            rowStart[grid.row(projectiles.y[p]) + 1]++;
+        }
+        for (int r = 0; r < rows; r++) {
+            rowStart[r + 1] += rowStart[r];
+        }
+        System.arraycopy(rowStart, 0, rowFill, 0, rows);
+        for (int p = 0; p < count; p++) {
+            order[rowFill[grid.row(projectiles.y[p])]++] = p;
+        }
+        
+        pool.invoke(new ChunkTask(projectiles, groups, grid, enemySize, 0, count));
+        return hits;
+    }
+    
+    /**
+     * Check whether the last call ran in parallel.
+     * 
+     * @return true if the fork-join path was used
+     */
+    public boolean wasLastRunParallel() {
+        return lastRunParallel;
+    }
+    
+    /**
+     * Searches a run of row-sorted projectiles, splitting while the run is large. Because
+     * the run is sorted by row, each chunk covers one band of the arena.
+     */
+    private class ChunkTask extends RecursiveAction {
+        private final ProjectileStore projectiles;
+        private final EnemyStore[] groups;
+        private final CollisionGrid grid;
+        private final int enemySize;
+        private final int from;
+        private final int to;
+        
+        ChunkTask(ProjectileStore projectiles, EnemyStore[] groups, CollisionGrid grid, int enemySize,
+                  int from, int to) {
+            this.projectiles = projectiles;
+            this.groups = groups;
+            this.grid = grid;
+            this.enemySize = enemySize;
+            this.from = from;
+            this.to = to;
+        }
+        
+        @Override
+        protected void compute() {
+            if (to - from <= MIN_CHUNK) {
+                for (int k = from; k < to; k++) {
+                    int p = order[k];
+                    hits[p] = grid.findHit(groups, projectiles.x[p], projectiles.y[p], enemySize, CollisionGrid.NO_HIT);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new ChunkTask(projectiles, groups, grid, enemySize, from, middle),
+                      new ChunkTask(projectiles, groups, grid, enemySize, middle, to));
+        }
+    }
+}
@@ -0,0 +1,128 @@
+import java.awt.Color;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+
+/**
+ * Short floating text popups for kills, critical hits, power-ups and damage.
+ *
+ * Reads gameplay events from the {@link EventBus} on the render thread, at
+ * whatever rate frames are painted, and keeps a fixed number of popups.
+ */
+public class HudEffects implements EventBus.Handler {
+    private static final int MAX_POPUPS = 64;
+    private static final long POPUP_NANOS = 800_000_000L;
+    private static final int RISE = 30;
+    
+    private final EventBus.Subscription events;
+    private final String[] text = new String[MAX_POPUPS];
+    private final Color[] color = new Color[MAX_POPUPS];
+    private final int[] x = new int[MAX_POPUPS];
+    private final int[] y = new int[MAX_POPUPS];
+    private final long[] startNanos = new long[MAX_POPUPS];
+    private int nextPopup = 0;
+    private long now;
+    
+    /**
+     * Constructor for the HUD effects.
+     * 
+     * @param bus The bus to read gameplay events from
+     */
+    public HudEffects(EventBus bus) {
+        this.events = bus.subscribe();
+    }
+    
+    /**
+     * Turn newly published events into popups. Call once per painted frame.
+     */
+    public void update() {
+        update(System.nanoTime());
+    }
+    
+    /**
+     * Turn newly published events into popups, timing them by the given clock.
+     * 
+     * @param nowNanos The current time, on whatever clock the caller animates by
+     */
+    public void update(long nowNanos) {
+        now = nowNanos;
+        events.drain(this, 1024);
+    }
+    
+    @Override
+    public void onEvent(GameEvent event) {
+        switch (event.type) {
+            case GameEvent.KILL:
+                if (event.isCritical()) {
+                    add("CRITICAL +" + event.value, GameColors.ACCENT_YELLOW, event.x, event.y);
+                } else {
+                    add("+" + event.value, GameColors.TEXT, event.x, event.y);
+                }
+                break;
+            case GameEvent.POWER_UP:
+                add(WorldState.powerUpName(event.kind).toUpperCase(), GameColors.SUCCESS_GREEN, event.x, event.y);
+                break;
+            case GameEvent.REWIND:
+                add("REWIND", GameColors.POWERUP_REWIND, event.x, event.y);
+                break;
+            case GameEvent.BOSS_DEFEATED:
+                add("BOSS +" + event.value, GameColors.ACCENT_YELLOW, event.x, event.y - 20);
+                break;
+            case GameEvent.DAMAGE_TAKEN:
+                add("-" + event.value, GameColors.HEALTH_RED, event.x, event.y);
+                break;
+            case GameEvent.GAME_START:
+                // Old popups do not carry over into a new run
+                clear();
+                break;
+            default:
+                break;
+        }
+    }
+    
+    /**
+     * Remove all popups.
+     */
+    public void clear() {
+        for (int i = 0; i < MAX_POPUPS; i++) {
+            text[i] = null;
+        }
+    }
+    
+    /**
+     * Start a popup, replacing the oldest when all are in use.
+     */
+    private void add(String message, Color messageColor, int px, int py) {
+        int i = nextPopup;
+        nextPopup = (nextPopup + 1) % MAX_POPUPS;
+        text[i] = message;
+        color[i] = messageColor;
+        x[i] = px;
+        y[i] = py;
+        startNanos[i] = now;
+    }
+    
+    /**
+     * Draw the live popups. Expects the graphics to be in arena coordinates.
+     * 
+     * @param g The graphics context
+     * @param gameUI The UI, for its fonts
+     */
+    public void draw(Graphics g, GameUI gameUI) {
+        g.setFont(gameUI.getSmallPixelFont());
+        FontMetrics fm = g.getFontMetrics();
+        for (int i = 0; i < MAX_POPUPS; i++) {
+            if (text[i] == null) {
+                continue;
+            }
+            long age = now - startNanos[i];
+            if (age >= POPUP_NANOS) {
+                text[i] = null;
+                continue;
+            }
+            // Drift upwards over the popup's lifetime
+            int rise = (int) (RISE * age / POPUP_NANOS);
+            g.setColor(color[i]);
+            g.drawString(text[i], x[i] + (WorldState.SHAPE_SIZE - fm.stringWidth(text[i])) / 2, y[i] - rise);
+        }
+    }
+}
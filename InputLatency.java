@@ -0,0 +1,185 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Input-to-photon latency for each kind of input.
+ *
+ * Keys are stamped when they reach keyPressed. When a tick applies one that
+ * changes what is on screen - a move, a shot or a shape shift - the
+ * simulation thread queues the stamp with the sequence number of the frame
+ * that tick publishes. The EDT takes stamps off the queue once it has shown
+ * a frame at least that new, so an input whose frame the renderer skipped is
+ * counted when the next one reaches the screen. Each latency is split into
+ * the wait for a tick and the whole trip to the screen; all values are in
+ * microseconds.
+ */
+public class InputLatency {
+    // Input kinds
+    public static final int NONE = -1;
+    public static final int MOVE = 0;
+    public static final int FIRE = 1;
+    public static final int SHIFT = 2;
+    public static final int KINDS = 3;
+    private static final String[] NAMES = {"move", "fire", "shift"};
+    
+    // Applied inputs waiting for their frame, written by the simulation thread and read by the EDT
+    private final int mask;
+    private final int[] kind;
+    private final long[] arrivalNanos;
+    private final long[] appliedNanos;
+    private final long[] frameSequence;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    
+    private final LatencyHistogram[] screenMicros = new LatencyHistogram[KINDS];
+    private final LatencyHistogram[] tickWaitMicros = new LatencyHistogram[KINDS];
+    
+    /**
+     * Constructor for the latency tracker.
+     *
+     * @param capacity The most applied inputs that can wait for a frame, rounded up to a power of two
+     */
+    public InputLatency(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.mask = size - 1;
+        this.kind = new int[size];
+        this.arrivalNanos = new long[size];
+        this.appliedNanos = new long[size];
+        this.frameSequence = new long[size];
+        for (int k = 0; k < KINDS; k++) {
+            screenMicros[k] = new LatencyHistogram();
+            tickWaitMicros[k] = new LatencyHistogram();
+        }
+    }
+    
+    /**
+     * Note an input whose effect a tick has applied. Only the simulation thread may call this.
+     *
+     * @param inputKind MOVE, FIRE or SHIFT
+     * @param arrived When the key reached keyPressed, from System.nanoTime()
+     * @param applied When the tick applied it
+     * @param sequence The sequence number of the frame that first shows the effect
+     * @return false if too many inputs were already waiting and this one was not tracked
+     */
+    public boolean applied(int inputKind, long arrived, long applied, long sequence) {
+        long position = tail.get();
+        if (position - head.get() > mask) {
+            return false;
+        }
+        int slot = (int) position & mask;
+        kind[slot] = inputKind;
+        arrivalNanos[slot] = arrived;
+        appliedNanos[slot] = applied;
+        frameSequence[slot] = sequence;
+        tail.lazySet(position + 1);
+        return true;
+    }
+    
+    /**
+     * Note that a frame has reached the screen, and record every input it is the first to show.
+     * Only the EDT may call this.
+     *
+     * @param sequence The sequence number of the frame
+     * @param presented When it was handed to the screen, from System.nanoTime()
+     */
+    public void presented(long sequence, long presented) {
+        long position = head.get();
+        long end = tail.get();
+        while (position < end) {
+            int slot = (int) position & mask;
+            if (frameSequence[slot] > sequence) {
+                break;
+            }
+            screenMicros[kind[slot]].record((presented - arrivalNanos[slot]) / 1000);
+            tickWaitMicros[kind[slot]].record((appliedNanos[slot] - arrivalNanos[slot]) / 1000);
+            position++;
+        }
+        head.lazySet(position);
+    }
+    
+    /**
+     * Get a percentile of the time from key press to screen.
+     *
+     * @param inputKind MOVE, FIRE or SHIFT
+     * @param percentile A percentile between 0 and 100
+     * @return The latency in microseconds, or 0 if none was recorded
+     */
+    public long percentile(int inputKind, double percentile) {
+        return screenMicros[inputKind].percentile(percentile);
+    }
+    
+    /**
+     * Get the name of an input kind.
+     *
+     * @param inputKind MOVE, FIRE or SHIFT
+     * @return The name
+     */
+    public static String name(int inputKind) {
+        return NAMES[inputKind];
+    }
+    
+    /**
+     * Check whether anything has been recorded since the last reset.
+     *
+     * @return true if at least one input reached the screen
+     */
+    public boolean hasSamples() {
+        for (int k = 0; k < KINDS; k++) {
+            if (screenMicros[k].count() > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Clear the recorded latencies. Inputs still waiting for their frame are kept.
+     */
+    public void reset() {
+        for (int k = 0; k < KINDS; k++) {
+            screenMicros[k].reset();
+            tickWaitMicros[k].reset();
+        }
+    }
+    
+    /**
+     * Format the recorded latencies.
+     *
+     * @return A multi-line summary
+     */
+    public String summary() {
+        StringBuilder text = new StringBuilder();
+        for (int k = 0; k < KINDS; k++) {
+            text.append(String.format("%-6s to screen  %s%n", NAMES[k], screenMicros[k].summary("us")));
+            text.append(String.format("%-6s to tick    %s%n", "", tickWaitMicros[k].summary("us")));
+        }
+        return text.toString();
+    }
+    
+    /**
+     * Append the summary to a log file, and print it when asked to.
+     *
+     * @param title A heading for this run, such as the loop and rendering settings
+     * @param logFile The file to append to, or null for none
+     * @param print Whether to print the summary to the console as well
+     */
+    public void report(String title, String logFile, boolean print) {
+        String text = title + "\n" + summary();
+        if (print) {
+            System.out.print(text);
+        }
+        if (logFile == null) {
+            return;
+        }
+        try {
+            Files.write(Paths.get(logFile), (text + "\n").getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            System.err.println("Could not write latency log: " + e.getMessage());
+        }
+    }
+}
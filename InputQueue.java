@@ -0,0 +1,91 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded lock-free queue of input codes from any thread to the simulation thread.
+ *
+ * Producers claim a slot with a compare-and-set on the tail and publish it by
+ * advancing that slot's sequence number; the single consumer reads slots in
+ * order without any atomic read-modify-write. Each code travels with the time
+ * it was offered. Nothing is allocated per event.
+ */
+public class InputQueue {
+    public static final int EMPTY = Integer.MIN_VALUE;
+    
+    private final int[] codes;
+    private final long[] times;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private final int mask;
+    private long head = 0; // Owned by the consumer
+    private long polledNanos;
+    
+    /**
+     * Constructor for the input queue.
+     * 
+     * @param capacity The maximum number of queued events, rounded up to a power of two
+     */
+    public InputQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.codes = new int[size];
+        this.times = new long[size];
+        this.sequences = new AtomicLongArray(size);
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+    
+    /**
+     * Add an event. Safe to call from any thread.
+     * 
+     * @param code The event code
+     * @param timeNanos When the event happened, from System.nanoTime()
+     * @return false if the queue was full and the event was dropped
+     */
+    public boolean offer(int code, long timeNanos) {
+        long position;
+        while (true) {
+            position = tail.get();
+            long sequence = sequences.get((int) position & mask);
+            if (sequence == position) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+            } else if (sequence < position) {
+                return false;
+            }
+        }
+        int slot = (int) position & mask;
+        codes[slot] = code;
+        times[slot] = timeNanos;
+        sequences.lazySet(slot, position + 1);
+        return true;
+    }
+    
+    /**
+     * Take the next event. Only the simulation thread may call this.
+     * 
+     * @return The event code, or {@link #EMPTY} if there is none
+     */
+    public int poll() {
+        int slot = (int) head & mask;
+        if (sequences.get(slot) != head + 1) {
+            return EMPTY;
+        }
+        int code = codes[slot];
+        polledNanos = times[slot];
+        sequences.lazySet(slot, head + mask + 1);
+        head++;
+        return code;
+    }
+    
+    /**
+     * Get the time the event last returned by poll was offered. Only the simulation thread may call this.
+     * 
+     * @return The time, from System.nanoTime()
+     */
+    public long getPolledNanos() {
+        return polledNanos;
+    }
+}
@@ -0,0 +1,156 @@
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * Measures area-of-interest filtering against sending every client the whole world.
+ *
+ * The arena grows with the entity count so that density, and so what one
+ * client can see, stays about the same, as it would when a bigger arena holds
+ * more players. A number of clients wander with a 500x600 viewport each; every
+ * tick the {@link InterestGrid} is built once, then filtered and delta-encoded
+ * for each client against what it acknowledged a few ticks back. The time per
+ * client should stay flat as the world grows, and the bytes are compared with
+ * the delta of the whole world that broadcasting would send each client.
+ *
+ * Run with: java InterestBenchmark [clients] [farInterval]
+ */
+public class InterestBenchmark {
+    private static final int VIEW_WIDTH = 500;
+    private static final int VIEW_HEIGHT = 600;
+    private static final int MARGIN = 200;
+    private static final int CELL_SIZE = 128;
+    // About as crowded as a busy wave in the single-player arena
+    private static final int PIXELS_PER_ENTITY = 2500;
+    private static final int TICKS = 300;
+    private static final int ACK_LAG = 4;
+    
+    public static void main(String[] args) {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int farInterval = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int[] entityCounts = {1000, 10000, 100000, 400000};
+        
+        System.out.println(clients + " clients, " + VIEW_WIDTH + "x" + VIEW_HEIGHT + " view, " + MARGIN
+            + " px margin refreshed every " + farInterval + " ticks");
+        System.out.println("entities  arena  build us  filter us/client  sent/client  events/client"
+            + "  B/client  broadcast B/client");
+        for (int count : entityCounts) {
+            run(count, clients, farInterval);
+        }
+    }
+    
+    private static void run(int entityCount, int clients, int farInterval) {
+        int worldSize = (int) Math.sqrt((double) entityCount * PIXELS_PER_ENTITY);
+        Random random = new Random(42);
+        WorldState world = new WorldState();
+        for (int i = 0; i < entityCount; i++) {
+            switch (i % 3) {
+                case 0:
+                    world.addEnemy(i, random.nextInt(3), random.nextInt(worldSize), random.nextInt(worldSize), 40, 40);
+                    break;
+                case 1:
+                    world.addProjectile(i, random.nextInt(3), random.nextInt(worldSize), random.nextInt(worldSize),
+                                        random.nextInt(17) - 8, random.nextInt(17) - 8);
+                    break;
+                default:
+                    world.addPowerUp(i, random.nextInt(3), random.nextInt(worldSize), random.nextInt(worldSize));
+            }
+        }
+        
+        InterestGrid grid = new InterestGrid(worldSize, worldSize, CELL_SIZE);
+        SnapshotCodec codec = new SnapshotCodec(worldSize, worldSize);
+        ByteBuffer buffer = SnapshotCodec.allocateBuffer(64 + entityCount * 16);
+        InterestGrid.Viewer[] viewers = new InterestGrid.Viewer[clients];
+        SnapshotHistory[] sent = new SnapshotHistory[clients];
+        int[] viewerDx = new int[clients];
+        int[] viewerDy = new int[clients];
+        for (int v = 0; v < clients; v++) {
+            viewers[v] = new InterestGrid.Viewer(VIEW_WIDTH, VIEW_HEIGHT, MARGIN, farInterval);
+            viewers[v].moveTo(random.nextInt(Math.max(1, worldSize - VIEW_WIDTH)),
+                              random.nextInt(Math.max(1, worldSize - VIEW_HEIGHT)));
+            sent[v] = new SnapshotHistory(16);
+            viewerDx[v] = random.nextInt(9) - 4;
+            viewerDy[v] = random.nextInt(9) - 4;
+        }
+        SnapshotHistory broadcast = new SnapshotHistory(16);
+        
+        long buildNanos = 0;
+        long filterNanos = 0;
+        long entitiesSent = 0;
+        long events = 0;
+        long filteredBytes = 0;
+        long broadcastBytes = 0;
+        int measured = 0;
+        for (int tick = 1; tick <= TICKS; tick++) {
+            step(world, random, worldSize);
+            world.tick = tick;
+            boolean measure = tick > TICKS / 2;
+            
+            long start = System.nanoTime();
+            grid.build(world);
+            buildNanos += measure ? System.nanoTime() - start : 0;
+            
+            for (int v = 0; v < clients; v++) {
+                InterestGrid.Viewer viewer = viewers[v];
+                int left = viewer.getLeft() + viewerDx[v];
+                int top = viewer.getTop() + viewerDy[v];
+                if (left < 0 || left > worldSize - VIEW_WIDTH) {
+                    viewerDx[v] = -viewerDx[v];
+                }
+                if (top < 0 || top > worldSize - VIEW_HEIGHT) {
+                    viewerDy[v] = -viewerDy[v];
+                }
+                viewer.moveTo(left, top);
+                
+                WorldState view = sent[v].slotFor(tick);
+                start = System.nanoTime();
+                grid.filter(world, viewer, view);
+                long end = System.nanoTime();
+                buffer.clear();
+                int bytes = codec.encode(view, sent[v].getAcknowledged(), buffer);
+                if (tick > ACK_LAG) {
+                    sent[v].acknowledge(tick - ACK_LAG);
+                }
+                if (measure) {
+                    filterNanos += end - start;
+                    entitiesSent += view.enemyCount + view.projectileCount + view.powerUpCount;
+                    events += viewer.getEnteredCount() + viewer.getLeftCount();
+                    filteredBytes += bytes;
+                }
+            }
+            
+            // Broadcasting would send every client the same delta of the whole world
+            broadcast.slotFor(tick).copyFrom(world);
+            buffer.clear();
+            int bytes = codec.encode(world, broadcast.getAcknowledged(), buffer);
+            if (tick > ACK_LAG) {
+                broadcast.acknowledge(tick - ACK_LAG);
+            }
+            if (measure) {
+                broadcastBytes += bytes;
+                measured++;
+            }
+        }
+        
+        long samples = (long) measured * clients;
+        System.out.printf("%8d  %5d  %8.1f  %16.2f  %11d  %13.1f  %8d  %18d%n",
+            entityCount, worldSize, buildNanos / 1000.0 / measured, filterNanos / 1000.0 / samples,
+            entitiesSent / samples, (double) events / samples, filteredBytes / samples, broadcastBytes / measured);
+    }
+    
+    /**
+     * Move everything a tick, wrapping around the arena; enemies drift and power-ups stay put.
+     */
+    private static void step(WorldState world, Random random, int worldSize) {
+        for (int i = 0; i < world.enemyCount; i++) {
+            world.enemyX[i] = Math.floorMod(world.enemyX[i] + random.nextInt(5) - 2, worldSize);
+            world.enemyY[i] = Math.floorMod(world.enemyY[i] + random.nextInt(5) - 2, worldSize);
+            if (random.nextInt(50) == 0) {
+                world.enemyHealth[i] = Math.max(1, world.enemyHealth[i] - 5);
+            }
+        }
+        for (int i = 0; i < world.projectileCount; i++) {
+            world.projectileX[i] = Math.floorMod(world.projectileX[i] + world.projectileDx[i], worldSize);
+            world.projectileY[i] = Math.floorMod(world.projectileY[i] + world.projectileDy[i], worldSize);
+        }
+    }
+}
@@ -0,0 +1,356 @@
+import java.util.Arrays;
+
+/**
+ * Area-of-interest filtering of a {@link WorldState} for arenas too large to
+ * send whole to every client.
+ *
+ * Once a tick the grid buckets every enemy, projectile and power-up by the
+ * cell its top-left corner falls in, the same counting sort
+ * {@link CollisionGrid} uses. Each client is a {@link Viewer} with a viewport
+ * and a margin around it; filtering walks only the cells under that area, so
+ * its cost follows what the client can see rather than the size of the
+ * world. Entities inside the viewport are sent every tick, while those in the
+ * margin are refreshed every few ticks, staggered by id, and otherwise repeat
+ * what the client was last sent so the delta codec spends next to nothing on
+ * them. The viewer reports which entities entered and left its area on each
+ * pass.
+ *
+ * Neither the grid nor a viewer is thread-safe; build the grid once per tick,
+ * then filter for each viewer from any one thread at a time.
+ */
+public class InterestGrid {
+    // Entity kinds, as reported in enter and leave events
+    public static final int ENEMY = 0;
+    public static final int PROJECTILE = 1;
+    public static final int POWER_UP = 2;
+    private static final int INDEX_BITS = 24;
+    private static final int INDEX_MASK = (1 << INDEX_BITS) - 1;
+    
+    private final int cellSize;
+    private final int columns;
+    private final int rows;
+    private final int[] cellStart;
+    private final int[] cellFill;
+    private int[] items = new int[1024];
+    
+    /**
+     * Constructor for the interest grid.
+     *
+     * @param width Width of the arena
+     * @param height Height of the arena
+     * @param cellSize Width and height of one cell, around a quarter of a viewport works well
+     */
+    public InterestGrid(int width, int height, int cellSize) {
+        this.cellSize = cellSize;
+        this.columns = Math.max(1, (width + cellSize - 1) / cellSize);
+        this.rows = Math.max(1, (height + cellSize - 1) / cellSize);
+        this.cellStart = new int[columns * rows + 1];
+        this.cellFill = new int[columns * rows];
+    }
+    
+    /**
+     * Bucket every entity of the world into the cell of its top-left corner.
+     *
+     * @param world The world this tick
+     */
+    public void build(WorldState world) {
+        Arrays.fill(cellFill, 0);
+        count(world.enemyX, world.enemyY, world.enemyCount);
+        count(world.projectileX, world.projectileY, world.projectileCount);
+        count(world.powerUpX, world.powerUpY, world.powerUpCount);
+        
+        int total = world.enemyCount + world.projectileCount + world.powerUpCount;
+        if (items.length < total) {
+            items = new int[Math.max(total, items.length * 2)];
+        }
+        int offset = 0;
+        for (int cell = 0; cell < cellFill.length; cell++) {
+            cellStart[cell] = offset;
+            offset += cellFill[cell];
+            cellFill[cell] = cellStart[cell];
+        }
+        cellStart[cellFill.length] = offset;
+        
+        place(ENEMY, world.enemyX, world.enemyY, world.enemyCount);
+        place(PROJECTILE, world.projectileX, world.projectileY, world.projectileCount);
+        place(POWER_UP, world.powerUpX, world.powerUpY, world.powerUpCount);
+    }
+    
+    private void count(int[] xs, int[] ys, int count) {
+        for (int i = 0; i < count; i++) {
+            cellFill[row(ys[i]) * columns + column(xs[i])]++;
+        }
+    }
+    
+    private void place(int kind, int[] xs, int[] ys, int count) {
+        for (int i = 0; i < count; i++) {
+            items[cellFill[row(ys[i]) * columns + column(xs[i])]++] = kind << INDEX_BITS | i;
+        }
+    }
+    
+    /**
+     * Fill in what one client should be sent this tick. Call after build.
+     *
+     * @param world The world the grid was built from
+     * @param viewer The client's view, which remembers what it was sent last time
+     * @param out The state to fill: the world's player fields and the entities the client should see
+     */
+    public void filter(WorldState world, Viewer viewer, WorldState out) {
+        out.clear();
+        out.copyPlayerFrom(world);
+        viewer.beginPass();
+        
+        // Entities are bucketed by their top-left corner, so one reaching into the area may sit a shape up or left of it
+        int column0 = column(viewer.left - viewer.margin - WorldState.SHAPE_SIZE);
+        int column1 = column(viewer.left + viewer.width + viewer.margin);
+        int row0 = row(viewer.top - viewer.margin - WorldState.SHAPE_SIZE);
+        int row1 = row(viewer.top + viewer.height + viewer.margin);
+        for (int r = row0; r <= row1; r++) {
+            for (int c = column0; c <= column1; c++) {
+                int cell = r * columns + c;
+                for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+                    int kind = items[k] >>> INDEX_BITS;
+                    int i = items[k] & INDEX_MASK;
+                    switch (kind) {
+                        case ENEMY:
+                            include(world, viewer, out, ENEMY, i, world.enemyId[i],
+                                    world.enemyX[i], world.enemyY[i], WorldState.SHAPE_SIZE);
+                            break;
+                        case PROJECTILE:
+                            include(world, viewer, out, PROJECTILE, i, world.projectileId[i],
+                                    world.projectileX[i], world.projectileY[i], WorldState.PROJECTILE_SIZE);
+                            break;
+                        default:
+                            include(world, viewer, out, POWER_UP, i, world.powerUpId[i],
+                                    world.powerUpX[i], world.powerUpY[i], WorldState.POWERUP_SIZE);
+                    }
+                }
+            }
+        }
+        viewer.endPass(out);
+    }
+    
+    /**
+     * Add one entity to the client's state if it is in the viewer's area, fresh if it is
+     * new, in view or due a refresh, and as last sent otherwise.
+     */
+    private static void include(WorldState world, Viewer viewer, WorldState out, int kind, int index, int id,
+                                int x, int y, int size) {
+        int margin = viewer.margin;
+        if (x + size <= viewer.left - margin || x >= viewer.left + viewer.width + margin
+                || y + size <= viewer.top - margin || y >= viewer.top + viewer.height + margin) {
+            return;
+        }
+        int previous = viewer.find(kind, id);
+        if (previous < 0) {
+            viewer.entered(kind, id);
+        }
+        boolean inView = x + size > viewer.left && x < viewer.left + viewer.width
+                      && y + size > viewer.top && y < viewer.top + viewer.height;
+        boolean fresh = previous < 0 || inView || Math.floorMod(world.tick + id, viewer.farInterval) == 0;
+        WorldState from = fresh ? world : viewer.sent;
+        int i = fresh ? index : previous;
+        switch (kind) {
+            case ENEMY:
+                out.addEnemy(from.enemyId[i], from.enemyType[i], from.enemyX[i], from.enemyY[i],
+                             from.enemyHealth[i], from.enemyMaxHealth[i]);
+                break;
+            case PROJECTILE:
+                out.addProjectile(from.projectileId[i], from.projectileType[i], from.projectileX[i],
+                                  from.projectileY[i], from.projectileDx[i], from.projectileDy[i]);
+                break;
+            default:
+                out.addPowerUp(from.powerUpId[i], from.powerUpType[i], from.powerUpX[i], from.powerUpY[i]);
+        }
+    }
+    
+    private int column(int x) {
+        return Math.max(0, Math.min(columns - 1, x / cellSize));
+    }
+    
+    private int row(int y) {
+        return Math.max(0, Math.min(rows - 1, y / cellSize));
+    }
+    
+    /**
+     * One client's view of the arena, and what it was sent last time.
+     */
+    public static class Viewer {
+        private static final long EMPTY = -1;
+        
+        private final int width;
+        private final int height;
+        private final int margin;
+        private final int farInterval;
+        private int left;
+        private int top;
+        
+        // What the client was last sent, and where each entity of it is, keyed by kind and id
+        private final WorldState sent = new WorldState();
+        private long[] keys = new long[64];
+        private int[] indices = new int[64];
+        private int[] seenPass = new int[64];
+        private int pass;
+        
+        // Events from the last pass, as parallel kind and id lists
+        private int[] enteredKind = new int[16];
+        private int[] enteredId = new int[16];
+        private int enteredCount;
+        private int[] leftKind = new int[16];
+        private int[] leftId = new int[16];
+        private int leftCount;
+        
+        /**
+         * Constructor for a viewer.
+         *
+         * @param width Width of the client's viewport
+         * @param height Height of the client's viewport
+         * @param margin How far past the viewport entities are still sent, at the lower rate
+         * @param farInterval Ticks between refreshes of entities in the margin
+         */
+        public Viewer(int width, int height, int margin, int farInterval) {
+            this.width = width;
+            this.height = height;
+            this.margin = margin;
+            this.farInterval = Math.max(1, farInterval);
+            Arrays.fill(keys, EMPTY);
+        }
+        
+        /**
+         * Move the viewport.
+         *
+         * @param left X of the viewport's left edge
+         * @param top Y of the viewport's top edge
+         */
+        public void moveTo(int left, int top) {
+            this.left = left;
+            this.top = top;
+        }
+        
+        /**
+         * Forget what the client was sent, as when it reconnects; everything it
+         * sees on the next pass enters afresh.
+         */
+        public void reset() {
+            sent.clear();
+            Arrays.fill(keys, EMPTY);
+            enteredCount = 0;
+            leftCount = 0;
+        }
+        
+        private void beginPass() {
+            pass++;
+            enteredCount = 0;
+            leftCount = 0;
+        }
+        
+        /**
+         * Find an entity the client was sent last time, and mark it as still in its area.
+         *
+         * @return Its index in the last state sent, or -1 if it was not sent
+         */
+        private int find(int kind, int id) {
+            long key = (long) kind << 32 | (id & 0xFFFFFFFFL);
+            int mask = keys.length - 1;
+            for (int slot = hash(key) & mask; keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    seenPass[slot] = pass;
+                    return indices[slot];
+                }
+            }
+            return -1;
+        }
+        
+        /**
+         * Report whatever the client was sent last time but not this time, then
+         * remember this pass's state for the next.
+         */
+        private void endPass(WorldState out) {
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (keys[slot] != EMPTY && seenPass[slot] != pass) {
+                    if (leftCount == leftKind.length) {
+                        leftKind = Arrays.copyOf(leftKind, leftCount * 2);
+                        leftId = Arrays.copyOf(leftId, leftCount * 2);
+                    }
+                    leftKind[leftCount] = (int) (keys[slot] >>> 32);
+                    leftId[leftCount++] = (int) keys[slot];
+                }
+            }
+            
+            sent.copyFrom(out);
+            int total = out.enemyCount + out.projectileCount + out.powerUpCount;
+            // Keep the table at most half full
+            int size = Math.max(64, Integer.highestOneBit(Math.max(1, total * 2) - 1) << 1);
+            if (keys.length != size) {
+                keys = new long[size];
+                indices = new int[size];
+                seenPass = new int[size];
+            }
+            Arrays.fill(keys, EMPTY);
+            index(ENEMY, out.enemyId, out.enemyCount);
+            index(PROJECTILE, out.projectileId, out.projectileCount);
+            index(POWER_UP, out.powerUpId, out.powerUpCount);
+        }
+        
+        private void index(int kind, int[] ids, int count) {
+            int mask = keys.length - 1;
+            for (int i = 0; i < count; i++) {
+                long key = (long) kind << 32 | (ids[i] & 0xFFFFFFFFL);
+                int slot = hash(key) & mask;
+                while (keys[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = key;
+                indices[slot] = i;
+                seenPass[slot] = 0;
+            }
+        }
+        
+        private static int hash(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h >>> 32);
+        }
+        
+        private void entered(int kind, int id) {
+            if (enteredCount == enteredKind.length) {
+                enteredKind = Arrays.copyOf(enteredKind, enteredCount * 2);
+                enteredId = Arrays.copyOf(enteredId, enteredCount * 2);
+            }
+            enteredKind[enteredCount] = kind;
+            enteredId[enteredCount++] = id;
+        }
+        
+        // Getters
+        public int getLeft() {
+            return left;
+        }
+        
+        public int getTop() {
+            return top;
+        }
+        
+        public int getEnteredCount() {
+            return enteredCount;
+        }
+        
+        public int getEnteredKind(int i) {
+            return enteredKind[i];
+        }
+        
+        public int getEnteredId(int i) {
+            return enteredId[i];
+        }
+        
+        public int getLeftCount() {
+            return leftCount;
+        }
+        
+        public int getLeftKind(int i) {
+            return leftKind[i];
+        }
+        
+        public int getLeftId(int i) {
+            return leftId[i];
+        }
+    }
+}
@@ -0,0 +1,135 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free log-linear histogram for latencies and frame times.
+ *
+ * Values below 16 get their own bucket, larger values are grouped into 16
+ * buckets per power of two, so any recorded value is reported within about
+ * 6% of its true size. Recording never allocates and can be done from any thread.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+    
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+    
+    /**
+     * Record a value.
+     *
+     * @param value The value, in whatever unit the caller reports in (negative values count as 0)
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts.incrementAndGet(bucketOf(value));
+        total.incrementAndGet();
+        sum.addAndGet(value);
+        long currentMax;
+        while (value > (currentMax = max.get())) {
+            if (max.compareAndSet(currentMax, value)) {
+                break;
+            }
+        }
+    }
+    
+    /**
+     * Get the value at the given percentile.
+     *
+     * @param percentile A percentile between 0 and 100
+     * @return The upper bound of the bucket holding that percentile, or 0 if empty
+     */
+    public long percentile(double percentile) {
+        long count = total.get();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(count * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+    
+    /**
+     * Get the number of recorded values.
+     *
+     * @return The count
+     */
+    public long count() {
+        return total.get();
+    }
+    
+    /**
+     * Get the mean of the recorded values.
+     *
+     * @return The mean, or 0 if empty
+     */
+    public double mean() {
+        long count = total.get();
+        return count == 0 ? 0 : (double) sum.get() / count;
+    }
+    
+    /**
+     * Get the largest recorded value.
+     *
+     * @return The maximum
+     */
+    public long max() {
+        return max.get();
+    }
+    
+    /**
+     * Clear all recorded values.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        total.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+    
+    /**
+     * Format the usual percentiles on one line.
+     *
+     * @param unit The unit suffix to print after each value
+     * @return A summary such as "n=100 p50=3ms p99=12ms max=20ms"
+     */
+    public String summary(String unit) {
+        return "n=" + count()
+            + " p50=" + percentile(50) + unit
+            + " p90=" + percentile(90) + unit
+            + " p99=" + percentile(99) + unit
+            + " max=" + max() + unit;
+    }
+    
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + sub;
+    }
+    
+    private static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = (bucket - SUB_BUCKETS) / SUB_BUCKETS + SUB_BUCKET_BITS;
+        long sub = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return (SUB_BUCKETS + sub) * width + width - 1;
+    }
+}
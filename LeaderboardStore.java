@@ -0,0 +1,410 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Local high-score store backed by a checksummed append-only log.
+ *
+ * Every finished game is appended to the log as one length-prefixed,
+ * CRC32-checked record. The store keeps the top scores and each player's best
+ * in memory, and once the log holds enough records it compacts them into a
+ * snapshot file and starts a fresh log. Recovery therefore only reads one
+ * small snapshot plus at most one log's worth of records, no matter how many
+ * games have been recorded, and stops cleanly at a torn final record.
+ *
+ * Each log starts with a generation number, and the snapshot notes the
+ * generation it folded in. A crash after a snapshot is moved into place but
+ * before the log is restarted leaves a log the snapshot already covers, which
+ * recovery then skips instead of counting its games twice. The log is forced
+ * to disk on every record, so a game is durable once record returns.
+ */
+public class LeaderboardStore {
+    private static final int SNAPSHOT_MAGIC = 0x53534C42; // "SSLB"
+    private static final int SNAPSHOT_VERSION = 2;
+    private static final int LOG_MAGIC = 0x53534C47; // "SSLG"
+    private static final int LOG_HEADER_SIZE = 12;
+    private static final int DEFAULT_TOP_SIZE = 100;
+    private static final int DEFAULT_COMPACT_THRESHOLD = 4096;
+    private static final int MAX_RECORD_SIZE = 4096;
+    
+    private final Path logFile;
+    private final Path snapshotFile;
+    private final int topSize;
+    private final int compactThreshold;
+    private final Entry[] top;
+    private int topCount = 0;
+    private final HashMap<String, Entry> bestByPlayer = new HashMap<>();
+    private long totalGames = 0;
+    private int logRecords = 0;
+    private FileChannel log;
+    private long logGeneration;
+    private long snapshotGeneration = -1;
+    private final ByteBuffer recordBuffer = ByteBuffer.allocate(MAX_RECORD_SIZE);
+    private final CRC32 crc = new CRC32();
+    
+    /**
+     * One finished game.
+     */
+    public static class Entry {
+        private final String player;
+        private final int score;
+        private final int highestLevel;
+        private final long durationMillis;
+        private final long seed;
+        private final long timestamp;
+        
+        public Entry(String player, int score, int highestLevel, long durationMillis, long seed, long timestamp) {
+            this.player = player;
+            this.score = score;
+            this.highestLevel = highestLevel;
+            this.durationMillis = durationMillis;
+            this.seed = seed;
+            this.timestamp = timestamp;
+        }
+        
+        public String getPlayer() {
+            return player;
+        }
+        
+        public int getScore() {
+            return score;
+        }
+        
+        public int getHighestLevel() {
+            return highestLevel;
+        }
+        
+        public long getDurationMillis() {
+            return durationMillis;
+        }
+        
+        public long getSeed() {
+            return seed;
+        }
+        
+        public long getTimestamp() {
+            return timestamp;
+        }
+    }
+    
+    /**
+     * Open the store with the default sizes.
+     *
+     * @param directory The directory holding the log and snapshot files
+     * @throws IOException If the files cannot be read or created
+     */
+    public LeaderboardStore(Path directory) throws IOException {
+        this(directory, DEFAULT_TOP_SIZE, DEFAULT_COMPACT_THRESHOLD);
+    }
+    
+    /**
+     * Open the store, recovering any previously recorded games.
+     *
+     * @param directory The directory holding the log and snapshot files
+     * @param topSize How many top scores to keep
+     * @param compactThreshold How many log records to accumulate before compacting
+     * @throws IOException If the files cannot be read or created
+     */
+    public LeaderboardStore(Path directory, int topSize, int compactThreshold) throws IOException {
+        Files.createDirectories(directory);
+        this.logFile = directory.resolve("scores.log");
+        this.snapshotFile = directory.resolve("scores.snapshot");
+        this.topSize = topSize;
+        this.compactThreshold = compactThreshold;
+        this.top = new Entry[topSize];
+        
+        loadSnapshot();
+        log = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        replayLog();
+    }
+    
+    /**
+     * Record a finished game.
+     *
+     * @param entry The game to record
+     * @throws IOException If the record cannot be written
+     */
+    public synchronized void record(Entry entry) throws IOException {
+        recordBuffer.clear();
+        recordBuffer.putInt(0); // Length, filled in below
+        recordBuffer.putLong(entry.timestamp);
+        recordBuffer.putInt(entry.score);
+        recordBuffer.putInt(entry.highestLevel);
+        recordBuffer.putLong(entry.durationMillis);
+        recordBuffer.putLong(entry.seed);
+        byte[] name = entry.player.getBytes(StandardCharsets.UTF_8);
+        int nameLength = Math.min(name.length, 255);
+        recordBuffer.put((byte) nameLength);
+        recordBuffer.put(name, 0, nameLength);
+        int length = recordBuffer.position() - 4;
+        recordBuffer.putInt(0, length);
+        
+        crc.reset();
+        crc.update(recordBuffer.array(), 4, length);
+        recordBuffer.putInt((int) crc.getValue());
+        recordBuffer.flip();
+        while (recordBuffer.hasRemaining()) {
+            log.write(recordBuffer);
+        }
+        log.force(false);
+        
+        apply(entry);
+        logRecords++;
+        if (logRecords >= compactThreshold) {
+            compact();
+        }
+    }
+    
+    /**
+     * Get a player's best game.
+     *
+     * @param player The player name
+     * @return The best entry, or null if the player has no recorded games
+     */
+    public synchronized Entry getBest(String player) {
+        return bestByPlayer.get(player);
+    }
+    
+    /**
+     * Get the best score of all players.
+     *
+     * @return The top score, or 0 if nothing is recorded
+     */
+    public synchronized int getHighScore() {
+        return topCount == 0 ? 0 : top[0].score;
+    }
+    
+    /**
+     * Get the top scores, best first.
+     *
+     * @return A copy of the top entries
+     */
+    public synchronized List<Entry> getTopScores() {
+        return Collections.unmodifiableList(new ArrayList<>(Arrays.asList(top).subList(0, topCount)));
+    }
+    
+    /**
+     * Get the number of games ever recorded.
+     *
+     * @return The total game count
+     */
+    public synchronized long getTotalGames() {
+        return totalGames;
+    }
+    
+    /**
+     * Fold the log into a new snapshot and start an empty log.
+     *
+     * @throws IOException If the snapshot cannot be written
+     */
+    public synchronized void compact() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(SNAPSHOT_MAGIC);
+        out.writeInt(SNAPSHOT_VERSION);
+        out.writeLong(logGeneration);
+        out.writeLong(totalGames);
+        out.writeInt(topCount);
+        for (int i = 0; i < topCount; i++) {
+            writeEntry(out, top[i]);
+        }
+        out.writeInt(bestByPlayer.size());
+        for (Entry entry : bestByPlayer.values()) {
+            writeEntry(out, entry);
+        }
+        out.flush();
+        
+        byte[] data = bytes.toByteArray();
+        crc.reset();
+        crc.update(data, 0, data.length);
+        ByteBuffer buffer = ByteBuffer.allocate(data.length + 4);
+        buffer.put(data).putInt((int) crc.getValue()).flip();
+        
+        // Write beside the old snapshot and swap it in atomically, then start the next log generation
+        Path temp = snapshotFile.resolveSibling("scores.snapshot.tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(temp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        snapshotGeneration = logGeneration;
+        startLog(logGeneration + 1);
+    }
+    
+    /**
+     * Empty the log and start it again under a new generation.
+     */
+    private void startLog(long generation) throws IOException {
+        log.truncate(0);
+        ByteBuffer header = ByteBuffer.allocate(LOG_HEADER_SIZE);
+        header.putInt(LOG_MAGIC).putLong(generation).flip();
+        log.position(0);
+        while (header.hasRemaining()) {
+            log.write(header);
+        }
+        log.force(true);
+        logGeneration = generation;
+        logRecords = 0;
+    }
+    
+    /**
+     * Flush and close the log.
+     *
+     * @throws IOException If the log cannot be closed
+     */
+    public synchronized void close() throws IOException {
+        log.force(true);
+        log.close();
+    }
+    
+    private void apply(Entry entry) {
+        totalGames++;
+        
+        Entry best = bestByPlayer.get(entry.player);
+        if (best == null || entry.score > best.score) {
+            bestByPlayer.put(entry.player, entry);
+        }
+        
+        // Insert into the sorted top list
+        if (topCount < topSize || entry.score > top[topCount - 1].score) {
+            int i = topCount < topSize ? topCount++ : topCount - 1;
+            while (i > 0 && top[i - 1].score < entry.score) {
+                top[i] = top[i - 1];
+                i--;
+            }
+            top[i] = entry;
+        }
+    }
+    
+    private void loadSnapshot() throws IOException {
+        if (!Files.exists(snapshotFile)) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(snapshotFile));
+        if (buffer.remaining() < 4) {
+            throw new IOException("Leaderboard snapshot is truncated");
+        }
+        crc.reset();
+        crc.update(buffer.array(), 0, buffer.limit() - 4);
+        if ((int) crc.getValue() != buffer.getInt(buffer.limit() - 4)) {
+            throw new IOException("Leaderboard snapshot checksum mismatch");
+        }
+        int magic = buffer.getInt();
+        int version = buffer.getInt();
+        if (magic != SNAPSHOT_MAGIC || version < 1 || version > SNAPSHOT_VERSION) {
+            throw new IOException("Unrecognised leaderboard snapshot");
+        }
+        // Version 1 snapshots did not note which log they covered
+        snapshotGeneration = version >= 2 ? buffer.getLong() : -1;
+        long snapshotGames = buffer.getLong();
+        int count = buffer.getInt();
+        for (int i = 0; i < count; i++) {
+            apply(readEntry(buffer));
+        }
+        count = buffer.getInt();
+        for (int i = 0; i < count; i++) {
+            Entry entry = readEntry(buffer);
+            Entry best = bestByPlayer.get(entry.player);
+            if (best == null || entry.score > best.score) {
+                bestByPlayer.put(entry.player, entry);
+            }
+        }
+        totalGames = snapshotGames;
+    }
+    
+    /**
+     * Replay the records appended since the last compaction, truncating any torn
+     * tail. A log the snapshot already covers is discarded instead.
+     */
+    private void replayLog() throws IOException {
+        long size = log.size();
+        if (size < LOG_HEADER_SIZE) {
+            // New, or torn while being started after a compaction
+            startLog(snapshotGeneration + 1);
+            return;
+        }
+        ByteBuffer buffer = log.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        
+        // Logs written before generations were added have no header and come after their snapshot
+        long generation = 0;
+        if (buffer.getInt(0) == LOG_MAGIC) {
+            generation = buffer.getLong(4);
+            buffer.position(LOG_HEADER_SIZE);
+        }
+        if (generation <= snapshotGeneration) {
+            System.err.println("Leaderboard log: discarding generation " + generation + ", already in the snapshot");
+            startLog(snapshotGeneration + 1);
+            return;
+        }
+        logGeneration = generation;
+        
+        long validEnd = buffer.position();
+        while (buffer.remaining() >= 4) {
+            int start = buffer.position();
+            int length = buffer.getInt();
+            if (length <= 0 || length > MAX_RECORD_SIZE || buffer.remaining() < length + 4) {
+                break;
+            }
+            byte[] payload = new byte[length];
+            buffer.get(payload);
+            crc.reset();
+            crc.update(payload, 0, length);
+            if ((int) crc.getValue() != buffer.getInt()) {
+                break;
+            }
+            apply(readRecord(ByteBuffer.wrap(payload)));
+            logRecords++;
+            validEnd = buffer.position();
+        }
+        if (validEnd < size) {
+            System.err.println("Leaderboard log: discarding " + (size - validEnd) + " bytes of incomplete record");
+            log.truncate(validEnd);
+        }
+        log.position(validEnd);
+    }
+    
+    private static Entry readRecord(ByteBuffer payload) {
+        long timestamp = payload.getLong();
+        int score = payload.getInt();
+        int highestLevel = payload.getInt();
+        long duration = payload.getLong();
+        long seed = payload.getLong();
+        byte[] name = new byte[payload.get() & 0xFF];
+        payload.get(name);
+        return new Entry(new String(name, StandardCharsets.UTF_8), score, highestLevel, duration, seed, timestamp);
+    }
+    
+    private static void writeEntry(DataOutputStream out, Entry entry) throws IOException {
+        byte[] name = entry.player.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(name.length);
+        out.write(name);
+        out.writeInt(entry.score);
+        out.writeInt(entry.highestLevel);
+        out.writeLong(entry.durationMillis);
+        out.writeLong(entry.seed);
+        out.writeLong(entry.timestamp);
+    }
+    
+    private static Entry readEntry(ByteBuffer buffer) {
+        byte[] name = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(name);
+        String player = new String(name, StandardCharsets.UTF_8);
+        return new Entry(player, buffer.getInt(), buffer.getInt(), buffer.getLong(), buffer.getLong(), buffer.getLong());
+    }
+}
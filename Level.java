@@ -7,9 +7,10 @@ public class Level {
     private int levelNumber;
     private int playerMaxHealth;
     private int enemySpawnRate; // milliseconds between enemy spawns
-    private float enemyHealthMultiplier;
-    private float enemyDamageMultiplier;
-    private float enemySpeedMultiplier;
+    private int enemyFireRate; // milliseconds between one enemy's volleys
+    private int enemyHealthMultiplier; // Fixed point, like the other multipliers
+    private int enemyDamageMultiplier;
+    private int enemySpeedMultiplier;
     private int pointsToNextLevel;
     private int currentPoints;
     private Random random;
@@ -20,8 +21,18 @@ public class Level {
      * @param levelNumber The level number
      */
     public Level(int levelNumber) {
+        this(levelNumber, new Random());
+    }
+    
+    /**
+     * Constructor for a level sharing the game's random number generator.
+     * 
+     * @param levelNumber The level number
+     * @param random The generator used for enemy types and positions
+     */
+    public Level(int levelNumber, Random random) {
         this.levelNumber = levelNumber;
-        this.random = new Random();
+        this.random = random;
         calculateLevelProperties();
         resetCurrentPoints();
     }
@@ -36,10 +47,13 @@ public class Level {
         // Enemies spawn more frequently in higher levels
         this.enemySpawnRate = Math.max(1500 - (levelNumber - 1) * 100, 300);
         
+        // And shoot more often
+        this.enemyFireRate = Math.max(3000 - (levelNumber - 1) * 150, 600);
+        
         // Enemy attributes scale with level
-        this.enemyHealthMultiplier = 1.0f + (levelNumber - 1) * 0.2f;
-        this.enemyDamageMultiplier = 1.0f + (levelNumber - 1) * 0.15f;
-        this.enemySpeedMultiplier = 1.0f + (levelNumber - 1) * 0.1f;
+        this.enemyHealthMultiplier = Fixed.ONE + Fixed.ratio(levelNumber - 1, 5);
+        this.enemyDamageMultiplier = Fixed.ONE + Fixed.ratio((levelNumber - 1) * 3, 20);
+        this.enemySpeedMultiplier = Fixed.ONE + Fixed.ratio(levelNumber - 1, 10);
         
         // Points needed to advance to the next level
         this.pointsToNextLevel = 500 + (levelNumber - 1) * 300;
@@ -83,6 +97,16 @@ public class Level {
         return shapes[random.nextInt(shapes.length)];
     }
     
+    /**
+     * Get a random movement behaviour. Each level adds one more behaviour to the mix.
+     * 
+     * @return An EnemyBehaviour code
+     */
+    public int getRandomBehaviour() {
+        int available = Math.min(levelNumber, EnemyBehaviour.COUNT);
+        return available == 1 ? EnemyBehaviour.FALL : random.nextInt(available);
+    }
+    
     // Getters
     public int getLevelNumber() {
         return levelNumber;
@@ -96,15 +120,19 @@ public class Level {
         return enemySpawnRate;
     }
     
-    public float getEnemyHealthMultiplier() {
+    public int getEnemyFireRate() {
+        return enemyFireRate;
+    }
+    
+    public int getEnemyHealthMultiplier() {
         return enemyHealthMultiplier;
     }
     
-    public float getEnemyDamageMultiplier() {
+    public int getEnemyDamageMultiplier() {
         return enemyDamageMultiplier;
     }
     
-    public float getEnemySpeedMultiplier() {
+    public int getEnemySpeedMultiplier() {
         return enemySpeedMultiplier;
     }
     
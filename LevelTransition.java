@@ -1,24 +1,35 @@
-import javax.swing.*;
 import java.awt.*;
-import java.awt.event.ActionListener;
+import java.awt.image.BufferedImage;
 
 /**
  * Handles level transitions in the game.
+ *
+ * The "LEVEL N" cards for both levels are drawn once into images when the
+ * transition starts, so each frame of the fade is only two blits. The fade
+ * is stepped by the simulation, one call to update() per tick, and copied
+ * into each published {@link RenderFrame}, which is all painting reads.
  */
 public class LevelTransition {
+    private static final Font TITLE_FONT = new Font("Monospaced", Font.BOLD, 36);
+    private static final Font DESCRIPTION_FONT = new Font("Monospaced", Font.PLAIN, 16);
+    private static final int FADE_MILLIS = 1000;
+    
+    private final int fadeTicks;
+    
+    // Started, stepped and captured by the simulation thread only
     private boolean isTransitioning = false;
-    private Level currentLevel;
-    private Level nextLevel;
-    private float transitionAlpha = 0.0f;
-    private Timer transitionTimer;
-    private static final float TRANSITION_STEP = 0.05f;
-    private boolean fadeIn = false;
+    private int elapsedTicks = 0;
+    private BufferedImage currentCard;
+    private BufferedImage nextCard;
+    private int cardBaseline;
     
     /**
      * Constructor for the level transition.
+     * 
+     * @param tickMillis The length of one simulation tick
      */
-    public LevelTransition() {
-        this.transitionTimer = null;
+    public LevelTransition(int tickMillis) {
+        this.fadeTicks = Math.max(1, FADE_MILLIS / tickMillis);
     }
     
     /**
@@ -26,108 +37,126 @@ public class LevelTransition {
      * 
      * @param currentLevel The level transitioning from
      * @param nextLevel The level transitioning to
-     * @param finishedCallback The callback to run when the transition is complete
      */
-    public void startTransition(Level currentLevel, Level nextLevel, Runnable finishedCallback) {
-        this.currentLevel = currentLevel;
-        this.nextLevel = nextLevel;
-        this.isTransitioning = true;
-        this.transitionAlpha = 0.0f;
-        this.fadeIn = false;
-        
-        if (transitionTimer != null && transitionTimer.isRunning()) {
-            transitionTimer.stop();
+    public void startTransition(Level currentLevel, Level nextLevel) {
+        currentCard = renderCard(currentLevel);
+        nextCard = renderCard(nextLevel);
+        elapsedTicks = 0;
+        isTransitioning = true;
+    }
+    
+    /**
+     * Advance the fade by one simulation tick.
+     * 
+     * @return true on the tick the transition finishes
+     */
+    public boolean update() {
+        if (!isTransitioning) {
+            return false;
+        }
+        elapsedTicks++;
+        if (elapsedTicks >= 2 * fadeTicks) {
+            isTransitioning = false;
+            return true;
+        }
+        return false;
+    }
+    
+    /**
+     * Copy the fade's progress and the card it shows into a frame being published.
+     * The cards are never drawn into once rendered, so the frame can share them.
+     * 
+     * @param frame The frame to fill
+     */
+    public void capture(RenderFrame frame) {
+        if (!isTransitioning) {
+            frame.transitionCard = null;
+            return;
         }
         
-        ActionListener transitionAction = e -> {
-            if (!fadeIn) {
-                // Fading out
-                transitionAlpha += TRANSITION_STEP;
-                if (transitionAlpha >= 1.0f) {
-                    transitionAlpha = 1.0f;
-                    fadeIn = true;
-                }
-            } else {
-                // Fading in
-                transitionAlpha -= TRANSITION_STEP;
-                if (transitionAlpha <= 0.0f) {
-                    transitionAlpha = 0.0f;
-                    isTransitioning = false;
-                    ((Timer)e.getSource()).stop();
-                    finishedCallback.run();
-                }
-            }
-        };
-        
-        transitionTimer = new Timer(50, transitionAction);
-        transitionTimer.start();
+        // Fade out to black over the current level, then back in over the next one
+        boolean fadeIn = elapsedTicks >= fadeTicks;
+        float transitionAlpha = fadeIn ? 2.0f - (float) elapsedTicks / fadeTicks : (float) elapsedTicks / fadeTicks;
+        frame.transitionAlpha = Math.max(0.0f, Math.min(1.0f, transitionAlpha));
+        frame.transitionCard = fadeIn ? nextCard : currentCard;
+        frame.transitionCardBaseline = cardBaseline;
     }
     
     /**
-     * Draw the transition effect.
+     * Draw the transition effect captured in a frame.
      * 
      * @param g The graphics context
+     * @param frame The frame being drawn
      * @param width The width of the game area
      * @param height The height of the game area
      */
-    public void draw(Graphics g, int width, int height) {
-        if (!isTransitioning) return;
+    public static void draw(Graphics g, RenderFrame frame, int width, int height) {
+        BufferedImage card = frame.transitionCard;
+        if (card == null) return;
+        float transitionAlpha = frame.transitionAlpha;
         
-        if (fadeIn) {
-            // When fading in, draw the next level text
-            drawLevelText(g, width, height, nextLevel);
-        } else {
-            // When fading out, draw the current level text
-            drawLevelText(g, width, height, currentLevel);
-        }
+        Graphics2D g2d = (Graphics2D) g;
+        Composite composite = g2d.getComposite();
+        
+        // The card is brightest halfway through each fade
+        float cardAlpha = 1.0f - Math.abs(transitionAlpha - 0.5f) * 2;
+        g2d.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, cardAlpha));
+        g2d.drawImage(card, (width - card.getWidth()) / 2, height / 2 - 20 - frame.transitionCardBaseline, null);
         
         // Draw overlay with current alpha
-        g.setColor(new Color(0, 0, 0, (int)(transitionAlpha * 255)));
-        g.fillRect(0, 0, width, height);
+        g2d.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, transitionAlpha));
+        g2d.setColor(Color.BLACK);
+        g2d.fillRect(0, 0, width, height);
+        g2d.setComposite(composite);
     }
     
-    private void drawLevelText(Graphics g, int width, int height, Level level) {
-        g.setColor(new Color(
-            GameColors.ACCENT_YELLOW.getRed(),
-            GameColors.ACCENT_YELLOW.getGreen(),
-            GameColors.ACCENT_YELLOW.getBlue(),
-            (int)((1.0f - Math.abs(transitionAlpha - 0.5f) * 2) * 255)
-        ));
-        
-        Font titleFont = new Font("Monospaced", Font.BOLD, 36);
-        g.setFont(titleFont);
-        
+    /**
+     * Draw a level's card into an image, noting where its title baseline is.
+     */
+    private BufferedImage renderCard(Level level) {
         String levelText = "LEVEL " + level.getLevelNumber();
-        FontMetrics fm = g.getFontMetrics();
+        String[] descriptions = {
+            "MAX HEALTH: " + level.getPlayerMaxHealth(),
+            "ENEMY HEALTH: +" + Fixed.round((level.getEnemyHealthMultiplier() - Fixed.ONE) * 100) + "%",
+            "ENEMY DAMAGE: +" + Fixed.round((level.getEnemyDamageMultiplier() - Fixed.ONE) * 100) + "%"
+        };
+        String readyText = "GET READY!";
         
-        int textX = (width - fm.stringWidth(levelText)) / 2;
-        int textY = height / 2 - 20;
+        // Measure the text on a scratch image
+        BufferedImage scratch = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D measure = scratch.createGraphics();
+        FontMetrics titleMetrics = measure.getFontMetrics(TITLE_FONT);
+        FontMetrics fm = measure.getFontMetrics(DESCRIPTION_FONT);
+        measure.dispose();
         
-        g.drawString(levelText, textX, textY);
+        int cardWidth = titleMetrics.stringWidth(levelText);
+        for (String desc : descriptions) {
+            cardWidth = Math.max(cardWidth, fm.stringWidth(desc));
+        }
+        cardWidth += 8;
         
-        // Draw level description
-        Font descFont = new Font("Monospaced", Font.PLAIN, 16);
-        g.setFont(descFont);
+        // Same layout as the title at y=0: descriptions 40 below, then every 30, then 20 more
+        int titleY = titleMetrics.getAscent();
+        int readyY = titleY + 40 + 30 * descriptions.length + 20;
+        int cardHeight = readyY + fm.getDescent() + 4;
+        cardBaseline = titleY;
         
-        String[] descriptions = {
-            "MAX HEALTH: " + level.getPlayerMaxHealth(),
-            "ENEMY HEALTH: +" + (int)((level.getEnemyHealthMultiplier() - 1.0f) * 100) + "%",
-            "ENEMY DAMAGE: +" + (int)((level.getEnemyDamageMultiplier() - 1.0f) * 100) + "%"
-        };
+        BufferedImage card = new BufferedImage(cardWidth, cardHeight, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = card.createGraphics();
+        g.setColor(GameColors.ACCENT_YELLOW);
         
-        fm = g.getFontMetrics();
-        textY += 40;
+        g.setFont(TITLE_FONT);
+        g.drawString(levelText, (cardWidth - titleMetrics.stringWidth(levelText)) / 2, titleY);
         
+        g.setFont(DESCRIPTION_FONT);
+        int textY = titleY + 40;
         for (String desc : descriptions) {
-            textX = (width - fm.stringWidth(desc)) / 2;
-            g.drawString(desc, textX, textY);
+            g.drawString(desc, (cardWidth - fm.stringWidth(desc)) / 2, textY);
             textY += 30;
         }
-        
-        String readyText = "GET READY!";
-        textX = (width - fm.stringWidth(readyText)) / 2;
-        textY += 20;
-        g.drawString(readyText, textX, textY);
+        g.drawString(readyText, (cardWidth - fm.stringWidth(readyText)) / 2, readyY);
+        g.dispose();
+        return card;
     }
     
     /**
@@ -143,9 +172,6 @@ public class LevelTransition {
      * Stop the current transition.
      */
     public void stopTransition() {
-        if (transitionTimer != null && transitionTimer.isRunning()) {
-            transitionTimer.stop();
-        }
         isTransitioning = false;
     }
 }
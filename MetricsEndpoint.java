@@ -0,0 +1,60 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Supplier;
+
+/**
+ * Serves a metrics page at /metrics on the loopback interface, in the
+ * Prometheus text format, for a local scraper to pull.
+ */
+public class MetricsEndpoint {
+    private final HttpServer server;
+    
+    /**
+     * Constructor for the metrics endpoint.
+     * 
+     * @param port The port to listen on, or 0 for any free port
+     * @param metrics Produces the current metrics page
+     * @throws IOException If the port cannot be bound
+     */
+    public MetricsEndpoint(int port, Supplier<String> metrics) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/metrics", exchange -> respond(exchange, metrics.get()));
+    }
+    
+    /**
+     * Start answering requests on a background thread.
+     */
+    public void start() {
+        server.start();
+    }
+    
+    /**
+     * Stop answering requests.
+     */
+    public void stop() {
+        server.stop(0);
+    }
+    
+    /**
+     * Get the port the endpoint is listening on.
+     * 
+     * @return The bound port
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+    
+    private static void respond(HttpExchange exchange, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Keeps a particle system near a target population and reports the time
+ * spent stepping and drawing it per frame, plus any garbage collections
+ * that happened while measuring.
+ *
+ * Run with: java -Djava.awt.headless=true ParticleBenchmark [kills per frame] [frames]
+ */
+public class ParticleBenchmark {
+    private static final int VIEW_SIZE = 800;
+    
+    public static void main(String[] args) {
+        int killsPerFrame = args.length > 0 ? Integer.parseInt(args[0]) : 40;
+        int frames = args.length > 1 ? Integer.parseInt(args[1]) : 1200;
+        
+        EventBus bus = new EventBus(8192);
+        ParticleSystem particles = new ParticleSystem(bus, 65536);
+        BufferedImage target = new BufferedImage(VIEW_SIZE, VIEW_SIZE, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = target.createGraphics();
+        
+        long updateNanos = 0;
+        long drawNanos = 0;
+        long liveTotal = 0;
+        int measured = 0;
+        long gcBefore = 0;
+        for (int frame = 0; frame < frames; frame++) {
+            for (int k = 0; k < killsPerFrame; k++) {
+                int x = (frame * 37 + k * 101) % VIEW_SIZE;
+                int y = (frame * 53 + k * 67) % VIEW_SIZE;
+                bus.publish(GameEvent.KILL, frame, k % 3, 10, x, y, k % 2 == 0 ? GameEvent.FLAG_CRITICAL : 0);
+            }
+            
+            // Warm up for the first quarter, then measure
+            if (frame == frames / 4) {
+                gcBefore = collections();
+            }
+            long start = System.nanoTime();
+            particles.update();
+            long updated = System.nanoTime();
+            particles.draw(g, 0, 0, VIEW_SIZE, VIEW_SIZE);
+            long drawn = System.nanoTime();
+            if (frame >= frames / 4) {
+                updateNanos += updated - start;
+                drawNanos += drawn - updated;
+                liveTotal += particles.getLiveCount();
+                measured++;
+            }
+            
+            // Pace roughly like a 60 fps repaint so particles age as they would in play
+            long wait = 16_666_667L - (System.nanoTime() - start);
+            if (wait > 0) {
+                java.util.concurrent.locks.LockSupport.parkNanos(wait);
+            }
+        }
+        
+        System.out.printf("%d kills/frame: %d live on average, update %.1f us, draw %.1f us per frame, "
+            + "draw limit %d, %d overwritten, %d GCs while measuring%n",
+            killsPerFrame, liveTotal / measured, updateNanos / 1000.0 / measured, drawNanos / 1000.0 / measured,
+            particles.getDrawLimit(), particles.getOverwrittenCount(), collections() - gcBefore);
+    }
+    
+    private static long collections() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionCount());
+        }
+        return total;
+    }
+}
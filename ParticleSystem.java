@@ -0,0 +1,272 @@
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RadialGradientPaint;
+import java.awt.image.BufferedImage;
+
+/**
+ * Sparks for hits, kills, pickups and damage.
+ *
+ * Particles live in a fixed ring of primitive arrays, so spawning and
+ * expiring them never allocates. Like {@link HudEffects}, the system reads
+ * gameplay events from its own {@link EventBus} subscription on the render
+ * thread and steps all particles in one loop per painted frame. Each colour
+ * is pre-rendered as a small soft sprite at a few fade levels, so drawing is
+ * one image blit per particle. Past half the capacity new bursts are thinned
+ * out, a full ring overwrites its oldest particles, and once drawing takes
+ * longer than its time budget only every n-th particle is drawn.
+ */
+public class ParticleSystem implements EventBus.Handler {
+    // Colour indices
+    private static final int COLOR_ENEMY = 0;      // + shape type
+    private static final int COLOR_POWERUP = 3;    // + power-up type
+    private static final int COLOR_CRITICAL = 8;
+    private static final int COLOR_DAMAGE = 9;
+    private static final Color[] PALETTE = {
+        GameColors.ENEMY_CIRCLE, GameColors.ENEMY_TRIANGLE, GameColors.ENEMY_CUBE,
+        GameColors.SUCCESS_GREEN, GameColors.ACCENT_YELLOW, GameColors.POWERUP_SPEED, GameColors.POWERUP_SPIRAL,
+        GameColors.POWERUP_REWIND, GameColors.ACCENT_YELLOW, GameColors.HEALTH_RED
+    };
+    
+    private static final int SPRITE_SIZE = 6;
+    private static final int FADE_LEVELS = 4;
+    private static final float FADE_SECONDS = 0.25f; // Fade level drops every quarter second
+    private static final float DRAG = 0.92f;         // Speed kept per 1/60 s
+    private static final float MAX_STEP_SECONDS = 0.05f;
+    private static final int MAX_DRAWN = 16384;
+    private static final int MIN_DRAWN = 1024;
+    private static final long DRAW_BUDGET_NANOS = 5_000_000L;
+    
+    private final int capacity;
+    private final int mask;
+    private final int softLimit;
+    private final float[] x;
+    private final float[] y;
+    private final float[] vx;
+    private final float[] vy;
+    private final float[] life;
+    private final byte[] color;
+    private int head = 0;  // Oldest particle
+    private int count = 0; // Slots in use from head, some of which may have expired
+    private int live = 0;
+    private long overwritten = 0;
+    private int drawLimit = MAX_DRAWN; // Adjusted to keep drawing inside its time budget
+    
+    private final BufferedImage[][] sprites = new BufferedImage[PALETTE.length][FADE_LEVELS];
+    private final EventBus.Subscription events;
+    private long lastStepNanos;
+    private int seed = 0x2545F491;
+    
+    /**
+     * Constructor for the particle system.
+     * 
+     * @param bus The bus to read gameplay events from
+     * @param capacity The most particles alive at once, rounded up to a power of two
+     */
+    public ParticleSystem(EventBus bus, int capacity) {
+        this.capacity = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.mask = this.capacity - 1;
+        this.softLimit = this.capacity / 2;
+        x = new float[this.capacity];
+        y = new float[this.capacity];
+        vx = new float[this.capacity];
+        vy = new float[this.capacity];
+        life = new float[this.capacity];
+        color = new byte[this.capacity];
+        events = bus.subscribe();
+        
+        for (int c = 0; c < PALETTE.length; c++) {
+            for (int level = 0; level < FADE_LEVELS; level++) {
+                sprites[c][level] = renderSprite(PALETTE[c], (level + 1) / (float) FADE_LEVELS);
+            }
+        }
+    }
+    
+    private static BufferedImage renderSprite(Color base, float alpha) {
+        BufferedImage sprite = new BufferedImage(SPRITE_SIZE, SPRITE_SIZE, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g = sprite.createGraphics();
+        Color center = new Color(base.getRed(), base.getGreen(), base.getBlue(), (int) (255 * alpha));
+        Color edge = new Color(base.getRed(), base.getGreen(), base.getBlue(), 0);
+        g.setPaint(new RadialGradientPaint(SPRITE_SIZE / 2f, SPRITE_SIZE / 2f, SPRITE_SIZE / 2f,
+                                           new float[] {0f, 1f}, new Color[] {center, edge}));
+        g.fillRect(0, 0, SPRITE_SIZE, SPRITE_SIZE);
+        g.dispose();
+        return sprite;
+    }
+    
+    /**
+     * Spawn particles for new events and move every particle. Call once per painted frame.
+     */
+    public void update() {
+        update(System.nanoTime());
+    }
+    
+    /**
+     * Spawn particles for new events and move every particle by the time since the last update.
+     * 
+     * @param now The current time, on whatever clock the caller animates by
+     */
+    public void update(long now) {
+        float step = lastStepNanos == 0 ? 0 : Math.min(MAX_STEP_SECONDS, (now - lastStepNanos) / 1e9f);
+        lastStepNanos = now;
+        
+        events.drain(this, 1024);
+        
+        float drag = (float) Math.pow(DRAG, step * 60);
+        int alive = 0;
+        for (int k = 0; k < count; k++) {
+            int i = (head + k) & mask;
+            if (life[i] <= 0) {
+                continue;
+            }
+            life[i] -= step;
+            x[i] += vx[i] * step;
+            y[i] += vy[i] * step;
+            vx[i] *= drag;
+            vy[i] *= drag;
+            if (life[i] > 0) {
+                alive++;
+            }
+        }
+        live = alive;
+        
+        // Free the expired run at the old end of the ring
+        while (count > 0 && life[head] <= 0) {
+            head = (head + 1) & mask;
+            count--;
+        }
+    }
+    
+    @Override
+    public void onEvent(GameEvent event) {
+        float centerX = event.x + WorldState.SHAPE_SIZE / 2f;
+        float centerY = event.y + WorldState.SHAPE_SIZE / 2f;
+        switch (event.type) {
+            case GameEvent.HIT:
+                burst(centerX, centerY, 6, 120, 0.3f, COLOR_ENEMY + event.kind);
+                break;
+            case GameEvent.KILL:
+                burst(centerX, centerY, 40, 260, 0.8f, COLOR_ENEMY + event.kind);
+                if (event.isCritical()) {
+                    burst(centerX, centerY, 30, 360, 0.6f, COLOR_CRITICAL);
+                }
+                break;
+            case GameEvent.POWER_UP:
+                float powerUpCenter = WorldState.POWERUP_SIZE / 2f;
+                burst(event.x + powerUpCenter, event.y + powerUpCenter, 24, 180, 0.6f, COLOR_POWERUP + event.kind);
+                break;
+            case GameEvent.DAMAGE_TAKEN:
+                burst(centerX, centerY, 20, 200, 0.5f, COLOR_DAMAGE);
+                break;
+            case GameEvent.BOSS_DEFEATED:
+                burst(centerX, centerY, 120, 420, 1.2f, COLOR_CRITICAL);
+                break;
+            case GameEvent.GAME_START:
+                clear();
+                break;
+            default:
+                break;
+        }
+    }
+    
+    /**
+     * Throw out particles in random directions from a point, fewer when the ring is filling up.
+     */
+    private void burst(float px, float py, int amount, float speed, float lifetime, int colorIndex) {
+        if (colorIndex < 0 || colorIndex >= PALETTE.length) {
+            return;
+        }
+        if (live > softLimit) {
+            amount = (int) ((long) amount * (capacity - live) / (capacity - softLimit));
+        }
+        for (int n = 0; n < amount; n++) {
+            int i;
+            if (count == capacity) {
+                // Full: reuse the oldest slot
+                i = head;
+                head = (head + 1) & mask;
+                if (life[i] > 0) {
+                    // Still alive, so it was already counted as live
+                    overwritten++;
+                } else {
+                    live++;
+                }
+            } else {
+                i = (head + count) & mask;
+                count++;
+                live++;
+            }
+            int angle = nextRandom() & 255;
+            float velocity = speed * (0.3f + (nextRandom() & 1023) / 1462f);
+            x[i] = px;
+            y[i] = py;
+            vx[i] = velocity * Fixed.toFloat(Fixed.sine(angle + 64));
+            vy[i] = velocity * Fixed.toFloat(Fixed.sine(angle));
+            life[i] = lifetime * (0.6f + (nextRandom() & 1023) / 2560f);
+            color[i] = (byte) colorIndex;
+        }
+    }
+    
+    private int nextRandom() {
+        seed ^= seed << 13;
+        seed ^= seed >>> 17;
+        seed ^= seed << 5;
+        return seed;
+    }
+    
+    /**
+     * Remove all particles.
+     */
+    public void clear() {
+        head = 0;
+        count = 0;
+        live = 0;
+        lastStepNanos = 0;
+    }
+    
+    /**
+     * Draw the particles inside a region. Expects the graphics to be in arena coordinates.
+     * 
+     * @param g The graphics context
+     * @param minX Left edge of the visible region
+     * @param minY Top edge of the visible region
+     * @param maxX Right edge of the visible region
+     * @param maxY Bottom edge of the visible region
+     */
+    public void draw(Graphics g, int minX, int minY, int maxX, int maxY) {
+        // Over budget, draw an evenly spread subset
+        long start = System.nanoTime();
+        int stride = live > drawLimit ? (live + drawLimit - 1) / drawLimit : 1;
+        float half = SPRITE_SIZE / 2f;
+        for (int k = 0; k < count; k += stride) {
+            int i = (head + k) & mask;
+            float remaining = life[i];
+            if (remaining <= 0 || x[i] < minX || x[i] > maxX || y[i] < minY || y[i] > maxY) {
+                continue;
+            }
+            int level = Math.min(FADE_LEVELS - 1, (int) (remaining / FADE_SECONDS));
+            g.drawImage(sprites[color[i]][level], (int) (x[i] - half), (int) (y[i] - half), null);
+        }
+        
+        // Draw fewer next time if this frame ran over, and recover slowly once it fits again
+        long elapsed = System.nanoTime() - start;
+        if (elapsed > DRAW_BUDGET_NANOS) {
+            drawLimit = Math.max(MIN_DRAWN, drawLimit * 3 / 4);
+        } else if (elapsed < DRAW_BUDGET_NANOS / 2 && stride > 1) {
+            drawLimit = Math.min(MAX_DRAWN, drawLimit + drawLimit / 8);
+        }
+    }
+    
+    // Getters
+    public int getLiveCount() {
+        return live;
+    }
+    
+    public long getOverwrittenCount() {
+        return overwritten;
+    }
+    
+    public int getDrawLimit() {
+        return drawLimit;
+    }
+}
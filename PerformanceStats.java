@@ -0,0 +1,156 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Frame and tick timings for the live overlay and the swarm mode summary.
+ *
+ * Simulation timings are recorded on the simulation thread and render
+ * timings on the EDT; all values are in microseconds.
+ */
+public class PerformanceStats {
+    // Simulation thread
+    private final LatencyHistogram tickMicros = new LatencyHistogram();
+    private final LatencyHistogram collisionMicros = new LatencyHistogram();
+    private final LatencyHistogram rewindMicros = new LatencyHistogram();
+    private long rewindBytes;
+    private int peakRewindBufferBytes;
+    private int peakEnemies;
+    private int peakProjectiles;
+    private int peakPowerUps;
+    
+    // Render thread
+    private final LatencyHistogram paintMicros = new LatencyHistogram();
+    private final LatencyHistogram enemyPassMicros = new LatencyHistogram();
+    private final LatencyHistogram frameIntervalMicros = new LatencyHistogram();
+    private long lastFrameNanos;
+    private long fpsWindowStart;
+    private int framesInWindow;
+    private volatile int fps;
+    
+    /**
+     * Record one simulation tick.
+     * 
+     * @param tickNanos Time spent in the whole tick
+     * @param collisionNanos Time spent checking collisions
+     * @param enemies Live enemies after the tick
+     * @param projectiles Live projectiles after the tick
+     * @param powerUps Live power-ups after the tick
+     */
+    public void recordTick(long tickNanos, long collisionNanos, int enemies, int projectiles, int powerUps) {
+        tickMicros.record(tickNanos / 1000);
+        collisionMicros.record(collisionNanos / 1000);
+        peakEnemies = Math.max(peakEnemies, enemies);
+        peakProjectiles = Math.max(peakProjectiles, projectiles);
+        peakPowerUps = Math.max(peakPowerUps, powerUps);
+    }
+    
+    /**
+     * Record the cost of adding one tick to the rewind history.
+     * 
+     * @param recordNanos Time spent capturing and encoding the tick
+     * @param entryBytes Size of the stored entry
+     * @param bufferBytes Bytes the rewind history holds in total
+     */
+    public void recordRewind(long recordNanos, int entryBytes, int bufferBytes) {
+        rewindMicros.record(recordNanos / 1000);
+        rewindBytes += entryBytes;
+        peakRewindBufferBytes = Math.max(peakRewindBufferBytes, bufferBytes);
+    }
+    
+    /**
+     * Record one painted frame.
+     * 
+     * @param paintNanos Time spent painting the frame
+     * @param enemyPassNanos Time spent drawing enemies and their health bars
+     */
+    public void recordFrame(long paintNanos, long enemyPassNanos) {
+        long now = System.nanoTime();
+        paintMicros.record(paintNanos / 1000);
+        enemyPassMicros.record(enemyPassNanos / 1000);
+        if (lastFrameNanos != 0) {
+            frameIntervalMicros.record((now - lastFrameNanos) / 1000);
+        }
+        lastFrameNanos = now;
+        
+        // Frames painted over the last second
+        framesInWindow++;
+        if (now - fpsWindowStart >= TimeUnit.SECONDS.toNanos(1)) {
+            fps = framesInWindow;
+            framesInWindow = 0;
+            fpsWindowStart = now;
+        }
+    }
+    
+    /**
+     * Get the frames painted during the last full second.
+     * 
+     * @return The frame rate
+     */
+    public int getFps() {
+        return fps;
+    }
+    
+    /**
+     * Clear all timings and peaks.
+     */
+    public void reset() {
+        tickMicros.reset();
+        collisionMicros.reset();
+        rewindMicros.reset();
+        rewindBytes = 0;
+        peakRewindBufferBytes = 0;
+        paintMicros.reset();
+        enemyPassMicros.reset();
+        frameIntervalMicros.reset();
+        peakEnemies = 0;
+        peakProjectiles = 0;
+        peakPowerUps = 0;
+    }
+    
+    /**
+     * Format the collected timings.
+     * 
+     * @return A multi-line summary
+     */
+    public String summary() {
+        double meanInterval = frameIntervalMicros.mean();
+        return "tick        " + tickMicros.summary("us") + "\n"
+            + "collisions  " + collisionMicros.summary("us") + "\n"
+            + "rewind      " + rewindMicros.summary("us")
+            + " entry=" + (rewindMicros.count() == 0 ? 0 : rewindBytes / rewindMicros.count()) + "B"
+            + " history=" + peakRewindBufferBytes / 1024 + "KB\n"
+            + "paint       " + paintMicros.summary("us") + "\n"
+            + "enemy pass  " + enemyPassMicros.summary("us") + "\n"
+            + "frame gap   " + frameIntervalMicros.summary("us") + "\n"
+            + String.format("mean fps    %.1f%n", meanInterval > 0 ? 1_000_000 / meanInterval : 0.0)
+            + "peak        enemies=" + peakEnemies + " projectiles=" + peakProjectiles
+            + " powerups=" + peakPowerUps + "\n";
+    }
+    
+    /**
+     * Append the summary to a report file, and print it when asked to.
+     * 
+     * @param title A heading for this run
+     * @param reportFile The file to append to, or null for none
+     * @param print Whether to print the summary to the console as well
+     */
+    public void report(String title, String reportFile, boolean print) {
+        String text = title + "\n" + summary();
+        if (print) {
+            System.out.print(text);
+        }
+        if (reportFile == null) {
+            return;
+        }
+        try {
+            Files.write(Paths.get(reportFile), (text + "\n").getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            System.err.println("Could not write report: " + e.getMessage());
+        }
+    }
+}
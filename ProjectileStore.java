@@ -0,0 +1,142 @@
+import java.util.Arrays;
+
+/**
+ * Live projectiles stored as parallel arrays.
+ *
+ * Projectiles are plain rows rather than objects so thousands of them can be
+ * moved, culled and spawned in tight loops without allocating. Removal swaps
+ * the last row into the freed slot, so iterate backwards when removing.
+ */
+public class ProjectileStore {
+    private static final int INITIAL_CAPACITY = 256;
+    private static final ShapeMask SHOT_MASK = ShapeMask.of(WorldState.SHAPE_CIRCLE, WorldState.PROJECTILE_SIZE);
+    
+    public int size;
+    public int[] id = new int[INITIAL_CAPACITY];
+    public int[] type = new int[INITIAL_CAPACITY];
+    public int[] x = new int[INITIAL_CAPACITY];
+    public int[] y = new int[INITIAL_CAPACITY];
+    public int[] dx = new int[INITIAL_CAPACITY];
+    public int[] dy = new int[INITIAL_CAPACITY];
+    public int[] damage = new int[INITIAL_CAPACITY];
+    
+    /**
+     * Make room for more projectiles so a whole batch can be written without checks.
+     *
+     * @param extra The number of projectiles about to be added
+     */
+    public void ensureCapacity(int extra) {
+        int needed = size + extra;
+        if (needed <= id.length) {
+            return;
+        }
+        int capacity = Math.max(needed, id.length * 2);
+        id = Arrays.copyOf(id, capacity);
+        type = Arrays.copyOf(type, capacity);
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        dx = Arrays.copyOf(dx, capacity);
+        dy = Arrays.copyOf(dy, capacity);
+        damage = Arrays.copyOf(damage, capacity);
+    }
+    
+    /**
+     * Append a projectile.
+     *
+     * @return The index the projectile was stored at
+     */
+    public int add(int projectileId, int projectileType, int px, int py, int pdx, int pdy, int projectileDamage) {
+        ensureCapacity(1);
+        int i = size++;
+        id[i] = projectileId;
+        type[i] = projectileType;
+        x[i] = px;
+        y[i] = py;
+        dx[i] = pdx;
+        dy[i] = pdy;
+        damage[i] = projectileDamage;
+        return i;
+    }
+    
+    /**
+     * Remove the projectile at an index by moving the last one into its place.
+     *
+     * @param i The index to remove
+     */
+    public void removeAt(int i) {
+        int last = --size;
+        id[i] = id[last];
+        type[i] = type[last];
+        x[i] = x[last];
+        y[i] = y[last];
+        dx[i] = dx[last];
+        dy[i] = dy[last];
+        damage[i] = damage[last];
+    }
+    
+    /**
+     * Move every projectile by its velocity and drop the ones that left the area.
+     *
+     * @param width Width of the area
+     * @param height Height of the area
+     */
+    public void moveAndCull(int width, int height) {
+        for (int i = size - 1; i >= 0; i--) {
+            int nx = x[i] + dx[i];
+            int ny = y[i] + dy[i];
+            if (ny < 0 || ny > height || nx < 0 || nx > width) {
+                removeAt(i);
+            } else {
+                x[i] = nx;
+                y[i] = ny;
+            }
+        }
+    }
+    
+    /**
+     * Remove every projectile that touches a shape, such as the player.
+     * Projectiles are the circle drawn from their position, so a shot that
+     * grazes the shape with any covered pixel counts, not just its corner.
+     *
+     * @param mask The shape's mask
+     * @param left Left edge of the shape
+     * @param top Top edge of the shape
+     * @return The largest damage among the removed projectiles, or 0 if none touched it
+     */
+    public int removeInside(ShapeMask mask, int left, int top) {
+        int worst = 0;
+        for (int i = size - 1; i >= 0; i--) {
+            // The boxes are tested first, so a shot that is nowhere near costs four compares
+            if (ShapeMask.overlaps(SHOT_MASK, x[i], y[i], mask, left, top)) {
+                worst = Math.max(worst, damage[i]);
+                removeAt(i);
+            }
+        }
+        return worst;
+    }
+    
+    /**
+     * Replace the contents with a copy of another store, growing only if it holds more rows.
+     *
+     * @param other The store to copy
+     */
+    public void copyFrom(ProjectileStore other) {
+        size = 0;
+        ensureCapacity(other.size);
+        size = other.size;
+        System.arraycopy(other.id, 0, id, 0, size);
+        System.arraycopy(other.type, 0, type, 0, size);
+        System.arraycopy(other.x, 0, x, 0, size);
+        System.arraycopy(other.y, 0, y, 0, size);
+        System.arraycopy(other.dx, 0, dx, 0, size);
+        System.arraycopy(other.dy, 0, dy, 0, size);
+        System.arraycopy(other.damage, 0, damage, 0, size);
+    }
+    
+    /**
+     * Remove all projectiles while keeping the allocated arrays.
+     */
+    public void clear() {
+        size = 0;
+    }
+}
@@ -0,0 +1,46 @@
+import java.awt.image.BufferedImage;
+
+/**
+ * Everything the render thread needs to draw one frame.
+ *
+ * Filled by the simulation thread and handed over through a
+ * {@link TripleBuffer}, so painting never reads live game objects.
+ */
+public class RenderFrame {
+    public final WorldState world = new WorldState();
+    
+    // Screen state
+    public boolean started;
+    public boolean gameOver;
+    public boolean paused;
+    public boolean hasSavedGame;
+    public long timeMillis; // Wall clock when published, which blinking text and effects animate by
+    public long sequence; // Counts up with every frame published, so inputs can be matched to the first frame showing them
+    public long stateHash; // StateHash of the simulation up to world.tick, for finding where two runs diverged
+    
+    // HUD values not carried by the world state
+    public boolean invulnerable;
+    public int playerMaxHealth;
+    public float levelProgress;
+    public int bestScore;
+    public int rewindCharges;
+    
+    // Level transition, copied from the simulation's; no card when none is running
+    public BufferedImage transitionCard;
+    public int transitionCardBaseline;
+    public float transitionAlpha;
+    
+    // Camera over the arena; the world only holds entities near the view
+    public int cameraX;
+    public int cameraY;
+    public int arenaWidth;
+    public int arenaHeight;
+    public int enemyTotal;
+    public int projectileTotal;
+    public int powerUpTotal;
+    
+    // Performance overlay
+    public boolean showStats;
+    public long tickMicros;
+    public long collisionMicros;
+}
@@ -0,0 +1,62 @@
+import java.nio.file.Paths;
+
+/**
+ * Finds the first tick on which the state hashes stored in two replays differ.
+ *
+ * Every replay frame carries the {@link StateHash} of the simulation up to
+ * its tick, and each tick's hash is chained from the one before, so the first
+ * tick whose hashes differ is where the two runs parted. This only compares
+ * what the two recordings stored; it does not re-simulate anything, since a
+ * replay holds neither the game seed nor the inputs. The hash chain starts
+ * from the seed, which a new game takes from the clock, so only recordings of
+ * runs that resumed the same save and got the same inputs on the same ticks
+ * can match; two separately started games differ from their first tick.
+ * Frames that repeat a tick, such as while paused, are skipped, so the two
+ * replays need not have been paused alike.
+ *
+ * Run with: java ReplayDiff replayFile otherReplayFile
+ */
+public class ReplayDiff {
+    
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: java ReplayDiff replayFile otherReplayFile");
+            System.exit(1);
+        }
+        ReplayReader.Cursor first = new ReplayReader(Paths.get(args[0])).cursor(0);
+        ReplayReader.Cursor second = new ReplayReader(Paths.get(args[1])).cursor(0);
+        
+        int ticks = 0;
+        RenderFrame a = nextTick(first, null);
+        RenderFrame b = nextTick(second, null);
+        while (a != null && b != null) {
+            if (a.world.tick != b.world.tick || a.stateHash != b.stateHash) {
+                System.out.printf("Diverged after %d matching ticks: tick %d hash %016x, tick %d hash %016x%n",
+                    ticks, a.world.tick, a.stateHash, b.world.tick, b.stateHash);
+                System.exit(2);
+            }
+            ticks++;
+            a = nextTick(first, a);
+            b = nextTick(second, b);
+        }
+        System.out.println(ticks + " ticks matched" + (a == null && b == null ? ""
+            : "; " + (a == null ? args[0] : args[1]) + " ends first"));
+    }
+    
+    /**
+     * Get the next frame that shows a different tick or state from the last one.
+     *
+     * @param cursor The replay
+     * @param last The frame returned last time, or null at the start
+     * @return The frame, or null at the end of the replay
+     */
+    private static RenderFrame nextTick(ReplayReader.Cursor cursor, RenderFrame last) {
+        int lastTick = last == null ? Integer.MIN_VALUE : last.world.tick;
+        long lastHash = last == null ? 0 : last.stateHash;
+        RenderFrame frame;
+        do {
+            frame = cursor.next();
+        } while (frame != null && frame.world.tick == lastTick && frame.stateHash == lastHash);
+        return frame;
+    }
+}
@@ -0,0 +1,238 @@
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * Turns a replay recorded by {@link ReplayRecorder} into numbered PNG frames,
+ * drawn by the game's own rendering code, ready for a video encoder.
+ *
+ * The replay is cut into chunks of frames. Render threads each take a chunk,
+ * replay the frames just before it without drawing so popups, particles and
+ * level fades are where they were, then draw the chunk into images from a
+ * fixed pool. Encoder threads write the images out and hand them back, so
+ * memory stays bounded however long the replay is and rendering and encoding
+ * overlap.
+ *
+ * Run with: java ReplayExporter replayFile outDir [firstFrame] [lastFrame]
+ * Options: -Dexport.threads (threads per stage, one per core by default),
+ * -Dexport.chunk (frames per chunk), -Dexport.step (export every nth frame),
+ * -Dexport.compression (PNG compression quality, 0 smallest to 1 fastest).
+ */
+public class ReplayExporter {
+    private static final int TICK_MS = 16;
+    // Frames replayed before each chunk so its effects are already running; longer than any effect lasts
+    private static final int PREROLL_FRAMES = 128;
+    
+    private final ReplayReader reader;
+    private final Path outDir;
+    private final int step;
+    private final float compression;
+    private final BlockingQueue<BufferedImage> images;
+    private final ExecutorService renderPool;
+    private final ExecutorService encodePool;
+    private final ThreadLocal<ShapeShifterDuel> renderers;
+    private final ThreadLocal<ImageWriter> writers;
+    private final AtomicInteger written = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    
+    /**
+     * Constructor for the replay exporter.
+     *
+     * @param reader The replay to export
+     * @param outDir Where frames are written
+     * @param threads Threads for rendering, and again for encoding
+     * @param step Export every step-th frame
+     * @param compression PNG compression quality
+     */
+    public ReplayExporter(ReplayReader reader, Path outDir, int threads, int step, float compression) {
+        this.reader = reader;
+        this.outDir = outDir;
+        this.step = step;
+        this.compression = compression;
+        
+        // Enough images for every render thread to draw while the encoders are busy
+        int poolSize = threads * 2 + 2;
+        images = new ArrayBlockingQueue<>(poolSize);
+        for (int i = 0; i < poolSize; i++) {
+            images.add(new BufferedImage(reader.getViewWidth(), reader.getViewHeight(), BufferedImage.TYPE_INT_RGB));
+        }
+        renderPool = Executors.newFixedThreadPool(threads, namedThreads("export-render"));
+        encodePool = Executors.newFixedThreadPool(threads, namedThreads("export-encode"));
+        
+        // An off-screen game per render thread; swarm mode at zero rates keeps it from saving or recording
+        renderers = ThreadLocal.withInitial(() -> {
+            ShapeShifterDuel game = new ShapeShifterDuel(
+                new SwarmConfig(true, 0, 0, 0, 3600, reader.getViewWidth(), reader.getViewHeight(), null, 1));
+            game.setSize(reader.getViewWidth(), reader.getViewHeight());
+            return game;
+        });
+        writers = ThreadLocal.withInitial(() -> ImageIO.getImageWritersByFormatName("png").next());
+    }
+    
+    /**
+     * Export a range of frames and wait until all of them are written.
+     *
+     * @param first The first frame
+     * @param last The last frame
+     * @param chunkSize Frames per render task
+     * @throws Exception If rendering fails
+     */
+    public void export(int first, int last, int chunkSize) throws Exception {
+        List<Future<?>> chunks = new ArrayList<>();
+        for (int start = first; start <= last; start += chunkSize) {
+            int chunkStart = start;
+            int chunkEnd = Math.min(last, start + chunkSize - 1);
+            chunks.add(renderPool.submit(() -> {
+                renderChunk(first, chunkStart, chunkEnd);
+                return null;
+            }));
+        }
+        try {
+            for (Future<?> chunk : chunks) {
+                chunk.get();
+            }
+        } finally {
+            renderPool.shutdownNow();
+            encodePool.shutdown();
+            encodePool.awaitTermination(1, TimeUnit.HOURS);
+        }
+    }
+    
+    /**
+     * Render the frames of one chunk and queue them for encoding. Called on a render thread.
+     */
+    private void renderChunk(int first, int chunkStart, int chunkEnd) throws InterruptedException {
+        ShapeShifterDuel renderer = renderers.get();
+        renderer.resetReplayEffects();
+        int width = reader.getViewWidth();
+        int height = reader.getViewHeight();
+        
+        ReplayReader.Cursor cursor = reader.cursor(Math.max(0, chunkStart - PREROLL_FRAMES));
+        RenderFrame frame;
+        while ((frame = cursor.next()) != null) {
+            int index = cursor.getFrameIndex();
+            if (index > chunkEnd) {
+                break;
+            }
+            if (index < chunkStart || (index - first) % step != 0) {
+                // Keep the effects moving without drawing
+                renderer.renderReplayFrame(null, frame, cursor.getEvents(), cursor.getEventCount(), width, height);
+                continue;
+            }
+            
+            BufferedImage image = images.take();
+            Graphics2D g = image.createGraphics();
+            try {
+                renderer.renderReplayFrame(g, frame, cursor.getEvents(), cursor.getEventCount(), width, height);
+            } finally {
+                g.dispose();
+            }
+            int number = (index - first) / step;
+            encodePool.execute(() -> {
+                try {
+                    write(image, outDir.resolve(String.format("frame-%06d.png", number)));
+                    written.incrementAndGet();
+                } catch (IOException e) {
+                    failed.incrementAndGet();
+                    System.err.println("Could not write frame " + number + ": " + e.getMessage());
+                } finally {
+                    images.add(image);
+                }
+            });
+        }
+    }
+    
+    /**
+     * Encode an image as a PNG. Called on an encoder thread.
+     */
+    private void write(BufferedImage image, Path file) throws IOException {
+        ImageWriter writer = writers.get();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        if (param.canWriteCompressed()) {
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(compression);
+        }
+        Files.deleteIfExists(file);
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(file.toFile())) {
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.setOutput(null);
+        }
+    }
+    
+    private static ThreadFactory namedThreads(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return task -> {
+            Thread thread = new Thread(task, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+    
+    // Getters
+    public int getWritten() {
+        return written.get();
+    }
+    
+    public int getFailed() {
+        return failed.get();
+    }
+    
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: java ReplayExporter replayFile outDir [firstFrame] [lastFrame]");
+            System.exit(1);
+        }
+        System.setProperty("java.awt.headless", "true");
+        ReplayReader reader = new ReplayReader(Paths.get(args[0]));
+        Path outDir = Paths.get(args[1]);
+        Files.createDirectories(outDir);
+        int first = args.length > 2 ? Integer.parseInt(args[2]) : 0;
+        int last = Math.min(reader.getFrameCount() - 1, args.length > 3 ? Integer.parseInt(args[3]) : Integer.MAX_VALUE);
+        if (first > last) {
+            System.err.println("No frames to export; the replay has " + reader.getFrameCount());
+            System.exit(1);
+        }
+        int threads = Integer.getInteger("export.threads", Runtime.getRuntime().availableProcessors());
+        int chunk = Integer.getInteger("export.chunk", 120);
+        int step = Math.max(1, Integer.getInteger("export.step", 1));
+        float compression = Float.parseFloat(System.getProperty("export.compression", "0.75"));
+        
+        System.out.println("Exporting frames " + first + " to " + last + " of " + args[0] + " at "
+            + reader.getViewWidth() + "x" + reader.getViewHeight() + " with " + threads + " render and "
+            + threads + " encode threads");
+        ReplayExporter exporter = new ReplayExporter(reader, outDir, threads, step, compression);
+        long start = System.nanoTime();
+        exporter.export(first, last, chunk);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        
+        int frames = exporter.getWritten();
+        double gameSeconds = (last - first + 1) * TICK_MS / 1000.0;
+        System.out.printf("Wrote %d frames in %.1f s: %.1f frames/s, %.2fx real time%n",
+            frames, seconds, frames / seconds, gameSeconds / seconds);
+        if (exporter.getFailed() > 0) {
+            System.out.println(exporter.getFailed() + " frames could not be written");
+        }
+        System.out.printf("Encode with: ffmpeg -framerate %.1f -i %s -pix_fmt yuv420p replay.mp4%n",
+            1000.0 / TICK_MS / step, outDir.resolve("frame-%06d.png"));
+    }
+}
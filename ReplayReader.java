@@ -0,0 +1,185 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads a replay file written by {@link ReplayRecorder}.
+ *
+ * The file is mapped once and indexed; any number of {@link Cursor}s can
+ * then decode frames from it in parallel, each starting at the keyframe
+ * before the frame it wants. A record cut short by a crash ends the replay.
+ */
+public class ReplayReader {
+    private final ByteBuffer data;
+    private final int viewWidth;
+    private final int viewHeight;
+    private final int arenaWidth;
+    private final int arenaHeight;
+    private final long startMillis;
+    private final int[] offsets;
+    private final int frameCount;
+    
+    /**
+     * Open and index a replay file.
+     *
+     * @param path The replay file
+     * @throws IOException If the file cannot be read or is not a replay
+     */
+    public ReplayReader(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (data.limit() < ReplayRecorder.HEADER_SIZE || data.getInt(0) != ReplayRecorder.MAGIC) {
+            throw new IOException("Not a replay file: " + path);
+        }
+        int version = data.getInt(4);
+        if (version != ReplayRecorder.VERSION) {
+            throw new IOException("Unsupported replay version " + version);
+        }
+        viewWidth = data.getInt(8);
+        viewHeight = data.getInt(12);
+        arenaWidth = data.getInt(16);
+        arenaHeight = data.getInt(20);
+        startMillis = data.getLong(24);
+        
+        // Index every complete record
+        int[] index = new int[1024];
+        int count = 0;
+        int position = ReplayRecorder.HEADER_SIZE;
+        while (position + 4 <= data.limit()) {
+            int length = data.getInt(position);
+            if (length <= 0 || position + 4 + length > data.limit()) {
+                break;
+            }
+            if (count == index.length) {
+                index = Arrays.copyOf(index, count * 2);
+            }
+            index[count++] = position;
+            position += 4 + length;
+        }
+        offsets = index;
+        frameCount = count;
+    }
+    
+    /**
+     * Create a cursor positioned to decode the given frame next.
+     *
+     * @param frame The first frame the caller wants
+     * @return A cursor for one thread to use
+     */
+    public Cursor cursor(int frame) {
+        return new Cursor(frame);
+    }
+    
+    /**
+     * Sequential decoder over the frames of a replay. Not thread-safe; use one per thread.
+     */
+    public class Cursor {
+        private final SnapshotCodec codec = new SnapshotCodec(arenaWidth, arenaHeight);
+        private final RenderFrame[] frames = {new RenderFrame(), new RenderFrame()};
+        private final GameEvent[] events = new GameEvent[ReplayRecorder.MAX_EVENTS];
+        private int eventCount;
+        private int next;
+        private boolean hasPrevious = false;
+        
+        private Cursor(int frame) {
+            for (int i = 0; i < events.length; i++) {
+                events[i] = new GameEvent();
+            }
+            // Back up to the keyframe at or before the frame
+            next = Math.max(0, Math.min(frame, frameCount) / ReplayRecorder.KEYFRAME_INTERVAL * ReplayRecorder.KEYFRAME_INTERVAL);
+        }
+        
+        /**
+         * Decode the next frame.
+         *
+         * @return The frame, valid until the call after next, or null at the end of the replay
+         */
+        public RenderFrame next() {
+            if (next >= frameCount) {
+                return null;
+            }
+            ByteBuffer in = data.duplicate();
+            in.position(offsets[next] + 4);
+            in.limit(offsets[next] + 4 + data.getInt(offsets[next]));
+            
+            RenderFrame frame = frames[next & 1];
+            RenderFrame previous = frames[(next + 1) & 1];
+            int timeMillis = in.getInt();
+            int flags = in.get();
+            frame.started = (flags & ReplayRecorder.FLAG_STARTED) != 0;
+            frame.gameOver = (flags & ReplayRecorder.FLAG_GAME_OVER) != 0;
+            frame.paused = (flags & ReplayRecorder.FLAG_PAUSED) != 0;
+            frame.invulnerable = (flags & ReplayRecorder.FLAG_INVULNERABLE) != 0;
+            frame.playerMaxHealth = in.getInt();
+            frame.levelProgress = in.getFloat();
+            frame.bestScore = in.getInt();
+            frame.rewindCharges = in.get();
+            frame.cameraX = in.getInt();
+            frame.cameraY = in.getInt();
+            frame.stateHash = in.getLong();
+            frame.arenaWidth = arenaWidth;
+            frame.arenaHeight = arenaHeight;
+            frame.timeMillis = startMillis + timeMillis;
+            
+            eventCount = in.get() & 0xFF;
+            for (int i = 0; i < eventCount; i++) {
+                GameEvent event = events[i];
+                event.type = in.get();
+                event.tick = next;
+                event.kind = in.getInt();
+                event.value = in.getInt();
+                event.x = in.getInt();
+                event.y = in.getInt();
+                event.flags = in.get();
+            }
+            
+            boolean keyframe = (flags & ReplayRecorder.FLAG_KEYFRAME) != 0;
+            if (!keyframe && !hasPrevious) {
+                throw new IllegalStateException("Replay frame " + next + " needs the frame before it");
+            }
+            codec.decode(in, keyframe ? null : previous.world, frame.world);
+            hasPrevious = true;
+            next++;
+            return frame;
+        }
+        
+        // Getters
+        public int getFrameIndex() {
+            return next - 1;
+        }
+        
+        public GameEvent[] getEvents() {
+            return events;
+        }
+        
+        public int getEventCount() {
+            return eventCount;
+        }
+    }
+    
+    // Getters
+    public int getFrameCount() {
+        return frameCount;
+    }
+    
+    public int getViewWidth() {
+        return viewWidth;
+    }
+    
+    public int getViewHeight() {
+        return viewHeight;
+    }
+    
+    /**
+     * Get the length of the replay.
+     *
+     * @return Milliseconds from the first frame to the last
+     */
+    public long getDurationMillis() {
+        return frameCount == 0 ? 0 : data.getInt(offsets[frameCount - 1] + 4);
+    }
+}
@@ -0,0 +1,239 @@
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Records every published frame of a game, with the gameplay events of its
+ * tick, into a replay file that {@link ReplayExporter} can turn into images.
+ *
+ * The file is a header followed by one record per frame: the HUD fields of
+ * the {@link RenderFrame} and its state hash, the events, and the world as a
+ * {@link SnapshotCodec} snapshot. Most snapshots are deltas against the previous frame; every
+ * KEYFRAME_INTERVAL frames a full one is written so a reader can start there.
+ * Records are collected in memory and appended to the file in large writes.
+ * Runs on the simulation thread; each game goes into its own file.
+ */
+public class ReplayRecorder implements EventBus.Handler {
+    public static final int MAGIC = 0x53535250; // "SSRP"
+    public static final int VERSION = 3;
+    public static final int HEADER_SIZE = 32;
+    public static final int KEYFRAME_INTERVAL = 64;
+    public static final int MAX_EVENTS = 255;
+    
+    // Record flags
+    public static final int FLAG_STARTED = 1;
+    public static final int FLAG_GAME_OVER = 2;
+    public static final int FLAG_PAUSED = 4;
+    public static final int FLAG_INVULNERABLE = 8;
+    public static final int FLAG_KEYFRAME = 16;
+    
+    private static final int FLUSH_BYTES = 192 * 1024;
+    private static final DateTimeFormatter FILE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+    
+    private final Path directory;
+    private final int viewWidth;
+    private final int viewHeight;
+    private final int arenaWidth;
+    private final int arenaHeight;
+    private final SnapshotCodec codec;
+    private final EventBus.Subscription events;
+    
+    private FileChannel file;
+    private ByteBuffer pending = ByteBuffer.allocate(256 * 1024);
+    private final WorldState previous = new WorldState();
+    private long startMillis;
+    private int frameCount;
+    
+    // Events of the tick being recorded
+    private final GameEvent[] tickEvents = new GameEvent[MAX_EVENTS];
+    private int tickEventCount;
+    
+    /**
+     * Constructor for the replay recorder.
+     *
+     * @param directory Where replay files are written
+     * @param bus The bus to read gameplay events from
+     * @param viewWidth Width of the view the game is drawn at
+     * @param viewHeight Height of the view
+     * @param arenaWidth Width of the arena
+     * @param arenaHeight Height of the arena
+     * @throws IOException If the directory cannot be created
+     */
+    public ReplayRecorder(Path directory, EventBus bus, int viewWidth, int viewHeight,
+                          int arenaWidth, int arenaHeight) throws IOException {
+        Files.createDirectories(directory);
+        this.directory = directory;
+        this.viewWidth = viewWidth;
+        this.viewHeight = viewHeight;
+        this.arenaWidth = arenaWidth;
+        this.arenaHeight = arenaHeight;
+        this.codec = new SnapshotCodec(arenaWidth, arenaHeight);
+        this.events = bus.subscribe();
+        for (int i = 0; i < MAX_EVENTS; i++) {
+            tickEvents[i] = new GameEvent();
+        }
+    }
+    
+    /**
+     * Start a new replay file, ending the current one.
+     */
+    public void begin() {
+        end();
+        String name = "replay-" + LocalDateTime.now().format(FILE_TIME) + ".ssr";
+        try {
+            file = FileChannel.open(directory.resolve(name), StandardOpenOption.CREATE,
+                                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            System.err.println("Could not record replay: " + e.getMessage());
+            return;
+        }
+        startMillis = System.currentTimeMillis();
+        frameCount = 0;
+        pending.clear();
+        pending.putInt(MAGIC);
+        pending.putInt(VERSION);
+        pending.putInt(viewWidth);
+        pending.putInt(viewHeight);
+        pending.putInt(arenaWidth);
+        pending.putInt(arenaHeight);
+        pending.putLong(startMillis);
+        
+        // Events from before the game started are not part of it
+        events.drain(event -> { }, Integer.MAX_VALUE);
+    }
+    
+    /**
+     * Append a frame and the events published since the last one. Ends the
+     * replay after the game over frame.
+     *
+     * @param frame The frame about to be published
+     */
+    public void record(RenderFrame frame) {
+        tickEventCount = 0;
+        events.drain(this, Integer.MAX_VALUE);
+        if (file == null) {
+            return;
+        }
+        
+        boolean keyframe = frameCount % KEYFRAME_INTERVAL == 0;
+        while (true) {
+            int start = pending.position();
+            try {
+                writeRecord(frame, keyframe);
+                break;
+            } catch (BufferOverflowException e) {
+                pending.position(start);
+                if (start > 0) {
+                    flush();
+                } else {
+                    pending = ByteBuffer.allocate(pending.capacity() * 2);
+                }
+                if (file == null) {
+                    return;
+                }
+            }
+        }
+        previous.copyFrom(frame.world);
+        frameCount++;
+        
+        if (pending.position() >= FLUSH_BYTES) {
+            flush();
+        }
+        if (frame.gameOver) {
+            end();
+        }
+    }
+    
+    private void writeRecord(RenderFrame frame, boolean keyframe) {
+        int start = pending.position();
+        pending.putInt(0); // Length, filled in below
+        pending.putInt((int) (System.currentTimeMillis() - startMillis));
+        int flags = (frame.started ? FLAG_STARTED : 0) | (frame.gameOver ? FLAG_GAME_OVER : 0)
+            | (frame.paused ? FLAG_PAUSED : 0) | (frame.invulnerable ? FLAG_INVULNERABLE : 0)
+            | (keyframe ? FLAG_KEYFRAME : 0);
+        pending.put((byte) flags);
+        pending.putInt(frame.playerMaxHealth);
+        pending.putFloat(frame.levelProgress);
+        pending.putInt(frame.bestScore);
+        pending.put((byte) frame.rewindCharges);
+        pending.putInt(frame.cameraX);
+        pending.putInt(frame.cameraY);
+        pending.putLong(frame.stateHash);
+        
+        pending.put((byte) tickEventCount);
+        for (int i = 0; i < tickEventCount; i++) {
+            GameEvent event = tickEvents[i];
+            pending.put((byte) event.type);
+            pending.putInt(event.kind);
+            pending.putInt(event.value);
+            pending.putInt(event.x);
+            pending.putInt(event.y);
+            pending.put((byte) event.flags);
+        }
+        
+        codec.encode(frame.world, keyframe ? null : previous, pending);
+        pending.putInt(start, pending.position() - start - 4);
+    }
+    
+    @Override
+    public void onEvent(GameEvent event) {
+        // A tick with more events than fit keeps the first ones
+        if (tickEventCount < MAX_EVENTS) {
+            tickEvents[tickEventCount++].copyFrom(event);
+        }
+    }
+    
+    /**
+     * Write the collected records to the file.
+     */
+    private void flush() {
+        pending.flip();
+        try {
+            while (pending.hasRemaining()) {
+                file.write(pending);
+            }
+        } catch (IOException e) {
+            System.err.println("Could not record replay: " + e.getMessage());
+            closeFile();
+        }
+        pending.clear();
+    }
+    
+    /**
+     * Finish the current replay file, if there is one.
+     */
+    public void end() {
+        if (file == null) {
+            return;
+        }
+        flush();
+        closeFile();
+    }
+    
+    private void closeFile() {
+        if (file == null) {
+            return;
+        }
+        try {
+            file.close();
+        } catch (IOException e) {
+            System.err.println("Could not close replay: " + e.getMessage());
+        }
+        file = null;
+    }
+    
+    // Getters
+    public boolean isRecording() {
+        return file != null;
+    }
+    
+    public int getFrameCount() {
+        return frameCount;
+    }
+}
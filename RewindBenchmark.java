@@ -0,0 +1,163 @@
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * Measures the rewind history against entity count: time to record a tick,
+ * bytes stored per tick, how much of the window fits, and time to restore
+ * a tick. The payloads have the same layout as the game's save payload, and
+ * like the game a tick is recorded every REWIND_STRIDE ticks, enemies and
+ * projectiles that leave are swap-removed and power-ups removed from a list,
+ * so records change index between entries.
+ *
+ * Run with: java RewindBenchmark
+ */
+public class RewindBenchmark {
+    private static final int[] RECORD_SIZES = {34, 25, 13};
+    private static final int HEADER_BYTES = 90;
+    private static final int WORLD_SIZE = 800;
+    private static final int TICKS = 2000;
+    private static final int REWIND_STRIDE = 4;
+    private static final int WINDOW_ENTRIES = 625 / REWIND_STRIDE;
+    private static final int BUFFER_BYTES = 8 * 1024 * 1024;
+    
+    public static void main(String[] args) {
+        int[] entityCounts = {10, 100, 1000, 5000};
+        
+        // One untimed pass so the second one measures compiled code
+        for (int count : entityCounts) {
+            run(count, false);
+        }
+        System.out.println("entities  record us  per tick us  entry B  window s  restore us");
+        for (int count : entityCounts) {
+            run(count, true);
+        }
+    }
+    
+    private static void run(int entityCount, boolean print) {
+        Random random = new Random(42);
+        RewindBuffer rewind = new RewindBuffer(BUFFER_BYTES, WINDOW_ENTRIES, 32, RECORD_SIZES);
+        ByteBuffer payload = ByteBuffer.allocate(64 + entityCount * 40 + HEADER_BYTES);
+        
+        // A third each of enemies, projectiles and power-ups
+        int n = Math.max(1, entityCount / 3);
+        float[] enemyX = new float[n];
+        float[] enemyY = new float[n];
+        int[] enemyId = new int[n];
+        int[] shotX = new int[n];
+        int[] shotY = new int[n];
+        int[] shotId = new int[n];
+        float[] powerUpY = new float[n];
+        int[] powerUpId = new int[n];
+        int nextId = 1;
+        for (int i = 0; i < n; i++) {
+            enemyX[i] = random.nextInt(WORLD_SIZE);
+            enemyY[i] = random.nextInt(WORLD_SIZE);
+            enemyId[i] = nextId++;
+            shotX[i] = random.nextInt(WORLD_SIZE);
+            shotY[i] = random.nextInt(WORLD_SIZE);
+            shotId[i] = nextId++;
+            powerUpY[i] = random.nextInt(WORLD_SIZE);
+            powerUpId[i] = nextId++;
+        }
+        
+        long recordNanos = 0;
+        long entryBytes = 0;
+        int measured = 0;
+        for (int tick = 1; tick <= TICKS; tick++) {
+            // Everything moves; whatever leaves the field is removed and a new entity appended
+            for (int i = 0; i < n; i++) {
+                enemyY[i] += 2;
+                shotY[i] -= 20;
+                powerUpY[i] += 1.5f;
+            }
+            for (int i = n - 1; i >= 0; i--) {
+                if (enemyY[i] > WORLD_SIZE) {
+                    enemyX[i] = enemyX[n - 1];
+                    enemyY[i] = enemyY[n - 1];
+                    enemyId[i] = enemyId[n - 1];
+                    enemyX[n - 1] = random.nextInt(WORLD_SIZE);
+                    enemyY[n - 1] = 0;
+                    enemyId[n - 1] = nextId++;
+                }
+                if (shotY[i] < 0) {
+                    shotX[i] = shotX[n - 1];
+                    shotY[i] = shotY[n - 1];
+                    shotId[i] = shotId[n - 1];
+                    shotX[n - 1] = random.nextInt(WORLD_SIZE);
+                    shotY[n - 1] = WORLD_SIZE;
+                    shotId[n - 1] = nextId++;
+                }
+                if (powerUpY[i] > WORLD_SIZE) {
+                    // Power-ups are a list, so removing one shifts the rest down
+                    System.arraycopy(powerUpY, i + 1, powerUpY, i, n - 1 - i);
+                    System.arraycopy(powerUpId, i + 1, powerUpId, i, n - 1 - i);
+                    powerUpY[n - 1] = 0;
+                    powerUpId[n - 1] = nextId++;
+                }
+            }
+            if (tick % REWIND_STRIDE != 0) {
+                continue;
+            }
+            
+            long start = System.nanoTime();
+            payload.clear();
+            payload.putInt(tick);
+            payload.putLong(tick * 16L);
+            for (int i = 12; i < HEADER_BYTES; i++) {
+                payload.put((byte) (i == 40 && tick % 60 == 0 ? tick : 0));
+            }
+            payload.putInt(n);
+            for (int i = 0; i < n; i++) {
+                payload.putInt(enemyId[i]).put((byte) 1).putFloat(enemyX[i]).putFloat(enemyY[i]).putInt(40)
+                       .putInt(8).putFloat(2).put((byte) 0).putFloat(enemyX[i]).putInt(0);
+            }
+            payload.putInt(n);
+            for (int i = 0; i < n; i++) {
+                payload.putInt(shotId[i]).put((byte) 0).putInt(shotX[i]).putInt(shotY[i]).putInt(0).putInt(-20).putInt(10);
+            }
+            payload.putInt(n);
+            for (int i = 0; i < n; i++) {
+                payload.putInt(powerUpId[i]).put((byte) 2).putInt(100).putFloat(powerUpY[i]);
+            }
+            payload.putInt(0).putInt(tick).putInt(0);
+            payload.flip();
+            rewind.record(tick, payload, HEADER_BYTES);
+            long end = System.nanoTime();
+            
+            if (tick > TICKS / 2) {
+                recordNanos += end - start;
+                entryBytes += rewind.getLastEntryBytes();
+                measured++;
+            }
+        }
+        
+        // Restore ticks across the window, newest last since restoring drops later ticks
+        int oldest = rewind.getOldestTick();
+        int newest = rewind.getNewestTick();
+        long restoreNanos = 0;
+        int restores = 0;
+        for (int target = oldest + 31 * REWIND_STRIDE; target <= newest; target += 64 * REWIND_STRIDE) {
+            long start = System.nanoTime();
+            if (rewind.restore(target) == null) {
+                throw new IllegalStateException("Could not restore tick " + target);
+            }
+            restoreNanos += System.nanoTime() - start;
+            restores++;
+            for (int tick = target + REWIND_STRIDE; tick <= newest; tick += REWIND_STRIDE) {
+                // Rewinding drops later ticks, so record the same span again
+                rewind.record(tick, payload, HEADER_BYTES);
+            }
+        }
+        
+        if (!print) {
+            return;
+        }
+        System.out.printf("%8d  %9.1f  %11.1f  %7d  %8.1f  %10.1f%n",
+            entityCount,
+            recordNanos / 1000.0 / measured,
+            recordNanos / 1000.0 / measured / REWIND_STRIDE,
+            entryBytes / measured,
+            (newest - oldest + REWIND_STRIDE) * 16 / 1000.0,
+            restoreNanos / 1000.0 / Math.max(1, restores));
+    }
+}
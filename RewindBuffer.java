@@ -0,0 +1,572 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The last few seconds of game state, kept as compact per-tick deltas.
+ *
+ * Each recorded tick is a save payload (see {@link SaveGameFile}) made of a
+ * header blob, a number of tables of fixed-size entity records, and a tail
+ * blob. Every tick is stored as the difference from the tick before it: the
+ * 4-byte chunks that changed in the header and tail, the changed chunks of
+ * each entity record that changed, spawned records in full, and new table
+ * sizes for despawns. Every keyframeInterval ticks a full copy is stored
+ * instead, so restoring a tick replays at most that many deltas.
+ *
+ * Each entity record starts with the entity's 4-byte id, and records are
+ * matched to the previous tick by that id rather than by position, so a
+ * despawn that swaps the last record into its place costs one reference
+ * instead of rewriting every record after it.
+ *
+ * Entries live in one preallocated byte ring with a bounded number of ticks;
+ * when either runs out the oldest entries are dropped, so memory use is fixed
+ * no matter how many entities there are, and only the window shrinks.
+ * Not thread-safe; use it from the simulation thread only.
+ */
+public class RewindBuffer {
+    private static final int CHUNK = 4;
+    
+    private final byte[] ring;
+    private final int[] recordSizes;
+    private final int keyframeInterval;
+    
+    // Entry index, oldest first
+    private final int[] entryTick;
+    private final int[] entryOffset;
+    private final int[] entryLength;
+    private final boolean[] entryKeyframe;
+    private int firstEntry = 0;
+    private int entryCount = 0;
+    private int writePos = 0;
+    private int sinceKeyframe = 0;
+    private boolean forceKeyframe = true;
+    
+    private final Sections empty;
+    private Sections previous;
+    private Sections current;
+    private final Sections restored;
+    private final byte[][] scratch;
+    private final RecordIndex fromIndex = new RecordIndex();
+    private ByteBuffer encoded = ByteBuffer.allocate(64 * 1024);
+    private ByteBuffer restoreBuffer = ByteBuffer.allocate(64 * 1024);
+    private int lastEntryBytes;
+    
+    /**
+     * Constructor for the rewind buffer.
+     * 
+     * @param byteCapacity Bytes set aside for stored entries
+     * @param maxTicks The most ticks to keep
+     * @param keyframeInterval Ticks between full copies
+     * @param recordSizes The record size of each entity table in the payload, in order
+     */
+    public RewindBuffer(int byteCapacity, int maxTicks, int keyframeInterval, int[] recordSizes) {
+        for (int size : recordSizes) {
+            if (size > 31 * CHUNK) {
+                throw new IllegalArgumentException("Records of " + size + " bytes are too large for a chunk mask");
+            }
+        }
+        this.ring = new byte[byteCapacity];
+        this.recordSizes = recordSizes.clone();
+        this.keyframeInterval = keyframeInterval;
+        this.entryTick = new int[maxTicks];
+        this.entryOffset = new int[maxTicks];
+        this.entryLength = new int[maxTicks];
+        this.entryKeyframe = new boolean[maxTicks];
+        this.empty = new Sections(this.recordSizes);
+        this.previous = new Sections(this.recordSizes);
+        this.current = new Sections(this.recordSizes);
+        this.restored = new Sections(this.recordSizes);
+        this.scratch = new byte[recordSizes.length][1024];
+    }
+    
+    /**
+     * Record the state at a tick.
+     * 
+     * @param tick The tick, which should follow the last one recorded
+     * @param payload The save payload, from position 0 to its limit
+     * @param headerLength Length of the header blob before the first table
+     */
+    public void record(int tick, ByteBuffer payload, int headerLength) {
+        current.parse(payload, headerLength);
+        
+        boolean keyframe = forceKeyframe || sinceKeyframe >= keyframeInterval - 1;
+        encoded.clear();
+        while (true) {
+            try {
+                encode(keyframe ? empty : previous, current, encoded);
+                break;
+            } catch (java.nio.BufferOverflowException e) {
+                encoded = ByteBuffer.allocate(encoded.capacity() * 2);
+            }
+        }
+        lastEntryBytes = encoded.position();
+        
+        Sections swap = previous;
+        previous = current;
+        current = swap;
+        
+        if (!store(tick, keyframe)) {
+            // Too large for the whole ring; start again from the next tick
+            clear();
+            return;
+        }
+        forceKeyframe = false;
+        sinceKeyframe = keyframe ? 0 : sinceKeyframe + 1;
+    }
+    
+    /**
+     * Copy the encoded entry into the ring, dropping the oldest entries to make room.
+     */
+    private boolean store(int tick, boolean keyframe) {
+        int length = encoded.position();
+        if (length > ring.length) {
+            return false;
+        }
+        int pos = writePos;
+        if (pos + length > ring.length) {
+            // Skip the end of the ring; whatever is stored there is the oldest
+            while (entryCount > 0 && entryOffset[firstEntry] >= pos) {
+                dropOldest();
+            }
+            pos = 0;
+        }
+        while (entryCount > 0 && entryOffset[firstEntry] >= pos && entryOffset[firstEntry] < pos + length) {
+            dropOldest();
+        }
+        if (entryCount == entryTick.length) {
+            dropOldest();
+        }
+        
+        System.arraycopy(encoded.array(), 0, ring, pos, length);
+        int index = (firstEntry + entryCount) % entryTick.length;
+        entryTick[index] = tick;
+        entryOffset[index] = pos;
+        entryLength[index] = length;
+        entryKeyframe[index] = keyframe;
+        entryCount++;
+        writePos = pos + length;
+        return true;
+    }
+    
+    private void dropOldest() {
+        firstEntry = (firstEntry + 1) % entryTick.length;
+        entryCount--;
+    }
+    
+    /**
+     * Rebuild the payload for a stored tick. The tick becomes the newest one
+     * kept, so recording carries on from it.
+     * 
+     * @param tick The tick to restore
+     * @return The payload, from position 0 to its limit, or null if the tick cannot be restored
+     */
+    public ByteBuffer restore(int tick) {
+        // Find the tick, then the keyframe it builds on
+        int target = -1;
+        for (int k = entryCount - 1; k >= 0; k--) {
+            if (entryTick[(firstEntry + k) % entryTick.length] == tick) {
+                target = k;
+                break;
+            }
+        }
+        int keyframe = target;
+        while (keyframe >= 0 && !entryKeyframe[(firstEntry + keyframe) % entryTick.length]) {
+            keyframe--;
+        }
+        if (target < 0 || keyframe < 0) {
+            return null;
+        }
+        
+        restored.clear();
+        for (int k = keyframe; k <= target; k++) {
+            int index = (firstEntry + k) % entryTick.length;
+            decode(ByteBuffer.wrap(ring, entryOffset[index], entryLength[index]), restored);
+        }
+        
+        // Later ticks belong to the future that is being undone
+        entryCount = target + 1;
+        int newest = (firstEntry + target) % entryTick.length;
+        writePos = entryOffset[newest] + entryLength[newest];
+        sinceKeyframe = target - keyframe;
+        previous.copyFrom(restored);
+        
+        while (true) {
+            restoreBuffer.clear();
+            try {
+                restored.write(restoreBuffer);
+                break;
+            } catch (java.nio.BufferOverflowException e) {
+                restoreBuffer = ByteBuffer.allocate(restoreBuffer.capacity() * 2);
+            }
+        }
+        restoreBuffer.flip();
+        return restoreBuffer;
+    }
+    
+    /**
+     * Forget everything recorded.
+     */
+    public void clear() {
+        firstEntry = 0;
+        entryCount = 0;
+        writePos = 0;
+        sinceKeyframe = 0;
+        forceKeyframe = true;
+    }
+    
+    /**
+     * Get the oldest tick that can still be restored.
+     * 
+     * @return The tick, or -1 if nothing can be restored
+     */
+    public int getOldestTick() {
+        for (int k = 0; k < entryCount; k++) {
+            int index = (firstEntry + k) % entryTick.length;
+            if (entryKeyframe[index]) {
+                return entryTick[index];
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Get the newest recorded tick.
+     * 
+     * @return The tick, or -1 if nothing is recorded
+     */
+    public int getNewestTick() {
+        return entryCount == 0 ? -1 : entryTick[(firstEntry + entryCount - 1) % entryTick.length];
+    }
+    
+    /**
+     * Get the bytes held by stored entries, including any skipped at the end of the ring.
+     * 
+     * @return The bytes in use
+     */
+    public int getBytesUsed() {
+        if (entryCount == 0) {
+            return 0;
+        }
+        int start = entryOffset[firstEntry];
+        return writePos > start ? writePos - start : ring.length - start + writePos;
+    }
+    
+    // Getters
+    public int getCapacity() {
+        return ring.length;
+    }
+    
+    public int getLastEntryBytes() {
+        return lastEntryBytes;
+    }
+    
+    // Encoding
+    
+    private void encode(Sections from, Sections to, ByteBuffer out) {
+        encodeBlob(from, to, Sections.HEADER, out);
+        for (int t = 0; t < recordSizes.length; t++) {
+            encodeTable(from.records[t], from.counts[t], to.records[t], to.counts[t], recordSizes[t], out);
+        }
+        encodeBlob(from, to, Sections.TAIL, out);
+    }
+    
+    /**
+     * A blob is either its new length plus one followed by the whole blob, or
+     * 0 followed by (chunk gap, chunk) pairs ending in a 0 gap.
+     */
+    private static void encodeBlob(Sections fromState, Sections toState, int blob, ByteBuffer out) {
+        byte[] from = fromState.blobs[blob];
+        byte[] to = toState.blobs[blob];
+        int toLength = toState.blobLengths[blob];
+        if (fromState.blobLengths[blob] != toLength) {
+            putVarint(out, toLength + 1);
+            out.put(to, 0, toLength);
+            return;
+        }
+        putVarint(out, 0);
+        int last = -1;
+        for (int start = 0; start < toLength; start += CHUNK) {
+            int end = Math.min(start + CHUNK, toLength);
+            if (Arrays.mismatch(from, start, end, to, start, end) >= 0) {
+                int chunk = start / CHUNK;
+                putVarint(out, chunk - last);
+                out.put(to, start, end - start);
+                last = chunk;
+            }
+        }
+        putVarint(out, 0);
+    }
+    
+    /**
+     * A table is its new size, then for each record that is not the same as
+     * the one at its index before: (record gap, chunk mask, changed chunks)
+     * when the same entity is still at that index, (record gap, 0, source
+     * index plus one, chunk mask, changed chunks) when it moved there, or
+     * (record gap, 0, 0, whole record) when it is new past the old size; a
+     * new entity inside the old size is patched over the record it replaces.
+     * It ends in a 0 gap.
+     * A changed record always has a chunk in its mask, so the 0 is free.
+     */
+    private void encodeTable(byte[] from, int fromCount, byte[] to, int toCount, int size, ByteBuffer out) {
+        putVarint(out, toCount);
+        boolean indexed = false;
+        int last = -1;
+        for (int i = 0; i < toCount; i++) {
+            int base = i * size;
+            int id = idAt(to, base);
+            int source;
+            if (i < fromCount && idAt(from, base) == id) {
+                if (Arrays.mismatch(from, base, base + size, to, base, base + size) < 0) {
+                    continue;
+                }
+                source = i;
+            } else {
+                // Moved or new; only look ids up once the order has changed
+                if (!indexed) {
+                    fromIndex.build(from, fromCount, size);
+                    indexed = true;
+                }
+                source = fromIndex.get(id);
+                if (source < 0 && i < fromCount) {
+                    // New, but the record it replaces is as good a base as any
+                    source = i;
+                }
+            }
+            putVarint(out, i - last);
+            last = i;
+            if (source != i) {
+                putVarint(out, 0);
+                putVarint(out, source + 1);
+                if (source < 0) {
+                    out.put(to, base, size);
+                    continue;
+                }
+            }
+            int sourceBase = source * size;
+            int mask = 0;
+            for (int start = 0; start < size; start += CHUNK) {
+                int end = Math.min(start + CHUNK, size);
+                if (Arrays.mismatch(from, sourceBase + start, sourceBase + end, to, base + start, base + end) >= 0) {
+                    mask |= 1 << (start / CHUNK);
+                }
+            }
+            putVarint(out, mask);
+            for (int start = 0; start < size; start += CHUNK) {
+                if ((mask & (1 << (start / CHUNK))) != 0) {
+                    out.put(to, base + start, Math.min(CHUNK, size - start));
+                }
+            }
+        }
+        putVarint(out, 0);
+    }
+    
+    private static int idAt(byte[] records, int base) {
+        return (records[base] << 24) | ((records[base + 1] & 0xFF) << 16)
+             | ((records[base + 2] & 0xFF) << 8) | (records[base + 3] & 0xFF);
+    }
+    
+    private void decode(ByteBuffer in, Sections state) {
+        decodeBlob(in, state, Sections.HEADER);
+        for (int t = 0; t < recordSizes.length; t++) {
+            decodeTable(in, state, t, recordSizes[t]);
+        }
+        decodeBlob(in, state, Sections.TAIL);
+    }
+    
+    private static void decodeBlob(ByteBuffer in, Sections state, int blob) {
+        int header = getVarint(in);
+        if (header > 0) {
+            state.ensureBlob(blob, header - 1);
+            in.get(state.blobs[blob], 0, header - 1);
+            state.blobLengths[blob] = header - 1;
+            return;
+        }
+        byte[] bytes = state.blobs[blob];
+        int length = state.blobLengths[blob];
+        int chunk = -1;
+        int gap;
+        while ((gap = getVarint(in)) != 0) {
+            chunk += gap;
+            int start = chunk * CHUNK;
+            in.get(bytes, start, Math.min(CHUNK, length - start));
+        }
+    }
+    
+    /**
+     * Rebuild a table into the scratch array, since records may come from any
+     * index of the old one, then swap the two.
+     */
+    private void decodeTable(ByteBuffer in, Sections state, int table, int size) {
+        byte[] from = state.records[table];
+        int fromCount = state.counts[table];
+        int toCount = getVarint(in);
+        if (scratch[table].length < toCount * size) {
+            scratch[table] = new byte[Math.max(toCount * size, scratch[table].length * 2)];
+        }
+        byte[] to = scratch[table];
+        System.arraycopy(from, 0, to, 0, Math.min(fromCount, toCount) * size);
+        int i = -1;
+        int gap;
+        while ((gap = getVarint(in)) != 0) {
+            i += gap;
+            int base = i * size;
+            int mask = getVarint(in);
+            if (mask == 0) {
+                int source = getVarint(in) - 1;
+                if (source < 0) {
+                    in.get(to, base, size);
+                    continue;
+                }
+                System.arraycopy(from, source * size, to, base, size);
+                mask = getVarint(in);
+            }
+            for (int start = 0; start < size; start += CHUNK) {
+                if ((mask & (1 << (start / CHUNK))) != 0) {
+                    in.get(to, base + start, Math.min(CHUNK, size - start));
+                }
+            }
+        }
+        scratch[table] = from;
+        state.records[table] = to;
+        state.counts[table] = toCount;
+    }
+    
+    private static void putVarint(ByteBuffer out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+    
+    private static int getVarint(ByteBuffer in) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+    
+    /**
+     * Where each entity id sits in a table, as an open-addressing hash table.
+     */
+    private static class RecordIndex {
+        private int[] ids = new int[256];
+        private int[] indices = new int[256];
+        
+        void build(byte[] records, int count, int size) {
+            int capacity = Math.max(256, Integer.highestOneBit(Math.max(1, count * 2) - 1) << 1);
+            if (indices.length != capacity) {
+                ids = new int[capacity];
+                indices = new int[capacity];
+            }
+            Arrays.fill(indices, -1);
+            int mask = capacity - 1;
+            for (int i = 0; i < count; i++) {
+                int id = idAt(records, i * size);
+                int slot = hash(id) & mask;
+                while (indices[slot] >= 0) {
+                    slot = (slot + 1) & mask;
+                }
+                ids[slot] = id;
+                indices[slot] = i;
+            }
+        }
+        
+        int get(int id) {
+            int mask = indices.length - 1;
+            for (int slot = hash(id) & mask; indices[slot] >= 0; slot = (slot + 1) & mask) {
+                if (ids[slot] == id) {
+                    return indices[slot];
+                }
+            }
+            return -1;
+        }
+        
+        private static int hash(int id) {
+            return (id * 0x9E3779B9) >>> 16;
+        }
+    }
+    
+    /**
+     * A payload split into its header, entity tables and tail, each in its own
+     * array so deltas can patch them in place.
+     */
+    private static class Sections {
+        static final int HEADER = 0;
+        static final int TAIL = 1;
+        
+        final byte[][] blobs = {new byte[256], new byte[64]};
+        final int[] blobLengths = new int[2];
+        final int[] recordSizes;
+        final byte[][] records;
+        final int[] counts;
+        
+        Sections(int[] recordSizes) {
+            this.recordSizes = recordSizes;
+            records = new byte[recordSizes.length][1024];
+            counts = new int[recordSizes.length];
+        }
+        
+        void clear() {
+            Arrays.fill(blobLengths, 0);
+            Arrays.fill(counts, 0);
+        }
+        
+        void ensureBlob(int blob, int bytes) {
+            if (blobs[blob].length < bytes) {
+                blobs[blob] = Arrays.copyOf(blobs[blob], Math.max(bytes, blobs[blob].length * 2));
+            }
+        }
+        
+        void ensureRecords(int table, int bytes) {
+            if (records[table].length < bytes) {
+                records[table] = Arrays.copyOf(records[table], Math.max(bytes, records[table].length * 2));
+            }
+        }
+        
+        void parse(ByteBuffer payload, int headerLength) {
+            ByteBuffer in = payload.duplicate();
+            in.position(0);
+            ensureBlob(HEADER, headerLength);
+            in.get(blobs[HEADER], 0, headerLength);
+            blobLengths[HEADER] = headerLength;
+            for (int t = 0; t < records.length; t++) {
+                int count = in.getInt();
+                ensureRecords(t, count * recordSizes[t]);
+                in.get(records[t], 0, count * recordSizes[t]);
+                counts[t] = count;
+            }
+            int tailLength = in.remaining();
+            ensureBlob(TAIL, tailLength);
+            in.get(blobs[TAIL], 0, tailLength);
+            blobLengths[TAIL] = tailLength;
+        }
+        
+        void write(ByteBuffer out) {
+            out.put(blobs[HEADER], 0, blobLengths[HEADER]);
+            for (int t = 0; t < records.length; t++) {
+                out.putInt(counts[t]);
+                out.put(records[t], 0, counts[t] * recordSizes[t]);
+            }
+            out.put(blobs[TAIL], 0, blobLengths[TAIL]);
+        }
+        
+        void copyFrom(Sections other) {
+            for (int b = 0; b < blobs.length; b++) {
+                ensureBlob(b, other.blobLengths[b]);
+                System.arraycopy(other.blobs[b], 0, blobs[b], 0, other.blobLengths[b]);
+                blobLengths[b] = other.blobLengths[b];
+            }
+            for (int t = 0; t < records.length; t++) {
+                int bytes = other.counts[t] * recordSizes[t];
+                ensureRecords(t, bytes);
+                System.arraycopy(other.records[t], 0, records[t], 0, bytes);
+                counts[t] = other.counts[t];
+            }
+        }
+    }
+}
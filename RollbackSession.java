@@ -0,0 +1,294 @@
+import java.nio.ByteBuffer;
+
+/**
+ * Rollback synchronisation of a {@link DuelSimulation} between two peers.
+ *
+ * Each tick the local input is applied straight away and the remote input is
+ * predicted by repeating the last one received. When the real remote input for
+ * an earlier tick arrives and differs from the prediction, the state saved
+ * before that tick is restored and the ticks since are simulated again with
+ * the corrected input, within the same frame. A peer never gets more than
+ * maxRollback ticks ahead of the newest confirmed remote input; past that it
+ * waits a tick instead, so a correction never replays more than that.
+ *
+ * Inputs travel in small datagrams that repeat every input the other side has
+ * not acknowledged yet, so a lost packet costs nothing once a later one gets
+ * through. Each packet also carries the checksum of the newest tick both sides
+ * agree on, so a desync is counted instead of going unnoticed.
+ *
+ * Not thread-safe; everything runs on the simulation thread.
+ */
+public class RollbackSession {
+    private static final int INPUT_RING = 256;
+    private static final short PACKET_MAGIC = 0x5344;
+    private static final int NO_ROLLBACK = Integer.MAX_VALUE;
+    
+    /** Upper bound on the size of a packet written by {@link #writePacket(ByteBuffer)}. */
+    public static final int MAX_PACKET_BYTES = 2 + 1 + 4 + 4 + 2 + INPUT_RING + 4 + 8;
+    
+    private final int localPlayer;
+    private final int maxRollback;
+    private final DuelSimulation current;
+    
+    // State before tick f is kept at f & snapshotMask, for the last maxRollback ticks and more
+    private final DuelSimulation[] snapshots;
+    private final int snapshotMask;
+    
+    // Inputs by tick, at f & (INPUT_RING - 1)
+    private final byte[] localInputs = new byte[INPUT_RING];
+    private final byte[] remoteInputs = new byte[INPUT_RING];
+    private final byte[] usedRemoteInputs = new byte[INPUT_RING];
+    private final long[] checksums = new long[INPUT_RING];
+    
+    private int frame = 0;                    // Next tick to simulate
+    private int lastRemoteFrame = -1;         // Every remote input up to here has arrived
+    private int remoteAckFrame = -1;          // The peer has every local input up to here
+    private int rollbackFrame = NO_ROLLBACK;  // Earliest tick simulated with a wrong prediction
+    private int checkedFrame = -1;            // Newest tick whose state is final and checksummed
+    private int remoteChecksumFrame = -1;
+    private long remoteChecksum;
+    
+    // Counters
+    private long rollbacks = 0;
+    private long replayedTicks = 0;
+    private int maxReplayed = 0;
+    private long stalls = 0;
+    private long desyncs = 0;
+    private final LatencyHistogram rollbackMicros = new LatencyHistogram();
+    
+    /**
+     * Constructor for the rollback session.
+     *
+     * @param initial The starting state, identical on both peers; it is copied
+     * @param localPlayer The player number controlled on this machine
+     * @param maxRollback The most ticks a correction may replay
+     */
+    public RollbackSession(DuelSimulation initial, int localPlayer, int maxRollback) {
+        if (maxRollback < 1 || maxRollback > INPUT_RING / 4) {
+            throw new IllegalArgumentException("maxRollback must be between 1 and " + INPUT_RING / 4);
+        }
+        this.localPlayer = localPlayer;
+        this.maxRollback = maxRollback;
+        this.current = new DuelSimulation(initial.width, initial.height, 0);
+        current.copyFrom(initial);
+        
+        int slots = Integer.highestOneBit(maxRollback + 1) << 1;
+        snapshots = new DuelSimulation[slots];
+        snapshotMask = slots - 1;
+        for (int i = 0; i < slots; i++) {
+            snapshots[i] = new DuelSimulation(initial.width, initial.height, 0);
+        }
+    }
+    
+    /**
+     * Simulate the next tick with this peer's input, first replaying any ticks
+     * that were simulated with a wrong prediction.
+     *
+     * @param localInput The local player's input bits for the tick
+     * @return false if this peer is too far ahead of the remote input and waited instead
+     */
+    public boolean advance(int localInput) {
+        applyCorrections();
+        if (frame > lastRemoteFrame + maxRollback) {
+            stalls++;
+            return false;
+        }
+        localInputs[frame & (INPUT_RING - 1)] = (byte) localInput;
+        simulate(frame);
+        frame++;
+        updateChecksums();
+        return true;
+    }
+    
+    /**
+     * Replay the ticks since the earliest misprediction, if there was one.
+     * {@link #advance(int)} does this itself; call it directly to settle the
+     * state without simulating a new tick.
+     */
+    public void applyCorrections() {
+        if (rollbackFrame == NO_ROLLBACK) {
+            return;
+        }
+        long start = System.nanoTime();
+        int replayed = frame - rollbackFrame;
+        current.copyFrom(snapshots[rollbackFrame & snapshotMask]);
+        for (int f = rollbackFrame; f < frame; f++) {
+            simulate(f);
+        }
+        rollbackFrame = NO_ROLLBACK;
+        
+        rollbacks++;
+        replayedTicks += replayed;
+        maxReplayed = Math.max(maxReplayed, replayed);
+        rollbackMicros.record((System.nanoTime() - start) / 1000);
+        updateChecksums();
+    }
+    
+    /**
+     * Save the state before a tick and simulate it, predicting the remote input if it has not arrived.
+     *
+     * @param f The tick to simulate
+     */
+    private void simulate(int f) {
+        snapshots[f & snapshotMask].copyFrom(current);
+        int slot = f & (INPUT_RING - 1);
+        int remote;
+        if (f <= lastRemoteFrame) {
+            remote = remoteInputs[slot] & 0xFF;
+        } else {
+            remote = lastRemoteFrame >= 0 ? remoteInputs[lastRemoteFrame & (INPUT_RING - 1)] & 0xFF : 0;
+        }
+        usedRemoteInputs[slot] = (byte) remote;
+        int local = localInputs[slot] & 0xFF;
+        if (localPlayer == 0) {
+            current.step(local, remote);
+        } else {
+            current.step(remote, local);
+        }
+    }
+    
+    /**
+     * Checksum the saved states that can no longer change, and compare the
+     * peer's checksum once this side has reached the same tick.
+     */
+    private void updateChecksums() {
+        // The state before tick f is final once every input before f is confirmed
+        int finalFrame = Math.min(lastRemoteFrame + 1, frame - 1);
+        if (rollbackFrame != NO_ROLLBACK) {
+            finalFrame = Math.min(finalFrame, rollbackFrame);
+        }
+        for (int f = Math.max(checkedFrame + 1, frame - snapshotMask); f <= finalFrame; f++) {
+            checksums[f & (INPUT_RING - 1)] = snapshots[f & snapshotMask].checksum();
+            checkedFrame = f;
+        }
+        if (remoteChecksumFrame >= 0 && remoteChecksumFrame <= checkedFrame) {
+            if (remoteChecksumFrame > checkedFrame - INPUT_RING
+                    && checksums[remoteChecksumFrame & (INPUT_RING - 1)] != remoteChecksum) {
+                desyncs++;
+            }
+            remoteChecksumFrame = -1;
+        }
+    }
+    
+    /**
+     * Write a packet for the peer: the acknowledgement, every local input it
+     * has not acknowledged, and the newest final checksum.
+     *
+     * @param out The buffer to write into, with at least {@link #MAX_PACKET_BYTES} remaining
+     */
+    public void writePacket(ByteBuffer out) {
+        int start = Math.max(remoteAckFrame + 1, frame - (INPUT_RING - 1));
+        int count = frame - start;
+        out.putShort(PACKET_MAGIC);
+        out.put((byte) localPlayer);
+        out.putInt(lastRemoteFrame);
+        out.putInt(start);
+        out.putShort((short) count);
+        for (int f = start; f < frame; f++) {
+            out.put(localInputs[f & (INPUT_RING - 1)]);
+        }
+        out.putInt(checkedFrame);
+        out.putLong(checkedFrame >= 0 ? checksums[checkedFrame & (INPUT_RING - 1)] : 0);
+    }
+    
+    /**
+     * Read a packet from the peer. Duplicate, reordered and stale packets are fine.
+     *
+     * @param in The packet
+     * @return false if the packet was not a duel packet from the other player
+     */
+    public boolean readPacket(ByteBuffer in) {
+        if (in.remaining() < MAX_PACKET_BYTES - INPUT_RING || in.getShort() != PACKET_MAGIC
+                || in.get() != 1 - localPlayer) {
+            return false;
+        }
+        remoteAckFrame = Math.max(remoteAckFrame, in.getInt());
+        int start = in.getInt();
+        int count = in.getShort() & 0xFFFF;
+        if (count > INPUT_RING || in.remaining() < count + 12) {
+            return false;
+        }
+        for (int f = start; f < start + count; f++) {
+            int input = in.get() & 0xFF;
+            // Inputs arrive in order with no gaps, and never far past what this side has simulated
+            if (f <= lastRemoteFrame || f != lastRemoteFrame + 1 || f >= frame + INPUT_RING / 2) {
+                continue;
+            }
+            int slot = f & (INPUT_RING - 1);
+            remoteInputs[slot] = (byte) input;
+            lastRemoteFrame = f;
+            if (f < frame && (usedRemoteInputs[slot] & 0xFF) != input) {
+                rollbackFrame = Math.min(rollbackFrame, f);
+            }
+        }
+        int checksumFrame = in.getInt();
+        long checksum = in.getLong();
+        if (checksumFrame > remoteChecksumFrame) {
+            remoteChecksumFrame = checksumFrame;
+            remoteChecksum = checksum;
+        }
+        updateChecksums();
+        return true;
+    }
+    
+    /**
+     * Summarise the rollback counters on one line.
+     *
+     * @return The counters
+     */
+    public String statsText() {
+        return "tick=" + frame
+            + " ahead=" + getFrameAdvantage()
+            + " rollbacks=" + rollbacks
+            + " replayed=" + replayedTicks
+            + " maxReplay=" + maxReplayed
+            + " stalls=" + stalls
+            + " desyncs=" + desyncs
+            + " rollbackTime " + rollbackMicros.summary("us");
+    }
+    
+    // Getters
+    public DuelSimulation getState() {
+        return current;
+    }
+    
+    public int getLocalPlayer() {
+        return localPlayer;
+    }
+    
+    public int getFrame() {
+        return frame;
+    }
+    
+    public int getLastRemoteFrame() {
+        return lastRemoteFrame;
+    }
+    
+    public int getFrameAdvantage() {
+        return frame - 1 - lastRemoteFrame;
+    }
+    
+    public long getRollbacks() {
+        return rollbacks;
+    }
+    
+    public long getReplayedTicks() {
+        return replayedTicks;
+    }
+    
+    public int getMaxReplayed() {
+        return maxReplayed;
+    }
+    
+    public long getStalls() {
+        return stalls;
+    }
+    
+    public long getDesyncs() {
+        return desyncs;
+    }
+    
+    public LatencyHistogram getRollbackMicros() {
+        return rollbackMicros;
+    }
+}
@@ -0,0 +1,136 @@
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * A versioned, checksummed binary save file.
+ *
+ * The file is a small header (magic, format version, payload length and a
+ * CRC32 of the payload) followed by whatever the game writes into the payload
+ * buffer. Saves are written beside the old file and moved into place, so a
+ * crash mid-save leaves the previous save intact.
+ */
+public class SaveGameFile {
+    public static final int VERSION = 8;
+    private static final int MAGIC = 0x53534456; // "SSDV"
+    private static final int HEADER_SIZE = 16;
+    
+    private final Path path;
+    private ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+    private int readVersion;
+    
+    /**
+     * Constructor for the save file.
+     * 
+     * @param path Where the save is stored
+     */
+    public SaveGameFile(Path path) {
+        this.path = path;
+    }
+    
+    /**
+     * Check whether a save exists.
+     * 
+     * @return true if a save file is present
+     */
+    public boolean exists() {
+        return Files.exists(path);
+    }
+    
+    /**
+     * Write a save, growing the buffer if the payload does not fit.
+     * 
+     * @param writer Writes the payload into the buffer it is given
+     * @throws IOException If the file cannot be written
+     */
+    public void save(Consumer<ByteBuffer> writer) throws IOException {
+        while (true) {
+            buffer.clear();
+            buffer.position(HEADER_SIZE);
+            try {
+                writer.accept(buffer);
+                break;
+            } catch (BufferOverflowException e) {
+                buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+            }
+        }
+        
+        int payloadLength = buffer.position() - HEADER_SIZE;
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), HEADER_SIZE, payloadLength);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, payloadLength);
+        buffer.putInt(12, (int) crc.getValue());
+        buffer.flip();
+        
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            // On disk before the rename, or a power cut could leave the name on an empty file
+            channel.force(true);
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    /**
+     * Read and validate the save.
+     * 
+     * @return The payload positioned at its start, or null if there is no save
+     * @throws IOException If the save is unreadable, corrupt or from an unknown version
+     */
+    public ByteBuffer read() throws IOException {
+        if (!exists()) {
+            return null;
+        }
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(path));
+        if (in.remaining() < HEADER_SIZE || in.getInt() != MAGIC) {
+            throw new IOException("Not a save file");
+        }
+        readVersion = in.getInt();
+        if (readVersion < 1 || readVersion > VERSION) {
+            throw new IOException("Unsupported save version " + readVersion);
+        }
+        int payloadLength = in.getInt();
+        int expectedCrc = in.getInt();
+        if (payloadLength != in.remaining()) {
+            throw new IOException("Save file is truncated");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(in.array(), HEADER_SIZE, payloadLength);
+        if ((int) crc.getValue() != expectedCrc) {
+            throw new IOException("Save file checksum mismatch");
+        }
+        return in;
+    }
+    
+    /**
+     * Get the format version of the last save read.
+     * 
+     * @return The version number
+     */
+    public int getReadVersion() {
+        return readVersion;
+    }
+    
+    /**
+     * Delete the save, if any.
+     */
+    public void delete() {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            System.err.println("Could not delete save: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,607 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Session gateway in front of the game engine.
+ *
+ * Handles login, the lobby and matchmaking, then hands matched pairs to a
+ * {@link MatchHandler}. Every connection gets its own thread running plain
+ * blocking code; on a JDK with virtual threads those are virtual threads,
+ * otherwise small-stack daemon platform threads are used instead.
+ *
+ * The protocol is one text command per line:
+ * <pre>
+ *   LOGIN name    -> WELCOME sessionId
+ *   LOBBY         -> LOBBY online queued matches
+ *   QUEUE         -> MATCH matchId opponent   (blocks until paired)
+ *   PING token    -> PONG token
+ *   STATS         -> STATS active accepted matches p50us p99us
+ *   QUIT          -> BYE
+ * </pre>
+ * Any other line sent while in a match is passed to the match handler.
+ */
+public class SessionGateway {
+    // How often a queued session checks whether its client has gone
+    private static final int QUEUE_POLL_MILLIS = 250;
+    
+    private final int port;
+    private final MatchHandler matchHandler;
+    private final ExecutorService sessionExecutor;
+    private final Stats stats = new Stats();
+    private final ConcurrentHashMap<Integer, Session> sessions = new ConcurrentHashMap<>();
+    private final AtomicInteger nextSessionId = new AtomicInteger(1);
+    private final AtomicInteger nextMatchId = new AtomicInteger(1);
+    private final ReentrantLock matchmakingLock = new ReentrantLock();
+    private volatile Session waitingSession; // Written under matchmakingLock
+    private ServerSocket serverSocket;
+    private Thread acceptThread;
+    private volatile boolean running = false;
+    
+    /**
+     * Handles matched sessions once matchmaking has paired them.
+     */
+    public interface MatchHandler {
+        /**
+         * Called once when two sessions have been paired. Runs while matchmaking
+         * is locked, so that neither player can leave before it returns; it
+         * must not block.
+         *
+         * @param match The new match
+         */
+        void onMatchStarted(Match match);
+        
+        /**
+         * Called on the sender's session thread for every in-match line.
+         *
+         * @param match The match the session belongs to
+         * @param session The sending session
+         * @param line The line received
+         */
+        void onMessage(Match match, Session session, String line);
+        
+        /**
+         * Called when either side disconnects or quits.
+         *
+         * @param match The match being left
+         * @param session The session leaving
+         */
+        void onLeave(Match match, Session session);
+    }
+    
+    /**
+     * Constructor for the gateway.
+     *
+     * @param port The port to listen on, or 0 for an ephemeral port
+     * @param matchHandler The handler matched pairs are handed to
+     */
+    public SessionGateway(int port, MatchHandler matchHandler) {
+        this.port = port;
+        this.matchHandler = matchHandler;
+        this.sessionExecutor = newSessionExecutor();
+    }
+    
+    /**
+     * Start listening on the loopback interface.
+     *
+     * @throws IOException If the port cannot be bound
+     */
+    public void start() throws IOException {
+        start(InetAddress.getLoopbackAddress());
+    }
+    
+    /**
+     * Start listening.
+     *
+     * @param address The address to bind to
+     * @throws IOException If the port cannot be bound
+     */
+    public void start(InetAddress address) throws IOException {
+        serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress(address, port), 4096);
+        running = true;
+        
+        acceptThread = new Thread(this::acceptLoop, "gateway-accept");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+    }
+    
+    /**
+     * Stop accepting connections and close every session.
+     */
+    public void stop() {
+        running = false;
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+        } catch (IOException e) {
+            // Already closed
+        }
+        for (Session session : sessions.values()) {
+            session.close();
+        }
+        sessionExecutor.shutdownNow();
+        try {
+            sessionExecutor.awaitTermination(2, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Get the port the gateway is bound to.
+     *
+     * @return The local port
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+    
+    /**
+     * Get the gateway counters.
+     *
+     * @return The live counters
+     */
+    public Stats getStats() {
+        return stats;
+    }
+    
+    /**
+     * Check whether sessions run on virtual threads.
+     *
+     * @return true if this JDK provides virtual threads
+     */
+    public static boolean usesVirtualThreads() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+    
+    /**
+     * Create a one-thread-per-task executor, preferring virtual threads.
+     *
+     * Looked up reflectively so the game still builds and runs on JDKs without them.
+     *
+     * @return The executor
+     */
+    static ExecutorService newSessionExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger threadNumber = new AtomicInteger();
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(null, task, "session-" + threadNumber.incrementAndGet(), 128 * 1024);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+    
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                stats.accepted.incrementAndGet();
+                sessionExecutor.execute(() -> runSession(socket));
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("Gateway accept failed: " + e.getMessage());
+                }
+            }
+        }
+    }
+    
+    /**
+     * Blocking session loop, one per connection.
+     */
+    private void runSession(Socket socket) {
+        Session session = new Session(nextSessionId.getAndIncrement(), socket);
+        if (session.in == null) {
+            // The constructor could not open the streams and has closed the socket
+            return;
+        }
+        sessions.put(session.id, session);
+        stats.active.incrementAndGet();
+        try {
+            String line;
+            while ((line = session.in.readLine()) != null) {
+                long start = System.nanoTime();
+                stats.messagesIn.incrementAndGet();
+                if (!handleLine(session, line)) {
+                    break;
+                }
+                stats.latencyMicros.record((System.nanoTime() - start) / 1000);
+            }
+        } catch (IOException e) {
+            // Connection dropped
+        } finally {
+            leaveMatchmaking(session);
+            session.close();
+            sessions.remove(session.id);
+            stats.active.decrementAndGet();
+        }
+    }
+    
+    /**
+     * Handle one command.
+     *
+     * @return false if the session should end
+     */
+    private boolean handleLine(Session session, String line) throws IOException {
+        int space = line.indexOf(' ');
+        String command = space < 0 ? line : line.substring(0, space);
+        String argument = space < 0 ? "" : line.substring(space + 1);
+        
+        switch (command) {
+            case "LOGIN":
+                if (session.name == null) {
+                    stats.loggedIn.incrementAndGet();
+                }
+                session.name = argument.isEmpty() ? "player" + session.id : argument;
+                session.send("WELCOME " + session.id);
+                return true;
+            case "PING":
+                session.send("PONG " + argument);
+                return true;
+            case "STATS":
+                session.send("STATS " + stats.active.get() + " " + stats.accepted.get() + " "
+                    + stats.matches.get() + " " + stats.latencyMicros.percentile(50) + " "
+                    + stats.latencyMicros.percentile(99));
+                return true;
+            case "QUIT":
+                session.send("BYE");
+                return false;
+            default:
+                break;
+        }
+        
+        if (session.name == null) {
+            session.send("ERROR LOGIN FIRST");
+            return true;
+        }
+        
+        Match match = session.match;
+        if (match != null) {
+            matchHandler.onMessage(match, session, line);
+            return true;
+        }
+        
+        switch (command) {
+            case "LOBBY":
+                session.send("LOBBY " + stats.loggedIn.get() + " " + (waitingSession != null ? 1 : 0)
+                    + " " + stats.matches.get());
+                return true;
+            case "QUEUE":
+                match = awaitMatch(session);
+                if (match == null) {
+                    return false;
+                }
+                Session opponent = match.opponentOf(session);
+                session.send("MATCH " + match.id + " " + opponent.name);
+                return true;
+            default:
+                session.send("ERROR UNKNOWN " + command);
+                return true;
+        }
+    }
+    
+    /**
+     * Queue a session for matchmaking and block until it is paired. Nothing
+     * else reads the socket meanwhile, so the wait is polled and the client
+     * checked for a hang-up, which takes the session out of the queue.
+     * Pairing and leaving both happen under the matchmaking lock, so a partner
+     * that hangs up as it is paired either never joins the match or is seen
+     * leaving it.
+     *
+     * @return The match, or null if the session was closed while waiting
+     */
+    private Match awaitMatch(Session session) {
+        matchmakingLock.lock();
+        try {
+            if (waitingSession == null || waitingSession == session) {
+                waitingSession = session;
+                session.pendingMatch = new CompletableFuture<>();
+            } else {
+                Session partner = waitingSession;
+                waitingSession = null;
+                Match match = new Match(nextMatchId.getAndIncrement(), partner, session);
+                partner.match = match;
+                session.match = match;
+                stats.matches.incrementAndGet();
+                matchHandler.onMatchStarted(match);
+                partner.pendingMatch.complete(match);
+                return match;
+            }
+        } finally {
+            matchmakingLock.unlock();
+        }
+        
+        while (true) {
+            try {
+                return session.pendingMatch.get(QUEUE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                if (session.hasHungUp()) {
+                    leaveMatchmaking(session);
+                    return null;
+                }
+            } catch (Exception e) {
+                return null;
+            }
+        }
+    }
+    
+    private void leaveMatchmaking(Session session) {
+        matchmakingLock.lock();
+        try {
+            if (waitingSession == session) {
+                waitingSession = null;
+            }
+            if (session.pendingMatch != null) {
+                session.pendingMatch.cancel(false);
+            }
+        } finally {
+            matchmakingLock.unlock();
+        }
+        // Set if the session was paired, even if it never saw the match
+        Match match = session.match;
+        if (match != null) {
+            session.match = null;
+            matchHandler.onLeave(match, session);
+        }
+    }
+    
+    /**
+     * A connected client.
+     */
+    public class Session {
+        private final int id;
+        private final Socket socket;
+        private final BufferedReader in;
+        private final Writer out;
+        private final ReentrantLock writeLock = new ReentrantLock();
+        private volatile String name;
+        private volatile Match match;
+        private CompletableFuture<Match> pendingMatch;
+        
+        Session(int id, Socket socket) {
+            this.id = id;
+            this.socket = socket;
+            BufferedReader reader = null;
+            Writer writer = null;
+            try {
+                reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8), 512);
+                writer = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                close();
+            }
+            this.in = reader;
+            this.out = writer;
+        }
+        
+        /**
+         * Send one line to the client. Safe to call from any thread.
+         *
+         * @param line The line to send, without the newline
+         */
+        public void send(String line) {
+            writeLock.lock();
+            try {
+                out.write(line);
+                out.write('\n');
+                out.flush();
+                stats.messagesOut.incrementAndGet();
+            } catch (IOException e) {
+                close();
+            } finally {
+                writeLock.unlock();
+            }
+        }
+        
+        /**
+         * Check, without consuming any input, whether the client has closed its end.
+         * Called only from the session's own thread.
+         *
+         * @return true if the connection is gone
+         */
+        boolean hasHungUp() {
+            try {
+                socket.setSoTimeout(1);
+                in.mark(1);
+                if (in.read() < 0) {
+                    return true;
+                }
+                in.reset();
+                return false;
+            } catch (SocketTimeoutException e) {
+                return false;
+            } catch (IOException e) {
+                return true;
+            } finally {
+                try {
+                    socket.setSoTimeout(0);
+                } catch (IOException e) {
+                    // Closed; the next read will say so
+                }
+            }
+        }
+        
+        /**
+         * Close the connection.
+         */
+        public void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Already closed
+            }
+        }
+        
+        public int getId() {
+            return id;
+        }
+        
+        public String getName() {
+            return name;
+        }
+    }
+    
+    /**
+     * Two sessions paired by matchmaking.
+     */
+    public static class Match {
+        private final int id;
+        private final Session first;
+        private final Session second;
+        private volatile Object state;
+        
+        Match(int id, Session first, Session second) {
+            this.id = id;
+            this.first = first;
+            this.second = second;
+        }
+        
+        /**
+         * Get the other side of the match.
+         *
+         * @param session One side of the match
+         * @return The other side
+         */
+        public Session opponentOf(Session session) {
+            return session == first ? second : first;
+        }
+        
+        public int getId() {
+            return id;
+        }
+        
+        public Session getFirst() {
+            return first;
+        }
+        
+        public Session getSecond() {
+            return second;
+        }
+        
+        /**
+         * Get the handler-specific state attached to this match.
+         *
+         * @return The state, or null if none was attached
+         */
+        public Object getState() {
+            return state;
+        }
+        
+        public void setState(Object state) {
+            this.state = state;
+        }
+    }
+    
+    /**
+     * Relays every in-match line to the opponent, prefixed with "OPP".
+     */
+    public static class RelayMatchHandler implements MatchHandler {
+        @Override
+        public void onMatchStarted(Match match) {
+        }
+        
+        @Override
+        public void onMessage(Match match, Session session, String line) {
+            match.opponentOf(session).send("OPP " + line);
+        }
+        
+        @Override
+        public void onLeave(Match match, Session session) {
+            match.opponentOf(session).send("OPPONENT_LEFT");
+        }
+    }
+    
+    /**
+     * Connection and latency counters.
+     */
+    public static class Stats {
+        private final AtomicInteger active = new AtomicInteger();
+        private final AtomicLong accepted = new AtomicLong();
+        private final AtomicLong loggedIn = new AtomicLong();
+        private final AtomicLong matches = new AtomicLong();
+        private final AtomicLong messagesIn = new AtomicLong();
+        private final AtomicLong messagesOut = new AtomicLong();
+        private final LatencyHistogram latencyMicros = new LatencyHistogram();
+        
+        public int getActiveConnections() {
+            return active.get();
+        }
+        
+        public long getAcceptedConnections() {
+            return accepted.get();
+        }
+        
+        public long getMatches() {
+            return matches.get();
+        }
+        
+        public long getMessagesIn() {
+            return messagesIn.get();
+        }
+        
+        public long getMessagesOut() {
+            return messagesOut.get();
+        }
+        
+        /**
+         * Get the server-side time from reading a command to writing its reply.
+         *
+         * @return The latency histogram, in microseconds
+         */
+        public LatencyHistogram getLatencyMicros() {
+            return latencyMicros;
+        }
+        
+        @Override
+        public String toString() {
+            return "active=" + active.get()
+                + " accepted=" + accepted.get()
+                + " matches=" + matches.get()
+                + " in=" + messagesIn.get()
+                + " out=" + messagesOut.get()
+                + " latency " + latencyMicros.summary("us");
+        }
+    }
+    
+    /**
+     * Run a standalone gateway that relays between matched players.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 7777;
+        SessionGateway gateway = new SessionGateway(port, new RelayMatchHandler());
+        gateway.start();
+        System.out.println("Gateway listening on " + gateway.getPort()
+            + (usesVirtualThreads() ? " (virtual threads)" : " (platform threads)"));
+        while (true) {
+            Thread.sleep(10000);
+            System.out.println(gateway.getStats());
+        }
+    }
+}
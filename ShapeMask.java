@@ -0,0 +1,109 @@
+import java.awt.Polygon;
+import java.awt.geom.Ellipse2D;
+
+/**
+ * Pixel masks of the circle, triangle and cube, for collision tests that
+ * match what is drawn rather than the bounding box.
+ *
+ * A mask is built once per shape type and size by rasterising the shape the
+ * way {@link GameUI#drawShape} draws it, one long per row with bit n set when
+ * pixel n of the row is covered. Tests check the bounding boxes first, so a
+ * miss costs what it always did; only when the boxes meet are the rows they
+ * share ANDed a word at a time.
+ */
+public final class ShapeMask {
+    public static final int MAX_SIZE = 64;
+    private static final int TYPES = 3;
+    
+    // Masks are immutable once built, so a thread that races another to build one just builds its own copy
+    private static final ShapeMask[] CACHE = new ShapeMask[TYPES * (MAX_SIZE + 1)];
+    
+    public final int type;
+    public final int size;
+    private final long[] rows;
+    
+    private ShapeMask(int type, int size) {
+        this.type = type;
+        this.size = size;
+        this.rows = new long[size];
+        
+        Polygon triangle = new Polygon(new int[] {size / 2, 0, size}, new int[] {0, size, size}, 3);
+        Ellipse2D circle = new Ellipse2D.Double(0, 0, size, size);
+        for (int y = 0; y < size; y++) {
+            long row = 0;
+            for (int x = 0; x < size; x++) {
+                // Sample pixel centres, as Java2D does when it fills a shape
+                double cx = x + 0.5;
+                double cy = y + 0.5;
+                boolean covered = type == WorldState.SHAPE_CUBE
+                               || type == WorldState.SHAPE_TRIANGLE && triangle.contains(cx, cy)
+                               || type == WorldState.SHAPE_CIRCLE && circle.contains(cx, cy);
+                if (covered) {
+                    row |= 1L << x;
+                }
+            }
+            rows[y] = row;
+        }
+    }
+    
+    /**
+     * Get the mask of a shape, building it the first time it is asked for.
+     *
+     * @param type The shape type code
+     * @param size Width and height of the shape, at most MAX_SIZE
+     * @return The mask
+     * @throws IllegalArgumentException If the type or size has no mask
+     */
+    public static ShapeMask of(int type, int size) {
+        if (type < 0 || type >= TYPES || size < 1 || size > MAX_SIZE) {
+            throw new IllegalArgumentException("No mask for shape " + type + " at size " + size);
+        }
+        int slot = type * (MAX_SIZE + 1) + size;
+        ShapeMask mask = CACHE[slot];
+        if (mask == null) {
+            mask = new ShapeMask(type, size);
+            CACHE[slot] = mask;
+        }
+        return mask;
+    }
+    
+    /**
+     * Check whether a pixel of the shape is covered.
+     *
+     * @param dx X of the pixel from the shape's left edge
+     * @param dy Y of the pixel from the shape's top edge
+     * @return true if the pixel is inside the box and covered
+     */
+    public boolean contains(int dx, int dy) {
+        return dx >= 0 && dx < size && dy >= 0 && dy < size && (rows[dy] >>> dx & 1) != 0;
+    }
+    
+    /**
+     * Check whether two shapes overlap by at least one pixel.
+     *
+     * @param a The first shape's mask
+     * @param ax X of the first shape
+     * @param ay Y of the first shape
+     * @param b The second shape's mask
+     * @param bx X of the second shape
+     * @param by Y of the second shape
+     * @return true if they share a covered pixel
+     */
+    public static boolean overlaps(ShapeMask a, int ax, int ay, ShapeMask b, int bx, int by) {
+        if (ax >= bx + b.size || bx >= ax + a.size || ay >= by + b.size || by >= ay + a.size) {
+            return false;
+        }
+        // The boxes meet, so the shift is under the left shape's width; bits shifted out lie past it anyway
+        int shift = bx - ax;
+        int bottom = Math.min(ay + a.size, by + b.size);
+        for (int y = Math.max(ay, by); y < bottom; y++) {
+            long rowA = a.rows[y - ay];
+            long rowB = b.rows[y - by];
+            long shared = shift >= 0 ? rowA & rowB << shift : rowA << -shift & rowB;
+            if (shared != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,120 @@
+import java.util.Random;
+
+/**
+ * Measures what pixel-accurate collision costs over plain bounding boxes.
+ *
+ * Builds as many candidate pairs as the broadphase would hand the narrowphase
+ * at a given entity count: projectile points scattered around an enemy's box,
+ * and enemies placed so their boxes overlap the player's, the worst case,
+ * since in play only enemies touching the player get past the box test. Each
+ * pair is then tested by box alone and by box plus {@link ShapeMask}, and the
+ * time per test is reported along with how many box hits the masks turned
+ * away. At the larger counts the pairs no longer fit in cache, as in a
+ * crowded swarm.
+ *
+ * Run with: java ShapeMaskBenchmark [maxPairs]
+ */
+public class ShapeMaskBenchmark {
+    private static final int SIZE = WorldState.SHAPE_SIZE;
+    // Points land this far either side of the box, so most but not all candidates are box hits
+    private static final int SPREAD = 6;
+    
+    public static void main(String[] args) {
+        int maxPairs = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        
+        System.out.println("ns per candidate test; rejected is the share of box hits the mask turned away");
+        System.out.println("    pairs  point box  point mask  rejected  |  shape box  shape mask  rejected");
+        boolean consistent = true;
+        for (int pairs = 1000; pairs <= maxPairs; pairs *= 10) {
+            consistent &= measure(pairs);
+        }
+        System.out.println(consistent ? "Every mask hit was also a box hit" : "MASK HIT OUTSIDE THE BOX");
+    }
+    
+    /**
+     * Build and time one set of candidate pairs.
+     *
+     * @return true if no mask test passed where its box test failed
+     */
+    private static boolean measure(int pairs) {
+        Random random = new Random(pairs);
+        int[] type = new int[pairs];
+        int[] x = new int[pairs];
+        int[] y = new int[pairs];
+        int[] px = new int[pairs];
+        int[] py = new int[pairs];
+        int[] otherType = new int[pairs];
+        int[] ox = new int[pairs];
+        int[] oy = new int[pairs];
+        for (int i = 0; i < pairs; i++) {
+            type[i] = random.nextInt(3);
+            x[i] = random.nextInt(4000);
+            y[i] = random.nextInt(4000);
+            px[i] = x[i] - SPREAD + random.nextInt(SIZE + SPREAD * 2);
+            py[i] = y[i] - SPREAD + random.nextInt(SIZE + SPREAD * 2);
+            otherType[i] = random.nextInt(3);
+            ox[i] = x[i] - SIZE + random.nextInt(SIZE * 2);
+            oy[i] = y[i] - SIZE + random.nextInt(SIZE * 2);
+        }
+        int repeats = Math.max(1, 20_000_000 / pairs);
+        
+        // Three passes each so the JIT has compiled the loops before the one that is reported
+        long pointBox = 0, pointMask = 0, shapeBox = 0, shapeMask = 0;
+        int pointBoxHits = 0, pointMaskHits = 0, shapeBoxHits = 0, shapeMaskHits = 0;
+        boolean consistent = true;
+        for (int pass = 0; pass < 3; pass++) {
+            long start = System.nanoTime();
+            for (int r = 0; r < repeats; r++) {
+                pointBoxHits = 0;
+                for (int i = 0; i < pairs; i++) {
+                    if (px[i] >= x[i] && px[i] < x[i] + SIZE && py[i] >= y[i] && py[i] < y[i] + SIZE) {
+                        pointBoxHits++;
+                    }
+                }
+            }
+            pointBox = System.nanoTime() - start;
+            
+            start = System.nanoTime();
+            for (int r = 0; r < repeats; r++) {
+                pointMaskHits = 0;
+                for (int i = 0; i < pairs; i++) {
+                    if (px[i] >= x[i] && px[i] < x[i] + SIZE && py[i] >= y[i] && py[i] < y[i] + SIZE
+                            && ShapeMask.of(type[i], SIZE).contains(px[i] - x[i], py[i] - y[i])) {
+                        pointMaskHits++;
+                    }
+                }
+            }
+            pointMask = System.nanoTime() - start;
+            
+            start = System.nanoTime();
+            for (int r = 0; r < repeats; r++) {
+                shapeBoxHits = 0;
+                for (int i = 0; i < pairs; i++) {
+                    if (x[i] < ox[i] + SIZE && ox[i] < x[i] + SIZE && y[i] < oy[i] + SIZE && oy[i] < y[i] + SIZE) {
+                        shapeBoxHits++;
+                    }
+                }
+            }
+            shapeBox = System.nanoTime() - start;
+            
+            start = System.nanoTime();
+            for (int r = 0; r < repeats; r++) {
+                shapeMaskHits = 0;
+                for (int i = 0; i < pairs; i++) {
+                    if (ShapeMask.overlaps(ShapeMask.of(type[i], SIZE), x[i], y[i],
+                                           ShapeMask.of(otherType[i], SIZE), ox[i], oy[i])) {
+                        shapeMaskHits++;
+                    }
+                }
+            }
+            shapeMask = System.nanoTime() - start;
+            consistent &= pointMaskHits <= pointBoxHits && shapeMaskHits <= shapeBoxHits;
+        }
+        
+        double tests = (double) repeats * pairs;
+        System.out.printf("%9d  %9.2f  %10.2f  %7.1f%%  |  %9.2f  %10.2f  %7.1f%%%n", pairs,
+            pointBox / tests, pointMask / tests, 100.0 * (pointBoxHits - pointMaskHits) / pointBoxHits,
+            shapeBox / tests, shapeMask / tests, 100.0 * (shapeBoxHits - shapeMaskHits) / shapeBoxHits);
+        return consistent;
+    }
+}
@@ -1,22 +1,52 @@
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * ShapeShifterDuel - a level-based game extending ShapeShiftingGame
  * with varying health points for different difficulty levels and retro-style UI.
  */
-public class ShapeShifterDuel extends JPanel implements ActionListener, KeyListener {
+public class ShapeShifterDuel extends JPanel implements KeyListener {
     // Game objects
     private Shape player;
-    private ArrayList<Enemy> enemies;
-    private ArrayList<Projectile> projectiles;
+    private final EnemyStore[] enemyGroups = new EnemyStore[EnemyBehaviour.COUNT];
+    private final ProjectileStore projectiles = new ProjectileStore();
+    private final ProjectileStore enemyProjectiles = new ProjectileStore();
+    private final ArrayList<Boss> bosses = new ArrayList<>();
     private ArrayList<PowerUp> powerUps;
-    private javax.swing.Timer gameTimer;
-    private javax.swing.Timer enemySpawnTimer;
+    
+    // Threading: the simulation owns all game state, the EDT only paints published frames
+    private SimulationLoop simulationLoop;
+    private final InputQueue inputQueue = new InputQueue(256);
+    private final TripleBuffer<RenderFrame> frames = new TripleBuffer<>(RenderFrame::new);
+    private final AtomicBoolean shutDown = new AtomicBoolean();
+    
+    // Input-to-photon latency: keys are stamped on arrival and matched to the first frame that shows them
+    private final InputLatency inputLatency = new InputLatency(256);
+    private final String latencyLog = System.getProperty("latency.log", "input-latency.log");
+    
+    // Measurement reports go to their files; -Ddiagnostics=true also prints them
+    private final String performanceLog = System.getProperty("performance.log", "performance.log");
+    private final boolean DIAGNOSTICS = Boolean.getBoolean("diagnostics");
+    private int appliedInput = InputLatency.NONE;
+    private long frameSequence = 0;
+    private volatile long paintedSequence;
+    private final Runnable framePresented = () -> inputLatency.presented(paintedSequence, System.nanoTime());
+    
+    // Gameplay events, published by the simulation and read by anyone at their own pace
+    private final EventBus events = new EventBus(4096);
+    private final HudEffects hudEffects = new HudEffects(events);
+    private final ParticleSystem particles = new ParticleSystem(events, Integer.getInteger("particles.capacity", 32768));
+    private Telemetry telemetry;
+    private MetricsEndpoint metricsEndpoint;
+    private ReplayRecorder replayRecorder;
     
     // Game state
     private int playerHealth;
@@ -31,44 +61,191 @@ public class ShapeShifterDuel extends JPanel implements ActionListener, KeyListe
     private int bonusStars = 0;
     private int drainRate = 2;
     private int durability = 100;
+    private int nextEntityId = 1;
+    private int tickCount = 0;
     
     // Level management
     private Level currentLevel;
     private int highestLevelReached = 1;
     private LevelTransition levelTransition;
+    private Level pendingLevel;
+    
+    // High scores
+    private LeaderboardStore leaderboard;
+    private final String playerName = System.getProperty("player.name", "PLAYER");
+    private int bestScore = 0;
+    private long gameSeed;
+    private long gameStartTime;
+    
+    // Save and resume
+    private SaveGameFile saveFile;
+    private boolean hasSavedGame = false;
+    private final int AUTOSAVE_TICKS = 300;
     
     // Timing variables
-    private long lastShotTime = 0;
-    private final long SHOT_DELAY = 200;
-    private long invulnerableEndTime = 0;
-    private final long INVULNERABLE_DURATION = 1500;
-    private Random random = new Random();
+    private final int TICK_MS = 16;
+    private int spawnCountdown = 0;
+    
+    // Enemy base stats, indexed by shape type code
+    private final int[] ENEMY_HEALTH = {30, 40, 50};
+    private final int[] ENEMY_DAMAGE = {5, 8, 10};
+    private final int[] ENEMY_DIFFICULTY = {1, 2, 3};
+    private final int ENEMY_SPEED = Fixed.of(2);
+    private final int ENEMY_SIZE = WorldState.SHAPE_SIZE;
+    
+    // Bosses appear once a level, halfway through it, from BOSS_FIRST_LEVEL on
+    private final int[] BOSS_PART_HEALTH = {60, 80, 100};
+    private final int BOSS_FIRST_LEVEL = 2;
+    private final int BOSS_CRITICAL_MULTIPLIER = 3;
+    private final int BOSS_BONUS_PER_LEVEL = 100;
+    private int bossLevel = 0;
+    
+    private final int FORMATION_SIZE = 5;
+    private final int FORMATION_SPACING = 40;
+    private final int SPEED_BOOST_DURATION = 10000;
+    private int[] speedBoostRemaining = new int[16];
+    private int speedBoostCount = 0;
+    // Ticks until the player may fire again; more than 200 ms must pass between shots
+    private int shotCooldown = 0;
+    private final int SHOT_DELAY_TICKS = 200 / TICK_MS + 1;
+    private final int SPIRAL_DURATION = 8000;
+    private int spiralRemaining = 0;
+    private int rewindCharges = 0;
+    private final int MAX_REWIND_CHARGES = 3;
+    private final int REWIND_TICKS = 3000 / TICK_MS;
+    private final boolean FREE_REWIND = Boolean.getBoolean("rewind.free");
+    private int volleyCount = 0;
+    private int invulnerableTicks = 0;
+    private final int INVULNERABLE_TICKS = 1500 / TICK_MS;
+    private final int SHIELD_TICKS = 5000 / TICK_MS;
+    private GameRandom random = new GameRandom();
+    
+    // Hash of the world after every tick, chained from the game seed
+    private final StateHash stateHash = new StateHash(0);
+    
+    // Swarm stress mode and performance overlay
+    private final SwarmConfig swarm;
+    private final PerformanceStats stats = new PerformanceStats();
+    private boolean showStats = false;
+    private int swarmEndTick;
+    private int swarmEnemyCredit;
+    private int swarmProjectileCredit;
+    private int swarmPowerUpCredit;
+    private long lastCollisionNanos;
+    private long lastTickNanos;
+    private long lastEnemyPassNanos;
+    private long lastPaintNanos;
     
     // UI
     private GameUI gameUI;
-    private final int GAME_WIDTH = 500;
-    private final int GAME_HEIGHT = 500;
+    private final int VIEW_WIDTH;
+    private final int VIEW_HEIGHT;
+    
+    // Arena, which may be larger than the view; the camera follows the player
+    private final int GAME_WIDTH;
+    private final int GAME_HEIGHT;
+    private final int CULL_MARGIN = 64;
+    private final int COARSE_STEP = 4;
+    private int cameraX = 0;
+    private int cameraY = 0;
+    
+    // Collision broadphase grid and narrowphase search
+    private final CollisionGrid collisionGrid;
+    private final HitFinder hitFinder = new HitFinder(Integer.getInteger("collision.parallelThreshold", 4096),
+                                                      java.util.concurrent.ForkJoinPool.commonPool());
+    
+    // Recent history for the rewind power-up, taken every REWIND_STRIDE ticks and allocated on the
+    // first game that records it; swarm runs never do. Entity records in the save payload are enemies
+    // (34 bytes), projectiles (25), power-ups (13) and enemy projectiles (25); keep in step with writeSave
+    private final int[] SAVE_RECORD_SIZES = {34, 25, 13, 25};
+    private final int REWIND_STRIDE = 4;
+    private RewindBuffer rewind;
+    private ByteBuffer rewindPayload = ByteBuffer.allocate(64 * 1024);
+    private int saveHeaderLength;
+    
+    // JIT warm-up on the start screen, and how the first seconds of play went
+    private WarmUp warmUp;
+    private final int EARLY_PLAY_TICKS = 10000 / TICK_MS;
+    private int earlyPlayEndTick = -1;
+    private boolean earlyPlayReported = false;
     
     /**
-     * Constructor for the ShapeShifterDuel game.
+     * Constructor for the ShapeShifterDuel game, configured from system properties.
      */
     public ShapeShifterDuel() {
+        this(SwarmConfig.fromSystemProperties());
+    }
+    
+    /**
+     * Constructor for the ShapeShifterDuel game.
+     * 
+     * @param swarm The swarm mode settings, which also give the view size
+     */
+    public ShapeShifterDuel(SwarmConfig swarm) {
+        this.swarm = swarm;
+        VIEW_WIDTH = swarm.getWidth();
+        VIEW_HEIGHT = swarm.getHeight();
+        GAME_WIDTH = Math.max(VIEW_WIDTH, Integer.getInteger("arena.width", VIEW_WIDTH));
+        GAME_HEIGHT = Math.max(VIEW_HEIGHT, Integer.getInteger("arena.height", VIEW_HEIGHT));
+        collisionGrid = new CollisionGrid(GAME_WIDTH, GAME_HEIGHT, 64);
+        
         // Initialize game objects
         player = new Circle(250, 400);
-        enemies = new ArrayList<>();
-        projectiles = new ArrayList<>();
+        for (int behaviour = 0; behaviour < EnemyBehaviour.COUNT; behaviour++) {
+            enemyGroups[behaviour] = new EnemyStore(behaviour);
+        }
         powerUps = new ArrayList<>();
         
         // Initialize UI
         gameUI = new GameUI();
         
         // Initialize level system
-        currentLevel = new Level(1);
-        levelTransition = new LevelTransition();
+        currentLevel = new Level(1, random);
+        levelTransition = new LevelTransition(TICK_MS);
         playerHealth = currentLevel.getPlayerMaxHealth();
         
-        // Set up game timers
-        gameTimer = new javax.swing.Timer(16, this);
+        // Open the local leaderboard; the game still runs without one, and swarm runs never record
+        if (!swarm.isEnabled()) {
+            try {
+                leaderboard = new LeaderboardStore(Paths.get(System.getProperty("leaderboard.dir", "leaderboard")));
+                LeaderboardStore.Entry best = leaderboard.getBest(playerName);
+                bestScore = best != null ? best.getScore() : 0;
+            } catch (IOException e) {
+                System.err.println("Leaderboard unavailable: " + e.getMessage());
+            }
+        }
+        
+        // Look for a run saved before the last exit
+        saveFile = new SaveGameFile(Paths.get(System.getProperty("save.file", "shapeshifter.sav")));
+        hasSavedGame = saveFile.exists();
+        
+        // Collect session telemetry in the background; swarm runs are not real sessions
+        String telemetryDir = System.getProperty("telemetry.dir", "telemetry");
+        if (!swarm.isEnabled() && !telemetryDir.isEmpty()) {
+            try {
+                telemetry = new Telemetry(events, Paths.get(telemetryDir), TICK_MS);
+                int metricsPort = Integer.getInteger("telemetry.port", 0);
+                if (metricsPort > 0) {
+                    metricsEndpoint = new MetricsEndpoint(metricsPort, telemetry::metricsText);
+                }
+            } catch (IOException e) {
+                System.err.println("Telemetry unavailable: " + e.getMessage());
+            }
+        }
+        
+        // Record each game for replay export; swarm runs are not recorded either
+        String replayDir = System.getProperty("replay.dir", "replays");
+        if (!swarm.isEnabled() && !replayDir.isEmpty()) {
+            try {
+                replayRecorder = new ReplayRecorder(Paths.get(replayDir), events, VIEW_WIDTH, VIEW_HEIGHT,
+                                                    GAME_WIDTH, GAME_HEIGHT);
+            } catch (IOException e) {
+                System.err.println("Replay recording unavailable: " + e.getMessage());
+            }
+        }
+        
+        // Set up the simulation thread; call start() to begin ticking
+        simulationLoop = new SimulationLoop(TICK_MS, this::tick);
         
         // Set up focus handling for keyboard input
         setFocusable(true);
@@ -79,6 +256,50 @@ public class ShapeShifterDuel extends JPanel implements ActionListener, KeyListe
         
         // Initial screen - game will start on key press
         showStartScreen();
+        
+        // Swarm runs start straight away with the overlay on
+        if (swarm.isEnabled()) {
+            showStats = true;
+            startGame();
+        }
+    }
+    
+    /**
+     * Start the simulation and telemetry threads.
+     */
+    public void start() {
+        // Get the hot paths compiled while the player is still on the start screen
+        if (!swarm.isEnabled() && Boolean.parseBoolean(System.getProperty("warmup", "true"))) {
+            warmUp = new WarmUp(VIEW_WIDTH, VIEW_HEIGHT, Long.getLong("warmup.millis", 5000));
+            warmUp.start();
+        }
+        if (telemetry != null) {
+            telemetry.start();
+        }
+        if (metricsEndpoint != null) {
+            metricsEndpoint.start();
+        }
+        simulationLoop.start();
+    }
+    
+    /**
+     * Stop the simulation thread, save the run in progress and flush telemetry. Safe to call more than once.
+     */
+    public void shutdown() {
+        if (shutDown.compareAndSet(false, true)) {
+            simulationLoop.stop();
+            saveGame();
+            if (replayRecorder != null) {
+                replayRecorder.end();
+            }
+            if (metricsEndpoint != null) {
+                metricsEndpoint.stop();
+            }
+            if (telemetry != null) {
+                telemetry.stop();
+            }
+            reportInputLatency();
+        }
     }
     
     /**
@@ -95,36 +316,71 @@ public class ShapeShifterDuel extends JPanel implements ActionListener, KeyListe
         isGameStarted = true;
         isGameOver = false;
         
+        // Play has started, so the warm-up gives the CPU back
+        if (warmUp != null) {
+            warmUp.cancel();
+        }
+        if (!earlyPlayReported) {
+            earlyPlayEndTick = tickCount + EARLY_PLAY_TICKS;
+        }
+        
         // Reset game state
         playerLives = 3;
         score = 0;
-        currentLevel = new Level(1);
-        highestLevelReached = 1;
+        currentLevel = new Level(swarm.isEnabled() ? swarm.getLevel() : 1, random);
+        highestLevelReached = currentLevel.getLevelNumber();
         playerHealth = currentLevel.getPlayerMaxHealth();
+        gameSeed = System.nanoTime();
+        random.setSeed(gameSeed);
+        stateHash.reset(gameSeed);
+        gameStartTime = System.currentTimeMillis();
+        
+        playerSpeed = 8;
+        speedBoostCount = 0;
+        spiralRemaining = 0;
+        volleyCount = 0;
+        rewindCharges = 0;
+        if (rewind != null) {
+            rewind.clear();
+        }
+        isInvulnerable = false;
+        invulnerableTicks = 0;
+        shotCooldown = 0;
         
         // Clear game objects
-        enemies.clear();
+        clearEnemies();
         projectiles.clear();
+        enemyProjectiles.clear();
+        bosses.clear();
+        bossLevel = 0;
         powerUps.clear();
         
         // Reset player position
         player = new Circle(250, 400);
         
-        // Start timers
-        gameTimer.start();
-        startEnemySpawner();
+        // A new run replaces any saved one; swarm runs leave it alone
+        if (!swarm.isEnabled()) {
+            saveFile.delete();
+            hasSavedGame = false;
+        }
+        
+        resetEnemySpawner();
+        swarmEndTick = tickCount + swarm.getDurationSeconds() * 1000 / TICK_MS;
+        swarmEnemyCredit = 0;
+        swarmProjectileCredit = 0;
+        swarmPowerUpCredit = 0;
+        stats.reset();
+        if (replayRecorder != null) {
+            replayRecorder.begin();
+        }
+        events.publish(GameEvent.GAME_START, tickCount, 1, 0);
     }
     
     /**
-     * Start the enemy spawner with the current level's spawn rate.
+     * Restart the enemy spawn countdown at the current level's spawn rate.
      */
-    private void startEnemySpawner() {
-        if (enemySpawnTimer != null && enemySpawnTimer.isRunning()) {
-            enemySpawnTimer.stop();
-        }
-        
-        enemySpawnTimer = new javax.swing.Timer(currentLevel.getEnemySpawnRate(), e -> spawnEnemy());
-        enemySpawnTimer.start();
+    private void resetEnemySpawner() {
+        spawnCountdown = currentLevel.getEnemySpawnRate();
     }
     
     /**
@@ -139,114 +395,218 @@ public class ShapeShifterDuel extends JPanel implements ActionListener, KeyListe
         }
         
         // Create the next level
-        Level nextLevel = new Level(nextLevelNumber);
+        Level nextLevel = new Level(nextLevelNumber, random);
         
-        // Transition to the next level
-        levelTransition.startTransition(currentLevel, nextLevel, () -> {
-            // After transition is complete
-            currentLevel = nextLevel;
-            playerHealth = currentLevel.getPlayerMaxHealth();
-            
-            // Update enemy spawner with new level's spawn rate
-            startEnemySpawner();
-            
-            // Clear all enemies and reset player position
-            enemies.clear();
-            player.x = 250;
-            player.y = 400;
-        });
+        // Transition to the next level; the simulation picks it up once the fade is done
+        pendingLevel = nextLevel;
+        events.publish(GameEvent.LEVEL_UP, tickCount, 0, nextLevelNumber);
+        levelTransition.startTransition(currentLevel, nextLevel);
+    }
+    
+    /**
+     * Switch to the pending level once its transition has finished.
+     */
+    private void finishLevelTransition() {
+        if (pendingLevel == null) {
+            return;
+        }
+        currentLevel = pendingLevel;
+        pendingLevel = null;
+        playerHealth = currentLevel.getPlayerMaxHealth();
+        
+        // Update enemy spawner with new level's spawn rate
+        resetEnemySpawner();
+        
+        // Clear all enemies, bosses and their shots, and reset player position
+        clearEnemies();
+        enemyProjectiles.clear();
+        bosses.clear();
+        player.x = 250;
+        player.y = 400;
     }
     
     @Override
     protected void paintComponent(Graphics g) {
         super.paintComponent(g);
+        long start = System.nanoTime();
+        hudEffects.update();
+        particles.update();
+        RenderFrame frame = frames.acquire();
+        renderFrame(g, frame, getWidth(), getHeight());
+        lastPaintNanos = System.nanoTime() - start;
+        
+        // Swing copies the frame to the screen once painting returns, so time it from the next event
+        paintedSequence = frame.sequence;
+        SwingUtilities.invokeLater(framePresented);
+        stats.recordFrame(lastPaintNanos, lastEnemyPassNanos);
+        if (telemetry != null) {
+            telemetry.recordFrame();
+        }
+    }
+    
+    /**
+     * Draw a published frame.
+     * 
+     * @param g The graphics context
+     * @param frame The frame to draw
+     * @param width The width of the drawing area
+     * @param height The height of the drawing area
+     */
+    public void renderFrame(Graphics g, RenderFrame frame, int width, int height) {
+        WorldState world = frame.world;
         
         // Draw background
-        gameUI.drawBackground(g, getWidth(), getHeight());
+        gameUI.drawBackground(g, width, height, frame.cameraX, frame.cameraY);
         
-        if (!isGameStarted) {
-            drawStartScreen(g);
+        if (!frame.started) {
+            drawStartScreen(g, frame, width, height);
             return;
         }
         
-        if (isGameOver) {
-            gameUI.drawGameOverScreen(g, getWidth(), getHeight(), score, highestLevelReached);
+        if (frame.gameOver) {
+            gameUI.drawGameOverScreen(g, width, height, world.score, world.highestLevel, frame.bestScore);
             return;
         }
         
-        // Draw game objects
-        player.draw(g);
+        // Draw game objects in arena coordinates, seen through the camera
+        g.translate(-frame.cameraX, -frame.cameraY);
+        if (frame.arenaWidth > width || frame.arenaHeight > height) {
+            g.setColor(GameColors.ACCENT_YELLOW);
+            g.drawRect(0, 0, frame.arenaWidth - 1, frame.arenaHeight - 1);
+        }
+        gameUI.drawPlayer(g, world.playerShape, world.playerX, world.playerY);
         
-        for (Enemy enemy : enemies) {
-            enemy.draw(g);
+        long enemyPassStart = System.nanoTime();
+        for (int i = 0; i < world.enemyCount; i++) {
+            gameUI.drawEnemy(g, world.enemyType[i], world.enemyX[i], world.enemyY[i]);
             gameUI.drawEnemyHealthBar(g, 
-                new Rectangle(enemy.x, enemy.y, enemy.width, enemy.height),
-                enemy.health, 
-                enemy.maxHealth, 
-                player.shapeType.equals(enemy.shapeType));
+                new Rectangle(world.enemyX[i], world.enemyY[i], WorldState.SHAPE_SIZE, WorldState.SHAPE_SIZE),
+                world.enemyHealth[i], 
+                world.enemyMaxHealth[i], 
+                world.playerShape == world.enemyType[i]);
         }
+        lastEnemyPassNanos = System.nanoTime() - enemyPassStart;
         
-        for (Projectile projectile : projectiles) {
-            projectile.draw(g);
+        for (int i = 0; i < world.projectileCount; i++) {
+            gameUI.drawProjectile(g, world.projectileType[i], world.projectileX[i], world.projectileY[i]);
         }
         
-        for (PowerUp powerUp : powerUps) {
-            powerUp.draw(g);
+        for (int i = 0; i < world.powerUpCount; i++) {
+            gameUI.drawPowerUp(g, world.powerUpType[i], world.powerUpX[i], world.powerUpY[i]);
         }
         
-        // Draw UI elements
-        gameUI.drawHealthBar(g, playerHealth, currentLevel.getPlayerMaxHealth(), 10, getHeight() - 80, 200);
-        gameUI.drawLevelProgressBar(g, currentLevel, 10, getHeight() - 60, 200);
-        gameUI.drawGameStats(g, currentLevel, score, playerLives, player.shapeType);
-        
         // Draw invulnerability effect
-        if (isInvulnerable && System.currentTimeMillis() % 200 < 100) {
+        if (frame.invulnerable && frame.timeMillis % 200 < 100) {
             g.setColor(new Color(255, 255, 255, 100));
-            g.fillRect(player.x, player.y, player.width, player.height);
+            g.fillRect(world.playerX, world.playerY, WorldState.SHAPE_SIZE, WorldState.SHAPE_SIZE);
         }
+        particles.draw(g, frame.cameraX, frame.cameraY, frame.cameraX + width, frame.cameraY + height);
+        hudEffects.draw(g, gameUI);
+        g.translate(frame.cameraX, frame.cameraY);
+        
+        // Draw UI elements
+        gameUI.drawHealthBar(g, world.playerHealth, frame.playerMaxHealth, 10, height - 80, 200);
+        gameUI.drawLevelProgressBar(g, frame.levelProgress, 10, height - 60, 200);
+        if (frame.rewindCharges > 0) {
+            gameUI.drawRewindCharges(g, frame.rewindCharges, 10, height - 88);
+        }
+        gameUI.drawGameStats(g, world.levelNumber, world.score, world.playerLives, WorldState.shapeName(world.playerShape));
         
         // Draw level transition if active
-        if (levelTransition.isTransitioning()) {
-            levelTransition.draw(g, getWidth(), getHeight());
+        if (frame.transitionCard != null) {
+            LevelTransition.draw(g, frame, width, height);
+        }
+        
+        // Draw performance overlay if enabled
+        if (frame.showStats) {
+            gameUI.drawPerformanceOverlay(g, width, stats.getFps(), frame.tickMicros, frame.collisionMicros,
+                lastPaintNanos / 1000, frame.enemyTotal, frame.projectileTotal, frame.powerUpTotal,
+                particles.getLiveCount());
+            gameUI.drawLatencyOverlay(g, width, inputLatency);
         }
         
         // Draw pause overlay if paused
-        if (isGamePaused) {
-            g.setColor(new Color(0, 0, 0, 150));
-            g.fillRect(0, 0, getWidth(), getHeight());
+        if (frame.paused) {
+            g.setColor(GameColors.OVERLAY);
+            g.fillRect(0, 0, width, height);
             
             g.setFont(gameUI.getPixelFont());
             g.setColor(GameColors.TEXT);
             String pausedText = "GAME PAUSED";
             FontMetrics fm = g.getFontMetrics();
-            g.drawString(pausedText, (getWidth() - fm.stringWidth(pausedText)) / 2, getHeight() / 2);
+            g.drawString(pausedText, (width - fm.stringWidth(pausedText)) / 2, height / 2);
             
             g.setFont(gameUI.getSmallPixelFont());
             String resumeText = "PRESS P TO RESUME";
             fm = g.getFontMetrics();
-            g.drawString(resumeText, (getWidth() - fm.stringWidth(resumeText)) / 2, getHeight() / 2 + 30);
+            g.drawString(resumeText, (width - fm.stringWidth(resumeText)) / 2, height / 2 + 30);
+        }
+    }
+    
+    /**
+     * Draw one frame of a recorded game off screen, the way paintComponent drew
+     * it live. Frames must come in recorded order: the events recorded with each
+     * frame drive the popups, particles and level transition, and the frame's
+     * recorded clock times them.
+     * 
+     * @param g The graphics context, or null to only advance the effects
+     * @param frame The recorded frame
+     * @param frameEvents The events recorded with the frame
+     * @param eventCount The number of events
+     * @param width The width of the drawing area
+     * @param height The height of the drawing area
+     */
+    public void renderReplayFrame(Graphics g, RenderFrame frame, GameEvent[] frameEvents, int eventCount,
+                                  int width, int height) {
+        // Live, the fade steps at the start of a tick, before that tick's level-up can start a new one
+        levelTransition.update();
+        for (int i = 0; i < eventCount; i++) {
+            GameEvent event = frameEvents[i];
+            events.publish(event.type, event.tick, event.kind, event.value, event.x, event.y, event.flags);
+            if (event.type == GameEvent.LEVEL_UP) {
+                levelTransition.startTransition(new Level(event.value - 1, random), new Level(event.value, random));
+            }
         }
+        levelTransition.capture(frame);
+        long now = frame.timeMillis * 1_000_000L;
+        hudEffects.update(now);
+        particles.update(now);
+        if (g != null) {
+            renderFrame(g, frame, width, height);
+        }
+    }
+    
+    /**
+     * Forget the effects of earlier replay frames, before rendering another part of a replay.
+     */
+    public void resetReplayEffects() {
+        hudEffects.clear();
+        particles.clear();
+        levelTransition.stopTransition();
     }
     
     /**
      * Draw the start screen.
      * 
      * @param g The graphics context
+     * @param frame The frame being drawn
+     * @param width The width of the drawing area
+     * @param height The height of the drawing area
      */
-    private void drawStartScreen(Graphics g) {
+    private void drawStartScreen(Graphics g, RenderFrame frame, int width, int height) {
         // Title
         g.setFont(new Font("Monospaced", Font.BOLD, 36));
         g.setColor(GameColors.ACCENT_YELLOW);
         String title = "SHAPE SHIFTER DUEL";
         FontMetrics fm = g.getFontMetrics();
-        g.drawString(title, (getWidth() - fm.stringWidth(title)) / 2, getHeight() / 3);
+        g.drawString(title, (width - fm.stringWidth(title)) / 2, height / 3);
         
         // Subtitle
         g.setFont(gameUI.getPixelFont());
         g.setColor(GameColors.TEXT);
         String subtitle = "LEVEL-BASED ARCADE SHOOTER";
         fm = g.getFontMetrics();
-        g.drawString(subtitle, (getWidth() - fm.stringWidth(subtitle)) / 2, getHeight() / 3 + 40);
+        g.drawString(subtitle, (width - fm.stringWidth(subtitle)) / 2, height / 3 + 40);
         
         // Instructions
         g.setFont(gameUI.getSmallPixelFont());
@@ -255,13 +615,15 @@ public class ShapeShifterDuel extends JPanel implements ActionListener, KeyListe
             "ARROWS: Move",
             "SPACE: Fire",
             "1-2-3: Change Shape",
-            "P: Pause Game"
+            "P: Pause Game",
+            "R: Rewind (with a rewind charge)",
+            "F3: Performance Stats"
         };
         
-        int y = getHeight() / 2;
+        int y = height / 2;
         for (String instruction : instructions) {
             fm = g.getFontMetrics();
-            g.drawString(instruction, (getWidth() - fm.stringWidth(instruction)) / 2, y);
+            g.drawString(instruction, (width - fm.stringWidth(instruction)) / 2, y);
             y += 25;
         }
         
@@ -272,49 +634,403 @@ public class ShapeShifterDuel extends JPanel implements ActionListener, KeyListe
         fm = g.getFontMetrics();
         
         // Make the text blink
-        if (System.currentTimeMillis() % 1000 < 500) {
-            g.drawString(startPrompt, (getWidth() - fm.stringWidth(startPrompt)) / 2, getHeight() * 3 / 4 + 40);
+        if (frame.timeMillis % 1000 < 500) {
+            g.drawString(startPrompt, (width - fm.stringWidth(startPrompt)) / 2, height * 3 / 4 + 40);
+        }
+        
+        // Offer to resume a saved run
+        if (frame.hasSavedGame) {
+            g.setFont(gameUI.getSmallPixelFont());
+            g.setColor(GameColors.ACCENT_YELLOW);
+            String resumePrompt = "PRESS R TO RESUME SAVED GAME";
+            fm = g.getFontMetrics();
+            g.drawString(resumePrompt, (width - fm.stringWidth(resumePrompt)) / 2, height * 3 / 4 + 65);
         }
     }
     
-    @Override
-    public void actionPerformed(ActionEvent e) {
-        if (!isGameStarted || isGameOver || isGamePaused || levelTransition.isTransitioning()) {
-            return;
+    /**
+     * Run one simulation tick: apply queued input, advance the world and publish a frame.
+     * Called on the simulation thread.
+     */
+    public void tick() {
+        // Inputs with a visible effect are first shown by the frame this tick publishes
+        int code;
+        while ((code = inputQueue.poll()) != InputQueue.EMPTY) {
+            appliedInput = InputLatency.NONE;
+            handleKey(code);
+            if (appliedInput != InputLatency.NONE) {
+                inputLatency.applied(appliedInput, inputQueue.getPolledNanos(), System.nanoTime(), frameSequence + 1);
+            }
+        }
+        
+        // Step the level transition fade; the next level starts once it is done
+        if (levelTransition.update()) {
+            finishLevelTransition();
         }
         
-        // Update game objects
-        for (Enemy enemy : enemies) {
-            enemy.move();
+        updateCamera();
+        
+        if (isGameStarted && !isGameOver && !isGamePaused && !levelTransition.isTransitioning()) {
+            long start = System.nanoTime();
+            updateWorld();
+            lastTickNanos = System.nanoTime() - start;
+            recordRewind();
+            stats.recordTick(lastTickNanos, lastCollisionNanos, enemyCount(), projectiles.size + enemyProjectiles.size,
+                             powerUps.size());
+            
+            if (swarm.isEnabled() && tickCount >= swarmEndTick) {
+                finishSwarm();
+            }
+            if (!earlyPlayReported && earlyPlayEndTick >= 0 && tickCount >= earlyPlayEndTick && !swarm.isEnabled()) {
+                reportEarlyPlay();
+            }
+        }
+        
+        publishFrame();
+    }
+    
+    /**
+     * Center the camera on the player, keeping it inside the arena.
+     */
+    private void updateCamera() {
+        cameraX = Math.max(0, Math.min(player.x + player.width / 2 - VIEW_WIDTH / 2, GAME_WIDTH - VIEW_WIDTH));
+        cameraY = Math.max(0, Math.min(player.y + player.height / 2 - VIEW_HEIGHT / 2, GAME_HEIGHT - VIEW_HEIGHT));
+    }
+    
+    /**
+     * Check whether a shape is within the view or close enough to enter it soon.
+     * 
+     * @param shape The shape to check
+     * @return true if the shape should get a full update
+     */
+    private boolean isNearView(Shape shape) {
+        return shape.x + shape.width > cameraX - CULL_MARGIN && shape.x < cameraX + VIEW_WIDTH + CULL_MARGIN
+            && shape.y + shape.height > cameraY - CULL_MARGIN && shape.y < cameraY + VIEW_HEIGHT + CULL_MARGIN;
+    }
+    
+    /**
+     * Copy the state the renderer needs into the back buffer and hand it over.
+     */
+    private void publishFrame() {
+        RenderFrame frame = frames.back();
+        
+        // Only entities near the view are handed to the renderer
+        captureState(frame.world, cameraX - CULL_MARGIN, cameraY - CULL_MARGIN,
+                     cameraX + VIEW_WIDTH + CULL_MARGIN, cameraY + VIEW_HEIGHT + CULL_MARGIN);
+        frame.cameraX = cameraX;
+        frame.cameraY = cameraY;
+        frame.arenaWidth = GAME_WIDTH;
+        frame.arenaHeight = GAME_HEIGHT;
+        frame.enemyTotal = enemyCount();
+        frame.projectileTotal = projectiles.size + enemyProjectiles.size;
+        frame.powerUpTotal = powerUps.size();
+        frame.started = isGameStarted;
+        frame.gameOver = isGameOver;
+        frame.paused = isGamePaused;
+        frame.hasSavedGame = hasSavedGame;
+        frame.invulnerable = isInvulnerable;
+        frame.playerMaxHealth = currentLevel.getPlayerMaxHealth();
+        frame.levelProgress = currentLevel.getProgressPercentage();
+        frame.bestScore = bestScore;
+        frame.rewindCharges = rewindCharges;
+        levelTransition.capture(frame);
+        frame.showStats = showStats;
+        frame.tickMicros = lastTickNanos / 1000;
+        frame.collisionMicros = lastCollisionNanos / 1000;
+        frame.timeMillis = System.currentTimeMillis();
+        frame.sequence = ++frameSequence;
+        frame.stateHash = stateHash.get();
+        if (replayRecorder != null) {
+            replayRecorder.record(frame);
         }
+        frames.publish();
+        repaint();
+    }
+    
+    /**
+     * Advance the world by one tick.
+     */
+    private void updateWorld() {
+        tickCount++;
         
-        Iterator<Projectile> projectileIterator = projectiles.iterator();
-        while (projectileIterator.hasNext()) {
-            Projectile projectile = projectileIterator.next();
-            projectile.move();
-            if (projectile.y < 0 || projectile.y > GAME_HEIGHT) {
-                projectileIterator.remove();
+        // Spawn enemies at the current level's rate, or at the fixed swarm rates
+        if (swarm.isEnabled()) {
+            spawnSwarm();
+        } else {
+            spawnCountdown -= TICK_MS;
+            if (spawnCountdown <= 0) {
+                spawnCountdown += currentLevel.getEnemySpawnRate();
+                spawnEnemy();
+            }
+            if (bossLevel != currentLevel.getLevelNumber() && currentLevel.getLevelNumber() >= BOSS_FIRST_LEVEL
+                    && currentLevel.getProgressPercentage() >= 0.5f) {
+                spawnBoss();
             }
         }
         
+        updateSpeedBoosts();
+        if (spiralRemaining > 0) {
+            spiralRemaining -= TICK_MS;
+        }
+        if (shotCooldown > 0) {
+            shotCooldown--;
+        }
+        
+        // Move enemies one behaviour group at a time
+        for (EnemyStore group : enemyGroups) {
+            EnemyBehaviour.move(group, tickCount, player.x);
+        }
+        for (int b = 0; b < bosses.size(); b++) {
+            bosses.get(b).move(GAME_WIDTH);
+        }
+        fireEnemyVolleys();
+        
+        projectiles.moveAndCull(GAME_WIDTH, GAME_HEIGHT);
+        enemyProjectiles.moveAndCull(GAME_WIDTH, GAME_HEIGHT);
+        
+        // Off-screen power-ups move in coarse steps, staggered by id
         Iterator<PowerUp> powerUpIterator = powerUps.iterator();
         while (powerUpIterator.hasNext()) {
             PowerUp powerUp = powerUpIterator.next();
-            powerUp.move();
+            if (isNearView(powerUp)) {
+                powerUp.move(1);
+            } else if (((tickCount + powerUp.id) & (COARSE_STEP - 1)) == 0) {
+                powerUp.move(COARSE_STEP);
+            }
             if (powerUp.y > GAME_HEIGHT) {
                 powerUpIterator.remove();
             }
         }
         
         // Check for collisions
+        long collisionStart = System.nanoTime();
         checkCollisions();
+        lastCollisionNanos = System.nanoTime() - collisionStart;
         
-        // Check invulnerability timer
-        if (isInvulnerable && System.currentTimeMillis() > invulnerableEndTime) {
+        // Count down invulnerability
+        if (isInvulnerable && --invulnerableTicks <= 0) {
             isInvulnerable = false;
         }
         
-        repaint();
+        hashState();
+        if (tickCount % AUTOSAVE_TICKS == 0) {
+            saveGame();
+        }
+    }
+    
+    /**
+     * Fold everything one tick hands on to the next into the state hash: the
+     * same fields the save payload records, so two runs with equal hashes
+     * would resume identically. Every position is an integer, so the same
+     * game gives the same hash on any machine. This walks every entity each
+     * tick, so its cost grows with the entity count like the tick's own loops.
+     */
+    private void hashState() {
+        StateHash hash = stateHash;
+        hash.begin(tickCount);
+        hash.add(random.getState());
+        hash.add(nextEntityId);
+        hash.add(currentLevel.getLevelNumber());
+        hash.add(currentLevel.getCurrentPoints());
+        hash.add(highestLevelReached);
+        hash.add(pendingLevel != null ? pendingLevel.getLevelNumber() : 0);
+        hash.add(score);
+        hash.add(playerHealth);
+        hash.add(playerLives);
+        hash.add(player.x);
+        hash.add(player.y);
+        hash.add(WorldState.shapeCode(player.shapeType));
+        hash.add(playerSpeed);
+        hash.add(speedBoostCount);
+        for (int i = 0; i < speedBoostCount; i++) {
+            hash.add(speedBoostRemaining[i]);
+        }
+        hash.add(isInvulnerable ? invulnerableTicks : 0);
+        hash.add(shotCooldown);
+        hash.add(spiralRemaining);
+        hash.add(volleyCount);
+        hash.add(rewindCharges);
+        hash.add(spawnCountdown);
+        for (EnemyStore group : enemyGroups) {
+            hash.add(group.behaviour);
+            hash.add(group.size);
+            for (int i = 0; i < group.size; i++) {
+                hash.add(group.id[i]);
+                hash.add(group.type[i]);
+                hash.add(group.x[i]);
+                hash.add(group.y[i]);
+                hash.add(group.health[i]);
+                hash.add(group.damage[i]);
+                hash.add(group.speed[i]);
+                hash.add(group.originX[i]);
+                hash.add(group.phase[i]);
+            }
+        }
+        hashProjectiles(hash, projectiles);
+        hashProjectiles(hash, enemyProjectiles);
+        hash.add(powerUps.size());
+        for (PowerUp powerUp : powerUps) {
+            hash.add(powerUp.id);
+            hash.add(WorldState.powerUpCode(powerUp.type));
+            hash.add(powerUp.x);
+            hash.add(powerUp.yFixed);
+        }
+        hash.add(bossLevel);
+        hash.add(bosses.size());
+        for (Boss boss : bosses) {
+            hash.add(boss.id);
+            hash.add(boss.layout);
+            hash.add(boss.x);
+            hash.add(boss.y);
+            hash.add(boss.originX);
+            hash.add(boss.age);
+            for (int i = 0; i < boss.partCount; i++) {
+                hash.add(boss.partHealth[i]);
+            }
+        }
+        hash.end();
+    }
+    
+    private static void hashProjectiles(StateHash hash, ProjectileStore store) {
+        hash.add(store.size);
+        for (int i = 0; i < store.size; i++) {
+            hash.add(store.id[i]);
+            hash.add(store.type[i]);
+            hash.add(store.x[i]);
+            hash.add(store.y[i]);
+            hash.add(store.dx[i]);
+            hash.add(store.dy[i]);
+            hash.add(store.damage[i]);
+        }
+    }
+    
+    /**
+     * Spawn enemies, projectiles and power-ups at the configured swarm rates.
+     */
+    private void spawnSwarm() {
+        // Rates are per second; carry the remainder between ticks
+        swarmEnemyCredit += swarm.getEnemiesPerSecond() * TICK_MS;
+        while (swarmEnemyCredit >= 1000) {
+            swarmEnemyCredit -= 1000;
+            addEnemy(WorldState.shapeCode(currentLevel.getRandomEnemyType()), random.nextInt(EnemyBehaviour.COUNT),
+                     random.nextInt(GAME_WIDTH - ENEMY_SIZE), 0, currentLevel.getEnemyHealthMultiplier(),
+                     currentLevel.getEnemyDamageMultiplier(), currentLevel.getEnemySpeedMultiplier());
+        }
+        
+        swarmProjectileCredit += swarm.getProjectilesPerSecond() * TICK_MS;
+        while (swarmProjectileCredit >= 1000) {
+            swarmProjectileCredit -= 1000;
+            projectiles.add(nextEntityId++, WorldState.shapeCode(currentLevel.getRandomEnemyType()),
+                            random.nextInt(GAME_WIDTH), GAME_HEIGHT, 0, -20, 5);
+        }
+        
+        swarmPowerUpCredit += swarm.getPowerUpsPerSecond() * TICK_MS;
+        while (swarmPowerUpCredit >= 1000) {
+            swarmPowerUpCredit -= 1000;
+            spawnPowerUp();
+        }
+    }
+    
+    /**
+     * End a swarm run and report its timings.
+     */
+    private void finishSwarm() {
+        // Swarm scores are not real games, so they skip the leaderboard
+        isGameOver = true;
+        stats.report("Swarm run: " + swarm, swarm.getReportFile(), true);
+    }
+    
+    /**
+     * Add the state after this tick to the rewind history, every REWIND_STRIDE ticks.
+     * Each recording serializes the whole world, so the stride divides its cost per tick.
+     */
+    private void recordRewind() {
+        if (isGameOver || swarm.isEnabled() || tickCount % REWIND_STRIDE != 0) {
+            return;
+        }
+        if (rewind == null) {
+            rewind = new RewindBuffer(Integer.getInteger("rewind.bytes", 8 * 1024 * 1024),
+                Integer.getInteger("rewind.seconds", 10) * 1000 / TICK_MS / REWIND_STRIDE, 32, SAVE_RECORD_SIZES);
+        }
+        long start = System.nanoTime();
+        while (true) {
+            rewindPayload.clear();
+            try {
+                writeSave(rewindPayload);
+                break;
+            } catch (BufferOverflowException e) {
+                rewindPayload = ByteBuffer.allocate(rewindPayload.capacity() * 2);
+            }
+        }
+        rewindPayload.flip();
+        rewind.record(tickCount, rewindPayload, saveHeaderLength);
+        stats.recordRewind(System.nanoTime() - start, rewind.getLastEntryBytes(), rewind.getBytesUsed());
+    }
+    
+    /**
+     * Spend a rewind charge to put the world back a few seconds. The charges
+     * themselves are not rewound.
+     */
+    private void rewindTime() {
+        if ((rewindCharges == 0 && !FREE_REWIND) || rewind == null) {
+            return;
+        }
+        // Only every REWIND_STRIDE-th tick is kept, so go back to the one at or before the target
+        int target = Math.max(rewind.getOldestTick(),
+                              Math.floorDiv(tickCount - REWIND_TICKS, REWIND_STRIDE) * REWIND_STRIDE);
+        ByteBuffer state = target < 0 ? null : rewind.restore(target);
+        if (state == null) {
+            return;
+        }
+        int charges = rewindCharges;
+        int undone = tickCount - target;
+        readSave(state, SaveGameFile.VERSION);
+        rewindCharges = FREE_REWIND ? charges : charges - 1;
+        events.publish(GameEvent.REWIND, tickCount, 0, undone, player.x, player.y, 0);
+    }
+    
+    /**
+     * Report frame and tick times over the first seconds of the first game, to
+     * show what the warm-up saved (run with -Dwarmup=false to compare).
+     */
+    private void reportEarlyPlay() {
+        earlyPlayReported = true;
+        String warmUpText = warmUp == null ? "no warm-up" : "after " + warmUp.summary();
+        stats.report("First " + EARLY_PLAY_TICKS * TICK_MS / 1000 + " s of play, " + warmUpText,
+                     performanceLog.isEmpty() ? null : performanceLog, DIAGNOSTICS);
+    }
+    
+    /**
+     * Log input latency since the last report and start counting afresh. The heading names
+     * the tick length and any Java2D pipeline flags, so runs in different modes can be compared.
+     */
+    private void reportInputLatency() {
+        if (!inputLatency.hasSamples()) {
+            return;
+        }
+        StringBuilder rendering = new StringBuilder();
+        for (String flag : new String[] {"opengl", "xrender", "d3d", "metal"}) {
+            String value = System.getProperty("sun.java2d." + flag);
+            if (value != null) {
+                rendering.append(' ').append(flag).append('=').append(value);
+            }
+        }
+        inputLatency.report("Input latency, " + TICK_MS + " ms ticks, Java2D"
+            + (rendering.length() == 0 ? " defaults" : rendering), latencyLog.isEmpty() ? null : latencyLog, DIAGNOSTICS);
+        inputLatency.reset();
+    }
+    
+    /**
+     * Count down active speed boosts and remove the ones that have expired.
+     */
+    private void updateSpeedBoosts() {
+        for (int i = speedBoostCount - 1; i >= 0; i--) {
+            speedBoostRemaining[i] -= TICK_MS;
+            if (speedBoostRemaining[i] <= 0) {
+                playerSpeed = Math.max(8, playerSpeed - 2);
+                speedBoostRemaining[i] = speedBoostRemaining[--speedBoostCount];
+            }
+        }
     }
     
     /**
@@ -325,36 +1041,27 @@ public class ShapeShifterDuel extends JPanel implements ActionListener, KeyListe
             return;
         }
         
-        String shapeType = currentLevel.getRandomEnemyType();
+        int shapeType = WorldState.shapeCode(currentLevel.getRandomEnemyType());
+        int behaviour = currentLevel.getRandomBehaviour();
         int xPos = currentLevel.getRandomEnemyPosition(GAME_WIDTH - 50);
         
         // Apply level multipliers for health and damage
-        float healthMultiplier = currentLevel.getEnemyHealthMultiplier();
-        float damageMultiplier = currentLevel.getEnemyDamageMultiplier();
-        float speedMultiplier = currentLevel.getEnemySpeedMultiplier();
-        
-        Enemy enemy = null;
-        switch(shapeType) {
-            case "Circle":
-                enemy = new EnemyCircle(xPos, 0);
-                break;
-            case "Triangle":
-                enemy = new EnemyTriangle(xPos, 0);
-                break;
-            case "Cube":
-                enemy = new EnemyCube(xPos, 0);
-                break;
-        }
-        
-        if (enemy != null) {
-            // Apply level modifiers
-            // Scale health based on level multiplier (maxHealth is final so we can't change it)
-            int scaledMaxHealth = (int)(enemy.maxHealth * healthMultiplier);
-            enemy.health = scaledMaxHealth;  // Set current health to the scaled max health
-            enemy.damage = (int)(enemy.damage * damageMultiplier);
-            enemy.speed = enemy.speed * speedMultiplier;
-            
-            enemies.add(enemy);
+        int healthMultiplier = currentLevel.getEnemyHealthMultiplier();
+        int damageMultiplier = currentLevel.getEnemyDamageMultiplier();
+        int speedMultiplier = currentLevel.getEnemySpeedMultiplier();
+        
+        if (behaviour == EnemyBehaviour.FORMATION) {
+            // A V of enemies that sway together, kept clear of the arena edges
+            int reach = EnemyBehaviour.sidewaysReach(behaviour);
+            int width = (FORMATION_SIZE - 1) * FORMATION_SPACING;
+            int left = Math.max(reach, Math.min(xPos - width / 2, GAME_WIDTH - ENEMY_SIZE - reach - width));
+            for (int i = 0; i < FORMATION_SIZE; i++) {
+                int rank = Math.abs(i - FORMATION_SIZE / 2);
+                addEnemy(shapeType, behaviour, left + i * FORMATION_SPACING, -rank * FORMATION_SPACING / 2,
+                         healthMultiplier, damageMultiplier, speedMultiplier);
+            }
+        } else {
+            addEnemy(shapeType, behaviour, xPos, 0, healthMultiplier, damageMultiplier, speedMultiplier);
         }
         
         // Occasionally spawn a power-up (10% chance)
@@ -363,12 +1070,146 @@ public class ShapeShifterDuel extends JPanel implements ActionListener, KeyListe
         }
     }
     
+    /**
+     * Add an enemy to its behaviour group.
+     * 
+     * @param shapeType The shape type code
+     * @param behaviour The EnemyBehaviour code
+     * @param x The x position
+     * @param y The y position
+     * @param healthMultiplier Level multiplier for health, in fixed point
+     * @param damageMultiplier Level multiplier for damage, in fixed point
+     * @param speedMultiplier Level multiplier for speed, in fixed point
+     */
+    private void addEnemy(int shapeType, int behaviour, int x, int y,
+                          int healthMultiplier, int damageMultiplier, int speedMultiplier) {
+        // Keep sideways motion inside the arena
+        int reach = EnemyBehaviour.sidewaysReach(behaviour);
+        int originX = Math.max(reach, Math.min(x, GAME_WIDTH - ENEMY_SIZE - reach));
+        int phase = behaviour == EnemyBehaviour.WEAVE || behaviour == EnemyBehaviour.ZIGZAG ? random.nextInt(256) : 0;
+        
+        // Scaled health only raises the starting health; max health stays the base value
+        int maxHealth = ENEMY_HEALTH[shapeType];
+        enemyGroups[behaviour].add(nextEntityId++, shapeType, Fixed.of(originX), Fixed.of(y),
+                                   Fixed.mul(ENEMY_SPEED, speedMultiplier),
+                                   Fixed.scale(maxHealth, healthMultiplier), maxHealth,
+                                   Fixed.scale(ENEMY_DAMAGE[shapeType], damageMultiplier), ENEMY_DIFFICULTY[shapeType],
+                                   Fixed.of(originX), phase);
+    }
+    
+    /**
+     * Let the enemies near the view fire their patterns. Each enemy fires once every
+     * level fire interval, staggered by id so volleys are spread over the ticks; enemies
+     * further away would only fill the arena with shots nobody sees.
+     */
+    private void fireEnemyVolleys() {
+        int fireTicks = Math.max(1, currentLevel.getEnemyFireRate() / TICK_MS);
+        int levelNumber = currentLevel.getLevelNumber();
+        int minX = cameraX - CULL_MARGIN - ENEMY_SIZE;
+        int maxX = cameraX + VIEW_WIDTH + CULL_MARGIN;
+        int minY = cameraY - CULL_MARGIN - ENEMY_SIZE;
+        int maxY = cameraY + VIEW_HEIGHT + CULL_MARGIN;
+        for (EnemyStore group : enemyGroups) {
+            for (int i = 0; i < group.size; i++) {
+                if ((tickCount + group.id[i]) % fireTicks != 0) {
+                    continue;
+                }
+                int x = Fixed.toInt(group.x[i]);
+                int y = Fixed.toInt(group.y[i]);
+                if (x < minX || x > maxX || y < minY || y > maxY) {
+                    continue;
+                }
+                // Shots hit for half the enemy's contact damage, which already carries the level multiplier
+                BulletPattern pattern = BulletPattern.forEnemy(group.type[i], levelNumber);
+                nextEntityId += pattern.emit(enemyProjectiles, x + ENEMY_SIZE / 2 - 2, y + ENEMY_SIZE,
+                                             group.type[i], Math.max(1, group.damage[i] / 2), nextEntityId,
+                                             tickCount / fireTicks);
+            }
+        }
+        
+        // Every boss part fires on the same schedule as an enemy of its shape
+        int damageMultiplier = currentLevel.getEnemyDamageMultiplier();
+        for (int b = 0; b < bosses.size(); b++) {
+            Boss boss = bosses.get(b);
+            for (int i = 0; i < boss.partCount; i++) {
+                if (boss.partHealth[i] <= 0 || (tickCount + boss.id + i) % fireTicks != 0) {
+                    continue;
+                }
+                int type = boss.partType[i];
+                BulletPattern pattern = BulletPattern.forEnemy(type, levelNumber);
+                nextEntityId += pattern.emit(enemyProjectiles, boss.x + boss.partX[i] + Boss.PART_SIZE / 2 - 2,
+                                             boss.y + boss.partY[i] + Boss.PART_SIZE, type,
+                                             Math.max(1, Fixed.scale(ENEMY_DAMAGE[type], damageMultiplier) / 2),
+                                             nextEntityId, tickCount / fireTicks);
+            }
+        }
+    }
+    
+    /**
+     * Bring in the boss for the current level above the view, in a layout that
+     * grows with the level.
+     */
+    private void spawnBoss() {
+        bossLevel = currentLevel.getLevelNumber();
+        int layout = Math.min(bossLevel - BOSS_FIRST_LEVEL, Boss.layoutCount() - 1);
+        int width = Boss.layoutWidth(layout);
+        int x = Math.max(0, Math.min(GAME_WIDTH - width, cameraX + (VIEW_WIDTH - width) / 2));
+        int[] health = new int[BOSS_PART_HEALTH.length];
+        for (int type = 0; type < health.length; type++) {
+            health[type] = Fixed.scale(BOSS_PART_HEALTH[type], currentLevel.getEnemyHealthMultiplier());
+        }
+        Boss boss = new Boss(nextEntityId, layout, x, -Boss.layoutHeight(layout), health);
+        nextEntityId += boss.partCount;
+        bosses.add(boss);
+    }
+    
+    /**
+     * Count the live enemies across all behaviour groups.
+     * 
+     * @return The enemy count
+     */
+    private int enemyCount() {
+        int count = 0;
+        for (EnemyStore group : enemyGroups) {
+            count += group.size;
+        }
+        return count;
+    }
+    
+    /**
+     * Remove all enemies.
+     */
+    private void clearEnemies() {
+        for (EnemyStore group : enemyGroups) {
+            group.clear();
+        }
+    }
+    
+    /**
+     * Create a player shape.
+     * 
+     * @param shapeType "Circle", "Triangle" or "Cube"
+     * @param x The x position
+     * @param y The y position
+     * @return The new player shape
+     */
+    private Shape createPlayerShape(String shapeType, int x, int y) {
+        switch (shapeType) {
+            case "Triangle":
+                return new Triangle(x, y);
+            case "Cube":
+                return new Cube(x, y);
+            default:
+                return new Circle(x, y);
+        }
+    }
+    
     /**
      * Spawn a power-up at a random position.
      */
     private void spawnPowerUp() {
         int xPos = random.nextInt(GAME_WIDTH - 30);
-        String[] types = {"Health", "Shield", "Speed"};
+        String[] types = {"Health", "Shield", "Speed", "Spiral", "Rewind"};
         String type = types[random.nextInt(types.length)];
         
         powerUps.add(new PowerUp(xPos, 0, type));
@@ -379,56 +1220,110 @@ public class ShapeShifterDuel extends JPanel implements ActionListener, KeyListe
      */
     private void checkCollisions() {
         // Check player-enemy collisions
-        Iterator<Enemy> enemyIterator = enemies.iterator();
-        while (enemyIterator.hasNext()) {
-            Enemy enemy = enemyIterator.next();
-            
-            // Player-enemy collision
-            if (player.collidesWith(enemy) && !isInvulnerable) {
-                takeDamage(enemy.damage);
+        for (EnemyStore group : enemyGroups) {
+            for (int i = group.size - 1; i >= 0; i--) {
+                int enemyX = Fixed.toInt(group.x[i]);
+                int enemyY = Fixed.toInt(group.y[i]);
+                
+                // Player-enemy collision
+                if (!isInvulnerable && player.x < enemyX + ENEMY_SIZE && player.x + player.width > enemyX
+                        && player.y < enemyY + ENEMY_SIZE && player.y + player.height > enemyY
+                        && ShapeMask.overlaps(player.mask(), player.x, player.y,
+                                              ShapeMask.of(group.type[i], ENEMY_SIZE), enemyX, enemyY)) {
+                    takeDamage(group.damage[i]);
+                }
+                
+                // Enemy reached bottom of screen
+                if (enemyY > GAME_HEIGHT) {
+                    group.removeAt(i);
+                }
             }
-            
-            // Enemy reached bottom of screen
-            if (enemy.y > GAME_HEIGHT) {
-                enemyIterator.remove();
+        }
+        
+        // Player-boss collisions, through each boss's bounds first
+        for (int b = 0; b < bosses.size(); b++) {
+            Boss boss = bosses.get(b);
+            int part = boss.findPartOverlapping(player.mask(), player.x, player.y);
+            if (part != Boss.NO_PART && !isInvulnerable) {
+                takeDamage(Fixed.scale(ENEMY_DAMAGE[boss.partType[part]], currentLevel.getEnemyDamageMultiplier()));
             }
         }
         
-        // Check projectile-enemy collisions
-        Iterator<Projectile> projectileIterator = projectiles.iterator();
-        while (projectileIterator.hasNext()) {
-            Projectile projectile = projectileIterator.next();
-            enemyIterator = enemies.iterator();
-            boolean projectileRemoved = false;
+        // Enemy shots that reach the player are used up, and the worst of them hurts unless shielded
+        int shotDamage = enemyProjectiles.removeInside(player.mask(), player.x, player.y);
+        if (shotDamage > 0 && !isInvulnerable) {
+            takeDamage(shotDamage);
+        }
+        
+        // Find the enemy under each projectile; this may run in parallel
+        collisionGrid.build(enemyGroups, ENEMY_SIZE);
+        int[] hits = hitFinder.findHits(projectiles, enemyGroups, collisionGrid, ENEMY_SIZE);
+        
+        // Apply hits one projectile at a time so the outcome never depends on threads;
+        // walk backwards since removal swaps in the last projectile
+        for (int p = projectiles.size - 1; p >= 0; p--) {
+            int hit = hits[p];
+            if (hit == CollisionGrid.NO_HIT) {
+                continue;
+            }
+            EnemyStore group = enemyGroups[CollisionGrid.groupOf(hit)];
+            int i = CollisionGrid.indexOf(hit);
+            if (group.health[i] <= 0) {
+                // Killed by an earlier projectile this tick; look for another enemy underneath
+                hit = collisionGrid.findHit(enemyGroups, projectiles.x[p], projectiles.y[p], ENEMY_SIZE, hit);
+                if (hit == CollisionGrid.NO_HIT) {
+                    continue;
+                }
+                group = enemyGroups[CollisionGrid.groupOf(hit)];
+                i = CollisionGrid.indexOf(hit);
+            }
+            
+            boolean isCritical = projectiles.type[p] == group.type[i];
+            int damage = isCritical ? group.maxHealth[i] : projectiles.damage[p];
             
-            while (enemyIterator.hasNext() && !projectileRemoved) {
-                Enemy enemy = enemyIterator.next();
-                if (projectile.collidesWith(enemy)) {
-                    boolean isCritical = projectile.shapeType.equals(enemy.shapeType);
-                    int damage = isCritical ? enemy.maxHealth : projectile.damage;
-                    
-                    enemy.health -= damage;
-                    projectileIterator.remove();
-                    projectileRemoved = true;
-                    
-                    if (enemy.health <= 0) {
-                        int pointsEarned = isCritical ? 20 * enemy.difficulty : 10 * enemy.difficulty;
-                        score += pointsEarned;
-                        
-                        // Check for level completion
-                        if (currentLevel.addPoints(pointsEarned)) {
-                            advanceToNextLevel();
-                        }
-                        
-                        enemyIterator.remove();
-                        
-                        // 20% chance to drop a power-up on enemy death
-                        if (random.nextInt(100) < 20) {
-                            powerUps.add(new PowerUp(enemy.x, enemy.y, "Health"));
-                        }
+            group.health[i] -= damage;
+            projectiles.removeAt(p);
+            int flags = isCritical ? GameEvent.FLAG_CRITICAL : 0;
+            events.publish(GameEvent.HIT, tickCount, group.type[i], damage, Fixed.toInt(group.x[i]), Fixed.toInt(group.y[i]), flags);
+            
+            if (group.health[i] <= 0) {
+                int pointsEarned = isCritical ? 20 * group.difficulty[i] : 10 * group.difficulty[i];
+                events.publish(GameEvent.KILL, tickCount, group.type[i], pointsEarned, Fixed.toInt(group.x[i]), Fixed.toInt(group.y[i]), flags);
+                addScore(pointsEarned);
+                
+                // 20% chance to drop a power-up on enemy death
+                if (random.nextInt(100) < 20) {
+                    powerUps.add(new PowerUp(Fixed.toInt(group.x[i]), Fixed.toInt(group.y[i]), "Health"));
+                }
+            }
+        }
+        
+        // Shots that missed every enemy may still hit a boss; a boss they miss costs one box test
+        if (!bosses.isEmpty()) {
+            for (int p = projectiles.size - 1; p >= 0; p--) {
+                for (int b = 0; b < bosses.size(); b++) {
+                    Boss boss = bosses.get(b);
+                    int part = boss.findPart(projectiles.x[p], projectiles.y[p]);
+                    if (part != Boss.NO_PART) {
+                        hitBossPart(boss, part, p);
+                        break;
                     }
                 }
             }
+            for (int b = bosses.size() - 1; b >= 0; b--) {
+                if (bosses.get(b).isDefeated()) {
+                    bosses.remove(b);
+                }
+            }
+        }
+        
+        // Remove the enemies killed this tick
+        for (EnemyStore group : enemyGroups) {
+            for (int i = group.size - 1; i >= 0; i--) {
+                if (group.health[i] <= 0) {
+                    group.removeAt(i);
+                }
+            }
         }
         
         // Check player-powerup collisions
@@ -442,24 +1337,81 @@ public class ShapeShifterDuel extends JPanel implements ActionListener, KeyListe
         }
     }
     
+    /**
+     * Apply a projectile hit to a boss part and remove the projectile. A shot of the part's
+     * own shape is critical, but a boss part only takes BOSS_CRITICAL_MULTIPLIER times the
+     * damage rather than being destroyed outright.
+     * 
+     * @param boss The boss
+     * @param part The part index
+     * @param p The projectile index
+     */
+    private void hitBossPart(Boss boss, int part, int p) {
+        int type = boss.partType[part];
+        boolean isCritical = projectiles.type[p] == type;
+        int damage = isCritical ? projectiles.damage[p] * BOSS_CRITICAL_MULTIPLIER : projectiles.damage[p];
+        int x = boss.x + boss.partX[part];
+        int y = boss.y + boss.partY[part];
+        projectiles.removeAt(p);
+        int flags = isCritical ? GameEvent.FLAG_CRITICAL : 0;
+        events.publish(GameEvent.HIT, tickCount, type, damage, x, y, flags);
+        if (!boss.damagePart(part, damage)) {
+            return;
+        }
+        
+        int pointsEarned = (isCritical ? 30 : 15) * ENEMY_DIFFICULTY[type];
+        events.publish(GameEvent.KILL, tickCount, type, pointsEarned, x, y, flags);
+        addScore(pointsEarned);
+        if (boss.isDefeated()) {
+            int bonus = BOSS_BONUS_PER_LEVEL * currentLevel.getLevelNumber();
+            events.publish(GameEvent.BOSS_DEFEATED, tickCount, boss.layout, bonus, x, y, 0);
+            addScore(bonus);
+        }
+    }
+    
+    /**
+     * Add points to the score and the level, moving on to the next level once it is complete.
+     * 
+     * @param points The points earned
+     */
+    private void addScore(int points) {
+        score += points;
+        events.publish(GameEvent.SCORE, tickCount, 0, score);
+        
+        // Check for level completion, once; swarm runs stay on one level
+        if (currentLevel.addPoints(points) && pendingLevel == null && !swarm.isEnabled()) {
+            advanceToNextLevel();
+        }
+    }
+    
     /**
      * Apply the effect of a power-up.
      * 
      * @param powerUp The power-up to apply
      */
     private void applyPowerUp(PowerUp powerUp) {
+        events.publish(GameEvent.POWER_UP, tickCount, WorldState.powerUpCode(powerUp.type), 0, powerUp.x, powerUp.y, 0);
         switch (powerUp.type) {
             case "Health":
                 playerHealth = Math.min(playerHealth + 25, currentLevel.getPlayerMaxHealth());
                 break;
             case "Shield":
                 isInvulnerable = true;
-                invulnerableEndTime = System.currentTimeMillis() + 5000; // 5 seconds of invulnerability
+                invulnerableTicks = SHIELD_TICKS; // 5 seconds of invulnerability
                 break;
             case "Speed":
                 playerSpeed += 2; // Speed boost
-                // Schedule a timer to reset the speed after 10 seconds
-                new javax.swing.Timer(10000, e -> playerSpeed = Math.max(8, playerSpeed - 2)).start();
+                // Reset the speed after 10 seconds of play
+                if (speedBoostCount == speedBoostRemaining.length) {
+                    speedBoostRemaining = java.util.Arrays.copyOf(speedBoostRemaining, speedBoostCount * 2);
+                }
+                speedBoostRemaining[speedBoostCount++] = SPEED_BOOST_DURATION;
+                break;
+            case "Spiral":
+                spiralRemaining = SPIRAL_DURATION;
+                break;
+            case "Rewind":
+                rewindCharges = Math.min(rewindCharges + 1, MAX_REWIND_CHARGES);
                 break;
         }
     }
@@ -470,12 +1422,18 @@ public class ShapeShifterDuel extends JPanel implements ActionListener, KeyListe
      * @param amount The amount of damage to take
      */
     private void takeDamage(int amount) {
+        // The player cannot die in a swarm run
+        if (swarm.isEnabled()) {
+            return;
+        }
         playerHealth -= amount;
         isInvulnerable = true;
-        invulnerableEndTime = System.currentTimeMillis() + INVULNERABLE_DURATION;
+        invulnerableTicks = INVULNERABLE_TICKS;
+        events.publish(GameEvent.DAMAGE_TAKEN, tickCount, 0, amount, player.x, player.y, 0);
         
         if (playerHealth <= 0) {
             playerLives--;
+            events.publish(GameEvent.LIFE_LOST, tickCount, 0, playerLives);
             playerHealth = currentLevel.getPlayerMaxHealth();
             if (playerLives <= 0) {
                 gameOver();
@@ -488,9 +1446,28 @@ public class ShapeShifterDuel extends JPanel implements ActionListener, KeyListe
      */
     private void gameOver() {
         isGameOver = true;
-        gameTimer.stop();
-        if (enemySpawnTimer != null) {
-            enemySpawnTimer.stop();
+        events.publish(GameEvent.GAME_OVER, tickCount, 0, score);
+        recordScore();
+        reportInputLatency();
+        
+        // A finished run cannot be resumed
+        saveFile.delete();
+        hasSavedGame = false;
+    }
+    
+    /**
+     * Record the finished game on the leaderboard.
+     */
+    private void recordScore() {
+        bestScore = Math.max(bestScore, score);
+        if (leaderboard == null) {
+            return;
+        }
+        try {
+            leaderboard.record(new LeaderboardStore.Entry(playerName, score, highestLevelReached,
+                System.currentTimeMillis() - gameStartTime, gameSeed, System.currentTimeMillis()));
+        } catch (IOException e) {
+            System.err.println("Could not record score: " + e.getMessage());
         }
     }
     
@@ -500,21 +1477,395 @@ public class ShapeShifterDuel extends JPanel implements ActionListener, KeyListe
     private void togglePause() {
         isGamePaused = !isGamePaused;
         if (isGamePaused) {
-            gameTimer.stop();
-            if (enemySpawnTimer != null) {
-                enemySpawnTimer.stop();
+            saveGame();
+        }
+    }
+    
+    /**
+     * Save the run in progress so it can be resumed after a restart.
+     */
+    public void saveGame() {
+        if (!isGameStarted || isGameOver || swarm.isEnabled()) {
+            return;
+        }
+        try {
+            saveFile.save(this::writeSave);
+            hasSavedGame = true;
+        } catch (IOException e) {
+            System.err.println("Could not save game: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Resume the saved run, paused so the player can get ready.
+     * 
+     * @return true if a save was restored
+     */
+    private boolean resumeGame() {
+        try {
+            ByteBuffer in = saveFile.read();
+            if (in == null) {
+                return false;
+            }
+            readSave(in, saveFile.getReadVersion());
+            if (rewind != null) {
+                rewind.clear();
+            }
+            // The ticks before the save are gone, so the chain starts again from here
+            stateHash.reset(gameSeed ^ tickCount);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Could not resume saved game: " + e.getMessage());
+            saveFile.delete();
+            hasSavedGame = false;
+            return false;
+        }
+        
+        isGameStarted = true;
+        isGameOver = false;
+        isGamePaused = true;
+        if (replayRecorder != null) {
+            replayRecorder.begin();
+        }
+        events.publish(GameEvent.GAME_START, tickCount, currentLevel.getLevelNumber(), score);
+        return true;
+    }
+    
+    /**
+     * Write the full game state into a save payload.
+     * 
+     * @param out The buffer to write into
+     */
+    private void writeSave(ByteBuffer out) {
+        int start = out.position();
+        long now = System.currentTimeMillis();
+        out.putLong(gameSeed);
+        out.putLong(now - gameStartTime);
+        out.putLong(random.getState());
+        out.putInt(tickCount);
+        out.putInt(nextEntityId);
+        
+        // Level progress; a level-up caught mid-transition is replayed on resume
+        out.putInt(currentLevel.getLevelNumber());
+        out.putInt(currentLevel.getCurrentPoints());
+        out.putInt(highestLevelReached);
+        out.put((byte) (pendingLevel != null ? 1 : 0));
+        
+        // Player
+        out.putInt(score);
+        out.putInt(playerLives);
+        out.putInt(playerHealth);
+        out.put((byte) WorldState.shapeCode(player.shapeType));
+        out.putInt(player.x);
+        out.putInt(player.y);
+        out.putInt(playerSpeed);
+        out.putInt(isInvulnerable ? invulnerableTicks : 0);
+        out.putInt(speedBoostCount);
+        for (int i = 0; i < speedBoostCount; i++) {
+            out.putInt(speedBoostRemaining[i]);
+        }
+        
+        // Time until the next enemy spawn
+        out.putInt(spawnCountdown);
+        
+        // Entities, as fixed-size records (see SAVE_RECORD_SIZES)
+        saveHeaderLength = out.position() - start;
+        out.putInt(enemyCount());
+        for (EnemyStore group : enemyGroups) {
+            for (int i = 0; i < group.size; i++) {
+                out.putInt(group.id[i]);
+                out.put((byte) group.type[i]);
+                out.putInt(group.x[i]);
+                out.putInt(group.y[i]);
+                out.putInt(group.health[i]);
+                out.putInt(group.damage[i]);
+                out.putInt(group.speed[i]);
+                out.put((byte) group.behaviour);
+                out.putInt(group.originX[i]);
+                out.putInt(group.phase[i]);
+            }
+        }
+        out.putInt(projectiles.size);
+        for (int i = 0; i < projectiles.size; i++) {
+            out.putInt(projectiles.id[i]);
+            out.put((byte) projectiles.type[i]);
+            out.putInt(projectiles.x[i]);
+            out.putInt(projectiles.y[i]);
+            out.putInt(projectiles.dx[i]);
+            out.putInt(projectiles.dy[i]);
+            out.putInt(projectiles.damage[i]);
+        }
+        out.putInt(powerUps.size());
+        for (PowerUp powerUp : powerUps) {
+            out.putInt(powerUp.id);
+            out.put((byte) WorldState.powerUpCode(powerUp.type));
+            out.putInt(powerUp.x);
+            out.putInt(powerUp.yFixed);
+        }
+        out.putInt(enemyProjectiles.size);
+        for (int i = 0; i < enemyProjectiles.size; i++) {
+            out.putInt(enemyProjectiles.id[i]);
+            out.put((byte) enemyProjectiles.type[i]);
+            out.putInt(enemyProjectiles.x[i]);
+            out.putInt(enemyProjectiles.y[i]);
+            out.putInt(enemyProjectiles.dx[i]);
+            out.putInt(enemyProjectiles.dy[i]);
+            out.putInt(enemyProjectiles.damage[i]);
+        }
+        
+        // Bullet pattern state
+        out.putInt(spiralRemaining);
+        out.putInt(volleyCount);
+        out.putInt(rewindCharges);
+        out.putInt(shotCooldown);
+        
+        // Bosses, with the health of each part
+        out.putInt(bossLevel);
+        out.putInt(bosses.size());
+        for (Boss boss : bosses) {
+            out.putInt(boss.id);
+            out.put((byte) boss.layout);
+            out.putInt(boss.x);
+            out.putInt(boss.y);
+            out.putInt(boss.originX);
+            out.putInt(boss.age);
+            for (int i = 0; i < boss.partCount; i++) {
+                out.putInt(boss.partHealth[i]);
             }
+        }
+    }
+    
+    /**
+     * Replace the game state with a save payload.
+     * 
+     * @param in The payload, positioned at its start
+     * @param version The save format version
+     */
+    private void readSave(ByteBuffer in, int version) {
+        long now = System.currentTimeMillis();
+        gameSeed = in.getLong();
+        gameStartTime = now - in.getLong();
+        random.setState(in.getLong());
+        tickCount = in.getInt();
+        int savedNextEntityId = in.getInt();
+        
+        // Level progress
+        currentLevel = new Level(in.getInt(), random);
+        currentLevel.addPoints(in.getInt());
+        highestLevelReached = in.getInt();
+        boolean pendingLevelUp = in.get() == 1;
+        
+        // Player
+        score = in.getInt();
+        playerLives = in.getInt();
+        playerHealth = in.getInt();
+        String shapeType = WorldState.shapeName(in.get());
+        int playerX = in.getInt();
+        int playerY = in.getInt();
+        player = createPlayerShape(shapeType, playerX, playerY);
+        playerSpeed = in.getInt();
+        // Invulnerability was saved in milliseconds before version 8
+        int invulnerableRemaining = in.getInt();
+        invulnerableTicks = version >= 8 ? invulnerableRemaining : (invulnerableRemaining + TICK_MS - 1) / TICK_MS;
+        isInvulnerable = invulnerableTicks > 0;
+        speedBoostCount = 0;
+        int boosts = in.getInt();
+        for (int i = 0; i < boosts; i++) {
+            if (speedBoostCount == speedBoostRemaining.length) {
+                speedBoostRemaining = java.util.Arrays.copyOf(speedBoostRemaining, speedBoostCount * 2);
+            }
+            speedBoostRemaining[speedBoostCount++] = in.getInt();
+        }
+        
+        spawnCountdown = in.getInt();
+        
+        // Entities; positions and speeds were floats before version 7
+        boolean fixed = version >= 7;
+        clearEnemies();
+        int count = in.getInt();
+        for (int i = 0; i < count; i++) {
+            int id = in.getInt();
+            int type = in.get();
+            int x = fixed ? in.getInt() : Fixed.fromFloat(in.getFloat());
+            int y = fixed ? in.getInt() : Fixed.fromFloat(in.getFloat());
+            int health = in.getInt();
+            int damage = in.getInt();
+            int speed = fixed ? in.getInt() : Fixed.fromFloat(in.getFloat());
+            
+            // Behaviours were added in version 3; older enemies all fall straight down
+            int behaviour = EnemyBehaviour.FALL;
+            int originX = x;
+            int phase = 0;
+            if (version >= 3) {
+                behaviour = in.get();
+                originX = fixed ? in.getInt() : Fixed.fromFloat(in.getFloat());
+                phase = in.getInt();
+            }
+            enemyGroups[behaviour].add(id, type, x, y, speed, health, ENEMY_HEALTH[type], damage,
+                                       ENEMY_DIFFICULTY[type], originX, phase);
+        }
+        projectiles.clear();
+        count = in.getInt();
+        for (int i = 0; i < count; i++) {
+            int id = in.getInt();
+            int type = in.get();
+            projectiles.add(id, type, in.getInt(), in.getInt(), in.getInt(), in.getInt(), in.getInt());
+        }
+        powerUps.clear();
+        count = in.getInt();
+        for (int i = 0; i < count; i++) {
+            int id = in.getInt();
+            String type = WorldState.powerUpName(in.get());
+            PowerUp powerUp = new PowerUp(in.getInt(), 0, type);
+            powerUp.id = id;
+            powerUp.yFixed = fixed ? in.getInt() : Fixed.fromFloat(in.getFloat());
+            powerUp.y = Fixed.toInt(powerUp.yFixed);
+            powerUps.add(powerUp);
+        }
+        
+        // Enemy projectiles, added in version 5
+        enemyProjectiles.clear();
+        count = version >= 5 ? in.getInt() : 0;
+        for (int i = 0; i < count; i++) {
+            int id = in.getInt();
+            int type = in.get();
+            enemyProjectiles.add(id, type, in.getInt(), in.getInt(), in.getInt(), in.getInt(), in.getInt());
+        }
+        nextEntityId = savedNextEntityId;
+        
+        // Bullet pattern state, added in version 2
+        if (version >= 2) {
+            spiralRemaining = in.getInt();
+            volleyCount = in.getInt();
         } else {
-            gameTimer.start();
-            if (enemySpawnTimer != null) {
-                enemySpawnTimer.start();
+            spiralRemaining = 0;
+            volleyCount = 0;
+        }
+        rewindCharges = version >= 4 ? in.getInt() : 0;
+        shotCooldown = version >= 8 ? in.getInt() : 0;
+        
+        // Bosses, added in version 6
+        bosses.clear();
+        bossLevel = 0;
+        if (version >= 6) {
+            bossLevel = in.getInt();
+            int bossCount = in.getInt();
+            int[] health = new int[BOSS_PART_HEALTH.length];
+            for (int type = 0; type < health.length; type++) {
+                health[type] = Fixed.scale(BOSS_PART_HEALTH[type], currentLevel.getEnemyHealthMultiplier());
+            }
+            for (int b = 0; b < bossCount; b++) {
+                int id = in.getInt();
+                int layout = in.get();
+                int x = fixed ? in.getInt() : (int) in.getFloat();
+                int y = fixed ? in.getInt() : (int) in.getFloat();
+                Boss boss = new Boss(id, layout, x, y, health);
+                boss.originX = fixed ? in.getInt() : (int) in.getFloat();
+                boss.age = in.getInt();
+                for (int i = 0; i < boss.partCount; i++) {
+                    boss.setPartHealth(i, in.getInt());
+                }
+                bosses.add(boss);
             }
         }
+        
+        levelTransition.stopTransition();
+        pendingLevel = null;
+        if (pendingLevelUp) {
+            advanceToNextLevel();
+        }
+    }
+    
+    /**
+     * Copy the current world into a flat state for snapshots.
+     * 
+     * @param state The state to fill
+     */
+    public void captureState(WorldState state) {
+        captureState(state, Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE);
+    }
+    
+    /**
+     * Copy the part of the world inside a rectangle into a flat state. Player and level
+     * fields are always copied.
+     * 
+     * @param state The state to fill
+     * @param minX Left edge in arena coordinates
+     * @param minY Top edge in arena coordinates
+     * @param maxX Right edge in arena coordinates
+     * @param maxY Bottom edge in arena coordinates
+     */
+    private void captureState(WorldState state, int minX, int minY, int maxX, int maxY) {
+        state.clear();
+        state.tick = tickCount;
+        
+        for (EnemyStore group : enemyGroups) {
+            for (int i = 0; i < group.size; i++) {
+                int x = Fixed.toInt(group.x[i]);
+                int y = Fixed.toInt(group.y[i]);
+                if (x + ENEMY_SIZE <= minX || x >= maxX || y + ENEMY_SIZE <= minY || y >= maxY) {
+                    continue;
+                }
+                state.addEnemy(group.id[i], group.type[i], x, y, group.health[i], group.maxHealth[i]);
+            }
+        }
+        // Boss parts look like enemies to the renderer and the snapshot, with ids following the boss id
+        for (Boss boss : bosses) {
+            for (int i = 0; i < boss.partCount; i++) {
+                int x = boss.x + boss.partX[i];
+                int y = boss.y + boss.partY[i];
+                if (boss.partHealth[i] <= 0 || x + ENEMY_SIZE <= minX || x >= maxX || y + ENEMY_SIZE <= minY || y >= maxY) {
+                    continue;
+                }
+                state.addEnemy(boss.id + i, boss.partType[i], x, y, boss.partHealth[i], boss.partMaxHealth[i]);
+            }
+        }
+        for (int i = 0; i < projectiles.size; i++) {
+            int x = projectiles.x[i];
+            int y = projectiles.y[i];
+            if (x < minX || x >= maxX || y < minY || y >= maxY) {
+                continue;
+            }
+            state.addProjectile(projectiles.id[i], projectiles.type[i], x, y, projectiles.dx[i], projectiles.dy[i]);
+        }
+        for (int i = 0; i < enemyProjectiles.size; i++) {
+            int x = enemyProjectiles.x[i];
+            int y = enemyProjectiles.y[i];
+            if (x < minX || x >= maxX || y < minY || y >= maxY) {
+                continue;
+            }
+            state.addProjectile(enemyProjectiles.id[i], enemyProjectiles.type[i] | WorldState.PROJECTILE_HOSTILE,
+                                x, y, enemyProjectiles.dx[i], enemyProjectiles.dy[i]);
+        }
+        for (PowerUp powerUp : powerUps) {
+            if (powerUp.x + powerUp.width <= minX || powerUp.x >= maxX || powerUp.y + powerUp.height <= minY || powerUp.y >= maxY) {
+                continue;
+            }
+            state.addPowerUp(powerUp.id, WorldState.powerUpCode(powerUp.type), powerUp.x, powerUp.y);
+        }
+        
+        state.playerShape = WorldState.shapeCode(player.shapeType);
+        state.playerX = player.x;
+        state.playerY = player.y;
+        state.playerHealth = playerHealth;
+        state.playerLives = playerLives;
+        state.score = score;
+        state.levelNumber = currentLevel.getLevelNumber();
+        state.levelPoints = currentLevel.getCurrentPoints();
+        state.highestLevel = highestLevelReached;
     }
     
     @Override
     public void keyPressed(KeyEvent e) {
-        int key = e.getKeyCode();
+        // Input is applied on the simulation thread at the start of the next tick
+        inputQueue.offer(e.getKeyCode(), System.nanoTime());
+    }
+    
+    /**
+     * Apply a key press, noting in appliedInput what it changed on screen. Called on the simulation thread.
+     * 
+     * @param key The key code
+     */
+    private void handleKey(int key) {
         
         // Start game on Enter key if not started
         if (!isGameStarted && key == KeyEvent.VK_ENTER) {
@@ -522,12 +1873,24 @@ public class ShapeShifterDuel extends JPanel implements ActionListener, KeyListe
             return;
         }
         
+        // Resume a saved run on R
+        if (!isGameStarted && key == KeyEvent.VK_R && hasSavedGame) {
+            resumeGame();
+            return;
+        }
+        
         // Restart game on Enter key if game over
         if (isGameOver && key == KeyEvent.VK_ENTER) {
             startGame();
             return;
         }
         
+        // Toggle the performance overlay on F3
+        if (key == KeyEvent.VK_F3) {
+            showStats = !showStats;
+            return;
+        }
+        
         // Pause/unpause on P key
         if (key == KeyEvent.VK_P && isGameStarted && !isGameOver) {
             togglePause();
@@ -540,47 +1903,44 @@ public class ShapeShifterDuel extends JPanel implements ActionListener, KeyListe
         }
         
         // Movement
+        int oldX = player.x;
+        int oldY = player.y;
         if (key == KeyEvent.VK_LEFT && player.x > 0) player.x -= playerSpeed;
         if (key == KeyEvent.VK_RIGHT && player.x < GAME_WIDTH - player.width) player.x += playerSpeed;
         if (key == KeyEvent.VK_UP && player.y > 0) player.y -= playerSpeed;
         if (key == KeyEvent.VK_DOWN && player.y < GAME_HEIGHT - player.height) player.y += playerSpeed;
+        if (player.x != oldX || player.y != oldY) {
+            appliedInput = InputLatency.MOVE;
+        }
         
         // Shooting
+        if (key == KeyEvent.VK_R) {
+            rewindTime();
+        }
+        
         if (key == KeyEvent.VK_SPACE) {
-            long currentTime = System.currentTimeMillis();
-            if (currentTime - lastShotTime > SHOT_DELAY) {
-                String shapeType = player.shapeType;
-                
-                // Fire a spread of bullets based on current level
+            if (shotCooldown == 0) {
+                // Fire the level's pattern, or the spiral while that power-up lasts
+                BulletPattern pattern = spiralRemaining > 0
+                    ? BulletPattern.get("spiral")
+                    : BulletPattern.forLevel(currentLevel.getLevelNumber());
                 int centerX = player.x + player.width/2 - 2;
+                nextEntityId += pattern.emit(projectiles, centerX, player.y, WorldState.shapeCode(player.shapeType),
+                                             5, nextEntityId, volleyCount++);
                 
-                // Base projectile pattern
-                projectiles.add(new Projectile(centerX, player.y, 0, -20, shapeType, 5));
-                
-                // Add more projectiles for higher levels
-                if (currentLevel.getLevelNumber() >= 2) {
-                    projectiles.add(new Projectile(centerX - 8, player.y, 0, -20, shapeType, 5));
-                    projectiles.add(new Projectile(centerX + 8, player.y, 0, -20, shapeType, 5));
-                }
-                
-                if (currentLevel.getLevelNumber() >= 3) {
-                    projectiles.add(new Projectile(centerX - 4, player.y - 5, 0, -20, shapeType, 5));
-                    projectiles.add(new Projectile(centerX + 4, player.y - 5, 0, -20, shapeType, 5));
-                }
-                
-                if (currentLevel.getLevelNumber() >= 5) {
-                    projectiles.add(new Projectile(centerX - 12, player.y, -1, -19, shapeType, 5));
-                    projectiles.add(new Projectile(centerX + 12, player.y, 1, -19, shapeType, 5));
-                }
-                
-                lastShotTime = currentTime;
+                shotCooldown = SHOT_DELAY_TICKS;
+                appliedInput = InputLatency.FIRE;
             }
         }
         
         // Shape shifting
+        String oldShape = player.shapeType;
         if (key == KeyEvent.VK_1) player = new Circle(player.x, player.y);
         if (key == KeyEvent.VK_2) player = new Triangle(player.x, player.y);
         if (key == KeyEvent.VK_3) player = new Cube(player.x, player.y);
+        if (!player.shapeType.equals(oldShape)) {
+            appliedInput = InputLatency.SHIFT;
+        }
     }
     
     @Override 
@@ -593,26 +1953,36 @@ public class ShapeShifterDuel extends JPanel implements ActionListener, KeyListe
      * Base class for all shapes in the game.
      */
     abstract class Shape {
+        protected int id = nextEntityId++;
         protected int x, y;
         protected int width = 30, height = 30;
-        protected Color color;
         protected String shapeType;
         
-        public Shape(int x, int y, Color color, String shapeType) {
+        public Shape(int x, int y, String shapeType) {
             this.x = x;
             this.y = y;
-            this.color = color;
             this.shapeType = shapeType;
         }
         
-        public abstract void draw(Graphics g);
-        
+        /**
+         * Check for a collision with another shape, pixel by pixel once the boxes meet.
+         * 
+         * @param other The other shape
+         * @return true if the shapes overlap
+         */
         public boolean collidesWith(Shape other) {
-            return x < other.x + other.width && 
-                   x + width > other.x && 
-                   y < other.y + other.height && 
-                   y + height > other.y;
+            return ShapeMask.overlaps(mask(), x, y, other.mask(), other.x, other.y);
+        }
+        
+        /**
+         * Get the mask collisions with this shape are tested against.
+         * 
+         * @return The mask for this shape's type and size
+         */
+        public ShapeMask mask() {
+            return ShapeMask.of(WorldState.shapeCode(shapeType), width);
         }
+        
     }
     
     /**
@@ -620,13 +1990,7 @@ public class ShapeShifterDuel extends JPanel implements ActionListener, KeyListe
      */
     class Circle extends Shape {
         public Circle(int x, int y) {
-            super(x, y, GameColors.PLAYER_CIRCLE, "Circle");
-        }
-        
-        @Override
-        public void draw(Graphics g) {
-            g.setColor(color);
-            g.fillOval(x, y, width, height);
+            super(x, y, "Circle");
         }
     }
     
@@ -635,15 +1999,7 @@ public class ShapeShifterDuel extends JPanel implements ActionListener, KeyListe
      */
     class Triangle extends Shape {
         public Triangle(int x, int y) {
-            super(x, y, GameColors.PLAYER_TRIANGLE, "Triangle");
-        }
-        
-        @Override
-        public void draw(Graphics g) {
-            g.setColor(color);
-            int[] xPoints = {x + width/2, x, x + width};
-            int[] yPoints = {y, y + height, y + height};
-            g.fillPolygon(xPoints, yPoints, 3);
+            super(x, y, "Triangle");
         }
     }
     
@@ -652,135 +2008,7 @@ public class ShapeShifterDuel extends JPanel implements ActionListener, KeyListe
      */
     class Cube extends Shape {
         public Cube(int x, int y) {
-            super(x, y, GameColors.PLAYER_CUBE, "Cube");
-        }
-        
-        @Override
-        public void draw(Graphics g) {
-            g.setColor(color);
-            g.fillRect(x, y, width, height);
-        }
-    }
-    
-    /**
-     * Base class for enemy shapes.
-     */
-    abstract class Enemy extends Shape {
-        protected int health;
-        protected final int maxHealth;
-        protected int damage;
-        protected final int difficulty;
-        protected float speed = 2.0f;
-        protected float x_float, y_float;
-        
-        public Enemy(int x, int y, Color color, String shapeType, int maxHealth, int damage, int difficulty) {
-            super(x, y, color, shapeType);
-            this.health = maxHealth;
-            this.maxHealth = maxHealth;
-            this.damage = damage;
-            this.difficulty = difficulty;
-            this.x_float = x;
-            this.y_float = y;
-        }
-        
-        public void move() {
-            y_float += speed;
-            y = (int)y_float;
-        }
-    }
-    
-    /**
-     * Circle enemy.
-     */
-    class EnemyCircle extends Enemy {
-        public EnemyCircle(int x, int y) {
-            super(x, y, GameColors.ENEMY_CIRCLE, "Circle", 30, 5, 1);
-        }
-        
-        @Override
-        public void draw(Graphics g) {
-            g.setColor(color);
-            g.fillOval(x, y, width, height);
-        }
-    }
-    
-    /**
-     * Triangle enemy.
-     */
-    class EnemyTriangle extends Enemy {
-        public EnemyTriangle(int x, int y) {
-            super(x, y, GameColors.ENEMY_TRIANGLE, "Triangle", 40, 8, 2);
-        }
-        
-        @Override
-        public void draw(Graphics g) {
-            g.setColor(color);
-            int[] xPoints = {x + width/2, x, x + width};
-            int[] yPoints = {y, y + height, y + height};
-            g.fillPolygon(xPoints, yPoints, 3);
-        }
-    }
-    
-    /**
-     * Cube enemy.
-     */
-    class EnemyCube extends Enemy {
-        public EnemyCube(int x, int y) {
-            super(x, y, GameColors.ENEMY_CUBE, "Cube", 50, 10, 3);
-        }
-        
-        @Override
-        public void draw(Graphics g) {
-            g.setColor(color);
-            g.fillRect(x, y, width, height);
-        }
-    }
-    
-    /**
-     * Projectile fired by the player.
-     */
-    class Projectile {
-        public int x, y;
-        public int dx, dy;
-        public String shapeType;
-        public int damage;
-        
-        public Projectile(int x, int y, int dx, int dy, String shapeType, int damage) {
-            this.x = x;
-            this.y = y;
-            this.dx = dx;
-            this.dy = dy;
-            this.shapeType = shapeType;
-            this.damage = damage;
-        }
-        
-        public void move() {
-            x += dx;
-            y += dy;
-        }
-        
-        public void draw(Graphics g) {
-            // Color based on shape type
-            switch (shapeType) {
-                case "Circle":
-                    g.setColor(GameColors.PLAYER_CIRCLE);
-                    break;
-                case "Triangle":
-                    g.setColor(GameColors.PLAYER_TRIANGLE);
-                    break;
-                case "Cube":
-                    g.setColor(GameColors.PLAYER_CUBE);
-                    break;
-                default:
-                    g.setColor(Color.WHITE);
-            }
-            
-            g.fillOval(x, y, 5, 5);
-        }
-        
-        public boolean collidesWith(Shape other) {
-            return x >= other.x && x <= other.x + other.width &&
-                   y >= other.y && y <= other.y + other.height;
+            super(x, y, "Cube");
         }
     }
     
@@ -789,60 +2017,33 @@ public class ShapeShifterDuel extends JPanel implements ActionListener, KeyListe
      */
     class PowerUp extends Shape {
         private String type;
-        private float ySpeed = 1.5f;
-        private float yFloat;
+        private int ySpeed = Fixed.ratio(3, 2);
+        private int yFixed;
         
         public PowerUp(int x, int y, String type) {
-            super(x, y, getPowerUpColor(type), "PowerUp");
+            super(x, y, "PowerUp");
             this.type = type;
             this.width = 15;
             this.height = 15;
-            this.yFloat = y;
-        }
-        
-        private static Color getPowerUpColor(String type) {
-            switch (type) {
-                case "Health":
-                    return GameColors.SUCCESS_GREEN;
-                case "Shield":
-                    return GameColors.ACCENT_YELLOW;
-                case "Speed":
-                    return new Color(0x7FDBFF); // Light blue
-                default:
-                    return Color.WHITE;
-            }
+            this.yFixed = Fixed.of(y);
         }
         
+        /**
+         * Power-ups are picked up anywhere in their box, whatever icon they show.
+         */
         @Override
-        public void draw(Graphics g) {
-            g.setColor(color);
-            
-            switch (type) {
-                case "Health":
-                    // Health power-up (cross shape)
-                    g.fillRect(x + 5, y, 5, 15);
-                    g.fillRect(x, y + 5, 15, 5);
-                    break;
-                case "Shield":
-                    // Shield power-up (shield shape)
-                    g.fillOval(x, y, 15, 15);
-                    g.setColor(GameColors.BACKGROUND);
-                    g.fillOval(x + 3, y + 3, 9, 9);
-                    break;
-                case "Speed":
-                    // Speed power-up (lightning bolt)
-                    int[] xPoints = {x + 7, x + 3, x + 7, x + 3, x + 12, x + 8, x + 12};
-                    int[] yPoints = {y, y + 5, y + 5, y + 10, y + 5, y + 5, y};
-                    g.fillPolygon(xPoints, yPoints, 7);
-                    break;
-                default:
-                    g.fillOval(x, y, 15, 15);
-            }
+        public ShapeMask mask() {
+            return ShapeMask.of(WorldState.SHAPE_CUBE, width);
         }
         
-        public void move() {
-            yFloat += ySpeed;
-            y = (int)yFloat;
+        /**
+         * Move the power-up.
+         * 
+         * @param steps Number of ticks worth of movement to apply
+         */
+        public void move(int steps) {
+            yFixed += ySpeed * steps;
+            y = Fixed.toInt(yFixed);
         }
     }
     
@@ -853,8 +2054,19 @@ public class ShapeShifterDuel extends JPanel implements ActionListener, KeyListe
         JFrame frame = new JFrame("Shape Shifter Duel");
         ShapeShifterDuel game = new ShapeShifterDuel();
         frame.add(game);
-        frame.setSize(500, 500);
+        frame.setSize(game.VIEW_WIDTH, game.VIEW_HEIGHT);
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        
+        // Save the run when the window closes or the process is asked to stop
+        frame.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                game.shutdown();
+            }
+        });
+        Runtime.getRuntime().addShutdownHook(new Thread(game::shutdown));
+        
         frame.setVisible(true);
+        game.start();
     }
 }
@@ -0,0 +1,77 @@
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs the game simulation at a fixed tick rate on its own thread.
+ *
+ * Ticks are scheduled against absolute deadlines so the rate does not drift;
+ * if the simulation falls far behind it skips ahead instead of bursting to
+ * catch up.
+ */
+public class SimulationLoop implements Runnable {
+    private static final int MAX_LAG_TICKS = 5;
+    
+    private final long tickNanos;
+    private final Runnable tick;
+    private volatile boolean running = false;
+    private Thread thread;
+    
+    /**
+     * Constructor for the simulation loop.
+     * 
+     * @param tickMillis Milliseconds between ticks
+     * @param tick The work to run every tick
+     */
+    public SimulationLoop(int tickMillis, Runnable tick) {
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.tick = tick;
+    }
+    
+    /**
+     * Start ticking on a new thread.
+     */
+    public void start() {
+        running = true;
+        thread = new Thread(this, "simulation");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    /**
+     * Stop ticking and wait for the current tick to finish.
+     */
+    public void stop() {
+        running = false;
+        if (thread != null && thread != Thread.currentThread()) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+    
+    @Override
+    public void run() {
+        long nextTick = System.nanoTime();
+        while (running) {
+            try {
+                tick.run();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+            
+            nextTick += tickNanos;
+            long wait = nextTick - System.nanoTime();
+            if (-wait > MAX_LAG_TICKS * tickNanos) {
+                nextTick = System.nanoTime();
+            }
+            // parkNanos can return early, so keep parking until the deadline
+            while (wait > 0 && running) {
+                LockSupport.parkNanos(wait);
+                wait = nextTick - System.nanoTime();
+            }
+        }
+    }
+}
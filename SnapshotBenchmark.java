@@ -0,0 +1,138 @@
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * Measures snapshot size and encode/decode time against entity count.
+ *
+ * Run with: java SnapshotBenchmark
+ */
+public class SnapshotBenchmark {
+    private static final int WORLD_SIZE = 500;
+    private static final int TICKS = 600;
+    private static final int ACK_LAG = 4;
+    
+    public static void main(String[] args) {
+        int[] entityCounts = {10, 100, 1000, 5000, 20000};
+        
+        System.out.println("entities  full B/tick  delta B/tick  encode us  decode us");
+        for (int count : entityCounts) {
+            run(count);
+        }
+    }
+    
+    private static void run(int entityCount) {
+        SnapshotCodec encoder = new SnapshotCodec(WORLD_SIZE, WORLD_SIZE);
+        SnapshotCodec decoder = new SnapshotCodec(WORLD_SIZE, WORLD_SIZE);
+        SnapshotHistory sent = new SnapshotHistory(32);
+        SnapshotHistory received = new SnapshotHistory(32);
+        ByteBuffer buffer = SnapshotCodec.allocateBuffer(64 + entityCount * 16);
+        WorldState world = new WorldState();
+        WorldState decoded = new WorldState();
+        Random random = new Random(42);
+        
+        int nextId = 1;
+        for (int i = 0; i < entityCount; i++) {
+            nextId = spawn(world, random, nextId, i % 3);
+        }
+        
+        long fullBytes = 0;
+        long deltaBytes = 0;
+        long encodeNanos = 0;
+        long decodeNanos = 0;
+        int measured = 0;
+        
+        for (int tick = 1; tick <= TICKS; tick++) {
+            nextId = step(world, random, nextId);
+            world.tick = tick;
+            sent.slotFor(tick).copyFrom(world);
+            
+            // Full snapshot size, for comparison
+            buffer.clear();
+            fullBytes += encoder.encode(world, null, buffer);
+            
+            // Delta against what the receiver acknowledged a few ticks ago
+            buffer.clear();
+            long start = System.nanoTime();
+            int bytes = encoder.encode(world, sent.getAcknowledged(), buffer);
+            long encoded = System.nanoTime();
+            buffer.flip();
+            WorldState baseline = received.get(decoder.peekBaselineTick(buffer));
+            decoder.decode(buffer, baseline, decoded);
+            long end = System.nanoTime();
+            
+            received.slotFor(tick).copyFrom(decoded);
+            if (tick > ACK_LAG) {
+                sent.acknowledge(tick - ACK_LAG);
+            }
+            
+            if (tick > TICKS / 2) {
+                deltaBytes += bytes;
+                encodeNanos += encoded - start;
+                decodeNanos += end - encoded;
+                measured++;
+            }
+        }
+        
+        if (decoded.enemyCount != world.enemyCount || decoded.projectileCount != world.projectileCount) {
+            throw new IllegalStateException("Decoded snapshot does not match the world");
+        }
+        
+        System.out.printf("%8d  %11d  %12d  %9.1f  %9.1f%n",
+            entityCount,
+            fullBytes / TICKS,
+            deltaBytes / measured,
+            encodeNanos / 1000.0 / measured,
+            decodeNanos / 1000.0 / measured);
+    }
+    
+    private static int spawn(WorldState world, Random random, int id, int kind) {
+        switch (kind) {
+            case 0:
+                world.addEnemy(id, random.nextInt(3), random.nextInt(WORLD_SIZE - 30), random.nextInt(WORLD_SIZE), 40, 40);
+                break;
+            case 1:
+                world.addProjectile(id, random.nextInt(3), random.nextInt(WORLD_SIZE), random.nextInt(WORLD_SIZE),
+                                    random.nextInt(3) - 1, -20);
+                break;
+            default:
+                world.addPowerUp(id, random.nextInt(3), random.nextInt(WORLD_SIZE - 15), random.nextInt(WORLD_SIZE));
+        }
+        return id + 1;
+    }
+    
+    /**
+     * Advance the synthetic world by one tick, respawning anything that leaves the field.
+     */
+    private static int step(WorldState world, Random random, int nextId) {
+        for (int i = 0; i < world.enemyCount; i++) {
+            world.enemyY[i] += 2;
+            if (random.nextInt(50) == 0) {
+                world.enemyHealth[i] -= 5;
+            }
+            if (world.enemyY[i] > WORLD_SIZE) {
+                world.enemyId[i] = nextId++;
+                world.enemyY[i] = 0;
+                world.enemyHealth[i] = world.enemyMaxHealth[i];
+            }
+        }
+        for (int i = 0; i < world.projectileCount; i++) {
+            world.projectileX[i] += world.projectileDx[i];
+            world.projectileY[i] += world.projectileDy[i];
+            if (world.projectileY[i] < 0) {
+                world.projectileId[i] = nextId++;
+                world.projectileY[i] = WORLD_SIZE - 100;
+            }
+        }
+        for (int i = 0; i < world.powerUpCount; i++) {
+            world.powerUpY[i] += random.nextInt(3) == 0 ? 1 : 2;
+            if (world.powerUpY[i] > WORLD_SIZE) {
+                world.powerUpId[i] = nextId++;
+                world.powerUpY[i] = 0;
+            }
+        }
+        world.playerX = 250 + (world.tick % 20);
+        world.playerY = 400;
+        world.score += 10;
+        return nextId;
+    }
+}
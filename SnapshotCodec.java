@@ -0,0 +1,575 @@
+import java.nio.ByteBuffer;
+
+/**
+ * Compact binary encoding of a {@link WorldState} for network sync.
+ *
+ * Fields are bit-packed, coordinates are quantized to whole pixels within the
+ * world bounds, and a snapshot can be delta-encoded against an earlier one the
+ * receiver has acknowledged. Entities are matched to the baseline by id, so
+ * spawns are sent in full, despawns are implied by absence and everything else
+ * only sends the fields that changed. Projectiles are predicted from their
+ * baseline velocity, so a bullet in flight usually costs a few bits.
+ *
+ * Coordinates are clamped to the world plus a margin, wide enough for
+ * anything the game captures around its view. Deltas are always taken from
+ * the baseline as the receiver decoded it, clamping included, so a clamped
+ * coordinate never leaves the two sides apart on later ticks.
+ *
+ * The codec keeps its scratch state between calls and never allocates while
+ * encoding or decoding, so a single instance should not be shared between threads.
+ */
+public class SnapshotCodec {
+    private static final int VERSION = 3;
+    private static final int VERSION_BITS = 4;
+    private static final int TYPE_BITS = 2;
+    private static final int VELOCITY_BITS = 8;
+    private static final int SMALL_DELTA_BITS = 7;
+    // At least the game's cull margin plus the largest entity, so captured entities are never clamped
+    private static final int COORD_MARGIN = 128;
+    
+    // Coordinate delta codes
+    private static final int COORD_SAME = 0;
+    private static final int COORD_SMALL = 1;
+    private static final int COORD_FULL = 2;
+    
+    private final int coordBits;
+    private final int coordMax;
+    private final BitWriter writer = new BitWriter();
+    private final BitReader reader = new BitReader();
+    private final IdIndex enemyIndex = new IdIndex();
+    private final IdIndex projectileIndex = new IdIndex();
+    private final IdIndex powerUpIndex = new IdIndex();
+    
+    /**
+     * Create a codec for a world of the given size.
+     *
+     * @param worldWidth The width of the playfield
+     * @param worldHeight The height of the playfield
+     */
+    public SnapshotCodec(int worldWidth, int worldHeight) {
+        int range = Math.max(worldWidth, worldHeight) + 2 * COORD_MARGIN;
+        this.coordBits = 32 - Integer.numberOfLeadingZeros(range);
+        this.coordMax = (1 << coordBits) - 1;
+    }
+    
+    /**
+     * Allocate a direct buffer suitable for reuse across ticks.
+     *
+     * @param capacity The buffer size in bytes
+     * @return A new direct buffer
+     */
+    public static ByteBuffer allocateBuffer(int capacity) {
+        return ByteBuffer.allocateDirect(capacity);
+    }
+    
+    /**
+     * Encode a snapshot at the buffer's position.
+     *
+     * @param current The state to encode
+     * @param baseline The last acknowledged state, or null for a full snapshot
+     * @param out The buffer to write into
+     * @return The number of bytes written
+     */
+    public int encode(WorldState current, WorldState baseline, ByteBuffer out) {
+        int start = out.position();
+        BitWriter w = writer;
+        w.reset(out);
+        
+        boolean delta = baseline != null;
+        w.write(VERSION, VERSION_BITS);
+        w.write(delta ? 1 : 0, 1);
+        w.write(current.tick, 32);
+        if (delta) {
+            w.write(baseline.tick, 32);
+        }
+        
+        encodePlayer(current, baseline);
+        encodeEnemies(current, baseline);
+        encodeProjectiles(current, baseline);
+        encodePowerUps(current, baseline);
+        
+        w.flush();
+        return out.position() - start;
+    }
+    
+    /**
+     * Read the tick of the baseline a snapshot was encoded against, without consuming it.
+     *
+     * @param in The buffer positioned at the start of a snapshot
+     * @return The baseline tick, or -1 for a full snapshot
+     */
+    public int peekBaselineTick(ByteBuffer in) {
+        BitReader r = reader;
+        r.reset(in.duplicate());
+        r.read(VERSION_BITS);
+        if (r.read(1) == 0) {
+            return -1;
+        }
+        r.read(32);
+        return r.read(32);
+    }
+    
+    /**
+     * Decode a snapshot at the buffer's position.
+     *
+     * @param in The buffer to read from
+     * @param baseline The state the snapshot was encoded against, or null for a full snapshot
+     * @param out The state to fill
+     */
+    public void decode(ByteBuffer in, WorldState baseline, WorldState out) {
+        BitReader r = reader;
+        r.reset(in);
+        
+        int version = r.read(VERSION_BITS);
+        if (version != VERSION) {
+            throw new IllegalStateException("Unsupported snapshot version " + version);
+        }
+        boolean delta = r.read(1) == 1;
+        out.clear();
+        out.tick = r.read(32);
+        if (delta) {
+            int baseTick = r.read(32);
+            if (baseline == null || baseline.tick != baseTick) {
+                throw new IllegalStateException("Snapshot needs baseline tick " + baseTick);
+            }
+        } else {
+            baseline = null;
+        }
+        
+        decodePlayer(out, baseline);
+        decodeEnemies(out, baseline);
+        decodeProjectiles(out, baseline);
+        decodePowerUps(out, baseline);
+    }
+    
+    private void encodePlayer(WorldState s, WorldState b) {
+        BitWriter w = writer;
+        if (b == null || s.playerShape != b.playerShape) {
+            if (b != null) w.write(1, 1);
+            w.write(s.playerShape, TYPE_BITS);
+        } else {
+            w.write(0, 1);
+        }
+        writeCoordDelta(s.playerX, b == null ? 0 : quantize(b.playerX), b != null);
+        writeCoordDelta(s.playerY, b == null ? 0 : quantize(b.playerY), b != null);
+        writeChangedVar(s.playerHealth, b == null ? 0 : b.playerHealth, b != null);
+        writeChangedVar(s.playerLives, b == null ? 0 : b.playerLives, b != null);
+        writeChangedVar(s.score, b == null ? 0 : b.score, b != null);
+        writeChangedVar(s.levelNumber, b == null ? 0 : b.levelNumber, b != null);
+        writeChangedVar(s.levelPoints, b == null ? 0 : b.levelPoints, b != null);
+        writeChangedVar(s.highestLevel, b == null ? 0 : b.highestLevel, b != null);
+    }
+    
+    private void decodePlayer(WorldState s, WorldState b) {
+        BitReader r = reader;
+        if (b == null || r.read(1) == 1) {
+            s.playerShape = r.read(TYPE_BITS);
+        } else {
+            s.playerShape = b.playerShape;
+        }
+        s.playerX = readCoordDelta(b == null ? 0 : b.playerX, b != null);
+        s.playerY = readCoordDelta(b == null ? 0 : b.playerY, b != null);
+        s.playerHealth = readChangedVar(b == null ? 0 : b.playerHealth, b != null);
+        s.playerLives = readChangedVar(b == null ? 0 : b.playerLives, b != null);
+        s.score = readChangedVar(b == null ? 0 : b.score, b != null);
+        s.levelNumber = readChangedVar(b == null ? 0 : b.levelNumber, b != null);
+        s.levelPoints = readChangedVar(b == null ? 0 : b.levelPoints, b != null);
+        s.highestLevel = readChangedVar(b == null ? 0 : b.highestLevel, b != null);
+    }
+    
+    private void encodeEnemies(WorldState s, WorldState b) {
+        BitWriter w = writer;
+        if (b != null) {
+            enemyIndex.build(b.enemyId, b.enemyCount);
+        }
+        w.writeVar(s.enemyCount);
+        int prevId = 0;
+        for (int i = 0; i < s.enemyCount; i++) {
+            int id = s.enemyId[i];
+            w.writeVar(zigZag(id - prevId));
+            prevId = id;
+            
+            int j = b == null ? -1 : enemyIndex.get(id);
+            if (b != null) w.write(j >= 0 ? 1 : 0, 1);
+            if (j >= 0) {
+                writeCoordDelta(s.enemyX[i], quantize(b.enemyX[j]), true);
+                writeCoordDelta(s.enemyY[i], quantize(b.enemyY[j]), true);
+                writeChangedVar(s.enemyHealth[i], b.enemyHealth[j], true);
+            } else {
+                w.write(s.enemyType[i], TYPE_BITS);
+                writeCoordDelta(s.enemyX[i], 0, false);
+                writeCoordDelta(s.enemyY[i], 0, false);
+                w.writeVar(Math.max(0, s.enemyHealth[i]));
+                w.writeVar(s.enemyMaxHealth[i]);
+            }
+        }
+    }
+    
+    private void decodeEnemies(WorldState s, WorldState b) {
+        BitReader r = reader;
+        if (b != null) {
+            enemyIndex.build(b.enemyId, b.enemyCount);
+        }
+        int count = r.readVar();
+        int prevId = 0;
+        for (int i = 0; i < count; i++) {
+            int id = prevId + unZigZag(r.readVar());
+            prevId = id;
+            
+            boolean known = b != null && r.read(1) == 1;
+            if (known) {
+                int j = enemyIndex.get(id);
+                int x = readCoordDelta(b.enemyX[j], true);
+                int y = readCoordDelta(b.enemyY[j], true);
+                int health = readChangedVar(b.enemyHealth[j], true);
+                s.addEnemy(id, b.enemyType[j], x, y, health, b.enemyMaxHealth[j]);
+            } else {
+                int type = r.read(TYPE_BITS);
+                int x = readCoordDelta(0, false);
+                int y = readCoordDelta(0, false);
+                int health = r.readVar();
+                int maxHealth = r.readVar();
+                s.addEnemy(id, type, x, y, health, maxHealth);
+            }
+        }
+    }
+    
+    private void encodeProjectiles(WorldState s, WorldState b) {
+        BitWriter w = writer;
+        int elapsed = 0;
+        if (b != null) {
+            projectileIndex.build(b.projectileId, b.projectileCount);
+            elapsed = s.tick - b.tick;
+        }
+        w.writeVar(s.projectileCount);
+        int prevId = 0;
+        for (int i = 0; i < s.projectileCount; i++) {
+            int id = s.projectileId[i];
+            w.writeVar(zigZag(id - prevId));
+            prevId = id;
+            
+            int j = b == null ? -1 : projectileIndex.get(id);
+            if (b != null) w.write(j >= 0 ? 1 : 0, 1);
+            if (j >= 0) {
+                // Projectiles fly in straight lines, so predict from the baseline velocity
+                writeCoordDelta(s.projectileX[i], quantize(b.projectileX[j]) + b.projectileDx[j] * elapsed, true);
+                writeCoordDelta(s.projectileY[i], quantize(b.projectileY[j]) + b.projectileDy[j] * elapsed, true);
+                boolean velocityChanged = s.projectileDx[i] != b.projectileDx[j]
+                                       || s.projectileDy[i] != b.projectileDy[j];
+                w.write(velocityChanged ? 1 : 0, 1);
+                if (velocityChanged) {
+                    w.writeSigned(s.projectileDx[i], VELOCITY_BITS);
+                    w.writeSigned(s.projectileDy[i], VELOCITY_BITS);
+                }
+            } else {
+                w.write(s.projectileType[i] & ~WorldState.PROJECTILE_HOSTILE, TYPE_BITS);
+                w.write((s.projectileType[i] & WorldState.PROJECTILE_HOSTILE) != 0 ? 1 : 0, 1);
+                writeCoordDelta(s.projectileX[i], 0, false);
+                writeCoordDelta(s.projectileY[i], 0, false);
+                w.writeSigned(s.projectileDx[i], VELOCITY_BITS);
+                w.writeSigned(s.projectileDy[i], VELOCITY_BITS);
+            }
+        }
+    }
+    
+    private void decodeProjectiles(WorldState s, WorldState b) {
+        BitReader r = reader;
+        int elapsed = 0;
+        if (b != null) {
+            projectileIndex.build(b.projectileId, b.projectileCount);
+            elapsed = s.tick - b.tick;
+        }
+        int count = r.readVar();
+        int prevId = 0;
+        for (int i = 0; i < count; i++) {
+            int id = prevId + unZigZag(r.readVar());
+            prevId = id;
+            
+            boolean known = b != null && r.read(1) == 1;
+            if (known) {
+                int j = projectileIndex.get(id);
+                int x = readCoordDelta(b.projectileX[j] + b.projectileDx[j] * elapsed, true);
+                int y = readCoordDelta(b.projectileY[j] + b.projectileDy[j] * elapsed, true);
+                int dx = b.projectileDx[j];
+                int dy = b.projectileDy[j];
+                if (r.read(1) == 1) {
+                    dx = r.readSigned(VELOCITY_BITS);
+                    dy = r.readSigned(VELOCITY_BITS);
+                }
+                s.addProjectile(id, b.projectileType[j], x, y, dx, dy);
+            } else {
+                int type = r.read(TYPE_BITS);
+                if (r.read(1) == 1) {
+                    type |= WorldState.PROJECTILE_HOSTILE;
+                }
+                int x = readCoordDelta(0, false);
+                int y = readCoordDelta(0, false);
+                int dx = r.readSigned(VELOCITY_BITS);
+                int dy = r.readSigned(VELOCITY_BITS);
+                s.addProjectile(id, type, x, y, dx, dy);
+            }
+        }
+    }
+    
+    private void encodePowerUps(WorldState s, WorldState b) {
+        BitWriter w = writer;
+        if (b != null) {
+            powerUpIndex.build(b.powerUpId, b.powerUpCount);
+        }
+        w.writeVar(s.powerUpCount);
+        int prevId = 0;
+        for (int i = 0; i < s.powerUpCount; i++) {
+            int id = s.powerUpId[i];
+            w.writeVar(zigZag(id - prevId));
+            prevId = id;
+            
+            int j = b == null ? -1 : powerUpIndex.get(id);
+            if (b != null) w.write(j >= 0 ? 1 : 0, 1);
+            if (j >= 0) {
+                writeCoordDelta(s.powerUpX[i], quantize(b.powerUpX[j]), true);
+                writeCoordDelta(s.powerUpY[i], quantize(b.powerUpY[j]), true);
+            } else {
+                w.write(s.powerUpType[i], TYPE_BITS);
+                writeCoordDelta(s.powerUpX[i], 0, false);
+                writeCoordDelta(s.powerUpY[i], 0, false);
+            }
+        }
+    }
+    
+    private void decodePowerUps(WorldState s, WorldState b) {
+        BitReader r = reader;
+        if (b != null) {
+            powerUpIndex.build(b.powerUpId, b.powerUpCount);
+        }
+        int count = r.readVar();
+        int prevId = 0;
+        for (int i = 0; i < count; i++) {
+            int id = prevId + unZigZag(r.readVar());
+            prevId = id;
+            
+            boolean known = b != null && r.read(1) == 1;
+            if (known) {
+                int j = powerUpIndex.get(id);
+                int x = readCoordDelta(b.powerUpX[j], true);
+                int y = readCoordDelta(b.powerUpY[j], true);
+                s.addPowerUp(id, b.powerUpType[j], x, y);
+            } else {
+                int type = r.read(TYPE_BITS);
+                int x = readCoordDelta(0, false);
+                int y = readCoordDelta(0, false);
+                s.addPowerUp(id, type, x, y);
+            }
+        }
+    }
+    
+    /**
+     * Clamp a coordinate to the range the codec can send, which is what the receiver decodes.
+     */
+    private int quantize(int value) {
+        return Math.max(-COORD_MARGIN, Math.min(coordMax - COORD_MARGIN, value));
+    }
+    
+    /**
+     * Write a coordinate, either in full or relative to a predicted value. The
+     * prediction must come from the baseline as decoded, see {@link #quantize}.
+     */
+    private void writeCoordDelta(int value, int predicted, boolean delta) {
+        BitWriter w = writer;
+        value = quantize(value);
+        if (delta) {
+            int d = value - predicted;
+            if (d == 0) {
+                w.write(COORD_SAME, 2);
+                return;
+            }
+            if (d >= -(1 << (SMALL_DELTA_BITS - 1)) && d < (1 << (SMALL_DELTA_BITS - 1))) {
+                w.write(COORD_SMALL, 2);
+                w.writeSigned(d, SMALL_DELTA_BITS);
+                return;
+            }
+            w.write(COORD_FULL, 2);
+        }
+        w.write(value + COORD_MARGIN, coordBits);
+    }
+    
+    private int readCoordDelta(int predicted, boolean delta) {
+        BitReader r = reader;
+        if (delta) {
+            int code = r.read(2);
+            if (code == COORD_SAME) {
+                return predicted;
+            }
+            if (code == COORD_SMALL) {
+                return predicted + r.readSigned(SMALL_DELTA_BITS);
+            }
+        }
+        return r.read(coordBits) - COORD_MARGIN;
+    }
+    
+    /**
+     * Write a non-negative counter, prefixed by a changed bit when delta encoding.
+     */
+    private void writeChangedVar(int value, int base, boolean delta) {
+        if (delta) {
+            if (value == base) {
+                writer.write(0, 1);
+                return;
+            }
+            writer.write(1, 1);
+        }
+        writer.writeVar(zigZag(value));
+    }
+    
+    private int readChangedVar(int base, boolean delta) {
+        if (delta && reader.read(1) == 0) {
+            return base;
+        }
+        return unZigZag(reader.readVar());
+    }
+    
+    private static int zigZag(int v) {
+        return (v << 1) ^ (v >> 31);
+    }
+    
+    private static int unZigZag(int v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+    
+    /**
+     * Packs bit fields into a byte buffer, least significant bit first.
+     */
+    private static final class BitWriter {
+        private ByteBuffer buffer;
+        private long bits;
+        private int bitCount;
+        
+        void reset(ByteBuffer buffer) {
+            this.buffer = buffer;
+            this.bits = 0;
+            this.bitCount = 0;
+        }
+        
+        void write(int value, int count) {
+            bits |= (value & ((1L << count) - 1)) << bitCount;
+            bitCount += count;
+            while (bitCount >= 8) {
+                buffer.put((byte) bits);
+                bits >>>= 8;
+                bitCount -= 8;
+            }
+        }
+        
+        void writeSigned(int value, int count) {
+            write(value, count);
+        }
+        
+        /**
+         * Write an unsigned value in 6-bit groups with a continuation bit.
+         */
+        void writeVar(int value) {
+            do {
+                int group = value & 0x3F;
+                value >>>= 6;
+                write(value != 0 ? group | 0x40 : group, 7);
+            } while (value != 0);
+        }
+        
+        void flush() {
+            if (bitCount > 0) {
+                buffer.put((byte) bits);
+            }
+            bits = 0;
+            bitCount = 0;
+        }
+    }
+    
+    /**
+     * Reads bit fields written by {@link BitWriter}.
+     */
+    private static final class BitReader {
+        private ByteBuffer buffer;
+        private long bits;
+        private int bitCount;
+        
+        void reset(ByteBuffer buffer) {
+            this.buffer = buffer;
+            this.bits = 0;
+            this.bitCount = 0;
+        }
+        
+        int read(int count) {
+            while (bitCount < count) {
+                bits |= (long) (buffer.get() & 0xFF) << bitCount;
+                bitCount += 8;
+            }
+            int value = (int) (bits & ((1L << count) - 1));
+            bits >>>= count;
+            bitCount -= count;
+            return value;
+        }
+        
+        int readSigned(int count) {
+            int shift = 32 - count;
+            return (read(count) << shift) >> shift;
+        }
+        
+        int readVar() {
+            int value = 0;
+            int shift = 0;
+            int group;
+            do {
+                group = read(7);
+                value |= (group & 0x3F) << shift;
+                shift += 6;
+            } while ((group & 0x40) != 0);
+            return value;
+        }
+    }
+    
+    /**
+     * Open-addressing map from entity id to array index, rebuilt in place for each baseline.
+     */
+    private static final class IdIndex {
+        private int[] keys = new int[128];
+        private int[] values = new int[128];
+        private boolean[] used = new boolean[128];
+        private int mask = 127;
+        
+        void build(int[] ids, int count) {
+            if (count * 2 > keys.length) {
+                int capacity = Integer.highestOneBit(count * 4 - 1) << 1;
+                keys = new int[capacity];
+                values = new int[capacity];
+                used = new boolean[capacity];
+                mask = capacity - 1;
+            } else {
+                java.util.Arrays.fill(used, false);
+            }
+            for (int i = 0; i < count; i++) {
+                int slot = mix(ids[i]) & mask;
+                while (used[slot]) {
+                    slot = (slot + 1) & mask;
+                }
+                used[slot] = true;
+                keys[slot] = ids[i];
+                values[slot] = i;
+            }
+        }
+        
+        int get(int id) {
+            int slot = mix(id) & mask;
+            while (used[slot]) {
+                if (keys[slot] == id) {
+                    return values[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+        
+        private static int mix(int id) {
+            int h = id * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/**
+ * A fixed ring of recent world states, keyed by tick.
+ *
+ * The sender keeps the states it has sent so it can delta-encode against the
+ * last one a client acknowledged; the receiver keeps the states it has decoded
+ * so it can resolve the baseline a delta snapshot refers to.
+ */
+public class SnapshotHistory {
+    private final WorldState[] states;
+    private final int mask;
+    private int acknowledgedTick = -1;
+    
+    /**
+     * Constructor for the snapshot history.
+     *
+     * @param capacity The number of states to keep, rounded up to a power of two
+     */
+    public SnapshotHistory(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.states = new WorldState[size];
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            states[i] = new WorldState();
+            states[i].tick = -1;
+        }
+    }
+    
+    /**
+     * Get the slot to capture the given tick into, overwriting the oldest state.
+     *
+     * @param tick The tick about to be captured
+     * @return The state to fill
+     */
+    public WorldState slotFor(int tick) {
+        WorldState state = states[tick & mask];
+        state.clear();
+        state.tick = tick;
+        return state;
+    }
+    
+    /**
+     * Look up a stored state.
+     *
+     * @param tick The tick to look up
+     * @return The state, or null if it has been overwritten or was never stored
+     */
+    public WorldState get(int tick) {
+        if (tick < 0) {
+            return null;
+        }
+        WorldState state = states[tick & mask];
+        return state.tick == tick ? state : null;
+    }
+    
+    /**
+     * Record that the remote side has received the given tick.
+     *
+     * @param tick The acknowledged tick
+     */
+    public void acknowledge(int tick) {
+        if (tick > acknowledgedTick) {
+            acknowledgedTick = tick;
+        }
+    }
+    
+    /**
+     * Get the most recent acknowledged state that is still stored.
+     *
+     * @return The baseline to delta-encode against, or null to send a full snapshot
+     */
+    public WorldState getAcknowledged() {
+        return get(acknowledgedTick);
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ * Settings for swarm mode, a stress run that spawns entities at fixed rates
+ * instead of following the level's pacing.
+ *
+ * Read from system properties, e.g.
+ * java -Dswarm=true -Dswarm.enemies=2000 -Dswarm.projectiles=4000 -Dswarm.level=10 ShapeShifterDuel
+ */
+public class SwarmConfig {
+    private final boolean enabled;
+    private final int enemiesPerSecond;
+    private final int projectilesPerSecond;
+    private final int powerUpsPerSecond;
+    private final int durationSeconds;
+    private final int width;
+    private final int height;
+    private final String reportFile;
+    private final int level;
+    
+    /**
+     * Constructor for the swarm configuration.
+     * 
+     * @param enabled Whether swarm mode is on
+     * @param enemiesPerSecond Enemies spawned per second
+     * @param projectilesPerSecond Projectiles spawned per second
+     * @param powerUpsPerSecond Power-ups spawned per second
+     * @param durationSeconds Length of the run in seconds of simulation
+     * @param width Width of the play field
+     * @param height Height of the play field
+     * @param reportFile File the summary is written to, or null or empty for the console only
+     * @param level The level the run is played on, which sets how hard enemies hit and how often they shoot
+     */
+    public SwarmConfig(boolean enabled, int enemiesPerSecond, int projectilesPerSecond, int powerUpsPerSecond,
+                       int durationSeconds, int width, int height, String reportFile, int level) {
+        this.enabled = enabled;
+        this.enemiesPerSecond = enemiesPerSecond;
+        this.projectilesPerSecond = projectilesPerSecond;
+        this.powerUpsPerSecond = powerUpsPerSecond;
+        this.durationSeconds = durationSeconds;
+        this.width = width;
+        this.height = height;
+        this.reportFile = reportFile == null || reportFile.isEmpty() ? null : reportFile;
+        this.level = Math.max(1, level);
+    }
+    
+    /**
+     * Read the configuration from system properties.
+     * 
+     * @return The configuration; disabled unless -Dswarm=true is set
+     */
+    public static SwarmConfig fromSystemProperties() {
+        boolean enabled = Boolean.getBoolean("swarm");
+        int size = enabled ? 800 : 500;
+        return new SwarmConfig(
+            enabled,
+            Integer.getInteger("swarm.enemies", 500),
+            Integer.getInteger("swarm.projectiles", 1000),
+            Integer.getInteger("swarm.powerups", 20),
+            Integer.getInteger("swarm.seconds", 60),
+            enabled ? Integer.getInteger("swarm.width", size) : size,
+            enabled ? Integer.getInteger("swarm.height", size) : size,
+            System.getProperty("swarm.report", "swarm-report.txt"),
+            Integer.getInteger("swarm.level", 1));
+    }
+    
+    // Getters
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    public int getEnemiesPerSecond() {
+        return enemiesPerSecond;
+    }
+    
+    public int getProjectilesPerSecond() {
+        return projectilesPerSecond;
+    }
+    
+    public int getPowerUpsPerSecond() {
+        return powerUpsPerSecond;
+    }
+    
+    public int getDurationSeconds() {
+        return durationSeconds;
+    }
+    
+    public int getWidth() {
+        return width;
+    }
+    
+    public int getHeight() {
+        return height;
+    }
+    
+    public String getReportFile() {
+        return reportFile;
+    }
+    
+    public int getLevel() {
+        return level;
+    }
+    
+    @Override
+    public String toString() {
+        return "enemies/s=" + enemiesPerSecond
+            + " projectiles/s=" + projectilesPerSecond
+            + " powerups/s=" + powerUpsPerSecond
+            + " seconds=" + durationSeconds
+            + " level=" + level
+            + " field=" + width + "x" + height;
+    }
+}
@@ -0,0 +1,373 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Per-session gameplay metrics, gathered off the game thread.
+ *
+ * A background thread reads the {@link EventBus} a few times a second and
+ * folds the events into the current session: level durations, kills per
+ * shape, critical hits, damage taken and power-ups collected. Frame times
+ * come from the EDT through a lock-free histogram. Each finished level and
+ * session becomes one JSON record, and pending records are committed as a
+ * group about once a second by a {@link TelemetryWriter}. The game thread
+ * only ever publishes events, so a slow disk costs it nothing; if this
+ * thread falls behind, the oldest events are dropped and counted instead.
+ */
+public class Telemetry {
+    private static final long POLL_MILLIS = 100;
+    private static final long COMMIT_MILLIS = 1000;
+    private static final int MAX_EVENTS_PER_POLL = 8192;
+    private static final int MAX_LEVELS_PER_SESSION = 64;
+    
+    private final EventBus.Subscription events;
+    private final TelemetryWriter writer;
+    private final int tickMillis;
+    private final LatencyHistogram frameMicros = new LatencyHistogram();
+    private long lastFrameNanos; // EDT only
+    private final Thread thread;
+    private volatile boolean running = true;
+    
+    // Current session, owned by the telemetry thread
+    private boolean inSession = false;
+    private long sessionNumber = 0;
+    private long sessionStartMillis;
+    private int sessionStartTick;
+    private int lastTick;
+    private int levelStartTick;
+    private int levelNumber;
+    private int levelKills;
+    private final int[] levelTicks = new int[MAX_LEVELS_PER_SESSION];
+    private int levelsCompleted;
+    private final int[] kills = new int[3];
+    private int hits;
+    private int criticalHits;
+    private int criticalKills;
+    private int damageTaken;
+    private int livesLost;
+    private final int[] powerUps = new int[WorldState.POWERUP_TYPE_COUNT];
+    private int score;
+    
+    // Live totals across sessions, read by the metrics endpoint
+    private final AtomicLong eventsTotal = new AtomicLong();
+    private final AtomicLong eventsDropped = new AtomicLong();
+    private final AtomicLong sessionsTotal = new AtomicLong();
+    private final AtomicLong hitsTotal = new AtomicLong();
+    private final AtomicLong criticalHitsTotal = new AtomicLong();
+    private final AtomicLongArray killsTotal = new AtomicLongArray(3);
+    private final AtomicLongArray powerUpsTotal = new AtomicLongArray(WorldState.POWERUP_TYPE_COUNT);
+    private final AtomicLong damageTakenTotal = new AtomicLong();
+    private final AtomicLong livesLostTotal = new AtomicLong();
+    private final AtomicLong levelsTotal = new AtomicLong();
+    private volatile int currentLevel;
+    private volatile int currentScore;
+    private volatile long recordsWritten;
+    private volatile long recordsDropped;
+    private volatile long bytesWritten;
+    private volatile long commits;
+    
+    /**
+     * Constructor for the telemetry pipeline. Call start() to begin collecting.
+     * 
+     * @param bus The bus the simulation publishes gameplay events on
+     * @param directory The directory to write telemetry files into
+     * @param tickMillis The length of one simulation tick
+     * @throws IOException If the directory cannot be created
+     */
+    public Telemetry(EventBus bus, Path directory, int tickMillis) throws IOException {
+        this.events = bus.subscribe();
+        this.writer = new TelemetryWriter(directory, 4 * 1024 * 1024);
+        this.tickMillis = tickMillis;
+        this.thread = new Thread(this::run, "telemetry");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+    }
+    
+    /**
+     * Start the telemetry thread.
+     */
+    public void start() {
+        thread.start();
+    }
+    
+    /**
+     * Note that a frame was painted. Call from the EDT only.
+     */
+    public void recordFrame() {
+        long now = System.nanoTime();
+        if (lastFrameNanos != 0) {
+            frameMicros.record((now - lastFrameNanos) / 1000);
+        }
+        lastFrameNanos = now;
+    }
+    
+    /**
+     * Stop collecting, write out the session in progress and finish the file.
+     * Call after the simulation has stopped so its last events are seen.
+     * The thread is woken with unpark, not interrupted: an interrupt during a
+     * FileChannel write would close the file and lose the final records.
+     */
+    public void stop() {
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(2000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    private void run() {
+        long lastCommit = System.nanoTime();
+        while (running) {
+            poll();
+            if (System.nanoTime() - lastCommit >= TimeUnit.MILLISECONDS.toNanos(COMMIT_MILLIS)) {
+                commit();
+                lastCommit = System.nanoTime();
+            }
+            // Returns early when stop() unparks the thread
+            LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(POLL_MILLIS));
+        }
+        
+        // Pick up the last events, then close out an unfinished session
+        poll();
+        if (inSession) {
+            endSession("quit");
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            System.err.println("Could not write telemetry: " + e.getMessage());
+        }
+        publishWriterTotals();
+    }
+    
+    private void poll() {
+        long droppedBefore = events.getDropped();
+        int handled = events.drain(this::onEvent, MAX_EVENTS_PER_POLL);
+        eventsTotal.addAndGet(handled);
+        eventsDropped.addAndGet(events.getDropped() - droppedBefore);
+    }
+    
+    private void commit() {
+        try {
+            writer.commit();
+        } catch (IOException e) {
+            System.err.println("Could not write telemetry: " + e.getMessage());
+        }
+        publishWriterTotals();
+    }
+    
+    private void publishWriterTotals() {
+        recordsWritten = writer.getRecordsWritten();
+        recordsDropped = writer.getRecordsDropped();
+        bytesWritten = writer.getBytesWritten();
+        commits = writer.getCommits();
+    }
+    
+    private void onEvent(GameEvent event) {
+        lastTick = event.tick;
+        switch (event.type) {
+            case GameEvent.GAME_START:
+                if (inSession) {
+                    endSession("restarted");
+                }
+                startSession(event.tick, event.kind, event.value);
+                break;
+            case GameEvent.HIT:
+                hits++;
+                hitsTotal.incrementAndGet();
+                if (event.isCritical()) {
+                    criticalHits++;
+                    criticalHitsTotal.incrementAndGet();
+                }
+                break;
+            case GameEvent.KILL:
+                if (event.kind >= 0 && event.kind < kills.length) {
+                    kills[event.kind]++;
+                    killsTotal.incrementAndGet(event.kind);
+                }
+                levelKills++;
+                if (event.isCritical()) {
+                    criticalKills++;
+                }
+                break;
+            case GameEvent.SCORE:
+                score = event.value;
+                currentScore = event.value;
+                break;
+            case GameEvent.POWER_UP:
+                if (event.kind >= 0 && event.kind < powerUps.length) {
+                    powerUps[event.kind]++;
+                    powerUpsTotal.incrementAndGet(event.kind);
+                }
+                break;
+            case GameEvent.DAMAGE_TAKEN:
+                damageTaken += event.value;
+                damageTakenTotal.addAndGet(event.value);
+                break;
+            case GameEvent.LIFE_LOST:
+                livesLost++;
+                livesLostTotal.incrementAndGet();
+                break;
+            case GameEvent.LEVEL_UP:
+                endLevel(event.tick);
+                levelNumber = event.value;
+                currentLevel = event.value;
+                break;
+            case GameEvent.GAME_OVER:
+                score = event.value;
+                if (inSession) {
+                    endSession("game_over");
+                }
+                break;
+            default:
+                break;
+        }
+    }
+    
+    private void startSession(int tick, int level, int startScore) {
+        inSession = true;
+        sessionNumber++;
+        sessionsTotal.incrementAndGet();
+        sessionStartMillis = System.currentTimeMillis();
+        sessionStartTick = tick;
+        levelStartTick = tick;
+        levelNumber = level;
+        currentLevel = level;
+        levelKills = 0;
+        levelsCompleted = 0;
+        Arrays.fill(kills, 0);
+        Arrays.fill(powerUps, 0);
+        hits = 0;
+        criticalHits = 0;
+        criticalKills = 0;
+        damageTaken = 0;
+        livesLost = 0;
+        score = startScore;
+        currentScore = startScore;
+        frameMicros.reset();
+    }
+    
+    private void endLevel(int tick) {
+        if (!inSession) {
+            return;
+        }
+        int ticks = tick - levelStartTick;
+        if (levelsCompleted < MAX_LEVELS_PER_SESSION) {
+            levelTicks[levelsCompleted++] = ticks;
+        }
+        levelsTotal.incrementAndGet();
+        writer.append("{\"record\":\"level\",\"session\":" + sessionNumber
+            + ",\"start\":" + sessionStartMillis
+            + ",\"level\":" + levelNumber
+            + ",\"seconds\":" + seconds(ticks)
+            + ",\"kills\":" + levelKills + "}");
+        levelStartTick = tick;
+        levelKills = 0;
+    }
+    
+    private void endSession(String reason) {
+        inSession = false;
+        StringBuilder levels = new StringBuilder();
+        for (int i = 0; i < levelsCompleted; i++) {
+            levels.append(i == 0 ? "" : ",").append(seconds(levelTicks[i]));
+        }
+        writer.append("{\"record\":\"session\",\"session\":" + sessionNumber
+            + ",\"start\":" + sessionStartMillis
+            + ",\"end\":" + System.currentTimeMillis()
+            + ",\"reason\":\"" + reason + "\""
+            + ",\"score\":" + score
+            + ",\"level\":" + levelNumber
+            + ",\"seconds\":" + seconds(lastTick - sessionStartTick)
+            + ",\"levelSeconds\":[" + levels + "]"
+            + ",\"lastLevelSeconds\":" + seconds(lastTick - levelStartTick)
+            + ",\"kills\":{\"circle\":" + kills[WorldState.SHAPE_CIRCLE]
+            + ",\"triangle\":" + kills[WorldState.SHAPE_TRIANGLE]
+            + ",\"cube\":" + kills[WorldState.SHAPE_CUBE] + "}"
+            + ",\"hits\":" + hits
+            + ",\"criticalHits\":" + criticalHits
+            + ",\"criticalHitRatio\":" + String.format(Locale.ROOT, "%.3f", hits == 0 ? 0.0 : (double) criticalHits / hits)
+            + ",\"criticalKills\":" + criticalKills
+            + ",\"damageTaken\":" + damageTaken
+            + ",\"livesLost\":" + livesLost
+            + ",\"powerUps\":{\"health\":" + powerUps[WorldState.POWERUP_HEALTH]
+            + ",\"shield\":" + powerUps[WorldState.POWERUP_SHIELD]
+            + ",\"speed\":" + powerUps[WorldState.POWERUP_SPEED]
+            + ",\"spiral\":" + powerUps[WorldState.POWERUP_SPIRAL]
+            + ",\"rewind\":" + powerUps[WorldState.POWERUP_REWIND] + "}"
+            + ",\"frameMs\":{\"p50\":" + millis(frameMicros.percentile(50))
+            + ",\"p90\":" + millis(frameMicros.percentile(90))
+            + ",\"p99\":" + millis(frameMicros.percentile(99))
+            + ",\"max\":" + millis(frameMicros.max()) + "}"
+            + ",\"droppedEvents\":" + events.getDropped() + "}");
+    }
+    
+    private String seconds(int ticks) {
+        return String.format(Locale.ROOT, "%.2f", ticks * tickMillis / 1000.0);
+    }
+    
+    private static String millis(long micros) {
+        return String.format(Locale.ROOT, "%.2f", micros / 1000.0);
+    }
+    
+    /**
+     * Format the live totals in the Prometheus text exposition format.
+     * 
+     * @return The metrics page
+     */
+    public String metricsText() {
+        StringBuilder out = new StringBuilder(2048);
+        counter(out, "shapeshifter_events_total", "Gameplay events read from the bus", eventsTotal.get());
+        counter(out, "shapeshifter_events_dropped_total", "Events lost because telemetry fell behind", eventsDropped.get());
+        counter(out, "shapeshifter_sessions_total", "Games started", sessionsTotal.get());
+        counter(out, "shapeshifter_levels_completed_total", "Levels completed", levelsTotal.get());
+        counter(out, "shapeshifter_hits_total", "Projectile hits on enemies", hitsTotal.get());
+        counter(out, "shapeshifter_critical_hits_total", "Hits by a matching shape", criticalHitsTotal.get());
+        header(out, "shapeshifter_kills_total", "Enemies destroyed by shape", "counter");
+        for (int shape = 0; shape < 3; shape++) {
+            out.append("shapeshifter_kills_total{shape=\"").append(WorldState.shapeName(shape).toLowerCase())
+               .append("\"} ").append(killsTotal.get(shape)).append('\n');
+        }
+        header(out, "shapeshifter_power_ups_total", "Power-ups collected by type", "counter");
+        for (int type = 0; type < WorldState.POWERUP_TYPE_COUNT; type++) {
+            out.append("shapeshifter_power_ups_total{type=\"").append(WorldState.powerUpName(type).toLowerCase())
+               .append("\"} ").append(powerUpsTotal.get(type)).append('\n');
+        }
+        counter(out, "shapeshifter_damage_taken_total", "Damage taken by the player", damageTakenTotal.get());
+        counter(out, "shapeshifter_lives_lost_total", "Lives lost", livesLostTotal.get());
+        gauge(out, "shapeshifter_level", "Level of the current session", currentLevel);
+        gauge(out, "shapeshifter_score", "Score of the current session", currentScore);
+        header(out, "shapeshifter_frame_seconds", "Time between painted frames this session", "summary");
+        for (int quantile : new int[] {50, 90, 99}) {
+            out.append("shapeshifter_frame_seconds{quantile=\"0.").append(quantile).append("\"} ")
+               .append(frameMicros.percentile(quantile) / 1_000_000.0).append('\n');
+        }
+        out.append("shapeshifter_frame_seconds_count ").append(frameMicros.count()).append('\n');
+        counter(out, "shapeshifter_telemetry_records_total", "Records committed to disk", recordsWritten);
+        counter(out, "shapeshifter_telemetry_records_dropped_total", "Records dropped because the batch was full", recordsDropped);
+        counter(out, "shapeshifter_telemetry_bytes_total", "Compressed bytes written", bytesWritten);
+        counter(out, "shapeshifter_telemetry_commits_total", "Group commits", commits);
+        return out.toString();
+    }
+    
+    private static void header(StringBuilder out, String name, String help, String type) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+    
+    private static void counter(StringBuilder out, String name, String help, long value) {
+        header(out, name, help, "counter");
+        out.append(name).append(' ').append(value).append('\n');
+    }
+    
+    private static void gauge(StringBuilder out, String name, String help, long value) {
+        header(out, name, help, "gauge");
+        out.append(name).append(' ').append(value).append('\n');
+    }
+}
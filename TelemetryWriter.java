@@ -0,0 +1,211 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Rolling, gzip-compressed JSON-lines files for telemetry records.
+ *
+ * Records are collected in memory and written in groups: one commit
+ * compresses everything pending, writes it with a single channel write and
+ * forces it to disk once, however many records it holds. Each commit ends
+ * with a deflate sync flush, so a file cut short by a crash still
+ * decompresses up to its last commit. A file is finished and a new one
+ * started once it grows past the size limit. Only one thread may use a writer.
+ */
+public class TelemetryWriter {
+    private static final int MAX_PENDING_BYTES = 256 * 1024;
+    private static final DateTimeFormatter FILE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+    
+    private final Path directory;
+    private final long maxFileBytes;
+    private final byte[] pending = new byte[MAX_PENDING_BYTES];
+    private int pendingBytes = 0;
+    private int pendingRecords = 0;
+    private ByteBuffer output = ByteBuffer.allocate(MAX_PENDING_BYTES + 1024).order(ByteOrder.LITTLE_ENDIAN);
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    private final CRC32 crc = new CRC32();
+    private FileChannel file;
+    private long fileBytes;
+    private long uncompressedBytes;
+    private int fileNumber = 0;
+    
+    // Totals, for the metrics endpoint
+    private long recordsWritten = 0;
+    private long recordsDropped = 0;
+    private long bytesWritten = 0;
+    private long commits = 0;
+    
+    /**
+     * Constructor for the telemetry writer.
+     * 
+     * @param directory The directory to write files into
+     * @param maxFileBytes The compressed size after which a new file is started
+     * @throws IOException If the directory cannot be created
+     */
+    public TelemetryWriter(Path directory, long maxFileBytes) throws IOException {
+        Files.createDirectories(directory);
+        this.directory = directory;
+        this.maxFileBytes = maxFileBytes;
+    }
+    
+    /**
+     * Queue one record for the next commit. Records that do not fit in the
+     * pending batch are dropped and counted rather than waiting for the disk.
+     * 
+     * @param record One line of JSON, without the newline
+     * @return false if the record was dropped
+     */
+    public boolean append(String record) {
+        byte[] bytes = (record + "\n").getBytes(StandardCharsets.UTF_8);
+        if (pendingBytes + bytes.length > pending.length) {
+            recordsDropped++;
+            return false;
+        }
+        System.arraycopy(bytes, 0, pending, pendingBytes, bytes.length);
+        pendingBytes += bytes.length;
+        pendingRecords++;
+        return true;
+    }
+    
+    /**
+     * Write and sync every pending record as one group.
+     * 
+     * @return The number of records committed
+     * @throws IOException If the file cannot be written
+     */
+    public int commit() throws IOException {
+        if (pendingRecords == 0) {
+            return 0;
+        }
+        if (file == null) {
+            openNextFile();
+        }
+        
+        output.clear();
+        crc.update(pending, 0, pendingBytes);
+        uncompressedBytes += pendingBytes;
+        deflater.setInput(pending, 0, pendingBytes);
+        deflate(Deflater.SYNC_FLUSH);
+        writeOutput();
+        file.force(false);
+        
+        int committed = pendingRecords;
+        recordsWritten += committed;
+        commits++;
+        pendingBytes = 0;
+        pendingRecords = 0;
+        
+        if (fileBytes >= maxFileBytes) {
+            finishFile();
+        }
+        return committed;
+    }
+    
+    /**
+     * Commit what is pending and finish the current file.
+     * 
+     * @throws IOException If the file cannot be written
+     */
+    public void close() throws IOException {
+        commit();
+        finishFile();
+        deflater.end();
+    }
+    
+    private void openNextFile() throws IOException {
+        fileNumber++;
+        String name = "telemetry-" + LocalDateTime.now().format(FILE_TIME) + "-" + fileNumber + ".jsonl.gz";
+        file = FileChannel.open(directory.resolve(name), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        fileBytes = 0;
+        uncompressedBytes = 0;
+        deflater.reset();
+        crc.reset();
+        
+        // gzip header: deflate, no flags, no timestamp, unknown OS
+        output.clear();
+        output.put((byte) 0x1f).put((byte) 0x8b).put((byte) 8).put((byte) 0);
+        output.putInt(0);
+        output.put((byte) 0).put((byte) 0xff);
+        writeOutput();
+    }
+    
+    private void finishFile() throws IOException {
+        if (file == null) {
+            return;
+        }
+        output.clear();
+        deflater.finish();
+        deflate(Deflater.NO_FLUSH);
+        
+        // gzip trailer: CRC32 and length of the uncompressed data
+        ensureOutputSpace(8);
+        output.putInt((int) crc.getValue());
+        output.putInt((int) uncompressedBytes);
+        writeOutput();
+        file.force(false);
+        file.close();
+        file = null;
+    }
+    
+    /**
+     * Run the deflater until it has flushed everything it was given, or
+     * until the stream is finished once finish() has been called.
+     */
+    private void deflate(int flush) {
+        while (!deflater.finished()) {
+            ensureOutputSpace(512);
+            int space = output.remaining();
+            int written = deflater.deflate(output.array(), output.position(), space, flush);
+            output.position(output.position() + written);
+            // A flush that left room in the buffer is complete
+            if (flush == Deflater.SYNC_FLUSH && written < space) {
+                return;
+            }
+        }
+    }
+    
+    private void ensureOutputSpace(int bytes) {
+        if (output.remaining() < bytes) {
+            ByteBuffer larger = ByteBuffer.allocate(output.capacity() * 2).order(ByteOrder.LITTLE_ENDIAN);
+            output.flip();
+            larger.put(output);
+            output = larger;
+        }
+    }
+    
+    private void writeOutput() throws IOException {
+        output.flip();
+        while (output.hasRemaining()) {
+            int written = file.write(output);
+            fileBytes += written;
+            bytesWritten += written;
+        }
+        output.clear();
+    }
+    
+    // Getters
+    public long getRecordsWritten() {
+        return recordsWritten;
+    }
+    
+    public long getRecordsDropped() {
+        return recordsDropped;
+    }
+    
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+    
+    public long getCommits() {
+        return commits;
+    }
+}
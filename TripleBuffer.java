@@ -0,0 +1,61 @@
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Lock-free handoff of frames from one writer thread to one reader thread.
+ *
+ * The writer fills the back buffer and publishes it with a single atomic
+ * swap against the middle buffer; the reader swaps the middle buffer into the
+ * front whenever a newer one has been published. Neither side ever waits for
+ * the other, and the reader always sees the most recently completed frame.
+ */
+public class TripleBuffer<T> {
+    private static final int INDEX_MASK = 3;
+    private static final int FRESH = 4;
+    
+    private final Object[] buffers = new Object[3];
+    private final AtomicInteger middle = new AtomicInteger(2);
+    private int back = 0;  // Owned by the writer
+    private int front = 1; // Owned by the reader
+    
+    /**
+     * Constructor for the triple buffer.
+     * 
+     * @param factory Creates each of the three buffers
+     */
+    public TripleBuffer(Supplier<T> factory) {
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = factory.get();
+        }
+    }
+    
+    /**
+     * Get the buffer the writer should fill next.
+     * 
+     * @return The back buffer
+     */
+    @SuppressWarnings("unchecked")
+    public T back() {
+        return (T) buffers[back];
+    }
+    
+    /**
+     * Publish the back buffer to the reader and take the old middle buffer as the new back.
+     */
+    public void publish() {
+        back = middle.getAndSet(back | FRESH) & INDEX_MASK;
+    }
+    
+    /**
+     * Get the newest published buffer. The reader may use it until its next call.
+     * 
+     * @return The front buffer
+     */
+    @SuppressWarnings("unchecked")
+    public T acquire() {
+        if ((middle.get() & FRESH) != 0) {
+            front = middle.getAndSet(front) & INDEX_MASK;
+        }
+        return (T) buffers[front];
+    }
+}
@@ -0,0 +1,119 @@
+import java.awt.Graphics;
+import java.awt.event.KeyEvent;
+import java.awt.image.BufferedImage;
+
+/**
+ * Runs representative gameplay off screen so the JIT has compiled the
+ * simulation and drawing code before the player's first game.
+ *
+ * Each phase is a throwaway game in swarm mode, which never saves, records
+ * scores or writes telemetry, run at a different spawn rate so the
+ * collision and drawing paths see a few different entity counts. Every tick
+ * gets some scripted key presses and every fourth tick is painted into an
+ * image. The warm-up stops after its time budget or as soon as it is cancelled.
+ *
+ * The games are built and painted on the warm-up thread rather than the EDT.
+ * That is safe only because they are never added to a window, shown or given
+ * focus: nothing else can reach them, and paint() only draws into the image.
+ * Nothing is printed; the game reports the summary with its own diagnostics.
+ */
+public class WarmUp implements Runnable {
+    // Enemies and projectiles spawned per second in each phase
+    private static final int[][] PHASES = {{40, 80}, {150, 300}, {400, 800}};
+    private static final int PHASE_TICKS = 400;
+    private static final int[] KEYS = {
+        KeyEvent.VK_SPACE, KeyEvent.VK_LEFT, KeyEvent.VK_SPACE, KeyEvent.VK_RIGHT,
+        KeyEvent.VK_1, KeyEvent.VK_SPACE, KeyEvent.VK_UP, KeyEvent.VK_2,
+        KeyEvent.VK_SPACE, KeyEvent.VK_DOWN, KeyEvent.VK_3
+    };
+    
+    private final int width;
+    private final int height;
+    private final long budgetNanos;
+    private volatile boolean cancelled = false;
+    private volatile boolean finished = false;
+    private volatile long elapsedNanos;
+    private volatile int ticks;
+    private volatile int frames;
+    
+    /**
+     * Constructor for the warm-up.
+     * 
+     * @param width Width of the view to render
+     * @param height Height of the view to render
+     * @param budgetMillis The most time to spend
+     */
+    public WarmUp(int width, int height, long budgetMillis) {
+        this.width = width;
+        this.height = height;
+        this.budgetNanos = budgetMillis * 1_000_000L;
+    }
+    
+    /**
+     * Run the warm-up on a background thread.
+     */
+    public void start() {
+        Thread thread = new Thread(this, "warm-up");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    /**
+     * Stop the warm-up at the end of its current tick.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+    
+    @Override
+    public void run() {
+        long start = System.nanoTime();
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics g = image.getGraphics();
+        
+        for (int[] phase : PHASES) {
+            ShapeShifterDuel game = new ShapeShifterDuel(
+                new SwarmConfig(true, phase[0], phase[1], 10, 3600, width, height, null, 1));
+            game.setSize(width, height);
+            KeyEvent[] keys = new KeyEvent[KEYS.length];
+            for (int i = 0; i < KEYS.length; i++) {
+                keys[i] = new KeyEvent(game, KeyEvent.KEY_PRESSED, 0, 0, KEYS[i], KeyEvent.CHAR_UNDEFINED);
+            }
+            
+            for (int t = 0; t < PHASE_TICKS; t++) {
+                if (cancelled || System.nanoTime() - start > budgetNanos) {
+                    break;
+                }
+                game.keyPressed(keys[t % keys.length]);
+                game.tick();
+                ticks++;
+                if (t % 4 == 0) {
+                    game.paint(g);
+                    frames++;
+                }
+            }
+            elapsedNanos = System.nanoTime() - start;
+        }
+        g.dispose();
+        finished = true;
+    }
+    
+    /**
+     * Describe how much warm-up was done.
+     * 
+     * @return A summary such as "warm-up of 1500 ticks and 750 frames in 3200 ms"
+     */
+    public String summary() {
+        return "warm-up of " + ticks + " ticks and " + frames + " frames in " + elapsedNanos / 1_000_000 + " ms"
+            + (finished ? (cancelled ? ", cut short by the game starting" : "") : " (still running)");
+    }
+    
+    // Getters
+    public boolean isFinished() {
+        return finished;
+    }
+    
+    public long getElapsedMillis() {
+        return elapsedNanos / 1_000_000;
+    }
+}
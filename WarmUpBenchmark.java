@@ -0,0 +1,96 @@
+import java.awt.Graphics;
+import java.awt.event.KeyEvent;
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Compares the first seconds of play with and without the JIT warm-up.
+ *
+ * Each case runs in a fresh JVM, since compiled code carries over within
+ * one. The child optionally runs the warm-up to completion, then plays a
+ * scripted first game, ticking and painting at 60 fps, and reports the
+ * distribution of frame times (one tick plus one paint) over that period.
+ *
+ * Run with: java -Djava.awt.headless=true WarmUpBenchmark [seconds]
+ */
+public class WarmUpBenchmark {
+    private static final int WIDTH = 500;
+    private static final int HEIGHT = 500;
+    private static final long FRAME_NANOS = 16_666_667L;
+    
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("child")) {
+            runChild(Boolean.parseBoolean(args[1]), Integer.parseInt(args[2]));
+            return;
+        }
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        runInNewJvm(false, seconds);
+        runInNewJvm(true, seconds);
+    }
+    
+    private static void runInNewJvm(boolean warm, int seconds) throws IOException, InterruptedException {
+        Path scratch = Files.createTempDirectory("warmup-benchmark");
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        ProcessBuilder builder = new ProcessBuilder(java,
+            "-Djava.awt.headless=true",
+            "-Dsave.file=" + scratch.resolve("bench.sav"),
+            "-Dleaderboard.dir=" + scratch.resolve("leaderboard"),
+            "-Dtelemetry.dir=",
+            "-cp", System.getProperty("java.class.path"),
+            "WarmUpBenchmark", "child", Boolean.toString(warm), Integer.toString(seconds));
+        builder.redirectErrorStream(true);
+        Process process = builder.start();
+        try (BufferedReader out = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            String line;
+            while ((line = out.readLine()) != null) {
+                System.out.println(line);
+            }
+        }
+        process.waitFor();
+    }
+    
+    private static void runChild(boolean warm, int seconds) {
+        String label = warm ? "with warm-up   " : "without warm-up";
+        if (warm) {
+            WarmUp warmUp = new WarmUp(WIDTH, HEIGHT, 10_000);
+            warmUp.run();
+        }
+        
+        ShapeShifterDuel game = new ShapeShifterDuel(new SwarmConfig(false, 0, 0, 0, 0, WIDTH, HEIGHT, null, 1));
+        game.setSize(WIDTH, HEIGHT);
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        Graphics g = image.getGraphics();
+        int[] script = {KeyEvent.VK_SPACE, KeyEvent.VK_LEFT, KeyEvent.VK_SPACE, KeyEvent.VK_RIGHT, KeyEvent.VK_1,
+                        KeyEvent.VK_SPACE, KeyEvent.VK_2, KeyEvent.VK_SPACE, KeyEvent.VK_3};
+        
+        game.keyPressed(new KeyEvent(game, KeyEvent.KEY_PRESSED, 0, 0, KeyEvent.VK_ENTER, '\n'));
+        LatencyHistogram frameMicros = new LatencyHistogram();
+        int frames = seconds * 60;
+        int slowFrames = 0;
+        long next = System.nanoTime();
+        for (int frame = 0; frame < frames; frame++) {
+            game.keyPressed(new KeyEvent(game, KeyEvent.KEY_PRESSED, 0, 0, script[frame % script.length],
+                                         KeyEvent.CHAR_UNDEFINED));
+            long start = System.nanoTime();
+            game.tick();
+            game.paint(g);
+            long frameNanos = System.nanoTime() - start;
+            frameMicros.record(frameNanos / 1000);
+            if (frameNanos > FRAME_NANOS) {
+                slowFrames++;
+            }
+            next += FRAME_NANOS;
+            long wait = next - System.nanoTime();
+            if (wait > 0) {
+                java.util.concurrent.locks.LockSupport.parkNanos(wait);
+            }
+        }
+        System.out.println("First " + seconds + " s " + label + ": frame " + frameMicros.summary("us")
+            + " over 16 ms=" + slowFrames);
+    }
+}
@@ -0,0 +1,267 @@
+import java.util.Arrays;
+
+/**
+ * A flat, primitive-array copy of the game world at a single tick.
+ *
+ * Instances are meant to be allocated once and refilled every tick, so the
+ * arrays only grow when the entity count exceeds their current capacity.
+ */
+public class WorldState {
+    // Shape type codes
+    public static final int SHAPE_CIRCLE = 0;
+    public static final int SHAPE_TRIANGLE = 1;
+    public static final int SHAPE_CUBE = 2;
+    
+    // Set in a projectile's type for shots fired by enemies
+    public static final int PROJECTILE_HOSTILE = 4;
+    
+    // Power-up type codes
+    public static final int POWERUP_HEALTH = 0;
+    public static final int POWERUP_SHIELD = 1;
+    public static final int POWERUP_SPEED = 2;
+    public static final int POWERUP_SPIRAL = 3;
+    public static final int POWERUP_REWIND = 4;
+    public static final int POWERUP_TYPE_COUNT = 5;
+    
+    // Entity sizes in pixels
+    public static final int SHAPE_SIZE = 30;
+    public static final int POWERUP_SIZE = 15;
+    public static final int PROJECTILE_SIZE = 5;
+    
+    private static final int INITIAL_CAPACITY = 64;
+    
+    // Simulation tick this state was captured on
+    public int tick;
+    
+    // Enemies
+    public int enemyCount;
+    public int[] enemyId = new int[INITIAL_CAPACITY];
+    public int[] enemyType = new int[INITIAL_CAPACITY];
+    public int[] enemyX = new int[INITIAL_CAPACITY];
+    public int[] enemyY = new int[INITIAL_CAPACITY];
+    public int[] enemyHealth = new int[INITIAL_CAPACITY];
+    public int[] enemyMaxHealth = new int[INITIAL_CAPACITY];
+    
+    // Projectiles, the player's and the enemies' (see PROJECTILE_HOSTILE)
+    public int projectileCount;
+    public int[] projectileId = new int[INITIAL_CAPACITY];
+    public int[] projectileType = new int[INITIAL_CAPACITY];
+    public int[] projectileX = new int[INITIAL_CAPACITY];
+    public int[] projectileY = new int[INITIAL_CAPACITY];
+    public int[] projectileDx = new int[INITIAL_CAPACITY];
+    public int[] projectileDy = new int[INITIAL_CAPACITY];
+    
+    // Power-ups
+    public int powerUpCount;
+    public int[] powerUpId = new int[INITIAL_CAPACITY];
+    public int[] powerUpType = new int[INITIAL_CAPACITY];
+    public int[] powerUpX = new int[INITIAL_CAPACITY];
+    public int[] powerUpY = new int[INITIAL_CAPACITY];
+    
+    // Player
+    public int playerShape;
+    public int playerX, playerY;
+    public int playerHealth;
+    public int playerLives;
+    public int score;
+    
+    // Level progress
+    public int levelNumber;
+    public int levelPoints;
+    public int highestLevel;
+    
+    /**
+     * Remove all entities while keeping the allocated arrays.
+     */
+    public void clear() {
+        enemyCount = 0;
+        projectileCount = 0;
+        powerUpCount = 0;
+    }
+    
+    /**
+     * Append an enemy.
+     *
+     * @return The index the enemy was stored at
+     */
+    public int addEnemy(int id, int type, int x, int y, int health, int maxHealth) {
+        if (enemyCount == enemyId.length) {
+            int capacity = enemyCount * 2;
+            enemyId = Arrays.copyOf(enemyId, capacity);
+            enemyType = Arrays.copyOf(enemyType, capacity);
+            enemyX = Arrays.copyOf(enemyX, capacity);
+            enemyY = Arrays.copyOf(enemyY, capacity);
+            enemyHealth = Arrays.copyOf(enemyHealth, capacity);
+            enemyMaxHealth = Arrays.copyOf(enemyMaxHealth, capacity);
+        }
+        int i = enemyCount++;
+        enemyId[i] = id;
+        enemyType[i] = type;
+        enemyX[i] = x;
+        enemyY[i] = y;
+        enemyHealth[i] = health;
+        enemyMaxHealth[i] = maxHealth;
+        return i;
+    }
+    
+    /**
+     * Append a projectile.
+     *
+     * @return The index the projectile was stored at
+     */
+    public int addProjectile(int id, int type, int x, int y, int dx, int dy) {
+        if (projectileCount == projectileId.length) {
+            int capacity = projectileCount * 2;
+            projectileId = Arrays.copyOf(projectileId, capacity);
+            projectileType = Arrays.copyOf(projectileType, capacity);
+            projectileX = Arrays.copyOf(projectileX, capacity);
+            projectileY = Arrays.copyOf(projectileY, capacity);
+            projectileDx = Arrays.copyOf(projectileDx, capacity);
+            projectileDy = Arrays.copyOf(projectileDy, capacity);
+        }
+        int i = projectileCount++;
+        projectileId[i] = id;
+        projectileType[i] = type;
+        projectileX[i] = x;
+        projectileY[i] = y;
+        projectileDx[i] = dx;
+        projectileDy[i] = dy;
+        return i;
+    }
+    
+    /**
+     * Append a power-up.
+     *
+     * @return The index the power-up was stored at
+     */
+    public int addPowerUp(int id, int type, int x, int y) {
+        if (powerUpCount == powerUpId.length) {
+            int capacity = powerUpCount * 2;
+            powerUpId = Arrays.copyOf(powerUpId, capacity);
+            powerUpType = Arrays.copyOf(powerUpType, capacity);
+            powerUpX = Arrays.copyOf(powerUpX, capacity);
+            powerUpY = Arrays.copyOf(powerUpY, capacity);
+        }
+        int i = powerUpCount++;
+        powerUpId[i] = id;
+        powerUpType[i] = type;
+        powerUpX[i] = x;
+        powerUpY[i] = y;
+        return i;
+    }
+    
+    /**
+     * Copy another state into this one, reusing this state's arrays where possible.
+     *
+     * @param other The state to copy
+     */
+    public void copyFrom(WorldState other) {
+        clear();
+        for (int i = 0; i < other.enemyCount; i++) {
+            addEnemy(other.enemyId[i], other.enemyType[i], other.enemyX[i], other.enemyY[i],
+                     other.enemyHealth[i], other.enemyMaxHealth[i]);
+        }
+        for (int i = 0; i < other.projectileCount; i++) {
+            addProjectile(other.projectileId[i], other.projectileType[i], other.projectileX[i],
+                          other.projectileY[i], other.projectileDx[i], other.projectileDy[i]);
+        }
+        for (int i = 0; i < other.powerUpCount; i++) {
+            addPowerUp(other.powerUpId[i], other.powerUpType[i], other.powerUpX[i], other.powerUpY[i]);
+        }
+        copyPlayerFrom(other);
+    }
+    
+    /**
+     * Copy the tick, player, score and level fields of another state, leaving the entities alone.
+     *
+     * @param other The state to copy
+     */
+    public void copyPlayerFrom(WorldState other) {
+        tick = other.tick;
+        playerShape = other.playerShape;
+        playerX = other.playerX;
+        playerY = other.playerY;
+        playerHealth = other.playerHealth;
+        playerLives = other.playerLives;
+        score = other.score;
+        levelNumber = other.levelNumber;
+        levelPoints = other.levelPoints;
+        highestLevel = other.highestLevel;
+    }
+    
+    /**
+     * Convert a shape name to its type code.
+     *
+     * @param shapeType "Circle", "Triangle" or "Cube"
+     * @return The shape type code
+     */
+    public static int shapeCode(String shapeType) {
+        switch (shapeType) {
+            case "Triangle":
+                return SHAPE_TRIANGLE;
+            case "Cube":
+                return SHAPE_CUBE;
+            default:
+                return SHAPE_CIRCLE;
+        }
+    }
+    
+    /**
+     * Convert a shape type code back to its name.
+     *
+     * @param code The shape type code
+     * @return The shape name
+     */
+    public static String shapeName(int code) {
+        switch (code) {
+            case SHAPE_TRIANGLE:
+                return "Triangle";
+            case SHAPE_CUBE:
+                return "Cube";
+            default:
+                return "Circle";
+        }
+    }
+    
+    /**
+     * Convert a power-up name to its type code.
+     *
+     * @param type "Health", "Shield" or "Speed"
+     * @return The power-up type code
+     */
+    public static int powerUpCode(String type) {
+        switch (type) {
+            case "Shield":
+                return POWERUP_SHIELD;
+            case "Speed":
+                return POWERUP_SPEED;
+            case "Spiral":
+                return POWERUP_SPIRAL;
+            case "Rewind":
+                return POWERUP_REWIND;
+            default:
+                return POWERUP_HEALTH;
+        }
+    }
+    
+    /**
+     * Convert a power-up type code back to its name.
+     *
+     * @param code The power-up type code
+     * @return The power-up name
+     */
+    public static String powerUpName(int code) {
+        switch (code) {
+            case POWERUP_SHIELD:
+                return "Shield";
+            case POWERUP_SPEED:
+                return "Speed";
+            case POWERUP_SPIRAL:
+                return "Spiral";
+            case POWERUP_REWIND:
+                return "Rewind";
+            default:
+                return "Health";
+        }
+    }
+}